@@ -0,0 +1,48 @@
+package com.niyiment.patientservice.common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Continuation token for keyset pagination.
+ * Captures the sort key value and ID of the last row returned so the next page can seek past it.
+ * Clients treat the encoded form as opaque.
+ */
+public record PatientCursor(String sortBy, String sortDirection, String sortValue, UUID id) {
+
+    private static final String SEPARATOR = "|";
+
+    /**
+     * Encodes the cursor as a URL-safe token.
+     */
+    public String encode() {
+        String raw = String.join(SEPARATOR, sortBy, sortDirection, sortValue, id.toString());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a token produced by {@link #encode()}.
+     */
+    public static Result<PatientCursor> decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int first = raw.indexOf(SEPARATOR);
+            int second = raw.indexOf(SEPARATOR, first + 1);
+            int last = raw.lastIndexOf(SEPARATOR);
+            if (first < 0 || second < 0 || last <= second) {
+                return Result.failure(ResultError.validation("Invalid cursor"));
+            }
+            // The sort value may itself contain the separator, so it is everything between the
+            // direction and the trailing ID
+            return Result.success(new PatientCursor(
+                raw.substring(0, first),
+                raw.substring(first + 1, second),
+                raw.substring(second + 1, last),
+                UUID.fromString(raw.substring(last + 1))
+            ));
+        } catch (IllegalArgumentException e) {
+            return Result.failure(ResultError.validation("Invalid cursor"));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.niyiment.patientservice.common;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Strong entity tag of a patient record, built from the patient ID and its optimistic-lock version,
+ * so it changes with every committed change to the patient and can be checked without loading it.
+ */
+public record PatientETag(UUID patientId, long version) {
+
+    private static final String ANY = "*";
+
+    public static PatientETag of(UUID patientId, Long version) {
+        return new PatientETag(patientId, version != null ? version : 0L);
+    }
+
+    /**
+     * Encodes the tag as a quoted ETag header value.
+     */
+    public String encode() {
+        return "\"" + patientId + "-" + version + "\"";
+    }
+
+    /**
+     * Encodes the tag of one representation of the patient, such as a subset of its fields.
+     * Each representation needs a tag of its own, or a cache holding one would answer a
+     * conditional request for another with 304.
+     *
+     * @param variant short key of the representation, or null for the full record
+     */
+    public String encode(String variant) {
+        return variant == null ? encode() : "\"" + patientId + "-" + version + "-" + variant + "\"";
+    }
+
+    /**
+     * Whether an If-Match header accepts any current version of the patient.
+     */
+    public static boolean matchesAny(String ifMatch) {
+        return ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals(ANY);
+    }
+
+    /**
+     * Reads the version an If-Match header expects of the given patient. Weak tags never match,
+     * as If-Match uses strong comparison. The tag of any representation carries the version, so
+     * a tag read with a subset of the fields serves for an update as well.
+     *
+     * @return the version of the first tag listed for the patient, or empty if none is
+     */
+    public static Optional<Long> expectedVersion(String ifMatch, UUID patientId) {
+        String prefix = "\"" + patientId + "-";
+        for (String tag : ifMatch.split(",")) {
+            String candidate = tag.trim();
+            if (candidate.startsWith(prefix) && candidate.endsWith("\"")) {
+                String version = candidate.substring(prefix.length(), candidate.length() - 1);
+                int variant = version.indexOf('-');
+                try {
+                    return Optional.of(Long.parseLong(variant < 0 ? version : version.substring(0, variant)));
+                } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                    // Not one of our tags; keep looking
+                }
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,61 @@
+package com.niyiment.patientservice.common;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * Sync watermark handed to devices after every sync page.
+ * Captures the change position the device has caught up to, the state and LGA scope it syncs,
+ * and when the token was issued, so tokens older than the tombstone retention can be refused.
+ * Clients treat the encoded form as opaque.
+ */
+public record PatientSyncCursor(long changeXid, long changeSeq, String state, String lga, Instant issuedAt) {
+
+    private static final String SEPARATOR = "|";
+
+    /**
+     * Cursor for the same scope positioned at the given change, issued now.
+     */
+    public PatientSyncCursor advanceTo(long changeXid, long changeSeq) {
+        return new PatientSyncCursor(changeXid, changeSeq, state, lga, Instant.now());
+    }
+
+    public boolean hasScope(String state, String lga) {
+        return Objects.equals(this.state, state) && Objects.equals(this.lga, lga);
+    }
+
+    /**
+     * Encodes the cursor as a URL-safe token.
+     */
+    public String encode() {
+        String raw = String.join(SEPARATOR,
+            Long.toString(changeXid), Long.toString(changeSeq), Long.toString(issuedAt.getEpochSecond()),
+            state != null ? state : "", lga != null ? lga : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a token produced by {@link #encode()}.
+     */
+    public static Result<PatientSyncCursor> decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            // The LGA is last and may itself contain the separator
+            String[] parts = raw.split("\\|", 5);
+            if (parts.length != 5) {
+                return Result.failure(ResultError.validation("Invalid sync cursor"));
+            }
+            return Result.success(new PatientSyncCursor(
+                Long.parseLong(parts[0]),
+                Long.parseLong(parts[1]),
+                parts[3].isEmpty() ? null : parts[3],
+                parts[4].isEmpty() ? null : parts[4],
+                Instant.ofEpochSecond(Long.parseLong(parts[2]))
+            ));
+        } catch (IllegalArgumentException e) {
+            return Result.failure(ResultError.validation("Invalid sync cursor"));
+        }
+    }
+}
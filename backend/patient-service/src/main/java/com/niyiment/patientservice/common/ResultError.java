@@ -24,6 +24,22 @@ public record ResultError(String code, String message) {
         return new ResultError("INTERNAL_ERROR", message);
     }
 
+    public static ResultError unavailable(String message) {
+        return new ResultError("SERVICE_UNAVAILABLE", message);
+    }
+
+    public static ResultError preconditionFailed(String message) {
+        return new ResultError("PRECONDITION_FAILED", message);
+    }
+
+    public static ResultError unprocessable(String message) {
+        return new ResultError("UNPROCESSABLE", message);
+    }
+
+    public static ResultError gone(String message) {
+        return new ResultError("GONE", message);
+    }
+
     public static ResultError businessRule(String message) {
         return new ResultError("BUSINESS_RULE_VIOLATION", message);
     }
@@ -1,6 +1,7 @@
 package com.niyiment.patientservice.config;
 
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.niyiment.patientservice.service.PatientCacheService;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cache.caffeine.CaffeineCacheManager;
@@ -11,18 +12,46 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * Configuration for Caffeine caching.
+ * Every cache records statistics, which Spring Boot binds as cache.gets / cache.puts / cache.evictions meters.
  */
 @Configuration
 @EnableCaching
 public class CacheConfiguration {
 
+    private static final long QR_CODE_CACHE_MAX_BYTES = 32L * 1024 * 1024;
+
     @Bean
     public CacheManager cacheManager() {
-        CaffeineCacheManager cacheManager = new CaffeineCacheManager("patients", "guardians", "programs");
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
         cacheManager.setCaffeine(caffeineCacheBuilder());
+        cacheManager.registerCustomCache(PatientCacheService.PATIENTS_CACHE, caffeineCacheBuilder().build());
+        cacheManager.registerCustomCache(PatientCacheService.NATIONAL_IDS_CACHE, nationalIdCacheBuilder().build());
+        cacheManager.registerCustomCache("qrCodes", qrCodeCacheBuilder().build());
         return cacheManager;
     }
 
+    /**
+     * National IDs never change once assigned, so the index only needs evicting on delete.
+     */
+    private Caffeine<Object, Object> nationalIdCacheBuilder() {
+        return Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .recordStats();
+    }
+
+    /**
+     * Rendered QR images vary in size by format and resolution, so the cache is bounded
+     * by total bytes rather than entry count.
+     */
+    private Caffeine<Object, Object> qrCodeCacheBuilder() {
+        return Caffeine.newBuilder()
+            .maximumWeight(QR_CODE_CACHE_MAX_BYTES)
+            .weigher((Object key, Object value) -> value instanceof byte[] bytes ? bytes.length : 1)
+            .expireAfterAccess(1, TimeUnit.DAYS)
+            .recordStats();
+    }
+
     private Caffeine<Object, Object> caffeineCacheBuilder() {
         return Caffeine.newBuilder()
             .initialCapacity(100)
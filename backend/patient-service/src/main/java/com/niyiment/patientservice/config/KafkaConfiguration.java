@@ -1,28 +1,44 @@
 package com.niyiment.patientservice.config;
 
 import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.ExponentialBackOffWithMaxRetries;
 
 import java.util.HashMap;
 import java.util.Map;
 
 /**
- * Kafka configuration for event publishing.
+ * Kafka configuration for event publishing, cache invalidation and the patient read model.
  */
 @Configuration
 public class KafkaConfiguration {
 
+    public static final String PATIENT_VIEW_DEAD_LETTER_TOPIC = "patient.view.dlt";
+
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    @Value("${spring.application.name}")
+    private String applicationName;
+
+    @Value("${patient.instance-id}")
+    private String instanceId;
+
     @Bean
     public ProducerFactory<String, String> producerFactory() {
         Map<String, Object> configProps = new HashMap<>();
@@ -40,6 +56,70 @@ public class KafkaConfiguration {
         return new KafkaTemplate<>(producerFactory());
     }
 
+    /**
+     * Listener factory for cache invalidation. Every instance joins its own consumer group so each
+     * one sees every patient event. The group is named after patient.instance-id, so a restarted
+     * instance rejoins its group instead of leaving one more abandoned group on the brokers; a new
+     * group starts from the latest offset since older changes are already reflected in the
+     * database it will read from on a miss.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, String> cacheInvalidationListenerFactory() {
+        Map<String, Object> configProps = new HashMap<>();
+        configProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        configProps.put(ConsumerConfig.GROUP_ID_CONFIG, applicationName + "-cache-" + instanceId);
+        configProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        configProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, true);
+        configProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        configProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+
+        ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(configProps));
+        return factory;
+    }
+
+    /**
+     * Batch listener factory for the patient read model. All instances share one consumer group,
+     * so each event is projected once, and a new group starts from the earliest offset since
+     * re-projecting a patient is idempotent. A failing record is retried with exponential backoff
+     * for about two minutes and then published to the dead letter topic, so one poison event
+     * cannot hold up its partition; the nightly reconciliation re-projects patients left behind.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, String> patientViewListenerFactory(
+        KafkaTemplate<String, String> kafkaTemplate
+    ) {
+        Map<String, Object> configProps = new HashMap<>();
+        configProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        configProps.put(ConsumerConfig.GROUP_ID_CONFIG, applicationName + "-patient-view");
+        configProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        configProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        configProps.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 500);
+        configProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        configProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+
+        ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(configProps));
+        factory.setBatchListener(true);
+
+        ExponentialBackOffWithMaxRetries backOff = new ExponentialBackOffWithMaxRetries(8);
+        backOff.setInitialInterval(1000L);
+        backOff.setMultiplier(2.0);
+        backOff.setMaxInterval(30000L);
+        DeadLetterPublishingRecoverer recoverer = new DeadLetterPublishingRecoverer(kafkaTemplate,
+            (record, exception) -> new TopicPartition(PATIENT_VIEW_DEAD_LETTER_TOPIC, -1));
+        factory.setCommonErrorHandler(new DefaultErrorHandler(recoverer, backOff));
+        return factory;
+    }
+
+    @Bean
+    public NewTopic patientViewDeadLetterTopic() {
+        return TopicBuilder.name(PATIENT_VIEW_DEAD_LETTER_TOPIC)
+            .partitions(1)
+            .replicas(1)
+            .build();
+    }
+
     @Bean
     public NewTopic patientRegisteredTopic() {
         return TopicBuilder.name("patient.registered")
@@ -56,6 +136,14 @@ public class KafkaConfiguration {
             .build();
     }
 
+    @Bean
+    public NewTopic patientDeletedTopic() {
+        return TopicBuilder.name("patient.deleted")
+            .partitions(3)
+            .replicas(1)
+            .build();
+    }
+
     @Bean
     public NewTopic patientProgramEnrolledTopic() {
         return TopicBuilder.name("patient.program.enrolled")
@@ -63,4 +151,12 @@ public class KafkaConfiguration {
             .replicas(1)
             .build();
     }
+
+    @Bean
+    public NewTopic campaignEnrollmentCompletedTopic() {
+        return TopicBuilder.name("patient.campaign.completed")
+            .partitions(3)
+            .replicas(1)
+            .build();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+package com.niyiment.patientservice.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.autoconfigure.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.JpaTransactionManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Routes read-only transactions to a read replica when patient.datasource.replica.enabled is set.
+ * The application DataSource defers fetching a physical connection until the first statement,
+ * by which time the transaction manager has marked the connection read-only; read-only
+ * transactions, such as every PatientQueryService method, then draw from the replica pool and
+ * everything else from the primary pool. Each pool reports its own hikaricp.* meters.
+ * Read-only transactions read the second-level cache but never fill it, as a lagging replica
+ * could otherwise cache a patient at a version older than the last eviction.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "patient.datasource.replica", name = "enabled", havingValue = "true")
+public class ReadReplicaConfiguration {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties, MeterRegistry meterRegistry) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        return dataSource;
+    }
+
+    @Bean(defaultCandidate = false)
+    @ConfigurationProperties("patient.datasource.replica")
+    public DataSourceProperties replicaDataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    @Bean
+    @ConfigurationProperties("patient.datasource.replica.hikari")
+    public HikariDataSource replicaDataSource(
+        @Qualifier("replicaDataSourceProperties") DataSourceProperties properties,
+        MeterRegistry meterRegistry
+    ) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setReadOnly(true);
+        dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        return dataSource;
+    }
+
+    @Bean
+    public ReplicaFallbackDataSource replicaFallbackDataSource(
+        @Qualifier("replicaDataSource") DataSource replica,
+        @Qualifier("primaryDataSource") DataSource primary,
+        @Value("${patient.datasource.replica.max-lag:5s}") Duration maxLag,
+        MeterRegistry meterRegistry
+    ) {
+        return new ReplicaFallbackDataSource(replica, primary, maxLag, meterRegistry);
+    }
+
+    @Bean
+    public JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+        JpaTransactionManager transactionManager = new JpaTransactionManager(entityManagerFactory);
+        transactionManager.setJpaDialect(new ReplicaReadJpaDialect());
+        return transactionManager;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(
+        @Qualifier("primaryDataSource") DataSource primary,
+        ReplicaFallbackDataSource replica
+    ) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primary);
+        dataSource.setReadOnlyDataSource(replica);
+        return dataSource;
+    }
+}
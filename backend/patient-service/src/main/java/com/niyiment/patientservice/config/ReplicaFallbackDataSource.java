@@ -0,0 +1,125 @@
+package com.niyiment.patientservice.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-only DataSource serving connections from the replica pool while the replica is reachable
+ * and caught up, and from the primary pool otherwise. A failed replica connection switches reads
+ * to the primary straight away; {@link #checkReplica()} switches them back once the replica
+ * answers again within the allowed lag.
+ */
+@Slf4j
+public class ReplicaFallbackDataSource extends DelegatingDataSource {
+
+    // Whether the replica has lost its WAL receiver, and the seconds it is behind the primary. Lag is
+    // zero when the replica has replayed everything it received, so an idle primary does not make a
+    // caught-up replica look stale; that only holds while WAL is still arriving, hence the first column
+    private static final String LAG_QUERY = """
+        SELECT pg_is_in_recovery() AND NOT EXISTS (SELECT 1 FROM pg_stat_wal_receiver) AS disconnected,
+               CASE
+                   WHEN NOT pg_is_in_recovery() OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                   ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0)
+               END AS lag
+        """;
+
+    private final DataSource primary;
+    private final Duration maxLag;
+
+    private volatile boolean available = true;
+    private final AtomicLong lagMillis = new AtomicLong();
+
+    private final Counter replicaConnections;
+    private final Counter primaryConnections;
+    private final Counter replicaFailures;
+
+    public ReplicaFallbackDataSource(DataSource replica, DataSource primary, Duration maxLag, MeterRegistry meterRegistry) {
+        super(replica);
+        this.primary = primary;
+        this.maxLag = maxLag;
+
+        this.replicaConnections = Counter.builder("patient.datasource.reads")
+            .tag("target", "replica")
+            .description("Connections handed to read-only transactions, by the pool serving them")
+            .register(meterRegistry);
+        this.primaryConnections = Counter.builder("patient.datasource.reads")
+            .tag("target", "primary")
+            .description("Connections handed to read-only transactions, by the pool serving them")
+            .register(meterRegistry);
+        this.replicaFailures = Counter.builder("patient.datasource.replica.failures")
+            .description("Replica connections or lag checks that failed")
+            .register(meterRegistry);
+        Gauge.builder("patient.datasource.replica.lag", lagMillis, lag -> lag.get() / 1000.0)
+            .description("Replication lag of the read replica at the last check, in seconds")
+            .register(meterRegistry);
+        Gauge.builder("patient.datasource.replica.available", this, dataSource -> dataSource.available ? 1 : 0)
+            .description("Whether read-only transactions are currently routed to the replica")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (available) {
+            try {
+                Connection connection = super.getConnection();
+                replicaConnections.increment();
+                return connection;
+            } catch (SQLException e) {
+                replicaFailures.increment();
+                markUnavailable("connection failed: " + e.getMessage());
+            }
+        }
+        primaryConnections.increment();
+        return primary.getConnection();
+    }
+
+    /**
+     * Measures the replica's lag and routes reads to it only while it is streaming from the primary
+     * and the lag is within bounds.
+     */
+    @Scheduled(fixedDelayString = "${patient.datasource.replica.check-interval-ms:5000}")
+    public void checkReplica() {
+        try (Connection connection = super.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(LAG_QUERY)) {
+            result.next();
+            boolean disconnected = result.getBoolean("disconnected");
+            long lag = Math.round(result.getDouble("lag") * 1000);
+            lagMillis.set(lag);
+            if (disconnected) {
+                markUnavailable("is not receiving WAL from the primary");
+            } else if (lag > maxLag.toMillis()) {
+                markUnavailable("lag of " + lag + " ms exceeds " + maxLag.toMillis() + " ms");
+            } else if (!available) {
+                available = true;
+                log.info("Routing read-only transactions to the replica again (lag {} ms)", lag);
+            }
+        } catch (SQLException e) {
+            replicaFailures.increment();
+            markUnavailable("lag check failed: " + e.getMessage());
+        }
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    private void markUnavailable(String reason) {
+        if (available) {
+            available = false;
+            log.warn("Routing read-only transactions to the primary: replica {}", reason);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.niyiment.patientservice.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+
+/**
+ * Configuration for the message converters used alongside JSON and XML.
+ * CBOR (application/cbor) carries the same documents as JSON in a binary encoding, so phones on
+ * slow links download and parse less for every patient read.
+ */
+@Configuration
+public class WebConfiguration {
+
+    /**
+     * Shares the modules and settings of the JSON mapper, so both formats name and write fields alike.
+     */
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(ObjectMapper objectMapper) {
+        return new MappingJackson2CborHttpMessageConverter(objectMapper.copyWith(new CBORFactory()));
+    }
+}
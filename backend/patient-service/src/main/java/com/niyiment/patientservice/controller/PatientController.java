@@ -1,31 +1,63 @@
 package com.niyiment.patientservice.controller;
 
+import com.niyiment.patientservice.common.PatientETag;
 import com.niyiment.patientservice.common.Result;
 import com.niyiment.patientservice.dto.*;
 import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.entity.PatientDuplicateCandidate;
+import com.niyiment.patientservice.service.BulkRegistrationService;
+import com.niyiment.patientservice.service.CampaignEnrollmentService;
+import com.niyiment.patientservice.service.IdempotencyService;
 import com.niyiment.patientservice.service.PatientCommandService;
+import com.niyiment.patientservice.service.PatientDuplicateService;
+import com.niyiment.patientservice.service.PatientExportService;
+import com.niyiment.patientservice.service.PatientPdfService;
 import com.niyiment.patientservice.service.PatientQueryService;
+import com.niyiment.patientservice.service.PatientStatisticsService;
+import com.niyiment.patientservice.service.PatientSyncService;
+import com.niyiment.patientservice.service.PatientViewProjector;
+import com.niyiment.patientservice.service.RosterExportService;
+import com.niyiment.patientservice.util.PatientRowReader;
+import com.niyiment.patientservice.util.PermitHoldingBody;
+import com.niyiment.patientservice.util.QRCodeGenerator;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springdoc.core.annotations.ParameterObject;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.ContentNegotiationManager;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.Base64;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 /**
  * REST controller for patient management operations.
- * Supports JSON and XML content negotiation.
+ * Supports JSON and XML content negotiation, and CBOR for patient reads, searches, sync and bulk registration.
  */
 @RestController
 @RequestMapping("/api/v1/patients")
@@ -34,21 +66,46 @@ import java.util.UUID;
 @Tag(name = "Patient Management", description = "APIs for managing patient records and vaccinations")
 public class PatientController {
 
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+    private static final String TEXT_CSV_VALUE = "text/csv";
+    private static final String CBOR_SEQ_VALUE = "application/cbor-seq";
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private static final List<MediaType> PATIENT_FORMATS = List.of(
+        MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.APPLICATION_CBOR
+    );
+
     private final PatientCommandService commandService;
+    private final BulkRegistrationService bulkRegistrationService;
+    private final CampaignEnrollmentService campaignEnrollmentService;
     private final PatientQueryService queryService;
+    private final PatientPdfService pdfService;
+    private final PatientExportService exportService;
+    private final RosterExportService rosterExportService;
+    private final PatientViewProjector viewProjector;
+    private final PatientStatisticsService statisticsService;
+    private final PatientSyncService syncService;
+    private final IdempotencyService idempotencyService;
+    private final PatientDuplicateService duplicateService;
+    private final ContentNegotiationManager contentNegotiationManager;
 
     @Operation(summary = "Register a new patient", description = "Creates a new patient record with optional guardians and program enrollments")
     @ApiResponses({
         @ApiResponse(responseCode = "201", description = "Patient registered successfully"),
         @ApiResponse(responseCode = "400", description = "Invalid input data"),
-        @ApiResponse(responseCode = "409", description = "Patient already exists")
+        @ApiResponse(responseCode = "409", description = "Patient already exists, or a request with the same Idempotency-Key is in progress"),
+        @ApiResponse(responseCode = "422", description = "Idempotency-Key already used for a different request")
     })
     @PostMapping(consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE},
                  produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
-    public ResponseEntity<PatientDto> registerPatient(@Valid @RequestBody CreatePatientCommand command) {
+    public ResponseEntity<PatientDto> registerPatient(
+        @Valid @RequestBody CreatePatientCommand command,
+        @Parameter(description = "Client-chosen key; retries with the same key return the first outcome instead of running again")
+        @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey
+    ) {
         log.info("Registering new patient: {} {}", command.firstName(), command.lastName());
         
-        Result<PatientDto> result = commandService.registerPatient(command);
+        Result<PatientDto> result = idempotencyService.execute(idempotencyKey, "registerPatient", command, PatientDto.class,
+            () -> commandService.registerPatient(command));
         
         return result.isSuccess()
             ? ResponseEntity.status(HttpStatus.CREATED).body(result.getValue())
@@ -56,58 +113,126 @@ public class PatientController {
                 .body(null);
     }
 
+    @Operation(summary = "Register patients in bulk",
+               description = "Registers patients from an NDJSON body (one registration per line), a CSV body with a header row " +
+                             "or a CBOR sequence (one registration per item). " +
+                             "Each row is validated independently and its outcome reported in input order")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Upload processed; see per-row outcomes"),
+        @ApiResponse(responseCode = "400", description = "Input could not be read")
+    })
+    @PostMapping(value = "/bulk",
+                 consumes = {NDJSON_VALUE, TEXT_CSV_VALUE, CBOR_SEQ_VALUE},
+                 produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    public ResponseEntity<BulkRegistrationResult> registerPatientsBulk(
+        @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+        InputStream body
+    ) {
+        PatientRowReader.Format format = contentType.isCompatibleWith(MediaType.valueOf(TEXT_CSV_VALUE))
+            ? PatientRowReader.Format.CSV
+            : contentType.isCompatibleWith(MediaType.valueOf(CBOR_SEQ_VALUE))
+                ? PatientRowReader.Format.CBOR
+                : PatientRowReader.Format.NDJSON;
+        log.info("Bulk registering patients from {} upload", format);
+
+        Result<BulkRegistrationResult> result = bulkRegistrationService.registerPatients(body, format);
+
+        return result.isSuccess()
+            ? ResponseEntity.ok(result.getValue())
+            : ResponseEntity.status(getHttpStatus(result.getError().code())).build();
+    }
+
     @Operation(summary = "Get patient by ID", description = "Retrieves a patient record by their unique identifier")
     @ApiResponses({
         @ApiResponse(responseCode = "200", description = "Patient found"),
+        @ApiResponse(responseCode = "304", description = "Patient unchanged since the ETag in If-None-Match"),
         @ApiResponse(responseCode = "404", description = "Patient not found")
     })
-    @GetMapping(value = "/{patientId}", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
-    public ResponseEntity<PatientDto> getPatientById(
-        @Parameter(description = "Patient UUID") @PathVariable UUID patientId
+    @GetMapping(value = "/{patientId}", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    public ResponseEntity<?> getPatientById(
+        @Parameter(description = "Patient UUID") @PathVariable UUID patientId,
+        @Parameter(description = "Comma-separated fields to return; all when absent. The id and version are always returned")
+        @RequestParam(required = false) String fields,
+        @Parameter(description = "Comma-separated collections to embed: guardians, programs. Both when neither fields nor expand is given")
+        @RequestParam(required = false) String expand,
+        NativeWebRequest webRequest
     ) {
         log.debug("Retrieving patient: {}", patientId);
-        
-        Result<PatientDto> result = queryService.getPatientById(patientId);
+        Result<PatientFieldSet> fieldSet = PatientFieldSet.parse(fields, expand);
+        if (fieldSet.isFailure()) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (isNotModified(webRequest, fieldSet.getValue(), () -> queryService.findPatientETag(patientId))) {
+            return null;
+        }
+
+        Result<PatientDto> result = queryService.getPatientById(patientId, fieldSet.getValue());
         
         return result.isSuccess()
-            ? ResponseEntity.ok(result.getValue())
+            ? versioned(result.getValue(), fieldSet.getValue(), webRequest)
             : ResponseEntity.status(HttpStatus.NOT_FOUND).build();
     }
 
     @Operation(summary = "Search patient by national ID", description = "Retrieves a patient record using their national identification number")
     @ApiResponses({
         @ApiResponse(responseCode = "200", description = "Patient found"),
+        @ApiResponse(responseCode = "304", description = "Patient unchanged since the ETag in If-None-Match"),
         @ApiResponse(responseCode = "404", description = "Patient not found")
     })
-    @GetMapping(value = "/national-id/{nationalId}", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
-    public ResponseEntity<PatientDto> getPatientByNationalId(
-        @Parameter(description = "National ID number") @PathVariable String nationalId
+    @GetMapping(value = "/national-id/{nationalId}", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    public ResponseEntity<?> getPatientByNationalId(
+        @Parameter(description = "National ID number") @PathVariable String nationalId,
+        @Parameter(description = "Comma-separated fields to return; all when absent. The id and version are always returned")
+        @RequestParam(required = false) String fields,
+        @Parameter(description = "Comma-separated collections to embed: guardians, programs. Both when neither fields nor expand is given")
+        @RequestParam(required = false) String expand,
+        NativeWebRequest webRequest
     ) {
         log.debug("Searching patient by national ID: {}", nationalId);
-        
-        Result<PatientDto> result = queryService.getPatientByNationalId(nationalId);
+        Result<PatientFieldSet> fieldSet = PatientFieldSet.parse(fields, expand);
+        if (fieldSet.isFailure()) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (isNotModified(webRequest, fieldSet.getValue(), () -> queryService.findPatientETagByNationalId(nationalId))) {
+            return null;
+        }
+
+        Result<PatientDto> result = queryService.getPatientByNationalId(nationalId, fieldSet.getValue());
         
         return result.isSuccess()
-            ? ResponseEntity.ok(result.getValue())
+            ? versioned(result.getValue(), fieldSet.getValue(), webRequest)
             : ResponseEntity.status(HttpStatus.NOT_FOUND).build();
     }
 
     @Operation(summary = "Search patient by QR code", description = "Retrieves a patient record by scanning their QR code")
     @ApiResponses({
         @ApiResponse(responseCode = "200", description = "Patient found"),
+        @ApiResponse(responseCode = "304", description = "Patient unchanged since the ETag in If-None-Match"),
         @ApiResponse(responseCode = "400", description = "Invalid QR code"),
         @ApiResponse(responseCode = "404", description = "Patient not found")
     })
-    @GetMapping(value = "/qr-code", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
-    public ResponseEntity<PatientDto> getPatientByQRCode(
-        @Parameter(description = "QR code data") @RequestParam String qrData
+    @GetMapping(value = "/qr-code", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    public ResponseEntity<?> getPatientByQRCode(
+        @Parameter(description = "QR code data") @RequestParam String qrData,
+        @Parameter(description = "Comma-separated fields to return; all when absent. The id and version are always returned")
+        @RequestParam(required = false) String fields,
+        @Parameter(description = "Comma-separated collections to embed: guardians, programs. Both when neither fields nor expand is given")
+        @RequestParam(required = false) String expand,
+        NativeWebRequest webRequest
     ) {
         log.debug("Searching patient by QR code");
-        
-        Result<PatientDto> result = queryService.getPatientByQRCode(qrData);
+        Result<PatientFieldSet> fieldSet = PatientFieldSet.parse(fields, expand);
+        if (fieldSet.isFailure()) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (isNotModified(webRequest, fieldSet.getValue(), () -> queryService.findPatientETagByQRCode(qrData))) {
+            return null;
+        }
+
+        Result<PatientDto> result = queryService.getPatientByQRCode(qrData, fieldSet.getValue());
         
         return result.isSuccess()
-            ? ResponseEntity.ok(result.getValue())
+            ? versioned(result.getValue(), fieldSet.getValue(), webRequest)
             : ResponseEntity.status(getHttpStatus(result.getError().code())).build();
     }
 
@@ -115,30 +240,45 @@ public class PatientController {
     @ApiResponses({
         @ApiResponse(responseCode = "200", description = "Patient updated successfully"),
         @ApiResponse(responseCode = "404", description = "Patient not found"),
-        @ApiResponse(responseCode = "400", description = "Invalid input data")
+        @ApiResponse(responseCode = "400", description = "Invalid input data"),
+        @ApiResponse(responseCode = "412", description = "Patient has changed since the ETag in If-Match")
     })
     @PutMapping(value = "/{patientId}",
                 consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE},
                 produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
-    public ResponseEntity<PatientDto> updatePatient(
+    public ResponseEntity<?> updatePatient(
         @Parameter(description = "Patient UUID") @PathVariable UUID patientId,
-        @Valid @RequestBody UpdatePatientCommand command
+        @Parameter(description = "ETag of the patient as last read; the update is refused if it has changed since")
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+        @Valid @RequestBody UpdatePatientCommand command,
+        NativeWebRequest webRequest
     ) {
         log.info("Updating patient: {}", patientId);
-        
-        Result<PatientDto> result = commandService.updatePatient(patientId, command);
+
+        Long expectedVersion = null;
+        if (!PatientETag.matchesAny(ifMatch)) {
+            Optional<Long> version = PatientETag.expectedVersion(ifMatch, patientId);
+            if (version.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+            }
+            expectedVersion = version.get();
+        }
+
+        Result<PatientDto> result = commandService.updatePatient(patientId, command, expectedVersion);
         
         return result.isSuccess()
-            ? ResponseEntity.ok(result.getValue())
+            ? versioned(result.getValue(), PatientFieldSet.FULL, webRequest)
             : ResponseEntity.status(getHttpStatus(result.getError().code())).build();
     }
 
-    @Operation(summary = "Search patients", description = "Search and filter patients with pagination")
+    @Operation(summary = "Search patients",
+               description = "Search and filter patients with pagination. Use fields and expand to return only part of each patient")
     @ApiResponses({
-        @ApiResponse(responseCode = "200", description = "Search completed successfully")
+        @ApiResponse(responseCode = "200", description = "Search completed successfully"),
+        @ApiResponse(responseCode = "400", description = "Unknown field or collection")
     })
-    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
-    public ResponseEntity<Page<PatientDto>> searchPatients(
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    public ResponseEntity<Page<?>> searchPatients(
         @Parameter(description = "First name filter") @RequestParam(required = false) String firstName,
         @Parameter(description = "Last name filter") @RequestParam(required = false) String lastName,
         @Parameter(description = "National ID filter") @RequestParam(required = false) String nationalId,
@@ -152,35 +292,220 @@ public class PatientController {
         @Parameter(description = "Page number") @RequestParam(defaultValue = "0") int page,
         @Parameter(description = "Page size") @RequestParam(defaultValue = "20") int size,
         @Parameter(description = "Sort field") @RequestParam(defaultValue = "createdAt") String sortBy,
-        @Parameter(description = "Sort direction") @RequestParam(defaultValue = "DESC") String sortDirection
+        @Parameter(description = "Sort direction") @RequestParam(defaultValue = "DESC") String sortDirection,
+        @Parameter(description = "Comma-separated fields to return for each patient; all when absent. The id and version are always returned")
+        @RequestParam(required = false) String fields,
+        @Parameter(description = "Comma-separated collections to embed: guardians, programs. Both when neither fields nor expand is given")
+        @RequestParam(required = false) String expand
     ) {
         PatientSearchQuery query = new PatientSearchQuery(
             firstName, lastName, nationalId, phone, email, gender, patientType,
             state, lga, null, null, programCode,
             page, size, sortBy, sortDirection
         );
+        Result<PatientFieldSet> fieldSet = PatientFieldSet.parse(fields, expand);
+        if (fieldSet.isFailure()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        Result<Page<PatientDto>> result = queryService.searchPatients(query, fieldSet.getValue());
         
-        Result<Page<PatientDto>> result = queryService.searchPatients(query);
-        
+        return result.isSuccess()
+            ? ResponseEntity.ok(fieldSet.getValue().isFull() ? result.getValue() : result.getValue().map(fieldSet.getValue()::render))
+            : ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+    }
+
+    @Operation(summary = "Search patients by cursor",
+               description = "Search and filter patients with keyset pagination. Pass the returned nextCursor to fetch the following page")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Search completed successfully"),
+        @ApiResponse(responseCode = "400", description = "Invalid cursor or unsupported sort field")
+    })
+    @GetMapping(value = "/cursor", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    public ResponseEntity<CursorPage<?>> searchPatientsByCursor(
+        @Parameter(description = "First name filter") @RequestParam(required = false) String firstName,
+        @Parameter(description = "Last name filter") @RequestParam(required = false) String lastName,
+        @Parameter(description = "National ID filter") @RequestParam(required = false) String nationalId,
+        @Parameter(description = "Phone filter") @RequestParam(required = false) String phone,
+        @Parameter(description = "Email filter") @RequestParam(required = false) String email,
+        @Parameter(description = "Gender filter") @RequestParam(required = false) Patient.Gender gender,
+        @Parameter(description = "Patient type filter") @RequestParam(required = false) Patient.PatientType patientType,
+        @Parameter(description = "State filter") @RequestParam(required = false) String state,
+        @Parameter(description = "LGA filter") @RequestParam(required = false) String lga,
+        @Parameter(description = "Program code filter") @RequestParam(required = false) String programCode,
+        @Parameter(description = "Continuation token from the previous page") @RequestParam(required = false) String cursor,
+        @Parameter(description = "Page size") @RequestParam(defaultValue = "20") int size,
+        @Parameter(description = "Sort field") @RequestParam(defaultValue = "createdAt") String sortBy,
+        @Parameter(description = "Sort direction") @RequestParam(defaultValue = "DESC") String sortDirection,
+        @Parameter(description = "Include total count (slower on large tables)") @RequestParam(defaultValue = "false") boolean includeTotal,
+        @Parameter(description = "Comma-separated fields to return for each patient; all when absent. The id and version are always returned")
+        @RequestParam(required = false) String fields,
+        @Parameter(description = "Comma-separated collections to embed: guardians, programs. Both when neither fields nor expand is given")
+        @RequestParam(required = false) String expand
+    ) {
+        PatientSearchQuery query = new PatientSearchQuery(
+            firstName, lastName, nationalId, phone, email, gender, patientType,
+            state, lga, null, null, programCode,
+            0, size, sortBy, sortDirection
+        );
+        Result<PatientFieldSet> fieldSet = PatientFieldSet.parse(fields, expand);
+        if (fieldSet.isFailure()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        Result<CursorPage<PatientDto>> result = queryService.searchPatientsByCursor(query, cursor, includeTotal, fieldSet.getValue());
+
+        return result.isSuccess()
+            ? ResponseEntity.ok(rendered(result.getValue(), fieldSet.getValue()))
+            : ResponseEntity.status(getHttpStatus(result.getError().code())).build();
+    }
+
+    @Operation(summary = "Search patient summaries",
+               description = "Search and filter patients with pagination, returning only the columns a result list needs")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Search completed successfully")
+    })
+    @GetMapping(value = "/summaries", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    public ResponseEntity<Page<PatientSummaryDto>> searchPatientSummaries(
+        @ParameterObject @ModelAttribute PatientSearchQuery query
+    ) {
+        Result<Page<PatientSummaryDto>> result = queryService.searchPatientSummaries(query);
+
         return result.isSuccess()
             ? ResponseEntity.ok(result.getValue())
             : ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
     }
 
+    @Operation(summary = "Search patient summaries by cursor",
+               description = "Keyset-paginated variant of the summary search. Pass the returned nextCursor to fetch the following page")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Search completed successfully"),
+        @ApiResponse(responseCode = "400", description = "Invalid cursor or unsupported sort field")
+    })
+    @GetMapping(value = "/summaries/cursor", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    public ResponseEntity<CursorPage<PatientSummaryDto>> searchPatientSummariesByCursor(
+        @ParameterObject @ModelAttribute PatientSearchQuery query,
+        @Parameter(description = "Continuation token from the previous page") @RequestParam(required = false) String cursor,
+        @Parameter(description = "Include total count (slower on large tables)") @RequestParam(defaultValue = "false") boolean includeTotal
+    ) {
+        Result<CursorPage<PatientSummaryDto>> result = queryService.searchPatientSummariesByCursor(query, cursor, includeTotal);
+
+        return result.isSuccess()
+            ? ResponseEntity.ok(result.getValue())
+            : ResponseEntity.status(getHttpStatus(result.getError().code())).build();
+    }
+
+    @Operation(summary = "Export patients",
+               description = "Streams every patient matching the search filter as CSV or NDJSON. " +
+                             "Paging parameters are ignored. The body is gzipped when the client accepts gzip")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Export streamed"),
+        @ApiResponse(responseCode = "503", description = "All export slots are in use")
+    })
+    @GetMapping(value = "/export", produces = {TEXT_CSV_VALUE, NDJSON_VALUE})
+    public ResponseEntity<StreamingResponseBody> exportPatients(
+        @ParameterObject @ModelAttribute PatientSearchQuery query,
+        @Parameter(description = "Output format") @RequestParam(defaultValue = "CSV") PatientExportService.Format format,
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+        WebRequest webRequest
+    ) {
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+        log.info("Exporting patients as {}{}", format, gzip ? " (gzip)" : "");
+
+        Result<PermitHoldingBody> result = exportService.exportPatients(query, format, gzip);
+
+        if (result.isSuccess()) {
+            String extension = format == PatientExportService.Format.CSV ? ".csv" : ".ndjson";
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.valueOf(format == PatientExportService.Format.CSV ? TEXT_CSV_VALUE : NDJSON_VALUE));
+            headers.setContentDispositionFormData("attachment", "patients" + extension);
+            headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+            if (gzip) {
+                headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+
+            return streamed(webRequest, headers, result.getValue());
+        }
+
+        return ResponseEntity.status(getHttpStatus(result.getError().code())).build();
+    }
+
+    @Operation(summary = "Get patient statistics",
+               description = "Patient counts by state, LGA, type, gender and program from precomputed statistics. " +
+                             "Counts follow patient changes within seconds and are reconciled with the patient records nightly")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Statistics retrieved successfully")
+    })
+    @GetMapping(value = "/statistics", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    public ResponseEntity<PatientStatisticsDto> getPatientStatistics(
+        @Parameter(description = "Limit the counts to one state") @RequestParam(required = false) String state
+    ) {
+        Result<PatientStatisticsDto> result = statisticsService.getDashboard(state);
+
+        return result.isSuccess()
+            ? ResponseEntity.ok(result.getValue())
+            : ResponseEntity.status(getHttpStatus(result.getError().code())).build();
+    }
+
+    @Operation(summary = "Sync patients",
+               description = "Returns the patients added, changed or removed within a state, optionally one LGA, " +
+                             "since the given cursor, for offline-first clients. Omit the cursor to sync the scope from scratch. " +
+                             "Apply each page, store its nextCursor and sync again while hasMore is true")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Changes retrieved successfully"),
+        @ApiResponse(responseCode = "400", description = "Invalid cursor, page size or scope"),
+        @ApiResponse(responseCode = "410", description = "Cursor has expired; sync again without a cursor")
+    })
+    @GetMapping(value = "/sync", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    public ResponseEntity<PatientSyncPage> syncPatients(
+        @Parameter(description = "State to sync; all states when absent") @RequestParam(required = false) String state,
+        @Parameter(description = "LGA within the state to sync") @RequestParam(required = false) String lga,
+        @Parameter(description = "Cursor returned by the previous sync") @RequestParam(required = false) String cursor,
+        @Parameter(description = "Maximum changes to return") @RequestParam(defaultValue = "500") int size
+    ) {
+        Result<PatientSyncPage> result = syncService.sync(state, lga, cursor, size);
+
+        return result.isSuccess()
+            ? ResponseEntity.ok(result.getValue())
+            : ResponseEntity.status(getHttpStatus(result.getError().code())).build();
+    }
+
+    @Operation(summary = "Find patients by similar name", description = "Ranks patients by how closely their full name matches, tolerating spelling variants")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Search completed successfully"),
+        @ApiResponse(responseCode = "400", description = "Name is missing")
+    })
+    @GetMapping(value = "/similar", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    public ResponseEntity<List<PatientDto>> findSimilarPatients(
+        @Parameter(description = "Full or partial name") @RequestParam String name,
+        @Parameter(description = "Maximum number of matches") @RequestParam(defaultValue = "10") int limit
+    ) {
+        Result<List<PatientDto>> result = queryService.findSimilarPatients(name, limit);
+
+        return result.isSuccess()
+            ? ResponseEntity.ok(result.getValue())
+            : ResponseEntity.status(getHttpStatus(result.getError().code())).build();
+    }
+
     @Operation(summary = "Enroll patient in program", description = "Enrolls a patient in a vaccination program")
     @ApiResponses({
         @ApiResponse(responseCode = "200", description = "Patient enrolled successfully"),
         @ApiResponse(responseCode = "404", description = "Patient not found"),
-        @ApiResponse(responseCode = "409", description = "Patient already enrolled in program")
+        @ApiResponse(responseCode = "409", description = "Patient already enrolled in program, or a request with the same Idempotency-Key is in progress"),
+        @ApiResponse(responseCode = "422", description = "Idempotency-Key already used for a different request")
     })
     @PostMapping("/{patientId}/programs/{programCode}")
     public ResponseEntity<PatientDto> enrollInProgram(
         @Parameter(description = "Patient UUID") @PathVariable UUID patientId,
-        @Parameter(description = "Program code") @PathVariable String programCode
+        @Parameter(description = "Program code") @PathVariable String programCode,
+        @Parameter(description = "Client-chosen key; retries with the same key return the first outcome instead of running again")
+        @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey
     ) {
         log.info("Enrolling patient {} in program {}", patientId, programCode);
         
-        Result<PatientDto> result = commandService.enrollInProgram(patientId, programCode);
+        Result<PatientDto> result = idempotencyService.execute(idempotencyKey, "enrollInProgram",
+            List.of(patientId, programCode), PatientDto.class,
+            () -> commandService.enrollInProgram(patientId, programCode));
         
         return result.isSuccess()
             ? ResponseEntity.ok(result.getValue())
@@ -190,18 +515,24 @@ public class PatientController {
     @Operation(summary = "Add guardian to patient", description = "Adds a guardian to a patient record")
     @ApiResponses({
         @ApiResponse(responseCode = "200", description = "Guardian added successfully"),
-        @ApiResponse(responseCode = "404", description = "Patient not found")
+        @ApiResponse(responseCode = "404", description = "Patient not found"),
+        @ApiResponse(responseCode = "409", description = "A request with the same Idempotency-Key is in progress"),
+        @ApiResponse(responseCode = "422", description = "Idempotency-Key already used for a different request")
     })
     @PostMapping(value = "/{patientId}/guardians",
                  consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE},
                  produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
     public ResponseEntity<PatientDto> addGuardian(
         @Parameter(description = "Patient UUID") @PathVariable UUID patientId,
-        @Valid @RequestBody CreateGuardianCommand command
+        @Valid @RequestBody CreateGuardianCommand command,
+        @Parameter(description = "Client-chosen key; retries with the same key return the first outcome instead of running again")
+        @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey
     ) {
         log.info("Adding guardian to patient: {}", patientId);
         
-        Result<PatientDto> result = commandService.addGuardian(patientId, command);
+        Result<PatientDto> result = idempotencyService.execute(idempotencyKey, "addGuardian",
+            List.of(patientId, command), PatientDto.class,
+            () -> commandService.addGuardian(patientId, command));
         
         return result.isSuccess()
             ? ResponseEntity.ok(result.getValue())
@@ -211,28 +542,172 @@ public class PatientController {
     @Operation(summary = "Export patient record to PDF", description = "Generates a PDF document of the patient's complete record")
     @ApiResponses({
         @ApiResponse(responseCode = "200", description = "PDF generated successfully"),
-        @ApiResponse(responseCode = "404", description = "Patient not found")
+        @ApiResponse(responseCode = "404", description = "Patient not found"),
+        @ApiResponse(responseCode = "503", description = "PDF rendering capacity exhausted")
     })
     @GetMapping("/{patientId}/pdf")
-    public ResponseEntity<byte[]> exportPatientPDF(
-        @Parameter(description = "Patient UUID") @PathVariable UUID patientId
+    public ResponseEntity<StreamingResponseBody> exportPatientPDF(
+        @Parameter(description = "Patient UUID") @PathVariable UUID patientId,
+        WebRequest webRequest
     ) {
         log.info("Generating PDF for patient: {}", patientId);
         
-        Result<String> result = queryService.generatePatientPDF(patientId);
+        Result<PermitHoldingBody> result = pdfService.exportPatientRecord(patientId);
         
         if (result.isSuccess()) {
-            byte[] pdfBytes = Base64.getDecoder().decode(result.getValue());
-            
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_PDF);
             headers.setContentDispositionFormData("attachment", "patient-" + patientId + ".pdf");
             
+            return streamed(webRequest, headers, result.getValue());
+        }
+        
+        return ResponseEntity.status(getHttpStatus(result.getError().code())).build();
+    }
+
+    @Operation(summary = "Start a roster export",
+               description = "Generates QR identity card sheets or a ZIP of record PDFs for all patients of a facility roster in the background")
+    @ApiResponses({
+        @ApiResponse(responseCode = "202", description = "Export accepted; poll the returned job for progress"),
+        @ApiResponse(responseCode = "400", description = "Invalid filter or roster too large"),
+        @ApiResponse(responseCode = "503", description = "All export slots are in use")
+    })
+    @PostMapping(value = "/rosters",
+                 consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE},
+                 produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    public ResponseEntity<RosterExportJobDto> startRosterExport(@Valid @RequestBody RosterExportRequest request) {
+        log.info("Starting {} roster export for {} / {}", request.layout(), request.state(), request.lga());
+
+        Result<RosterExportJobDto> result = rosterExportService.submitExport(request);
+
+        return result.isSuccess()
+            ? ResponseEntity.status(HttpStatus.ACCEPTED)
+                .location(URI.create("/api/v1/patients/rosters/" + result.getValue().jobId()))
+                .body(result.getValue())
+            : ResponseEntity.status(getHttpStatus(result.getError().code())).build();
+    }
+
+    @Operation(summary = "Get roster export status", description = "Reports the progress of a roster export")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Export found"),
+        @ApiResponse(responseCode = "404", description = "Export not found or expired")
+    })
+    @GetMapping(value = "/rosters/{jobId}", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    public ResponseEntity<RosterExportJobDto> getRosterExport(
+        @Parameter(description = "Export job UUID") @PathVariable UUID jobId
+    ) {
+        Result<RosterExportJobDto> result = rosterExportService.getExport(jobId);
+
+        return result.isSuccess()
+            ? ResponseEntity.ok(result.getValue())
+            : ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+    }
+
+    @Operation(summary = "Download roster export", description = "Downloads the generated card sheet PDF or record ZIP")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Export file returned"),
+        @ApiResponse(responseCode = "404", description = "Export not found or expired"),
+        @ApiResponse(responseCode = "409", description = "Export has not completed")
+    })
+    @GetMapping("/rosters/{jobId}/download")
+    public ResponseEntity<Resource> downloadRosterExport(
+        @Parameter(description = "Export job UUID") @PathVariable UUID jobId
+    ) {
+        Result<RosterExportService.Output> result = rosterExportService.getExportOutput(jobId);
+
+        if (result.isSuccess()) {
+            RosterExportService.Output output = result.getValue();
+            MediaType contentType = output.layout() == RosterExportRequest.Layout.RECORD_ZIP
+                ? MediaType.valueOf("application/zip")
+                : MediaType.APPLICATION_PDF;
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(contentType);
+            headers.setContentDispositionFormData("attachment", "roster-" + jobId + output.layout().fileExtension());
+
             return ResponseEntity.ok()
                 .headers(headers)
-                .body(pdfBytes);
+                .body(new FileSystemResource(output.file()));
         }
-        
+
+        return ResponseEntity.status(getHttpStatus(result.getError().code())).build();
+    }
+
+    @Operation(summary = "Start a campaign enrollment",
+               description = "Enrolls every patient matching the cohort filter in a program in the background. " +
+                             "Patients already enrolled in the program are skipped")
+    @ApiResponses({
+        @ApiResponse(responseCode = "202", description = "Enrollment accepted; poll the returned job for progress"),
+        @ApiResponse(responseCode = "400", description = "Invalid program or cohort filter"),
+        @ApiResponse(responseCode = "503", description = "All campaign enrollment slots are in use")
+    })
+    @PostMapping(value = "/campaigns/enrollments",
+                 consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE},
+                 produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    public ResponseEntity<CampaignEnrollmentJobDto> startCampaignEnrollment(
+        @Valid @RequestBody CampaignEnrollmentRequest request
+    ) {
+        log.info("Starting campaign enrollment in {} for {} / {}", request.programCode(), request.state(), request.lga());
+
+        Result<CampaignEnrollmentJobDto> result = campaignEnrollmentService.submitEnrollment(request);
+
+        return result.isSuccess()
+            ? ResponseEntity.status(HttpStatus.ACCEPTED)
+                .location(URI.create("/api/v1/patients/campaigns/enrollments/" + result.getValue().jobId()))
+                .body(result.getValue())
+            : ResponseEntity.status(getHttpStatus(result.getError().code())).build();
+    }
+
+    @Operation(summary = "Get campaign enrollment status", description = "Reports the progress of a campaign enrollment")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Enrollment found"),
+        @ApiResponse(responseCode = "404", description = "Enrollment not found or expired")
+    })
+    @GetMapping(value = "/campaigns/enrollments/{jobId}",
+                produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    public ResponseEntity<CampaignEnrollmentJobDto> getCampaignEnrollment(
+        @Parameter(description = "Enrollment job UUID") @PathVariable UUID jobId
+    ) {
+        Result<CampaignEnrollmentJobDto> result = campaignEnrollmentService.getEnrollment(jobId);
+
+        return result.isSuccess()
+            ? ResponseEntity.ok(result.getValue())
+            : ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+    }
+
+    @Operation(summary = "Get patient QR code", description = "Renders the patient's identification QR code as PNG or SVG")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "QR code rendered successfully"),
+        @ApiResponse(responseCode = "304", description = "QR code unchanged since the cached copy"),
+        @ApiResponse(responseCode = "400", description = "Invalid size"),
+        @ApiResponse(responseCode = "404", description = "Patient not found")
+    })
+    @GetMapping(value = "/{patientId}/qr", produces = {MediaType.IMAGE_PNG_VALUE, "image/svg+xml"})
+    public ResponseEntity<byte[]> getPatientQRCode(
+        @Parameter(description = "Patient UUID") @PathVariable UUID patientId,
+        @Parameter(description = "Image format") @RequestParam(defaultValue = "PNG") QRCodeGenerator.Format format,
+        @Parameter(description = "Width and height in pixels") @RequestParam(defaultValue = "300") int size,
+        WebRequest webRequest
+    ) {
+        // The image depends only on the patient ID, format and size, so it never changes for a given URL
+        String etag = "\"qr-" + patientId + "-" + format.name().toLowerCase() + "-" + size + "\"";
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+
+        Result<byte[]> result = queryService.renderPatientQRCode(patientId, format, size);
+
+        if (result.isSuccess()) {
+            MediaType contentType = format == QRCodeGenerator.Format.SVG
+                ? MediaType.valueOf("image/svg+xml")
+                : MediaType.IMAGE_PNG;
+            return ResponseEntity.ok()
+                .contentType(contentType)
+                .cacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePrivate().immutable())
+                .eTag(etag)
+                .body(result.getValue());
+        }
+
         return ResponseEntity.status(getHttpStatus(result.getError().code())).build();
     }
 
@@ -254,11 +729,184 @@ public class PatientController {
             : ResponseEntity.status(HttpStatus.NOT_FOUND).build();
     }
 
+    @Operation(summary = "Rebuild patient read model",
+               description = "Re-projects every patient into the denormalised read model used by patient lists and searches. " +
+                             "Runs in the background; lists keep being served from the existing read model meanwhile")
+    @ApiResponses({
+        @ApiResponse(responseCode = "202", description = "Rebuild started"),
+        @ApiResponse(responseCode = "409", description = "A rebuild is already running")
+    })
+    @PostMapping("/view/rebuild")
+    public ResponseEntity<Void> rebuildPatientView() {
+        log.info("Starting patient view rebuild");
+
+        Result<Void> result = viewProjector.startRebuild();
+
+        return result.isSuccess()
+            ? ResponseEntity.accepted().build()
+            : ResponseEntity.status(getHttpStatus(result.getError().code())).build();
+    }
+
+    @Operation(summary = "List duplicate candidates",
+               description = "Pairs of patients that probably describe the same person, highest scores first. " +
+                             "Pairs are found when a patient is registered or edited, and by the nightly duplicate scan")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Candidates retrieved successfully"),
+        @ApiResponse(responseCode = "400", description = "Invalid page or size")
+    })
+    @GetMapping(value = "/duplicates", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    public ResponseEntity<Page<DuplicateCandidateDto>> findDuplicateCandidates(
+        @Parameter(description = "Review status") @RequestParam(defaultValue = "PENDING") PatientDuplicateCandidate.Status status,
+        @Parameter(description = "Page number (0-based)") @RequestParam(defaultValue = "0") int page,
+        @Parameter(description = "Page size") @RequestParam(defaultValue = "20") int size
+    ) {
+        Result<Page<DuplicateCandidateDto>> result = duplicateService.findCandidates(status, page, size);
+
+        return result.isSuccess()
+            ? ResponseEntity.ok(result.getValue())
+            : ResponseEntity.status(getHttpStatus(result.getError().code())).build();
+    }
+
+    @Operation(summary = "Review duplicate candidate",
+               description = "Confirms a pair as the same person, ready to be merged, or dismisses it as different people")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Decision recorded"),
+        @ApiResponse(responseCode = "400", description = "Decision is neither CONFIRMED nor DISMISSED"),
+        @ApiResponse(responseCode = "404", description = "Candidate not found"),
+        @ApiResponse(responseCode = "409", description = "Candidate has already been reviewed")
+    })
+    @PutMapping(value = "/duplicates/{candidateId}", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    public ResponseEntity<DuplicateCandidateDto> reviewDuplicateCandidate(
+        @Parameter(description = "Candidate ID") @PathVariable Long candidateId,
+        @Parameter(description = "CONFIRMED or DISMISSED") @RequestParam PatientDuplicateCandidate.Status decision
+    ) {
+        log.info("Reviewing duplicate candidate {}: {}", candidateId, decision);
+
+        Result<DuplicateCandidateDto> result = duplicateService.review(candidateId, decision);
+
+        return result.isSuccess()
+            ? ResponseEntity.ok(result.getValue())
+            : ResponseEntity.status(getHttpStatus(result.getError().code())).build();
+    }
+
+    @Operation(summary = "Scan for duplicate patients",
+               description = "Compares all patients sharing a name code, date of birth or contact phone and queues " +
+                             "the likely duplicates for review. Runs in the background")
+    @ApiResponses({
+        @ApiResponse(responseCode = "202", description = "Scan started"),
+        @ApiResponse(responseCode = "409", description = "A scan is already running")
+    })
+    @PostMapping("/duplicates/scan")
+    public ResponseEntity<Void> scanForDuplicates() {
+        log.info("Starting duplicate patient scan");
+
+        Result<Void> result = duplicateService.startScan();
+
+        return result.isSuccess()
+            ? ResponseEntity.accepted().build()
+            : ResponseEntity.status(getHttpStatus(result.getError().code())).build();
+    }
+
+    /**
+     * Returns a body holding a capped permit, making sure the permit is released even if the body
+     * never runs: the async request's completion releases it, and so does a failure before it starts.
+     */
+    private ResponseEntity<StreamingResponseBody> streamed(WebRequest webRequest, HttpHeaders headers, PermitHoldingBody body) {
+        try {
+            WebAsyncUtils.getAsyncManager(webRequest)
+                .registerCallableInterceptor(PermitHoldingBody.class.getName(), body.interceptor());
+            return ResponseEntity.ok()
+                .headers(headers)
+                .body(body);
+        } catch (RuntimeException e) {
+            body.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Answers a conditional GET from the patient's current ETag alone. Only looks the ETag up when
+     * the request carries If-None-Match; otherwise, or if the patient is missing or has changed,
+     * the caller loads and returns the patient.
+     */
+    private boolean isNotModified(NativeWebRequest webRequest, PatientFieldSet fields,
+                                  Supplier<Optional<PatientETag>> currentETag) {
+        if (webRequest.getHeader(HttpHeaders.IF_NONE_MATCH) == null) {
+            return false;
+        }
+        String variant = variantOf(fields, formatOf(webRequest));
+        boolean notModified = currentETag.get()
+            .map(etag -> webRequest.checkNotModified(etag.encode(variant)))
+            .orElse(false);
+        HttpServletResponse response = webRequest.getNativeResponse(HttpServletResponse.class);
+        if (notModified && response != null) {
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        }
+        return notModified;
+    }
+
+    private CursorPage<?> rendered(CursorPage<PatientDto> page, PatientFieldSet fields) {
+        if (fields.isFull()) {
+            return page;
+        }
+        return new CursorPage<>(
+            page.content().stream().map(fields::render).toList(), page.nextCursor(), page.hasNext(), page.totalElements()
+        );
+    }
+
+    // Clients may keep the record but must revalidate it before use
+    private ResponseEntity<?> versioned(PatientDto patient, PatientFieldSet fields, NativeWebRequest webRequest) {
+        return ResponseEntity.ok()
+            .cacheControl(CacheControl.noCache().cachePrivate())
+            .varyBy(HttpHeaders.ACCEPT)
+            .eTag(PatientETag.of(patient.id(), patient.version()).encode(variantOf(fields, formatOf(webRequest))))
+            .body(fields.isFull() ? patient : fields.render(patient));
+    }
+
+    /**
+     * Subtype of the format a patient is written in, chosen from the Accept header among the
+     * formats patients are served in, in the order the endpoints list them.
+     */
+    private String formatOf(NativeWebRequest webRequest) {
+        try {
+            for (MediaType requested : contentNegotiationManager.resolveMediaTypes(webRequest)) {
+                for (MediaType format : PATIENT_FORMATS) {
+                    if (requested.isCompatibleWith(format)) {
+                        return format.getSubtype();
+                    }
+                }
+            }
+        } catch (HttpMediaTypeNotAcceptableException e) {
+            // Negotiation fails the request anyway once the body is written
+        }
+        return MediaType.APPLICATION_JSON.getSubtype();
+    }
+
+    /**
+     * Tag suffix of a representation: a subset of the fields and every format but JSON are
+     * representations of their own, each needing a distinct ETag. The full record as JSON keeps
+     * the plain tag.
+     */
+    private static String variantOf(PatientFieldSet fields, String format) {
+        List<String> parts = new ArrayList<>(2);
+        if (!fields.isFull()) {
+            parts.add(fields.key());
+        }
+        if (!format.equals(MediaType.APPLICATION_JSON.getSubtype())) {
+            parts.add(format);
+        }
+        return parts.isEmpty() ? null : String.join("-", parts);
+    }
+
     private HttpStatus getHttpStatus(String errorCode) {
         return switch (errorCode) {
             case "NOT_FOUND" -> HttpStatus.NOT_FOUND;
             case "VALIDATION_ERROR" -> HttpStatus.BAD_REQUEST;
             case "CONFLICT" -> HttpStatus.CONFLICT;
+            case "GONE" -> HttpStatus.GONE;
+            case "PRECONDITION_FAILED" -> HttpStatus.PRECONDITION_FAILED;
+            case "UNPROCESSABLE" -> HttpStatus.UNPROCESSABLE_ENTITY;
+            case "SERVICE_UNAVAILABLE" -> HttpStatus.SERVICE_UNAVAILABLE;
             default -> HttpStatus.INTERNAL_SERVER_ERROR;
         };
     }
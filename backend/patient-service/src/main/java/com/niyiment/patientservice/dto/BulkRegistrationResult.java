@@ -0,0 +1,45 @@
+package com.niyiment.patientservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.niyiment.patientservice.common.ResultError;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+import java.util.UUID;
+
+@Schema(description = "Outcome of a bulk patient registration")
+public record BulkRegistrationResult(
+    @Schema(description = "Number of rows received")
+    int totalRows,
+
+    @Schema(description = "Number of patients registered")
+    int registered,
+
+    @Schema(description = "Number of rows rejected")
+    int failed,
+
+    @Schema(description = "Outcome of every row, in input order")
+    List<Row> rows
+) {
+
+    @Schema(description = "Outcome of a single input row")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Row(
+        @Schema(description = "1-based row number in the input, excluding the CSV header")
+        int row,
+
+        @Schema(description = "ID of the registered patient; absent when the row was rejected")
+        UUID patientId,
+
+        @Schema(description = "Reason the row was rejected; absent when the row was registered")
+        ResultError error
+    ) {
+        public static Row registered(int row, UUID patientId) {
+            return new Row(row, patientId, null);
+        }
+
+        public static Row rejected(int row, ResultError error) {
+            return new Row(row, null, error);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.niyiment.patientservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Schema(description = "Progress of a campaign enrollment job")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record CampaignEnrollmentJobDto(
+    @Schema(description = "Job unique identifier")
+    UUID jobId,
+
+    @Schema(description = "Job status", example = "RUNNING")
+    Status status,
+
+    @Schema(description = "Program code the cohort is enrolled in", example = "MEASLES-2026")
+    String programCode,
+
+    @Schema(description = "Number of patients matching the cohort filter when the job was submitted")
+    long matchedPatients,
+
+    @Schema(description = "Number of cohort patients processed so far")
+    long processedPatients,
+
+    @Schema(description = "Number of patients newly enrolled so far")
+    long enrolledPatients,
+
+    @Schema(description = "Number of patients skipped because they were already enrolled")
+    long skippedPatients,
+
+    @Schema(description = "Failure reason; only present when the job failed")
+    String error,
+
+    @Schema(description = "Submission timestamp")
+    LocalDateTime createdAt,
+
+    @Schema(description = "Completion timestamp")
+    LocalDateTime completedAt
+) {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+}
@@ -0,0 +1,42 @@
+package com.niyiment.patientservice.dto;
+
+import com.niyiment.patientservice.entity.Patient;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+
+import java.time.LocalDate;
+
+@Schema(description = "Request to enroll every patient of a cohort in a vaccination campaign")
+public record CampaignEnrollmentRequest(
+    @Schema(description = "Program code to enroll the cohort in", example = "MEASLES-2026",
+            requiredMode = Schema.RequiredMode.REQUIRED)
+    @NotBlank(message = "Program code is required")
+    @Size(max = 100, message = "Program code must not exceed 100 characters")
+    String programCode,
+
+    @Schema(description = "Program name; defaults to one derived from the program code", example = "Measles catch-up campaign")
+    @Size(max = 200, message = "Program name must not exceed 200 characters")
+    String programName,
+
+    @Schema(description = "Filter by state", example = "Kano", requiredMode = Schema.RequiredMode.REQUIRED)
+    @NotBlank(message = "State is required")
+    @Size(max = 100, message = "State must not exceed 100 characters")
+    String state,
+
+    @Schema(description = "Filter by LGA", example = "Nassarawa")
+    @Size(max = 100, message = "LGA must not exceed 100 characters")
+    String lga,
+
+    @Schema(description = "Filter by gender")
+    Patient.Gender gender,
+
+    @Schema(description = "Filter by patient type")
+    Patient.PatientType patientType,
+
+    @Schema(description = "Filter by date of birth from", example = "2021-10-17")
+    LocalDate dateOfBirthFrom,
+
+    @Schema(description = "Filter by date of birth to")
+    LocalDate dateOfBirthTo
+) {}
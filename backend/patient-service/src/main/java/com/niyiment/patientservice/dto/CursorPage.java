@@ -0,0 +1,22 @@
+package com.niyiment.patientservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+@Schema(description = "Page of results addressed by an opaque continuation token")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record CursorPage<T>(
+    @Schema(description = "Results in this page")
+    List<T> content,
+
+    @Schema(description = "Token to pass as cursor to fetch the next page; absent on the last page")
+    String nextCursor,
+
+    @Schema(description = "Whether more results follow this page")
+    boolean hasNext,
+
+    @Schema(description = "Total matching results; only present when requested")
+    Long totalElements
+) {}
@@ -0,0 +1,40 @@
+package com.niyiment.patientservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.niyiment.patientservice.entity.PatientDuplicateCandidate;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Schema(description = "A pair of patients that probably describe the same person")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record DuplicateCandidateDto(
+    @Schema(description = "Candidate unique identifier")
+    Long id,
+
+    @Schema(description = "One patient of the pair")
+    UUID patientId,
+
+    @Schema(description = "The other patient of the pair")
+    UUID duplicateId,
+
+    @Schema(description = "Match score; higher is more likely the same person", example = "17.5")
+    double score,
+
+    @Schema(description = "Fields that agreed", example = "[\"lastName\", \"dateOfBirth\", \"contactPhone\"]")
+    List<String> matchedFields,
+
+    @Schema(description = "Whether the pair was found at registration or by the scan", example = "INLINE")
+    PatientDuplicateCandidate.DetectedBy detectedBy,
+
+    @Schema(description = "Review status", example = "PENDING")
+    PatientDuplicateCandidate.Status status,
+
+    @Schema(description = "When the pair was last detected")
+    LocalDateTime detectedAt,
+
+    @Schema(description = "When the pair was reviewed")
+    LocalDateTime reviewedAt
+) {}
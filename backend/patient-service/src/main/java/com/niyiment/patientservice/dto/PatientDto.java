@@ -62,9 +62,6 @@ public record PatientDto(
     @NotNull(message = "Patient type is required")
     Patient.PatientType patientType,
 
-    @Schema(description = "QR code for patient identification")
-    String qrCode,
-
     @Schema(description = "List of guardians")
     List<GuardianDto> guardians,
 
@@ -75,8 +72,15 @@ public record PatientDto(
     LocalDateTime createdAt,
 
     @Schema(description = "Last update timestamp")
-    LocalDateTime updatedAt
+    LocalDateTime updatedAt,
+
+    @Schema(description = "Record version, incremented by every change; the patient's ETag is derived from it")
+    Long version
 ) {
+    public PatientDto {
+        state = Patient.publicState(state);
+    }
+
     public String fullName() {
         return firstName + " " + lastName;
     }
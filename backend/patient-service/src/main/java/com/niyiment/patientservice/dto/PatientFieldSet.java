@@ -0,0 +1,154 @@
+package com.niyiment.patientservice.dto;
+
+import com.niyiment.patientservice.common.Result;
+import com.niyiment.patientservice.common.ResultError;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Patient fields and collections a caller asked for with the fields= and expand= parameters.
+ * Only these are selected from the database and written to the response. The ID and version are
+ * always included, the version because the patient's ETag is derived from it. Without either
+ * parameter the whole patient is returned, as before the parameters existed.
+ *
+ * @param fields scalar fields, in {@link PatientDto} order
+ * @param expand collections to embed
+ */
+public record PatientFieldSet(Set<String> fields, Set<String> expand) {
+
+    public static final String GUARDIANS = "guardians";
+    public static final String PROGRAMS = "programs";
+
+    private static final Map<String, Function<PatientDto, Object>> FIELDS = new LinkedHashMap<>();
+    private static final Map<String, Function<PatientDto, Object>> COLLECTIONS = new LinkedHashMap<>();
+
+    static {
+        FIELDS.put("id", PatientDto::id);
+        FIELDS.put("firstName", PatientDto::firstName);
+        FIELDS.put("lastName", PatientDto::lastName);
+        FIELDS.put("dateOfBirth", PatientDto::dateOfBirth);
+        FIELDS.put("gender", PatientDto::gender);
+        FIELDS.put("nationalId", PatientDto::nationalId);
+        FIELDS.put("phone", PatientDto::phone);
+        FIELDS.put("email", PatientDto::email);
+        FIELDS.put("address", PatientDto::address);
+        FIELDS.put("state", PatientDto::state);
+        FIELDS.put("lga", PatientDto::lga);
+        FIELDS.put("patientType", PatientDto::patientType);
+        FIELDS.put("createdAt", PatientDto::createdAt);
+        FIELDS.put("updatedAt", PatientDto::updatedAt);
+        FIELDS.put("version", PatientDto::version);
+        COLLECTIONS.put(GUARDIANS, PatientDto::guardians);
+        COLLECTIONS.put(PROGRAMS, PatientDto::programs);
+    }
+
+    private static final Set<String> ALWAYS_INCLUDED = Set.of("id", "version");
+
+    public static final PatientFieldSet FULL = new PatientFieldSet(
+        Collections.unmodifiableSet(new LinkedHashSet<>(FIELDS.keySet())),
+        Collections.unmodifiableSet(new LinkedHashSet<>(COLLECTIONS.keySet()))
+    );
+
+    /**
+     * Parses comma-separated fields= and expand= parameters. When only expand is given every
+     * scalar field is included; when only fields is given no collection is.
+     */
+    public static Result<PatientFieldSet> parse(String fields, String expand) {
+        if (isBlank(fields) && isBlank(expand)) {
+            return Result.success(FULL);
+        }
+
+        Set<String> requestedFields = isBlank(fields) ? FIELDS.keySet() : split(fields);
+        Set<String> requestedExpand = isBlank(expand) ? Set.of() : split(expand);
+        if (!FIELDS.keySet().containsAll(requestedFields)) {
+            return Result.failure(ResultError.validation("Unknown field; fields may include " + FIELDS.keySet()));
+        }
+        if (!COLLECTIONS.keySet().containsAll(requestedExpand)) {
+            return Result.failure(ResultError.validation("Unknown collection; expand may include " + COLLECTIONS.keySet()));
+        }
+
+        return Result.success(new PatientFieldSet(
+            inOrder(FIELDS.keySet(), name -> requestedFields.contains(name) || ALWAYS_INCLUDED.contains(name)),
+            inOrder(COLLECTIONS.keySet(), requestedExpand::contains)
+        ));
+    }
+
+    public boolean isFull() {
+        return equals(FULL);
+    }
+
+    public boolean includes(String field) {
+        return fields.contains(field) || expand.contains(field);
+    }
+
+    public boolean expands(String collection) {
+        return expand.contains(collection);
+    }
+
+    /**
+     * Short key naming this field set, equal for equal sets, that tells the patient's
+     * representations apart in their ETags.
+     */
+    public String key() {
+        long bits = 0;
+        int position = 0;
+        for (String field : FIELDS.keySet()) {
+            if (fields.contains(field)) {
+                bits |= 1L << position;
+            }
+            position++;
+        }
+        for (String collection : COLLECTIONS.keySet()) {
+            if (expand.contains(collection)) {
+                bits |= 1L << position;
+            }
+            position++;
+        }
+        return Long.toHexString(bits);
+    }
+
+    /**
+     * This field set with one more scalar field, e.g. one a cursor needs to seek past the last row.
+     */
+    public PatientFieldSet with(String field) {
+        if (fields.contains(field)) {
+            return this;
+        }
+        return new PatientFieldSet(inOrder(FIELDS.keySet(), name -> fields.contains(name) || name.equals(field)), expand);
+    }
+
+    /**
+     * Writes the requested fields of a patient, in {@link PatientDto} order.
+     */
+    public Map<String, Object> render(PatientDto patient) {
+        Map<String, Object> rendered = new LinkedHashMap<>();
+        fields.forEach(field -> rendered.put(field, FIELDS.get(field).apply(patient)));
+        expand.forEach(collection -> rendered.put(collection, COLLECTIONS.get(collection).apply(patient)));
+        return rendered;
+    }
+
+    private static Set<String> split(String value) {
+        return Arrays.stream(value.split(","))
+            .map(String::trim)
+            .filter(name -> !name.isEmpty())
+            .collect(Collectors.toSet());
+    }
+
+    private static Set<String> inOrder(Set<String> names, Predicate<String> selected) {
+        return names.stream()
+            .filter(selected)
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
@@ -2,6 +2,7 @@ package com.niyiment.patientservice.dto;
 
 import com.niyiment.patientservice.entity.Patient;
 import io.swagger.v3.oas.annotations.media.Schema;
+import org.springframework.format.annotation.DateTimeFormat;
 
 import java.time.LocalDate;
 
@@ -35,9 +36,11 @@ public record PatientSearchQuery(
     String lga,
 
     @Schema(description = "Filter by date of birth from")
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
     LocalDate dateOfBirthFrom,
 
     @Schema(description = "Filter by date of birth to")
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
     LocalDate dateOfBirthTo,
 
     @Schema(description = "Filter by program code")
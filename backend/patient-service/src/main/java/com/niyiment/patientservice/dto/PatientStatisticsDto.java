@@ -0,0 +1,33 @@
+package com.niyiment.patientservice.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+@Schema(description = "Precomputed patient counts for the statistics dashboard")
+public record PatientStatisticsDto(
+    @Schema(description = "State the counts are limited to, if any", example = "Kano")
+    String state,
+
+    @Schema(description = "Number of patients", example = "125000")
+    long totalPatients,
+
+    @Schema(description = "Number of patients by state")
+    Map<String, Long> byState,
+
+    @Schema(description = "Number of patients by LGA, grouped by state")
+    Map<String, Map<String, Long>> byLga,
+
+    @Schema(description = "Number of patients by patient type")
+    Map<String, Long> byPatientType,
+
+    @Schema(description = "Number of patients by gender")
+    Map<String, Long> byGender,
+
+    @Schema(description = "Number of patients enrolled in each program")
+    Map<String, Long> byProgram,
+
+    @Schema(description = "When any of the counts last changed")
+    LocalDateTime updatedAt
+) {}
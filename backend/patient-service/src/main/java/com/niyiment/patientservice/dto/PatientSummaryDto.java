@@ -0,0 +1,55 @@
+package com.niyiment.patientservice.dto;
+
+import com.niyiment.patientservice.entity.Patient;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Schema(description = "Lightweight patient view for search result lists")
+public record PatientSummaryDto(
+    @Schema(description = "Patient unique identifier")
+    UUID id,
+
+    @Schema(description = "Patient first name", example = "John")
+    String firstName,
+
+    @Schema(description = "Patient last name", example = "Doe")
+    String lastName,
+
+    @Schema(description = "Date of birth", example = "1990-01-15")
+    LocalDate dateOfBirth,
+
+    @Schema(description = "Gender", example = "MALE")
+    Patient.Gender gender,
+
+    @Schema(description = "National ID number", example = "12345678901")
+    String nationalId,
+
+    @Schema(description = "Phone number", example = "+234-800-1234-567")
+    String phone,
+
+    @Schema(description = "State of residence")
+    String state,
+
+    @Schema(description = "Local Government Area")
+    String lga,
+
+    @Schema(description = "Patient type", example = "ADULT")
+    Patient.PatientType patientType,
+
+    @Schema(description = "Creation timestamp")
+    LocalDateTime createdAt,
+
+    @Schema(description = "Last update timestamp")
+    LocalDateTime updatedAt
+) {
+    public PatientSummaryDto {
+        state = Patient.publicState(state);
+    }
+
+    public String fullName() {
+        return firstName + " " + lastName;
+    }
+}
@@ -0,0 +1,23 @@
+package com.niyiment.patientservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+import java.util.UUID;
+
+@Schema(description = "Patients changed and removed within a sync scope since the previous sync cursor")
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public record PatientSyncPage(
+    @Schema(description = "Patients added or changed; replace any local copy")
+    List<PatientDto> changed,
+
+    @Schema(description = "IDs of patients deleted or moved out of the scope; drop any local copy")
+    List<UUID> deleted,
+
+    @Schema(description = "Token to pass as cursor on the next sync; store it once this page is applied")
+    String nextCursor,
+
+    @Schema(description = "Whether more changes follow; sync again straight away while true")
+    boolean hasMore
+) {}
@@ -0,0 +1,46 @@
+package com.niyiment.patientservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Schema(description = "Progress of a bulk roster export job")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record RosterExportJobDto(
+    @Schema(description = "Job unique identifier")
+    UUID jobId,
+
+    @Schema(description = "Job status", example = "RUNNING")
+    Status status,
+
+    @Schema(description = "Output layout", example = "CARD_SHEET")
+    RosterExportRequest.Layout layout,
+
+    @Schema(description = "Number of patients matching the roster filter")
+    long totalPatients,
+
+    @Schema(description = "Number of patients rendered so far")
+    long processedPatients,
+
+    @Schema(description = "Size of the generated file in bytes; only present once completed")
+    Long sizeBytes,
+
+    @Schema(description = "Failure reason; only present when the job failed")
+    String error,
+
+    @Schema(description = "Submission timestamp")
+    LocalDateTime createdAt,
+
+    @Schema(description = "Completion timestamp")
+    LocalDateTime completedAt,
+
+    @Schema(description = "Time after which the generated file is deleted")
+    LocalDateTime expiresAt
+) {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+}
@@ -0,0 +1,44 @@
+package com.niyiment.patientservice.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+@Schema(description = "Request to generate printable cards or records for a facility roster")
+public record RosterExportRequest(
+    @Schema(description = "State of residence", example = "Lagos", requiredMode = Schema.RequiredMode.REQUIRED)
+    @NotBlank(message = "State is required")
+    @Size(max = 100, message = "State must not exceed 100 characters")
+    String state,
+
+    @Schema(description = "Local Government Area", example = "Ikeja")
+    @Size(max = 100, message = "LGA must not exceed 100 characters")
+    String lga,
+
+    @Schema(description = "Only include patients enrolled in this program", example = "EPI")
+    @Size(max = 100, message = "Program code must not exceed 100 characters")
+    String programCode,
+
+    @Schema(description = "Output layout", example = "CARD_SHEET", requiredMode = Schema.RequiredMode.REQUIRED)
+    @NotNull(message = "Layout is required")
+    Layout layout
+) {
+
+    public enum Layout {
+        /** A single PDF of A4 sheets, each holding a grid of QR identity cards. */
+        CARD_SHEET(".pdf"),
+        /** A ZIP archive with one full record PDF per patient. */
+        RECORD_ZIP(".zip");
+
+        private final String fileExtension;
+
+        Layout(String fileExtension) {
+            this.fileExtension = fileExtension;
+        }
+
+        public String fileExtension() {
+            return fileExtension;
+        }
+    }
+}
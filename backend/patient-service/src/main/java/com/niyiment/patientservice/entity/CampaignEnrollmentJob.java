@@ -0,0 +1,57 @@
+package com.niyiment.patientservice.entity;
+
+import com.niyiment.patientservice.dto.CampaignEnrollmentJobDto;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * State of a campaign enrollment job, kept in the database so any instance can report on it and
+ * a job whose instance went away is seen to have stopped.
+ */
+@Entity
+@Table(name = "campaign_enrollment_jobs")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CampaignEnrollmentJob {
+
+    @Id
+    private UUID id;
+
+    @Column(name = "program_code", nullable = false, length = 100)
+    private String programCode;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private CampaignEnrollmentJobDto.Status status;
+
+    @Column(name = "matched_patients", nullable = false)
+    private long matchedPatients;
+
+    @Column(name = "processed_patients", nullable = false)
+    private long processedPatients;
+
+    @Column(name = "enrolled_patients", nullable = false)
+    private long enrolledPatients;
+
+    @Column(name = "skipped_patients", nullable = false)
+    private long skippedPatients;
+
+    @Column(name = "error", length = 500)
+    private String error;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // Refreshed with every chunk, so a running job that stops being updated is known to be abandoned
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+}
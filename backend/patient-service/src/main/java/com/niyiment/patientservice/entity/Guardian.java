@@ -2,6 +2,8 @@ package com.niyiment.patientservice.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.CreationTimestamp;
 
 import java.time.LocalDateTime;
@@ -17,6 +19,8 @@ import java.util.UUID;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "guardian")
 public class Guardian {
 
     @Id
@@ -27,6 +31,10 @@ public class Guardian {
     @JoinColumn(name = "patient_id", nullable = false)
     private Patient patient;
 
+    // Partition key, copied from the patient on insert; the foreign key cascades later state changes
+    @Column(name = "patient_state", nullable = false, length = 100, updatable = false)
+    private String patientState;
+
     @Column(name = "name", nullable = false, length = 150)
     private String name;
 
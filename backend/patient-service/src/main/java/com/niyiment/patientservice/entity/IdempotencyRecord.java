@@ -0,0 +1,81 @@
+package com.niyiment.patientservice.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Outcome of a write request sent with an Idempotency-Key, kept until it expires so retries of
+ * the request are answered with the same outcome instead of running it again.
+ * A row is claimed IN_PROGRESS before the request runs and completed in the request's own
+ * transaction, so a committed change always has its outcome recorded.
+ */
+@Entity
+@Table(name = "idempotency_records")
+@IdClass(IdempotencyRecord.Key.class)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IdempotencyRecord {
+
+    @Id
+    @Column(name = "idempotency_key", nullable = false)
+    private String idempotencyKey;
+
+    @Id
+    @Column(name = "operation", nullable = false, length = 100)
+    private String operation;
+
+    @Column(name = "request_hash", nullable = false, length = 64)
+    private String requestHash;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private Status status;
+
+    // Identifies the current claim, so a request whose claim was taken over cannot complete the row
+    @Column(name = "claim_token", nullable = false)
+    private UUID claimToken;
+
+    @Column(name = "error_code", length = 50)
+    private String errorCode;
+
+    @Column(name = "error_message", columnDefinition = "TEXT")
+    private String errorMessage;
+
+    @Column(name = "response_body", columnDefinition = "TEXT")
+    private String responseBody;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "locked_until")
+    private LocalDateTime lockedUntil;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    public enum Status {
+        IN_PROGRESS, COMPLETED
+    }
+
+    public record Key(String idempotencyKey, String operation) implements Serializable {}
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof IdempotencyRecord that)) return false;
+        return idempotencyKey != null && idempotencyKey.equals(that.idempotencyKey)
+            && operation != null && operation.equals(that.operation);
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+}
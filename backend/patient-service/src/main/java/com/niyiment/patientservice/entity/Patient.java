@@ -2,11 +2,15 @@ package com.niyiment.patientservice.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.PartitionKey;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.Period;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -23,8 +27,30 @@ import java.util.UUID;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "patient")
 public class Patient {
 
+    /**
+     * State of patients registered without one; they are kept in the default partition.
+     */
+    public static final String UNSPECIFIED_STATE = "UNSPECIFIED";
+
+    /**
+     * State as shown to clients: the placeholder only serves partitioning, so it reads as no state.
+     */
+    public static String publicState(String state) {
+        return UNSPECIFIED_STATE.equals(state) ? null : state;
+    }
+
+    /**
+     * State as shown to clients, documents and events, null when registered without one;
+     * {@link #getState()} is the partition key and only for queries and persistence.
+     */
+    public String getPublicState() {
+        return publicState(state);
+    }
+
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
     private UUID id;
@@ -54,8 +80,13 @@ public class Patient {
     @Column(name = "address", length = 500)
     private String address;
 
-    @Column(name = "state", length = 100)
-    private String state;
+    // The patient tables are partitioned by state; updates and deletes filter on the loaded state
+    // as well as the ID, so they touch one partition instead of probing every partition's key.
+    // Holds the placeholder for patients without a state; show getPublicState() instead
+    @PartitionKey
+    @Column(name = "state", nullable = false, length = 100)
+    @Builder.Default
+    private String state = UNSPECIFIED_STATE;
 
     @Column(name = "lga", length = 100)
     private String lga;
@@ -64,14 +95,13 @@ public class Patient {
     @Column(name = "patient_type", nullable = false)
     private PatientType patientType;
 
-    @Column(name = "qr_code")
-    private String qrCode;
-
     @OneToMany(mappedBy = "patient", cascade = CascadeType.ALL, orphanRemoval = true)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "patientGuardians")
     @Builder.Default
     private List<Guardian> guardians = new ArrayList<>();
 
     @OneToMany(mappedBy = "patient", cascade = CascadeType.ALL, orphanRemoval = true)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "patientPrograms")
     @Builder.Default
     private List<PatientProgram> programs = new ArrayList<>();
 
@@ -89,6 +119,7 @@ public class Patient {
     public void addGuardian(Guardian guardian) {
         guardians.add(guardian);
         guardian.setPatient(this);
+        guardian.setPatientState(state);
     }
 
     public void removeGuardian(Guardian guardian) {
@@ -99,6 +130,7 @@ public class Patient {
     public void addProgram(PatientProgram program) {
         programs.add(program);
         program.setPatient(this);
+        program.setPatientState(state);
     }
 
     public void removeProgram(PatientProgram program) {
@@ -111,6 +143,26 @@ public class Patient {
     }
 
     public enum PatientType {
-        ADULT, CHILD, INFANT, ELDERLY, SPECIAL_NEEDS
+        ADULT, CHILD, INFANT, ELDERLY, SPECIAL_NEEDS;
+
+        /**
+         * Ages, in whole years, at which a patient moves into the next age band.
+         */
+        public static final List<Integer> AGE_BAND_BOUNDARIES = List.of(1, 18, 65);
+
+        /**
+         * Returns the age band of a patient born on the given date. Never SPECIAL_NEEDS,
+         * which is assigned explicitly rather than by age.
+         */
+        public static PatientType ageBand(LocalDate dateOfBirth, LocalDate today) {
+            int age = Period.between(dateOfBirth, today).getYears();
+            if (age < AGE_BAND_BOUNDARIES.get(0)) {
+                return INFANT;
+            }
+            if (age < AGE_BAND_BOUNDARIES.get(1)) {
+                return CHILD;
+            }
+            return age < AGE_BAND_BOUNDARIES.get(2) ? ADULT : ELDERLY;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+package com.niyiment.patientservice.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * A pair of patients that probably describe the same person, queued for review.
+ * The pair is stored once, with the lower patient ID first, whichever of the two was registered
+ * later. Rescoring a pair only updates it while it is still pending, so a reviewed pair keeps its decision.
+ */
+@Entity
+@Table(name = "patient_duplicate_candidates")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PatientDuplicateCandidate {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "patient_id", nullable = false)
+    private UUID patientId;
+
+    @Column(name = "duplicate_id", nullable = false)
+    private UUID duplicateId;
+
+    @Column(name = "score", nullable = false)
+    private double score;
+
+    // Comma-separated names of the fields that agreed, e.g. lastName,dateOfBirth,contactPhone
+    @Column(name = "matched_fields", nullable = false, length = 200)
+    private String matchedFields;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "detected_by", nullable = false, length = 20)
+    private DetectedBy detectedBy;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    @Builder.Default
+    private Status status = Status.PENDING;
+
+    @Column(name = "detected_at", nullable = false)
+    private LocalDateTime detectedAt;
+
+    @Column(name = "reviewed_at")
+    private LocalDateTime reviewedAt;
+
+    public enum DetectedBy {
+        INLINE, BATCH
+    }
+
+    public enum Status {
+        PENDING, CONFIRMED, DISMISSED
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PatientDuplicateCandidate that)) return false;
+        return id != null && id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+}
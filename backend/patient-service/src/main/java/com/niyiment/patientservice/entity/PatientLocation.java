@@ -0,0 +1,26 @@
+package com.niyiment.patientservice.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.Immutable;
+
+import java.util.UUID;
+
+/**
+ * State partition holding each patient, kept by triggers on the patients table so a lookup by ID
+ * can read one partition instead of probing the primary key of every state's partition.
+ */
+@Entity
+@Immutable
+@Table(name = "patient_locations")
+@Getter
+@NoArgsConstructor
+public class PatientLocation {
+
+    @Id
+    @Column(name = "patient_id")
+    private UUID patientId;
+
+    @Column(name = "state", nullable = false, length = 100)
+    private String state;
+}
@@ -2,6 +2,8 @@ package com.niyiment.patientservice.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.CreationTimestamp;
 
 import java.time.LocalDateTime;
@@ -17,6 +19,8 @@ import java.util.UUID;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "patientProgram")
 public class PatientProgram {
 
     @Id
@@ -27,6 +31,10 @@ public class PatientProgram {
     @JoinColumn(name = "patient_id", nullable = false)
     private Patient patient;
 
+    // Same partition key as the patient row; set by Patient.addProgram, moved by the foreign key afterwards
+    @Column(name = "patient_state", nullable = false, length = 100, updatable = false)
+    private String patientState;
+
     @Column(name = "program_code", nullable = false, length = 100)
     private String programCode;
 
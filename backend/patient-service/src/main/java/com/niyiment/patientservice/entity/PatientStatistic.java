@@ -0,0 +1,47 @@
+package com.niyiment.patientservice.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.Immutable;
+
+import java.time.LocalDateTime;
+
+/**
+ * Number of patients in one state, LGA, type and gender bucket, either overall or, when a program
+ * code is set, enrolled in that program. Maintained by triggers on patient_view and corrected by
+ * {@link com.niyiment.patientservice.service.PatientStatisticsService}; never written through JPA.
+ */
+@Entity
+@Immutable
+@Table(name = "patient_statistics")
+@Getter
+@NoArgsConstructor
+public class PatientStatistic {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "state", length = 100)
+    private String state;
+
+    @Column(name = "lga", length = 100)
+    private String lga;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "patient_type", length = 20)
+    private Patient.PatientType patientType;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "gender", length = 20)
+    private Patient.Gender gender;
+
+    @Column(name = "program_code", length = 100)
+    private String programCode;
+
+    @Column(name = "patients", nullable = false)
+    private Long patients;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
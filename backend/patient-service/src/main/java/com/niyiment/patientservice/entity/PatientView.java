@@ -0,0 +1,92 @@
+package com.niyiment.patientservice.entity;
+
+import com.niyiment.patientservice.dto.GuardianDto;
+import com.niyiment.patientservice.dto.PatientProgramDto;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Denormalised, read-only projection of a patient with its guardians and programs embedded,
+ * so the query side reads one row per patient without joins.
+ * Rows are written by {@link com.niyiment.patientservice.service.PatientViewProjector} only.
+ */
+@Entity
+@Immutable
+@Table(name = "patient_view")
+@Getter
+@NoArgsConstructor
+public class PatientView {
+
+    @Id
+    private UUID id;
+
+    @Column(name = "first_name", nullable = false, length = 100)
+    private String firstName;
+
+    @Column(name = "last_name", nullable = false, length = 100)
+    private String lastName;
+
+    @Column(name = "date_of_birth", nullable = false)
+    private LocalDate dateOfBirth;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "gender", length = 20)
+    private Patient.Gender gender;
+
+    @Column(name = "national_id", length = 50)
+    private String nationalId;
+
+    @Column(name = "phone", length = 20)
+    private String phone;
+
+    @Column(name = "email", length = 100)
+    private String email;
+
+    @Column(name = "address", length = 500)
+    private String address;
+
+    @Column(name = "state", length = 100)
+    private String state;
+
+    @Column(name = "lga", length = 100)
+    private String lga;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "patient_type", nullable = false, length = 20)
+    private Patient.PatientType patientType;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "guardians", nullable = false)
+    private List<GuardianDto> guardians;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "programs", nullable = false)
+    private List<PatientProgramDto> programs;
+
+    @JdbcTypeCode(SqlTypes.ARRAY)
+    @Column(name = "program_codes", nullable = false)
+    private String[] programCodes;
+
+    /**
+     * Optimistic-lock version of the source patient row this projection was built from.
+     */
+    @Column(name = "version", nullable = false)
+    private Long version;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @Column(name = "projected_at", nullable = false)
+    private LocalDateTime projectedAt;
+}
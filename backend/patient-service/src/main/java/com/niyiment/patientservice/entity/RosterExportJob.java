@@ -0,0 +1,76 @@
+package com.niyiment.patientservice.entity;
+
+import com.niyiment.patientservice.dto.RosterExportJobDto;
+import com.niyiment.patientservice.dto.RosterExportRequest;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * State of a roster export job, kept in the database so any instance can report on it and a job
+ * whose instance went away is seen to have stopped. The generated file stays in the work
+ * directory of the instance that ran the job.
+ */
+@Entity
+@Table(name = "roster_export_jobs")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RosterExportJob {
+
+    @Id
+    private UUID id;
+
+    @Column(name = "state", nullable = false, length = 100)
+    private String state;
+
+    @Column(name = "lga", length = 100)
+    private String lga;
+
+    @Column(name = "program_code", length = 100)
+    private String programCode;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "layout", nullable = false, length = 20)
+    private RosterExportRequest.Layout layout;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private RosterExportJobDto.Status status;
+
+    @Column(name = "total_patients", nullable = false)
+    private long totalPatients;
+
+    @Column(name = "processed_patients", nullable = false)
+    private long processedPatients;
+
+    @Column(name = "file_path", length = 500)
+    private String filePath;
+
+    @Column(name = "size_bytes")
+    private Long sizeBytes;
+
+    @Column(name = "error", length = 500)
+    private String error;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // Refreshed with every chunk, so a running job that stops being updated is known to be abandoned
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+
+    public RosterExportRequest request() {
+        return new RosterExportRequest(state, lga, programCode, layout);
+    }
+}
@@ -0,0 +1,31 @@
+package com.niyiment.patientservice.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Last day a scheduled job completed a run, so the next run can cover every day since, however
+ * long the job was down.
+ */
+@Entity
+@Table(name = "scheduled_job_runs")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ScheduledJobRun {
+
+    @Id
+    @Column(name = "job_name", nullable = false, length = 100)
+    private String jobName;
+
+    @Column(name = "last_succeeded_on", nullable = false)
+    private LocalDate lastSucceededOn;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,24 @@
+package com.niyiment.patientservice.event;
+
+import com.niyiment.patientservice.dto.CampaignEnrollmentRequest;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Event published once a campaign enrollment job has finished, successfully or not.
+ * Enrollments committed before a failure stay in place, so the counts are always accurate.
+ *
+ * @param error the failure reason, or null if every chunk was enrolled
+ */
+public record CampaignEnrollmentCompletedEvent(
+    UUID jobId,
+    CampaignEnrollmentRequest cohort,
+    String programName,
+    long matchedPatients,
+    long enrolledPatients,
+    long skippedPatients,
+    String error,
+    LocalDateTime startedAt,
+    LocalDateTime completedAt
+) {}
@@ -0,0 +1,23 @@
+package com.niyiment.patientservice.event;
+
+import com.niyiment.patientservice.entity.Patient;
+
+/**
+ * Internal event published whenever a command changes a patient; never sent to Kafka.
+ * Consumed after commit to refresh this instance's cache and to check the patient for duplicates.
+ *
+ * @param patient the changed patient, with guardians and programs initialized
+ * @param deleted whether the patient was deleted
+ */
+public record PatientChangedEvent(
+    Patient patient,
+    boolean deleted
+) {
+    public static PatientChangedEvent changed(Patient patient) {
+        return new PatientChangedEvent(patient, false);
+    }
+
+    public static PatientChangedEvent deleted(Patient patient) {
+        return new PatientChangedEvent(patient, true);
+    }
+}
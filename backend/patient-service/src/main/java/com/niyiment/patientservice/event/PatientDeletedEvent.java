@@ -0,0 +1,13 @@
+package com.niyiment.patientservice.event;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Event published when a patient is deleted.
+ */
+public record PatientDeletedEvent(
+    UUID patientId,
+    String nationalId,
+    LocalDateTime deletedAt
+) {}
@@ -0,0 +1,11 @@
+package com.niyiment.patientservice.event;
+
+import java.util.List;
+
+/**
+ * Internal event carrying the enrollments of one campaign enrollment chunk.
+ * Each entry is still published to Kafka as its own PatientProgramEnrolledEvent.
+ */
+public record PatientProgramEnrollmentBatchEvent(
+    List<PatientProgramEnrolledEvent> events
+) {}
@@ -1,6 +1,7 @@
 package com.niyiment.patientservice.event;
 
 import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.util.QRCodeGenerator;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -34,7 +35,7 @@ public record PatientRegisteredEvent(
             patient.getPhone(),
             patient.getEmail(),
             patient.getPatientType(),
-            patient.getQrCode(),
+            QRCodeGenerator.contentFor(patient.getId()),
             patient.getCreatedAt()
         );
     }
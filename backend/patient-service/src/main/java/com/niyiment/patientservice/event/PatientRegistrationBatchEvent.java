@@ -0,0 +1,11 @@
+package com.niyiment.patientservice.event;
+
+import java.util.List;
+
+/**
+ * Internal event carrying the registrations of one bulk registration chunk.
+ * Each entry is still published to Kafka as its own PatientRegisteredEvent.
+ */
+public record PatientRegistrationBatchEvent(
+    List<PatientRegisteredEvent> events
+) {}
@@ -0,0 +1,11 @@
+package com.niyiment.patientservice.event;
+
+import java.util.List;
+
+/**
+ * Internal event carrying the updates of one reclassification chunk.
+ * Each entry is still published to Kafka as its own PatientUpdatedEvent.
+ */
+public record PatientUpdateBatchEvent(
+    List<PatientUpdatedEvent> events
+) {}
@@ -20,6 +20,7 @@ public record PatientUpdatedEvent(
     String address,
     String state,
     String lga,
+    Patient.PatientType patientType,
     LocalDateTime updatedAt
 ) {
     public static PatientUpdatedEvent from(Patient patient) {
@@ -32,8 +33,9 @@ public record PatientUpdatedEvent(
             patient.getPhone(),
             patient.getEmail(),
             patient.getAddress(),
-            patient.getState(),
+            patient.getPublicState(),
             patient.getLga(),
+            patient.getPatientType(),
             patient.getUpdatedAt()
         );
     }
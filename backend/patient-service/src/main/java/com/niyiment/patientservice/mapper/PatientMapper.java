@@ -4,12 +4,14 @@ import com.niyiment.patientservice.dto.*;
 import com.niyiment.patientservice.entity.Guardian;
 import com.niyiment.patientservice.entity.Patient;
 import com.niyiment.patientservice.entity.PatientProgram;
+import com.niyiment.patientservice.entity.PatientView;
 import org.mapstruct.*;
 
 import java.util.List;
 
 @Mapper(
     componentModel = "spring",
+    imports = PatientFieldSet.class,
     unmappedTargetPolicy = ReportingPolicy.IGNORE,
     nullValuePropertyMappingStrategy = NullValuePropertyMappingStrategy.IGNORE
 )
@@ -21,20 +23,30 @@ public interface PatientMapper {
 
     List<PatientDto> toDtoList(List<Patient> patients);
 
+    PatientDto toDto(PatientView view);
+
+    /**
+     * Maps a patient with only the expanded collections, so the others are never loaded.
+     */
+    @Mapping(target = "guardians",
+             expression = "java(fields.expands(PatientFieldSet.GUARDIANS) ? toGuardianDtoList(patient.getGuardians()) : null)")
+    @Mapping(target = "programs",
+             expression = "java(fields.expands(PatientFieldSet.PROGRAMS) ? toProgramDtoList(patient.getPrograms()) : null)")
+    PatientDto toDto(Patient patient, @Context PatientFieldSet fields);
+
     @Mapping(target = "id", ignore = true)
-    @Mapping(target = "qrCode", ignore = true)
     @Mapping(target = "guardians", ignore = true)
     @Mapping(target = "programs", ignore = true)
     @Mapping(target = "createdAt", ignore = true)
     @Mapping(target = "updatedAt", ignore = true)
     @Mapping(target = "version", ignore = true)
+    @Mapping(target = "state", source = "state", defaultValue = Patient.UNSPECIFIED_STATE)
     Patient toEntity(CreatePatientCommand command);
 
     @BeanMapping(nullValuePropertyMappingStrategy = NullValuePropertyMappingStrategy.IGNORE)
     @Mapping(target = "id", ignore = true)
     @Mapping(target = "nationalId", ignore = true)
     @Mapping(target = "patientType", ignore = true)
-    @Mapping(target = "qrCode", ignore = true)
     @Mapping(target = "guardians", ignore = true)
     @Mapping(target = "programs", ignore = true)
     @Mapping(target = "createdAt", ignore = true)
@@ -49,6 +61,7 @@ public interface PatientMapper {
 
     @Mapping(target = "id", ignore = true)
     @Mapping(target = "patient", ignore = true)
+    @Mapping(target = "patientState", ignore = true)
     @Mapping(target = "createdAt", ignore = true)
     @Mapping(target = "isPrimary", source = "isPrimary", defaultValue = "false")
     Guardian toEntity(CreateGuardianCommand command);
@@ -60,6 +73,7 @@ public interface PatientMapper {
 
     @Mapping(target = "id", ignore = true)
     @Mapping(target = "patient", ignore = true)
+    @Mapping(target = "patientState", ignore = true)
     @Mapping(target = "enrolledAt", ignore = true)
     @Mapping(target = "completedAt", ignore = true)
     @Mapping(target = "status", constant = "ACTIVE")
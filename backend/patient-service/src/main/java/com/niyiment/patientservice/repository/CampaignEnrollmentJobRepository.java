@@ -0,0 +1,47 @@
+package com.niyiment.patientservice.repository;
+
+import com.niyiment.patientservice.dto.CampaignEnrollmentJobDto;
+import com.niyiment.patientservice.entity.CampaignEnrollmentJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.UUID;
+
+@Repository
+public interface CampaignEnrollmentJobRepository extends JpaRepository<CampaignEnrollmentJob, UUID> {
+
+    @Modifying
+    @Query("""
+        UPDATE CampaignEnrollmentJob j
+        SET j.processedPatients = :processed, j.enrolledPatients = :enrolled, j.skippedPatients = :skipped,
+            j.updatedAt = :updatedAt
+        WHERE j.id = :id
+        """)
+    int updateProgress(@Param("id") UUID id, @Param("processed") long processed, @Param("enrolled") long enrolled,
+                       @Param("skipped") long skipped, @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * Fails unfinished jobs that have not made progress since the given time, such as jobs of an
+     * instance that was stopped mid-run. Chunks they committed stay enrolled.
+     */
+    @Modifying
+    @Query("""
+        UPDATE CampaignEnrollmentJob j
+        SET j.status = :failed, j.error = 'Abandoned: the instance running the job stopped',
+            j.completedAt = :now, j.updatedAt = :now
+        WHERE j.status IN :unfinished AND j.updatedAt < :staleBefore
+        """)
+    int failAbandoned(@Param("unfinished") Collection<CampaignEnrollmentJobDto.Status> unfinished,
+                      @Param("failed") CampaignEnrollmentJobDto.Status failed,
+                      @Param("staleBefore") LocalDateTime staleBefore,
+                      @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("DELETE FROM CampaignEnrollmentJob j WHERE j.completedAt < :cutoff")
+    int deleteCompletedBefore(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -15,6 +15,13 @@ public interface GuardianRepository extends JpaRepository<Guardian, UUID> {
 
     List<Guardian> findByPatientId(UUID patientId);
 
+    /**
+     * IDs of a patient's guardians, read from the partition of the patient's state.
+     */
+    @Query("SELECT g.id FROM Guardian g WHERE g.patient.id = :patientId " +
+           "AND g.patientState = (SELECT l.state FROM PatientLocation l WHERE l.patientId = :patientId)")
+    List<UUID> findIdsByPatientId(@Param("patientId") UUID patientId);
+
     @Query("SELECT g FROM Guardian g WHERE g.patient.id = :patientId AND g.isPrimary = true")
     Optional<Guardian> findPrimaryGuardianByPatientId(@Param("patientId") UUID patientId);
 
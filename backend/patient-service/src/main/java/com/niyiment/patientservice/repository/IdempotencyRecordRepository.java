@@ -0,0 +1,75 @@
+package com.niyiment.patientservice.repository;
+
+import com.niyiment.patientservice.entity.IdempotencyRecord;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, IdempotencyRecord.Key> {
+
+    /**
+     * Claims a key for a request about to run. An existing row is only taken over once it has
+     * expired, or when it is still in progress after its lease ran out because the instance
+     * running it died.
+     *
+     * @return 1 if the claim was taken, 0 if another request holds or has completed the key
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "idempotency_records"))
+    @Query(value = """
+        INSERT INTO idempotency_records (idempotency_key, operation, request_hash, status, claim_token,
+                                         created_at, locked_until, expires_at)
+        VALUES (:key, :operation, :requestHash, 'IN_PROGRESS', :claimToken, :now, :lockedUntil, :expiresAt)
+        ON CONFLICT (idempotency_key, operation) DO UPDATE
+        SET request_hash = EXCLUDED.request_hash,
+            status = 'IN_PROGRESS',
+            claim_token = EXCLUDED.claim_token,
+            error_code = NULL,
+            error_message = NULL,
+            response_body = NULL,
+            created_at = EXCLUDED.created_at,
+            locked_until = EXCLUDED.locked_until,
+            expires_at = EXCLUDED.expires_at
+        WHERE idempotency_records.expires_at < :now
+           OR (idempotency_records.status = 'IN_PROGRESS' AND idempotency_records.locked_until < :now)
+        """, nativeQuery = true)
+    int claim(@Param("key") String key,
+              @Param("operation") String operation,
+              @Param("requestHash") String requestHash,
+              @Param("claimToken") UUID claimToken,
+              @Param("now") LocalDateTime now,
+              @Param("lockedUntil") LocalDateTime lockedUntil,
+              @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Modifying
+    @Query("UPDATE IdempotencyRecord r SET r.status = com.niyiment.patientservice.entity.IdempotencyRecord.Status.COMPLETED, " +
+           "r.errorCode = :errorCode, r.errorMessage = :errorMessage, r.responseBody = :responseBody, r.lockedUntil = NULL " +
+           "WHERE r.idempotencyKey = :key AND r.operation = :operation AND r.claimToken = :claimToken")
+    int complete(@Param("key") String key,
+                 @Param("operation") String operation,
+                 @Param("claimToken") UUID claimToken,
+                 @Param("errorCode") String errorCode,
+                 @Param("errorMessage") String errorMessage,
+                 @Param("responseBody") String responseBody);
+
+    /**
+     * Gives up a claim whose request failed in a way worth retrying, so the next attempt runs it.
+     */
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r " +
+           "WHERE r.idempotencyKey = :key AND r.operation = :operation AND r.claimToken = :claimToken")
+    int release(@Param("key") String key, @Param("operation") String operation, @Param("claimToken") UUID claimToken);
+
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
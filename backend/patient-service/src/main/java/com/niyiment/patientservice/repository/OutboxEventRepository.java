@@ -0,0 +1,83 @@
+package com.niyiment.patientservice.repository;
+
+import com.niyiment.patientservice.entity.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    /**
+     * Finds the oldest events ready to relay, in the order of the transactions that wrote them.
+     * An event is only ready once every transaction older than its own has finished, so no event
+     * committed earlier can still appear behind it. Events of a patient another relay is sending
+     * are skipped, as are parked events.
+     */
+    @Query(value = """
+        SELECT e.* FROM outbox_events e
+        WHERE e.published_at IS NULL AND e.failed_at IS NULL
+          AND e.xact_id < pg_snapshot_xmin(pg_current_snapshot())
+          AND NOT EXISTS (
+              SELECT 1 FROM outbox_events l
+              WHERE l.aggregate_id = e.aggregate_id
+                AND l.published_at IS NULL AND l.failed_at IS NULL
+                AND l.locked_until > :now)
+        ORDER BY e.xact_id, e.id
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<OutboxEvent> findPendingBatch(@Param("limit") int limit, @Param("now") LocalDateTime now);
+
+    /**
+     * Takes a transaction-scoped advisory lock so only one relay claims events at a time; the
+     * claim itself then keeps other relays off the claimed patients while the events are sent.
+     */
+    @Query(value = "SELECT pg_try_advisory_xact_lock(:lockId)", nativeQuery = true)
+    boolean tryAcquireRelayLock(@Param("lockId") long lockId);
+
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.lockedUntil = :lockedUntil WHERE e.id IN :ids")
+    int claim(@Param("ids") Collection<Long> ids, @Param("lockedUntil") LocalDateTime lockedUntil);
+
+    /**
+     * Gives up the claim on events that were not sent, leaving them for the next run.
+     */
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.lockedUntil = NULL WHERE e.id IN :ids")
+    int release(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.publishedAt = :publishedAt, e.lockedUntil = NULL WHERE e.id IN :ids")
+    int markPublished(@Param("ids") Collection<Long> ids, @Param("publishedAt") LocalDateTime publishedAt);
+
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.attempts = e.attempts + 1, e.lastError = :error, e.lockedUntil = NULL " +
+           "WHERE e.id = :id")
+    int recordFailure(@Param("id") Long id, @Param("error") String error);
+
+    /**
+     * Parks events that have failed maxAttempts times, so they stop blocking their patient's later events.
+     */
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.failedAt = :failedAt WHERE e.id IN :ids AND e.attempts >= :maxAttempts")
+    int parkExhausted(@Param("ids") Collection<Long> ids,
+                      @Param("maxAttempts") int maxAttempts,
+                      @Param("failedAt") LocalDateTime failedAt);
+
+    @Query("SELECT MIN(e.createdAt) FROM OutboxEvent e WHERE e.publishedAt IS NULL AND e.failedAt IS NULL")
+    LocalDateTime findOldestPendingCreatedAt();
+
+    long countByPublishedAtIsNullAndFailedAtIsNull();
+
+    long countByFailedAtIsNotNull();
+
+    @Modifying
+    @Query("DELETE FROM OutboxEvent e WHERE e.publishedAt IS NOT NULL AND e.publishedAt < :cutoff")
+    int deletePublishedBefore(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -0,0 +1,183 @@
+package com.niyiment.patientservice.repository;
+
+import com.niyiment.patientservice.entity.PatientDuplicateCandidate;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Duplicate candidate pairs, and the blocking queries over patient_view that find them.
+ * Blocking only compares patients sharing a cheap, indexed key: the Double Metaphone code of a
+ * name with the date of birth, both name codes within an LGA, or a contact phone. The rules are
+ * the same inline and in the batch scan, so both find the same pairs. A key is null when any part
+ * of it is, and a null key blocks nothing.
+ */
+@Repository
+public interface PatientDuplicateCandidateRepository extends JpaRepository<PatientDuplicateCandidate, Long> {
+
+    /**
+     * The patient_view fields the matcher scores. contactPhones is comma-separated.
+     */
+    interface MatchRecord {
+        UUID getId();
+
+        String getFirstName();
+
+        String getLastName();
+
+        LocalDate getDateOfBirth();
+
+        String getGender();
+
+        String getNationalId();
+
+        String getState();
+
+        String getLga();
+
+        String getContactPhones();
+    }
+
+    /**
+     * A patient as a member of one of its blocks.
+     */
+    interface BlockMember extends MatchRecord {
+        String getBlockKey();
+    }
+
+    /**
+     * Finds the patients sharing a blocking key with the given details, other than the patient itself.
+     * Each rule is capped at blockLimit rows, so a very common name cannot make the probe slow.
+     *
+     * @param contactPhones comma-separated phone keys of the patient and its guardians
+     */
+    @Query(value = """
+        SELECT v.id AS "id", v.first_name AS "firstName", v.last_name AS "lastName",
+               v.date_of_birth AS "dateOfBirth", v.gender AS "gender", v.national_id AS "nationalId",
+               v.state AS "state", v.lga AS "lga", array_to_string(v.contact_phones, ',') AS "contactPhones"
+        FROM patient_view v
+        WHERE v.id IN (
+            (SELECT b.id FROM patient_view b
+             WHERE b.last_name_code = patient_name_code(:lastName) AND b.date_of_birth = :dateOfBirth
+             LIMIT :blockLimit)
+            UNION
+            (SELECT b.id FROM patient_view b
+             WHERE b.first_name_code = patient_name_code(:firstName) AND b.date_of_birth = :dateOfBirth
+             LIMIT :blockLimit)
+            UNION
+            (SELECT b.id FROM patient_view b
+             WHERE b.last_name_code = patient_name_code(:firstName) AND b.first_name_code = patient_name_code(:lastName)
+               AND b.date_of_birth = :dateOfBirth
+             LIMIT :blockLimit)
+            UNION
+            (SELECT b.id FROM patient_view b
+             WHERE b.state = :state AND b.lga = :lga
+               AND b.last_name_code = patient_name_code(:lastName) AND b.first_name_code = patient_name_code(:firstName)
+             LIMIT :blockLimit)
+            UNION
+            (SELECT b.id FROM patient_view b
+             WHERE b.contact_phones && string_to_array(:contactPhones, ',')
+             LIMIT :blockLimit)
+        )
+        AND v.id <> :patientId
+        """, nativeQuery = true)
+    List<MatchRecord> findBlockedCandidates(@Param("patientId") UUID patientId,
+                                            @Param("firstName") String firstName,
+                                            @Param("lastName") String lastName,
+                                            @Param("dateOfBirth") LocalDate dateOfBirth,
+                                            @Param("state") String state,
+                                            @Param("lga") String lga,
+                                            @Param("contactPhones") String contactPhones,
+                                            @Param("blockLimit") int blockLimit);
+
+    /**
+     * Streams every patient once per blocking key it has, ordered by key, so each block arrives as
+     * one run of rows. patient_view is read in a single pass: the keys of a row are derived from it
+     * laterally, and only the sort sees every key. The swapped-names rule keys on both name codes in
+     * sorted order, so it groups patients whose first and last names were entered the wrong way round.
+     * Must be consumed, and closed, inside a transaction.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query(value = """
+        SELECT k.block_key AS "blockKey", v.id AS "id", v.first_name AS "firstName", v.last_name AS "lastName",
+               v.date_of_birth AS "dateOfBirth", v.gender AS "gender", v.national_id AS "nationalId",
+               v.state AS "state", v.lga AS "lga", array_to_string(v.contact_phones, ',') AS "contactPhones"
+        FROM patient_view v
+        CROSS JOIN LATERAL (
+            SELECT 'L|' || v.last_name_code || '|' || v.date_of_birth
+            UNION ALL
+            SELECT 'F|' || v.first_name_code || '|' || v.date_of_birth
+            UNION ALL
+            SELECT 'S|' || LEAST(v.first_name_code, v.last_name_code) || '|'
+                        || GREATEST(v.first_name_code, v.last_name_code) || '|' || v.date_of_birth
+            WHERE v.first_name_code <> v.last_name_code
+            UNION ALL
+            SELECT 'A|' || v.state || '|' || v.lga || '|' || v.last_name_code || '|' || v.first_name_code
+            UNION ALL
+            SELECT 'P|' || phone.phone_key FROM unnest(v.contact_phones) AS phone(phone_key)
+        ) AS k(block_key)
+        WHERE k.block_key IS NOT NULL
+        ORDER BY k.block_key, v.id
+        """, nativeQuery = true)
+    Stream<BlockMember> streamBlockMembers();
+
+    /**
+     * Bounds how long the statements of the current transaction may run, as a
+     * {@code statement_timeout} value such as "150ms". Reset when the transaction ends.
+     */
+    @Query(value = "SELECT set_config('statement_timeout', :timeout, true)", nativeQuery = true)
+    String limitStatementTime(@Param("timeout") String timeout);
+
+    /**
+     * Records a pair, ordering the two IDs the way the table stores them. A pair already queued is
+     * rescored only while it is still pending.
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "patient_duplicate_candidates"))
+    @Query(value = """
+        INSERT INTO patient_duplicate_candidates (patient_id, duplicate_id, score, matched_fields, detected_by,
+                                                  status, detected_at)
+        VALUES (LEAST(:leftId, :rightId), GREATEST(:leftId, :rightId), :score, :matchedFields, :detectedBy,
+                'PENDING', :detectedAt)
+        ON CONFLICT (patient_id, duplicate_id) DO UPDATE
+        SET score = EXCLUDED.score,
+            matched_fields = EXCLUDED.matched_fields,
+            detected_by = EXCLUDED.detected_by,
+            detected_at = EXCLUDED.detected_at
+        WHERE patient_duplicate_candidates.status = 'PENDING'
+        """, nativeQuery = true)
+    int upsertCandidate(@Param("leftId") UUID leftId,
+                        @Param("rightId") UUID rightId,
+                        @Param("score") double score,
+                        @Param("matchedFields") String matchedFields,
+                        @Param("detectedBy") String detectedBy,
+                        @Param("detectedAt") LocalDateTime detectedAt);
+
+    Page<PatientDuplicateCandidate> findByStatus(PatientDuplicateCandidate.Status status, Pageable pageable);
+
+    /**
+     * Drops pending pairs of which either patient no longer exists.
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "patient_duplicate_candidates"))
+    @Query(value = """
+        DELETE FROM patient_duplicate_candidates c
+        WHERE c.status = 'PENDING'
+          AND (NOT EXISTS (SELECT 1 FROM patient_view v WHERE v.id = c.patient_id)
+               OR NOT EXISTS (SELECT 1 FROM patient_view v WHERE v.id = c.duplicate_id))
+        """, nativeQuery = true)
+    int deleteOrphanedCandidates();
+}
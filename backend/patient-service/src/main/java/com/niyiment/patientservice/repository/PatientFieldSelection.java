@@ -0,0 +1,55 @@
+package com.niyiment.patientservice.repository;
+
+import com.niyiment.patientservice.dto.PatientDto;
+import com.niyiment.patientservice.dto.PatientFieldSet;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.From;
+import jakarta.persistence.criteria.Selection;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the select list for a {@link PatientFieldSet} and reads the resulting tuples back into
+ * patients whose unrequested fields are left null. Shared by the patient and patient view fragments,
+ * whose entities name their attributes alike.
+ */
+final class PatientFieldSelection {
+
+    private PatientFieldSelection() {
+    }
+
+    static List<Selection<?>> select(From<?, ?> root, PatientFieldSet fields) {
+        List<Selection<?>> selections = new ArrayList<>();
+        fields.fields().forEach(field -> selections.add(root.get(field).alias(field)));
+        fields.expand().forEach(collection -> selections.add(root.get(collection).alias(collection)));
+        return selections;
+    }
+
+    static PatientDto toDto(Tuple tuple, PatientFieldSet fields) {
+        return new PatientDto(
+            value(tuple, fields, "id"),
+            value(tuple, fields, "firstName"),
+            value(tuple, fields, "lastName"),
+            value(tuple, fields, "dateOfBirth"),
+            value(tuple, fields, "gender"),
+            value(tuple, fields, "nationalId"),
+            value(tuple, fields, "phone"),
+            value(tuple, fields, "email"),
+            value(tuple, fields, "address"),
+            value(tuple, fields, "state"),
+            value(tuple, fields, "lga"),
+            value(tuple, fields, "patientType"),
+            value(tuple, fields, PatientFieldSet.GUARDIANS),
+            value(tuple, fields, PatientFieldSet.PROGRAMS),
+            value(tuple, fields, "createdAt"),
+            value(tuple, fields, "updatedAt"),
+            value(tuple, fields, "version")
+        );
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T value(Tuple tuple, PatientFieldSet fields, String name) {
+        return fields.includes(name) ? (T) tuple.get(name) : null;
+    }
+}
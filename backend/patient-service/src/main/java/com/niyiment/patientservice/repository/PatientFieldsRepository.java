@@ -0,0 +1,21 @@
+package com.niyiment.patientservice.repository;
+
+import com.niyiment.patientservice.dto.PatientDto;
+import com.niyiment.patientservice.dto.PatientFieldSet;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Repository fragment reading one patient restricted to the scalar fields of a {@link PatientFieldSet}.
+ * Guardians and programs live in tables of their own and are loaded separately when expanded.
+ */
+public interface PatientFieldsRepository {
+
+    /**
+     * Reads the requested columns of a patient; fields outside the set are null.
+     *
+     * @throws IllegalArgumentException if the field set expands a collection
+     */
+    Optional<PatientDto> findFieldsById(UUID id, PatientFieldSet fields);
+}
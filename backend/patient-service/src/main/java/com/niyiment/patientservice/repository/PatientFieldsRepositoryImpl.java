@@ -0,0 +1,49 @@
+package com.niyiment.patientservice.repository;
+
+import com.niyiment.patientservice.dto.PatientDto;
+import com.niyiment.patientservice.dto.PatientFieldSet;
+import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.entity.PatientLocation;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Optional;
+import java.util.UUID;
+
+@RequiredArgsConstructor
+public class PatientFieldsRepositoryImpl implements PatientFieldsRepository {
+
+    private final EntityManager entityManager;
+
+    @Override
+    public Optional<PatientDto> findFieldsById(UUID id, PatientFieldSet fields) {
+        if (!fields.expand().isEmpty()) {
+            throw new IllegalArgumentException("Patient collections are not columns; load expanded patients as entities");
+        }
+
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> criteriaQuery = criteriaBuilder.createTupleQuery();
+        Root<Patient> root = criteriaQuery.from(Patient.class);
+
+        criteriaQuery.multiselect(PatientFieldSelection.select(root, fields));
+
+        // Same partition pruning as PatientRepository.LOCATED_BY_ID
+        Subquery<String> state = criteriaQuery.subquery(String.class);
+        Root<PatientLocation> location = state.from(PatientLocation.class);
+        state.select(location.get("state")).where(criteriaBuilder.equal(location.get("patientId"), id));
+
+        criteriaQuery.where(
+            criteriaBuilder.equal(root.get("id"), id),
+            criteriaBuilder.equal(root.get("state"), state)
+        );
+
+        return entityManager.createQuery(criteriaQuery).getResultStream()
+            .findFirst()
+            .map(tuple -> PatientFieldSelection.toDto(tuple, fields));
+    }
+}
@@ -6,6 +6,8 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -13,6 +15,92 @@ import java.util.UUID;
 @Repository
 public interface PatientProgramRepository extends JpaRepository<PatientProgram, UUID> {
 
+    enum EnrollmentOutcome {
+        ENROLLED, ALREADY_ENROLLED, PATIENT_NOT_FOUND
+    }
+
+    /**
+     * IDs of a patient's program enrollments, read from the partition of the patient's state.
+     */
+    @Query("SELECT pp.id FROM PatientProgram pp WHERE pp.patient.id = :patientId " +
+           "AND pp.patientState = (SELECT l.state FROM PatientLocation l WHERE l.patientId = :patientId)")
+    List<UUID> findIdsByPatientId(@Param("patientId") UUID patientId);
+
+    /**
+     * Enrolls a patient in a program in one round trip, without loading the patient.
+     * The insert relies on uk_patient_program instead of a prior existence check, so concurrent
+     * enrollments cannot both succeed, and the patient's version is bumped only when a row was
+     * inserted. The program row takes the patient's state, its partition key, from the patient row.
+     * Runs as a query: the caller must evict the patient from the second-level cache.
+     */
+    @Query(value = """
+        WITH enrolled AS (
+            INSERT INTO patient_programs (id, patient_id, patient_state, program_code, program_name, status, enrolled_at)
+            SELECT :id, p.id, p.state, :programCode, :programName, 'ACTIVE', :enrolledAt
+            FROM patients p
+            WHERE p.id = :patientId
+            ON CONFLICT (patient_id, program_code, patient_state) DO NOTHING
+            RETURNING patient_id, patient_state
+        ), touched AS (
+            UPDATE patients p SET version = COALESCE(p.version, 0) + 1, updated_at = LOCALTIMESTAMP
+            FROM enrolled e
+            WHERE p.id = e.patient_id AND p.state = e.patient_state
+            RETURNING p.id
+        )
+        SELECT CASE
+            WHEN EXISTS (SELECT 1 FROM touched) THEN 'ENROLLED'
+            WHEN EXISTS (SELECT 1 FROM patients WHERE id = :patientId) THEN 'ALREADY_ENROLLED'
+            ELSE 'PATIENT_NOT_FOUND'
+        END
+        """, nativeQuery = true)
+    EnrollmentOutcome enroll(
+        @Param("id") UUID id,
+        @Param("patientId") UUID patientId,
+        @Param("programCode") String programCode,
+        @Param("programName") String programName,
+        @Param("enrolledAt") LocalDateTime enrolledAt
+    );
+
+    /**
+     * Enrollment inserted by {@link #enrollAll}.
+     */
+    interface Enrollment {
+        UUID getPatientId();
+
+        UUID getProgramId();
+    }
+
+    /**
+     * Enrolls the given patients in a program with one set-based insert, skipping patients
+     * already enrolled through uk_patient_program and patients deleted since their IDs were read.
+     * Enrolled patients have their version bumped like any other change to the aggregate.
+     * Runs as a query: the caller must evict the enrolled patients from the second-level cache.
+     *
+     * @return the patients actually enrolled, with the IDs of their new program rows
+     */
+    @Query(value = """
+        WITH enrolled AS (
+            INSERT INTO patient_programs (id, patient_id, patient_state, program_code, program_name, status, enrolled_at)
+            SELECT gen_random_uuid(), p.id, p.state, :programCode, :programName, 'ACTIVE', :enrolledAt
+            FROM patients p
+            WHERE p.id IN (:patientIds)
+            ON CONFLICT (patient_id, program_code, patient_state) DO NOTHING
+            RETURNING id, patient_id, patient_state
+        ), touched AS (
+            UPDATE patients p SET version = COALESCE(p.version, 0) + 1, updated_at = LOCALTIMESTAMP
+            FROM enrolled e
+            WHERE p.id = e.patient_id AND p.state = e.patient_state
+        )
+        SELECT e.patient_id AS "patientId", e.id AS "programId"
+        FROM enrolled e
+        """, nativeQuery = true)
+    List<Enrollment> enrollAll(
+        @Param("patientIds") Collection<UUID> patientIds,
+        @Param("programCode") String programCode,
+        @Param("programName") String programName,
+        @Param("enrolledAt") LocalDateTime enrolledAt
+    );
+
     List<PatientProgram> findByPatientId(UUID patientId);
 
     @Query("SELECT pp FROM PatientProgram pp WHERE pp.patient.id = :patientId AND pp.programCode = :programCode")
@@ -1,29 +1,73 @@
 package com.niyiment.patientservice.repository;
 
 import com.niyiment.patientservice.entity.Patient;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
-public interface PatientRepository extends JpaRepository<Patient, UUID>, JpaSpecificationExecutor<Patient> {
+public interface PatientRepository extends JpaRepository<Patient, UUID>, JpaSpecificationExecutor<Patient>,
+                                           PatientSummaryRepository, PatientFieldsRepository {
+
+    /**
+     * Matches one patient by ID within the state partition patient_locations records for it.
+     * The state is a scalar subquery rather than a join so PostgreSQL prunes the patients scan to
+     * that partition at execution time; a bare ID lookup probes the primary key of every partition.
+     */
+    String LOCATED_BY_ID = "p.id = :id AND p.state = (SELECT l.state FROM PatientLocation l WHERE l.patientId = :id)";
 
     Optional<Patient> findByNationalId(String nationalId);
 
-    Optional<Patient> findByQrCode(String qrCode);
+    /**
+     * Loads a patient from its own partition. Unlike {@link #findById} it always queries the
+     * database, so it is the lookup for reads that miss the second-level cache anyway.
+     */
+    @Query("SELECT p FROM Patient p WHERE " + LOCATED_BY_ID)
+    Optional<Patient> findLocatedById(@Param("id") UUID id);
+
+    /**
+     * Loads a patient whose version is incremented on commit even if only its guardians or
+     * programs change, since those inverse collections do not bump the version by themselves.
+     */
+    @Lock(LockModeType.OPTIMISTIC_FORCE_INCREMENT)
+    @Query("SELECT p FROM Patient p WHERE " + LOCATED_BY_ID)
+    Optional<Patient> findForUpdateById(@Param("id") UUID id);
+
+    /**
+     * ID and version of a patient, read without its guardians or programs.
+     */
+    interface PatientVersion {
+        UUID getId();
+
+        Long getVersion();
+    }
+
+    @Query("SELECT p.id AS id, p.version AS version FROM Patient p WHERE " + LOCATED_BY_ID)
+    Optional<PatientVersion> findVersionById(@Param("id") UUID id);
+
+    @Query("SELECT p.id AS id, p.version AS version FROM Patient p WHERE p.nationalId = :nationalId")
+    Optional<PatientVersion> findVersionByNationalId(@Param("nationalId") String nationalId);
 
     boolean existsByNationalId(String nationalId);
 
     boolean existsByEmail(String email);
 
+    @Query("SELECT p.nationalId FROM Patient p WHERE p.nationalId IN :nationalIds")
+    List<String> findExistingNationalIds(@Param("nationalIds") Collection<String> nationalIds);
+
     @Query("SELECT p FROM Patient p WHERE " +
            "(:firstName IS NULL OR LOWER(p.firstName) LIKE LOWER(CONCAT('%', :firstName, '%'))) AND " +
            "(:lastName IS NULL OR LOWER(p.lastName) LIKE LOWER(CONCAT('%', :lastName, '%'))) AND " +
@@ -35,6 +79,93 @@ public interface PatientRepository extends JpaRepository<Patient, UUID>, JpaSpec
         Pageable pageable
     );
 
+    @Query("SELECT DISTINCT p FROM Patient p LEFT JOIN FETCH p.guardians WHERE p.id IN :ids")
+    List<Patient> fetchGuardiansByIdIn(@Param("ids") Collection<UUID> ids);
+
+    @Query("SELECT DISTINCT p FROM Patient p LEFT JOIN FETCH p.programs WHERE p.id IN :ids")
+    List<Patient> fetchProgramsByIdIn(@Param("ids") Collection<UUID> ids);
+
+    @Query("SELECT COUNT(p) FROM Patient p WHERE p.state = :state " +
+           "AND (:lga IS NULL OR p.lga = :lga) " +
+           "AND (:programCode IS NULL OR EXISTS " +
+           "(SELECT 1 FROM PatientProgram pp WHERE pp.patient = p AND pp.patientState = p.state " +
+           "AND pp.programCode = :programCode))")
+    long countRoster(
+        @Param("state") String state,
+        @Param("lga") String lga,
+        @Param("programCode") String programCode
+    );
+
+    /**
+     * Returns the next chunk of roster patient IDs after the given ID, in ID order.
+     * Seeking on the primary key keeps every chunk an index range scan regardless of roster size.
+     * The state filter prunes the scan to one patient partition, and matching programs on the
+     * patient's state as well prunes the program check to the same state's partition.
+     */
+    @Query("SELECT p.id FROM Patient p WHERE p.state = :state " +
+           "AND (:lga IS NULL OR p.lga = :lga) " +
+           "AND (:programCode IS NULL OR EXISTS " +
+           "(SELECT 1 FROM PatientProgram pp WHERE pp.patient = p AND pp.patientState = p.state " +
+           "AND pp.programCode = :programCode)) " +
+           "AND p.id > :afterId ORDER BY p.id")
+    List<UUID> findRosterIdsAfter(
+        @Param("state") String state,
+        @Param("lga") String lga,
+        @Param("programCode") String programCode,
+        @Param("afterId") UUID afterId,
+        Limit limit
+    );
+
+    /**
+     * Patient of a reclassification chunk, flagged when its type was changed.
+     */
+    interface ReclassificationRow {
+        UUID getId();
+
+        Boolean getReclassified();
+    }
+
+    /**
+     * Sets the type of the next chunk of patients born on the given date, in ID order, to their
+     * age band. Served by idx_patient_dob; rows locked by other transactions are skipped rather
+     * than waited for, and only the chunk's rows are locked, for the duration of one statement.
+     * SPECIAL_NEEDS patients, and patients already in the band, are left untouched.
+     * Runs as a query: the caller must evict reclassified patients from the second-level cache.
+     *
+     * @return every patient of the chunk, in ID order
+     */
+    @Query(value = """
+        WITH chunk AS (
+            SELECT p.id
+            FROM patients p
+            WHERE p.date_of_birth = :dateOfBirth AND p.id > :afterId
+            ORDER BY p.id
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+        ), reclassified AS (
+            UPDATE patients p
+            SET patient_type = :patientType, version = COALESCE(p.version, 0) + 1, updated_at = LOCALTIMESTAMP
+            FROM chunk c
+            WHERE p.id = c.id AND p.patient_type NOT IN (:patientType, 'SPECIAL_NEEDS')
+            RETURNING p.id
+        )
+        SELECT c.id AS "id", r.id IS NOT NULL AS "reclassified"
+        FROM chunk c LEFT JOIN reclassified r ON r.id = c.id
+        ORDER BY c.id
+        """, nativeQuery = true)
+    List<ReclassificationRow> reclassifyBornOn(
+        @Param("dateOfBirth") LocalDate dateOfBirth,
+        @Param("patientType") String patientType,
+        @Param("afterId") UUID afterId,
+        @Param("limit") int limit
+    );
+
+    /**
+     * Returns the next chunk of patient IDs after the given ID, in ID order.
+     */
+    @Query("SELECT p.id FROM Patient p WHERE p.id > :afterId ORDER BY p.id")
+    List<UUID> findIdsAfter(@Param("afterId") UUID afterId, Limit limit);
+
     @Query("SELECT p FROM Patient p WHERE p.dateOfBirth BETWEEN :startDate AND :endDate")
     Page<Patient> findByDateOfBirthBetween(
         @Param("startDate") LocalDate startDate,
@@ -0,0 +1,127 @@
+package com.niyiment.patientservice.repository;
+
+import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.entity.PatientStatistic;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface PatientStatisticsRepository extends JpaRepository<PatientStatistic, Long> {
+
+    @Query("SELECT COALESCE(SUM(s.patients), 0) FROM PatientStatistic s " +
+           "WHERE s.state = :state AND s.programCode IS NULL")
+    long countPatientsByState(@Param("state") String state);
+
+    @Query("SELECT COALESCE(SUM(s.patients), 0) FROM PatientStatistic s " +
+           "WHERE s.patientType = :patientType AND s.programCode IS NULL")
+    long countPatientsByType(@Param("patientType") Patient.PatientType patientType);
+
+    /**
+     * One subtotal of {@link #findDashboardRows}. Only the columns of its dimension are set.
+     */
+    interface DashboardRow {
+        String getDimension();
+
+        String getState();
+
+        String getLga();
+
+        String getPatientType();
+
+        String getGender();
+
+        String getProgramCode();
+
+        Long getPatients();
+
+        Long getEnrolled();
+
+        LocalDateTime getUpdatedAt();
+    }
+
+    /**
+     * Rolls the buckets up into every dashboard subtotal in one pass: the total and the counts by
+     * state, by LGA within state, by type, by gender and by program, optionally within one state.
+     * Reads only the statistics table, whose size depends on the number of buckets, not patients.
+     */
+    @Query(value = """
+        SELECT CASE
+                   WHEN GROUPING(s.lga) = 0 THEN 'LGA'
+                   WHEN GROUPING(s.state) = 0 THEN 'STATE'
+                   WHEN GROUPING(s.patient_type) = 0 THEN 'PATIENT_TYPE'
+                   WHEN GROUPING(s.gender) = 0 THEN 'GENDER'
+                   WHEN GROUPING(s.program_code) = 0 THEN 'PROGRAM'
+                   ELSE 'TOTAL'
+               END AS "dimension",
+               s.state AS "state", s.lga AS "lga", s.patient_type AS "patientType", s.gender AS "gender",
+               s.program_code AS "programCode",
+               COALESCE(SUM(s.patients) FILTER (WHERE s.program_code IS NULL), 0) AS "patients",
+               COALESCE(SUM(s.patients) FILTER (WHERE s.program_code IS NOT NULL), 0) AS "enrolled",
+               MAX(s.updated_at) AS "updatedAt"
+        FROM patient_statistics s
+        WHERE CAST(:state AS VARCHAR) IS NULL OR s.state = CAST(:state AS VARCHAR)
+        GROUP BY GROUPING SETS ((), (s.state), (s.state, s.lga), (s.patient_type), (s.gender), (s.program_code))
+        """, nativeQuery = true)
+    List<DashboardRow> findDashboardRows(@Param("state") String state);
+
+    /**
+     * Holds off patient_view writes, and with them the statistics triggers, until the end of the
+     * transaction, so the counts can be compared with the view without deltas landing in between.
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "patient_view"))
+    @Query(value = "LOCK TABLE patient_view IN SHARE MODE", nativeQuery = true)
+    void lockPatientView();
+
+    /**
+     * Recounts every bucket from patient_view and rewrites the buckets whose count drifted,
+     * removing empty ones. Grouping treats null dimensions as equal, like the bucket key does.
+     * Call with patient_view locked.
+     *
+     * @return the number of buckets rewritten or removed
+     */
+    @Query(value = """
+        WITH compared AS (
+            SELECT u.state, u.lga, u.patient_type, u.gender, u.program_code,
+                   SUM(u.expected) AS expected, SUM(u.actual) AS actual, MAX(u.id) AS id
+            FROM (
+                SELECT v.state, v.lga, v.patient_type, v.gender, b.program_code,
+                       1 AS expected, 0 AS actual, NULL::BIGINT AS id
+                FROM patient_view v
+                CROSS JOIN LATERAL unnest(ARRAY[NULL]::TEXT[] || v.program_codes) AS b(program_code)
+                UNION ALL
+                SELECT s.state, s.lga, s.patient_type, s.gender, s.program_code, 0, s.patients, s.id
+                FROM patient_statistics s
+            ) u
+            GROUP BY u.state, u.lga, u.patient_type, u.gender, u.program_code
+            HAVING SUM(u.expected) <> SUM(u.actual) OR SUM(u.expected) = 0
+        ), removed AS (
+            DELETE FROM patient_statistics s
+            USING compared c
+            WHERE s.id = c.id AND c.expected = 0
+            RETURNING s.id
+        ), corrected AS (
+            UPDATE patient_statistics s SET patients = c.expected, updated_at = LOCALTIMESTAMP
+            FROM compared c
+            WHERE s.id = c.id AND c.expected > 0
+            RETURNING s.id
+        ), added AS (
+            INSERT INTO patient_statistics (state, lga, patient_type, gender, program_code, patients, updated_at)
+            SELECT c.state, c.lga, c.patient_type, c.gender, c.program_code, c.expected, LOCALTIMESTAMP
+            FROM compared c
+            WHERE c.id IS NULL
+            RETURNING id
+        )
+        SELECT (SELECT COUNT(*) FROM removed) + (SELECT COUNT(*) FROM corrected) + (SELECT COUNT(*) FROM added)
+        """, nativeQuery = true)
+    long reconcileWithPatientView();
+}
@@ -0,0 +1,35 @@
+package com.niyiment.patientservice.repository;
+
+import com.niyiment.patientservice.dto.PatientSummaryDto;
+import com.niyiment.patientservice.entity.Patient;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Repository fragment projecting patients onto {@link PatientSummaryDto}, or onto their IDs alone.
+ * Queries select only the summary columns, so the QR code and child tables are never read.
+ */
+public interface PatientSummaryRepository {
+
+    Page<PatientSummaryDto> findSummaries(Specification<Patient> spec, Pageable pageable);
+
+    List<PatientSummaryDto> findSummaries(Specification<Patient> spec, Sort sort, int limit);
+
+    /**
+     * Streams every matching summary, fetching rows from the database {@code fetchSize} at a time.
+     * Must be consumed inside a transaction: PostgreSQL only uses a cursor when autocommit is off.
+     * Rows are constructed as DTOs, so nothing accumulates in the persistence context.
+     */
+    Stream<PatientSummaryDto> streamSummaries(Specification<Patient> spec, Sort sort, int fetchSize);
+
+    /**
+     * Returns the IDs of up to {@code limit} matching patients after the given ID, in ID order.
+     */
+    List<UUID> findIdsAfter(Specification<Patient> spec, UUID afterId, int limit);
+}
@@ -0,0 +1,116 @@
+package com.niyiment.patientservice.repository;
+
+import com.niyiment.patientservice.dto.PatientSummaryDto;
+import com.niyiment.patientservice.entity.Patient;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+@RequiredArgsConstructor
+public class PatientSummaryRepositoryImpl implements PatientSummaryRepository {
+
+    private final EntityManager entityManager;
+
+    @Override
+    public Page<PatientSummaryDto> findSummaries(Specification<Patient> spec, Pageable pageable) {
+        TypedQuery<PatientSummaryDto> query = createSummaryQuery(spec, pageable.getSort());
+        if (pageable.isPaged()) {
+            query.setFirstResult((int) pageable.getOffset());
+            query.setMaxResults(pageable.getPageSize());
+        }
+        return PageableExecutionUtils.getPage(query.getResultList(), pageable, () -> count(spec));
+    }
+
+    @Override
+    public List<PatientSummaryDto> findSummaries(Specification<Patient> spec, Sort sort, int limit) {
+        return createSummaryQuery(spec, sort)
+            .setMaxResults(limit)
+            .getResultList();
+    }
+
+    @Override
+    public Stream<PatientSummaryDto> streamSummaries(Specification<Patient> spec, Sort sort, int fetchSize) {
+        return createSummaryQuery(spec, sort)
+            .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+            .setHint(HibernateHints.HINT_READ_ONLY, true)
+            .getResultStream();
+    }
+
+    @Override
+    public List<UUID> findIdsAfter(Specification<Patient> spec, UUID afterId, int limit) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<UUID> criteriaQuery = criteriaBuilder.createQuery(UUID.class);
+        Root<Patient> root = criteriaQuery.from(Patient.class);
+
+        criteriaQuery.select(root.get("id"));
+        Predicate after = criteriaBuilder.greaterThan(root.get("id"), afterId);
+        Predicate predicate = spec.toPredicate(root, criteriaQuery, criteriaBuilder);
+        criteriaQuery.where(predicate != null ? criteriaBuilder.and(predicate, after) : after);
+        criteriaQuery.orderBy(criteriaBuilder.asc(root.get("id")));
+
+        return entityManager.createQuery(criteriaQuery)
+            .setMaxResults(limit)
+            .getResultList();
+    }
+
+    private TypedQuery<PatientSummaryDto> createSummaryQuery(Specification<Patient> spec, Sort sort) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<PatientSummaryDto> criteriaQuery = criteriaBuilder.createQuery(PatientSummaryDto.class);
+        Root<Patient> root = criteriaQuery.from(Patient.class);
+
+        criteriaQuery.select(criteriaBuilder.construct(
+            PatientSummaryDto.class,
+            root.get("id"),
+            root.get("firstName"),
+            root.get("lastName"),
+            root.get("dateOfBirth"),
+            root.get("gender"),
+            root.get("nationalId"),
+            root.get("phone"),
+            root.get("state"),
+            root.get("lga"),
+            root.get("patientType"),
+            root.get("createdAt"),
+            root.get("updatedAt")
+        ));
+
+        Predicate predicate = spec.toPredicate(root, criteriaQuery, criteriaBuilder);
+        if (predicate != null) {
+            criteriaQuery.where(predicate);
+        }
+        if (sort.isSorted()) {
+            criteriaQuery.orderBy(QueryUtils.toOrders(sort, root, criteriaBuilder));
+        }
+
+        return entityManager.createQuery(criteriaQuery);
+    }
+
+    private long count(Specification<Patient> spec) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> criteriaQuery = criteriaBuilder.createQuery(Long.class);
+        Root<Patient> root = criteriaQuery.from(Patient.class);
+
+        criteriaQuery.select(criteriaBuilder.count(root));
+        Predicate predicate = spec.toPredicate(root, criteriaQuery, criteriaBuilder);
+        if (predicate != null) {
+            criteriaQuery.where(predicate);
+        }
+
+        return entityManager.createQuery(criteriaQuery).getSingleResult();
+    }
+}
@@ -0,0 +1,23 @@
+package com.niyiment.patientservice.repository;
+
+import com.niyiment.patientservice.dto.PatientDto;
+import com.niyiment.patientservice.dto.PatientFieldSet;
+import com.niyiment.patientservice.entity.PatientView;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+
+/**
+ * Repository fragment reading patient view rows restricted to a {@link PatientFieldSet}.
+ * Queries select only the requested columns, so unrequested guardian and program documents are
+ * never read or sent. Fields outside the set are null in the returned patients.
+ */
+public interface PatientViewFieldsRepository {
+
+    Page<PatientDto> findFields(Specification<PatientView> spec, Pageable pageable, PatientFieldSet fields);
+
+    List<PatientDto> findFields(Specification<PatientView> spec, Sort sort, int limit, PatientFieldSet fields);
+}
@@ -0,0 +1,80 @@
+package com.niyiment.patientservice.repository;
+
+import com.niyiment.patientservice.dto.PatientDto;
+import com.niyiment.patientservice.dto.PatientFieldSet;
+import com.niyiment.patientservice.entity.PatientView;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.util.List;
+
+@RequiredArgsConstructor
+public class PatientViewFieldsRepositoryImpl implements PatientViewFieldsRepository {
+
+    private final EntityManager entityManager;
+
+    @Override
+    public Page<PatientDto> findFields(Specification<PatientView> spec, Pageable pageable, PatientFieldSet fields) {
+        TypedQuery<Tuple> query = createFieldsQuery(spec, pageable.getSort(), fields);
+        if (pageable.isPaged()) {
+            query.setFirstResult((int) pageable.getOffset());
+            query.setMaxResults(pageable.getPageSize());
+        }
+        List<PatientDto> content = query.getResultList().stream()
+            .map(tuple -> PatientFieldSelection.toDto(tuple, fields))
+            .toList();
+        return PageableExecutionUtils.getPage(content, pageable, () -> count(spec));
+    }
+
+    @Override
+    public List<PatientDto> findFields(Specification<PatientView> spec, Sort sort, int limit, PatientFieldSet fields) {
+        return createFieldsQuery(spec, sort, fields)
+            .setMaxResults(limit)
+            .getResultList().stream()
+            .map(tuple -> PatientFieldSelection.toDto(tuple, fields))
+            .toList();
+    }
+
+    private TypedQuery<Tuple> createFieldsQuery(Specification<PatientView> spec, Sort sort, PatientFieldSet fields) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> criteriaQuery = criteriaBuilder.createTupleQuery();
+        Root<PatientView> root = criteriaQuery.from(PatientView.class);
+
+        criteriaQuery.multiselect(PatientFieldSelection.select(root, fields));
+        Predicate predicate = spec.toPredicate(root, criteriaQuery, criteriaBuilder);
+        if (predicate != null) {
+            criteriaQuery.where(predicate);
+        }
+        if (sort.isSorted()) {
+            criteriaQuery.orderBy(QueryUtils.toOrders(sort, root, criteriaBuilder));
+        }
+
+        return entityManager.createQuery(criteriaQuery);
+    }
+
+    private long count(Specification<PatientView> spec) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> criteriaQuery = criteriaBuilder.createQuery(Long.class);
+        Root<PatientView> root = criteriaQuery.from(PatientView.class);
+
+        criteriaQuery.select(criteriaBuilder.count(root));
+        Predicate predicate = spec.toPredicate(root, criteriaQuery, criteriaBuilder);
+        if (predicate != null) {
+            criteriaQuery.where(predicate);
+        }
+
+        return entityManager.createQuery(criteriaQuery).getSingleResult();
+    }
+}
@@ -0,0 +1,196 @@
+package com.niyiment.patientservice.repository;
+
+import com.niyiment.patientservice.entity.PatientView;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface PatientViewRepository extends JpaRepository<PatientView, UUID>, JpaSpecificationExecutor<PatientView>,
+                                               PatientViewFieldsRepository {
+
+    /**
+     * Rebuilds the view rows of the given patients from the patient, guardian and program tables
+     * in one statement. A row is only replaced by a projection of the same or a newer patient
+     * version, so a slow projector can never overwrite a fresher row written by another.
+     * The guardian and program subqueries match on the patient's state too, so each one only
+     * reads the partitions of that state.
+     * Like every native write here it declares patient_view as its query space; without it Hibernate
+     * would clear every second-level cache region after each statement.
+     *
+     * @return the number of rows inserted or replaced
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "patient_view"))
+    @Query(value = """
+        INSERT INTO patient_view (id, first_name, last_name, date_of_birth, gender, national_id, phone, email,
+                                  address, state, lga, patient_type, guardians, programs, program_codes,
+                                  first_name_code, last_name_code, contact_phones,
+                                  version, created_at, updated_at, projected_at)
+        SELECT p.id, p.first_name, p.last_name, p.date_of_birth, p.gender, p.national_id, p.phone, p.email,
+               p.address, p.state, p.lga, p.patient_type,
+               COALESCE((SELECT jsonb_agg(jsonb_build_object(
+                            'id', g.id, 'name', g.name, 'relationship', g.relationship, 'phone', g.phone,
+                            'email', g.email, 'address', g.address, 'isPrimary', g.is_primary,
+                            'createdAt', g.created_at) ORDER BY g.created_at, g.id)
+                         FROM guardians g WHERE g.patient_id = p.id AND g.patient_state = p.state), '[]'::jsonb),
+               COALESCE((SELECT jsonb_agg(jsonb_build_object(
+                            'id', pp.id, 'programCode', pp.program_code, 'programName', pp.program_name,
+                            'status', pp.status, 'enrolledAt', pp.enrolled_at,
+                            'completedAt', pp.completed_at) ORDER BY pp.enrolled_at, pp.id)
+                         FROM patient_programs pp WHERE pp.patient_id = p.id AND pp.patient_state = p.state), '[]'::jsonb),
+               ARRAY(SELECT pp.program_code FROM patient_programs pp
+                     WHERE pp.patient_id = p.id AND pp.patient_state = p.state),
+               patient_name_code(p.first_name), patient_name_code(p.last_name),
+               ARRAY(SELECT DISTINCT k.phone_key
+                     FROM (SELECT patient_phone_key(p.phone)
+                           UNION ALL
+                           SELECT patient_phone_key(g.phone) FROM guardians g
+                           WHERE g.patient_id = p.id AND g.patient_state = p.state) k(phone_key)
+                     WHERE k.phone_key IS NOT NULL
+                     ORDER BY k.phone_key),
+               COALESCE(p.version, 0), p.created_at, p.updated_at, LOCALTIMESTAMP
+        FROM patients p
+        WHERE p.id IN (:ids)
+        ON CONFLICT (id) DO UPDATE SET
+            first_name = EXCLUDED.first_name, last_name = EXCLUDED.last_name,
+            date_of_birth = EXCLUDED.date_of_birth, gender = EXCLUDED.gender,
+            national_id = EXCLUDED.national_id, phone = EXCLUDED.phone, email = EXCLUDED.email,
+            address = EXCLUDED.address, state = EXCLUDED.state, lga = EXCLUDED.lga,
+            patient_type = EXCLUDED.patient_type, guardians = EXCLUDED.guardians,
+            programs = EXCLUDED.programs, program_codes = EXCLUDED.program_codes,
+            first_name_code = EXCLUDED.first_name_code, last_name_code = EXCLUDED.last_name_code,
+            contact_phones = EXCLUDED.contact_phones,
+            version = EXCLUDED.version, created_at = EXCLUDED.created_at,
+            updated_at = EXCLUDED.updated_at, projected_at = EXCLUDED.projected_at
+        WHERE patient_view.version <= EXCLUDED.version
+        """, nativeQuery = true)
+    int projectPatients(@Param("ids") Collection<UUID> ids);
+
+    /**
+     * Removes the view rows of the given patients that no longer exist.
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "patient_view"))
+    @Query(value = "DELETE FROM patient_view v WHERE v.id IN (:ids) " +
+                   "AND NOT EXISTS (SELECT 1 FROM patients p WHERE p.id = v.id)", nativeQuery = true)
+    int deleteRemovedPatients(@Param("ids") Collection<UUID> ids);
+
+    /**
+     * Removes every view row whose patient no longer exists; used when rebuilding the whole view.
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "patient_view"))
+    @Query(value = "DELETE FROM patient_view v " +
+                   "WHERE NOT EXISTS (SELECT 1 FROM patients p WHERE p.id = v.id)", nativeQuery = true)
+    int deleteAllRemovedPatients();
+
+    /**
+     * Projection state of one patient returned by {@link #findProjectionStateAfter}.
+     */
+    interface ProjectionState {
+        UUID getId();
+
+        Boolean getStale();
+    }
+
+    /**
+     * Compares the next chunk of patients after the given ID, in ID order, with their view rows.
+     * A patient is stale when it has no view row or its row holds an older version of it.
+     */
+    @Query(value = """
+        SELECT p.id AS "id", (v.id IS NULL OR v.version < COALESCE(p.version, 0)) AS "stale"
+        FROM (SELECT id, version FROM patients WHERE id > :afterId ORDER BY id LIMIT :limit) p
+        LEFT JOIN patient_view v ON v.id = p.id
+        ORDER BY p.id
+        """, nativeQuery = true)
+    List<ProjectionState> findProjectionStateAfter(@Param("afterId") UUID afterId, @Param("limit") int limit);
+
+    /**
+     * One change returned by {@link #findChangesAfter}: a patient to upsert, or a tombstone when the
+     * patient was deleted or has left the requested scope.
+     */
+    interface SyncChange {
+        UUID getId();
+
+        Boolean getDeleted();
+
+        Long getChangeXid();
+
+        Long getChangeSeq();
+    }
+
+    /**
+     * Returns the next changes within a state and LGA scope after the given change position, in
+     * change order. Only changes of transactions older than every one still running are returned,
+     * so a later call can never find a change behind the last position it was given.
+     * A tombstone is skipped while its patient is back in the scope, as the patient's own row then
+     * supersedes it.
+     */
+    @Query(value = """
+        SELECT c.id AS "id", c.deleted AS "deleted",
+               CAST(CAST(c.change_xid AS TEXT) AS BIGINT) AS "changeXid", c.change_seq AS "changeSeq"
+        FROM (
+            (SELECT v.id, FALSE AS deleted, v.change_xid, v.change_seq
+             FROM patient_view v
+             WHERE (CAST(:state AS VARCHAR) IS NULL OR v.state = :state)
+               AND (CAST(:lga AS VARCHAR) IS NULL OR v.lga = :lga)
+               AND (v.change_xid, v.change_seq) > (CAST(CAST(:afterXid AS TEXT) AS XID8), :afterSeq)
+               AND v.change_xid < pg_snapshot_xmin(pg_current_snapshot())
+             ORDER BY v.change_xid, v.change_seq
+             LIMIT :limit)
+            UNION ALL
+            (SELECT t.patient_id, TRUE, t.change_xid, t.change_seq
+             FROM patient_view_tombstones t
+             WHERE :includeTombstones
+               AND (CAST(:state AS VARCHAR) IS NULL OR t.state = :state)
+               AND (CAST(:lga AS VARCHAR) IS NULL OR t.lga = :lga)
+               AND (t.change_xid, t.change_seq) > (CAST(CAST(:afterXid AS TEXT) AS XID8), :afterSeq)
+               AND t.change_xid < pg_snapshot_xmin(pg_current_snapshot())
+               AND NOT EXISTS (SELECT 1 FROM patient_view v
+                               WHERE v.id = t.patient_id
+                                 AND (CAST(:state AS VARCHAR) IS NULL OR v.state = :state)
+                                 AND (CAST(:lga AS VARCHAR) IS NULL OR v.lga = :lga))
+             ORDER BY t.change_xid, t.change_seq
+             LIMIT :limit)
+        ) c
+        ORDER BY c.change_xid, c.change_seq
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<SyncChange> findChangesAfter(
+        @Param("state") String state,
+        @Param("lga") String lga,
+        @Param("afterXid") long afterXid,
+        @Param("afterSeq") long afterSeq,
+        @Param("includeTombstones") boolean includeTombstones,
+        @Param("limit") int limit
+    );
+
+    /**
+     * Removes tombstones left before the cutoff.
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "patient_view_tombstones"))
+    @Query(value = "DELETE FROM patient_view_tombstones WHERE deleted_at < :cutoff", nativeQuery = true)
+    int deleteTombstonesBefore(@Param("cutoff") LocalDateTime cutoff);
+
+    /**
+     * Ranks patients by trigram similarity of their full name, served by idx_patient_view_full_name_trgm.
+     */
+    @Query(value = "SELECT * FROM patient_view v " +
+                   "WHERE LOWER(v.first_name || ' ' || v.last_name) % LOWER(:name) " +
+                   "ORDER BY similarity(LOWER(v.first_name || ' ' || v.last_name), LOWER(:name)) DESC, v.id " +
+                   "LIMIT :limit", nativeQuery = true)
+    List<PatientView> findBySimilarName(@Param("name") String name, @Param("limit") int limit);
+}
@@ -0,0 +1,45 @@
+package com.niyiment.patientservice.repository;
+
+import com.niyiment.patientservice.dto.RosterExportJobDto;
+import com.niyiment.patientservice.entity.RosterExportJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface RosterExportJobRepository extends JpaRepository<RosterExportJob, UUID> {
+
+    @Modifying
+    @Query("UPDATE RosterExportJob j SET j.processedPatients = :processed, j.updatedAt = :updatedAt WHERE j.id = :id")
+    int updateProgress(@Param("id") UUID id, @Param("processed") long processed,
+                       @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * Fails unfinished jobs that have not made progress since the given time, such as jobs of an
+     * instance that was stopped mid-run.
+     */
+    @Modifying
+    @Query("""
+        UPDATE RosterExportJob j
+        SET j.status = :failed, j.error = 'Abandoned: the instance running the job stopped',
+            j.completedAt = :now, j.updatedAt = :now, j.expiresAt = :expiresAt
+        WHERE j.status IN :unfinished AND j.updatedAt < :staleBefore
+        """)
+    int failAbandoned(@Param("unfinished") Collection<RosterExportJobDto.Status> unfinished,
+                      @Param("failed") RosterExportJobDto.Status failed,
+                      @Param("staleBefore") LocalDateTime staleBefore,
+                      @Param("now") LocalDateTime now,
+                      @Param("expiresAt") LocalDateTime expiresAt);
+
+    List<RosterExportJob> findByExpiresAtBefore(LocalDateTime now);
+
+    @Query("SELECT j.filePath FROM RosterExportJob j WHERE j.filePath IS NOT NULL")
+    List<String> findFilePaths();
+}
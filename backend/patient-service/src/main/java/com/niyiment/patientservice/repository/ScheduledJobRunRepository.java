@@ -0,0 +1,9 @@
+package com.niyiment.patientservice.repository;
+
+import com.niyiment.patientservice.entity.ScheduledJobRun;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ScheduledJobRunRepository extends JpaRepository<ScheduledJobRun, String> {
+}
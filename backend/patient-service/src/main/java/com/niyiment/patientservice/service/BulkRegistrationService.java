@@ -0,0 +1,318 @@
+package com.niyiment.patientservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.niyiment.patientservice.common.Result;
+import com.niyiment.patientservice.common.ResultError;
+import com.niyiment.patientservice.dto.BulkRegistrationResult;
+import com.niyiment.patientservice.dto.CreatePatientCommand;
+import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.event.PatientRegisteredEvent;
+import com.niyiment.patientservice.event.PatientRegistrationBatchEvent;
+import com.niyiment.patientservice.repository.PatientRepository;
+import com.niyiment.patientservice.util.PatientRowReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Service registering patients in bulk from NDJSON, CSV or CBOR sequence uploads.
+ * Rows are processed in chunks: each chunk is validated in memory, checked for existing
+ * national IDs with one query, inserted with JDBC batching and committed in its own transaction
+ * together with its outbox events. A rejected row never prevents the other rows from registering:
+ * a chunk that fails to commit is retried row by row. Once a chunk has committed, its patients
+ * get the same inline duplicate check as a single registration.
+ */
+@Service
+@Slf4j
+public class BulkRegistrationService {
+
+    private final PatientRepository patientRepository;
+    private final PatientCommandService commandService;
+    private final PatientDuplicateService duplicateService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+    private final int maxRows;
+
+    private final Counter registeredRows;
+    private final Counter rejectedRows;
+    private final Timer chunkTimer;
+
+    public BulkRegistrationService(
+        PatientRepository patientRepository,
+        PatientCommandService commandService,
+        PatientDuplicateService duplicateService,
+        ApplicationEventPublisher eventPublisher,
+        EntityManager entityManager,
+        PlatformTransactionManager transactionManager,
+        Validator validator,
+        ObjectMapper objectMapper,
+        MeterRegistry meterRegistry,
+        @Value("${patient.bulk.chunk-size:500}") int chunkSize,
+        @Value("${patient.bulk.max-rows:10000}") int maxRows
+    ) {
+        this.patientRepository = patientRepository;
+        this.commandService = commandService;
+        this.duplicateService = duplicateService;
+        this.eventPublisher = eventPublisher;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+        this.maxRows = maxRows;
+
+        this.registeredRows = Counter.builder("patient.bulk.rows")
+            .tag("outcome", "registered")
+            .description("Bulk registration rows by outcome")
+            .register(meterRegistry);
+        this.rejectedRows = Counter.builder("patient.bulk.rows")
+            .tag("outcome", "rejected")
+            .description("Bulk registration rows by outcome")
+            .register(meterRegistry);
+        this.chunkTimer = Timer.builder("patient.bulk.chunk")
+            .description("Time taken to validate and insert one bulk registration chunk")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Registers every valid row of the input.
+     *
+     * @param input  NDJSON, CSV or CBOR sequence request body
+     * @param format input format
+     * @return per-row outcomes, or a failure if the input cannot be opened
+     */
+    public Result<BulkRegistrationResult> registerPatients(InputStream input, PatientRowReader.Format format) {
+        PatientRowReader reader;
+        try {
+            reader = PatientRowReader.open(input, format, objectMapper);
+        } catch (IllegalArgumentException e) {
+            return Result.failure(ResultError.validation(e.getMessage()));
+        } catch (IOException e) {
+            return Result.failure(ResultError.validation("Unreadable input: " + e.getMessage()));
+        }
+
+        List<BulkRegistrationResult.Row> outcomes = new ArrayList<>();
+        Set<String> seenNationalIds = new HashSet<>();
+        List<PatientRowReader.Row> chunk = new ArrayList<>(chunkSize);
+        int rowsRead = 0;
+        try (reader) {
+            PatientRowReader.Row row;
+            while ((row = reader.next()) != null) {
+                if (rowsRead == maxRows) {
+                    // Earlier chunks are already committed, so report the cut-off instead of failing the request
+                    processChunk(chunk, seenNationalIds, outcomes);
+                    chunk.clear();
+                    outcomes.add(BulkRegistrationResult.Row.rejected(row.number(), ResultError.validation(
+                        "Row limit of " + maxRows + " reached; this and all following rows were not processed")));
+                    break;
+                }
+                rowsRead++;
+                chunk.add(row);
+                if (chunk.size() == chunkSize) {
+                    processChunk(chunk, seenNationalIds, outcomes);
+                    chunk.clear();
+                }
+            }
+            processChunk(chunk, seenNationalIds, outcomes);
+            chunk.clear();
+        } catch (IOException e) {
+            log.error("Failed to read bulk registration input", e);
+            processChunk(chunk, seenNationalIds, outcomes);
+            outcomes.add(BulkRegistrationResult.Row.rejected(rowsRead + 1, ResultError.validation(
+                "Unreadable input: " + e.getMessage() + "; this and all following rows were not processed")));
+        }
+
+        int registered = (int) outcomes.stream().filter(outcome -> outcome.error() == null).count();
+        log.info("Bulk registration finished: {} of {} rows registered", registered, outcomes.size());
+        return Result.success(new BulkRegistrationResult(
+            outcomes.size(), registered, outcomes.size() - registered, outcomes
+        ));
+    }
+
+    private void processChunk(List<PatientRowReader.Row> chunk, Set<String> seenNationalIds,
+                              List<BulkRegistrationResult.Row> outcomes) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        chunkTimer.record(() -> {
+            List<BulkRegistrationResult.Row> chunkOutcomes = new ArrayList<>(chunk.size());
+            List<PatientRowReader.Row> accepted = new ArrayList<>(chunk.size());
+
+            Set<String> existingNationalIds = findExistingNationalIds(chunk);
+            for (PatientRowReader.Row row : chunk) {
+                Result<CreatePatientCommand> validated = validate(row, existingNationalIds, seenNationalIds);
+                if (validated.isSuccess()) {
+                    accepted.add(row);
+                    chunkOutcomes.add(null);
+                } else {
+                    chunkOutcomes.add(BulkRegistrationResult.Row.rejected(row.number(), validated.getError()));
+                }
+            }
+
+            List<BulkRegistrationResult.Row> saved = save(accepted);
+            long registered = 0;
+            int next = 0;
+            for (int i = 0; i < chunkOutcomes.size(); i++) {
+                if (chunkOutcomes.get(i) != null) {
+                    continue;
+                }
+                BulkRegistrationResult.Row outcome = saved.get(next++);
+                chunkOutcomes.set(i, outcome);
+                if (outcome.error() == null) {
+                    registered++;
+                } else if (chunk.get(i).command().nationalId() != null) {
+                    // Not registered after all, so a later row may still claim the national ID
+                    seenNationalIds.remove(chunk.get(i).command().nationalId());
+                }
+            }
+
+            registeredRows.increment(registered);
+            rejectedRows.increment(chunk.size() - registered);
+            outcomes.addAll(chunkOutcomes);
+        });
+    }
+
+    /**
+     * Applies the single-patient registration rules to a row, replacing the per-row
+     * national ID lookup with the chunk-wide result.
+     */
+    private Result<CreatePatientCommand> validate(PatientRowReader.Row row, Set<String> existingNationalIds,
+                                                  Set<String> seenNationalIds) {
+        if (row.error() != null) {
+            return Result.failure(row.error());
+        }
+
+        CreatePatientCommand command = row.command();
+        Set<ConstraintViolation<CreatePatientCommand>> violations = validator.validate(command);
+        if (!violations.isEmpty()) {
+            return Result.failure(ResultError.validation(violations.stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining("; "))));
+        }
+
+        if (command.nationalId() != null) {
+            if (existingNationalIds.contains(command.nationalId())) {
+                return Result.failure(ResultError.conflict(
+                    "Patient with national ID " + command.nationalId() + " already exists"));
+            }
+            if (seenNationalIds.contains(command.nationalId())) {
+                return Result.failure(ResultError.conflict(
+                    "National ID " + command.nationalId() + " appears more than once in this upload"));
+            }
+        }
+
+        // Only a row that passes claims its national ID, so a corrected later row can still use it
+        Result<CreatePatientCommand> validated = PatientCommandService.validateRegistrationRules(command);
+        if (validated.isSuccess() && command.nationalId() != null) {
+            seenNationalIds.add(command.nationalId());
+        }
+        return validated;
+    }
+
+    private Set<String> findExistingNationalIds(List<PatientRowReader.Row> chunk) {
+        Set<String> nationalIds = chunk.stream()
+            .filter(row -> row.command() != null && row.command().nationalId() != null)
+            .map(row -> row.command().nationalId())
+            .collect(Collectors.toSet());
+        return nationalIds.isEmpty()
+            ? Set.of()
+            : new HashSet<>(patientRepository.findExistingNationalIds(nationalIds));
+    }
+
+    /**
+     * Saves the accepted rows of a chunk, in one transaction when they all go in. When the chunk is
+     * rolled back, whether on insert or at commit, its rows are saved again one per transaction, so
+     * only the rows at fault are rejected and the response says which rows were registered.
+     *
+     * @return one outcome per accepted row, in row order
+     */
+    private List<BulkRegistrationResult.Row> save(List<PatientRowReader.Row> accepted) {
+        if (accepted.isEmpty()) {
+            return List.of();
+        }
+
+        try {
+            List<Patient> patients = insert(accepted);
+            List<BulkRegistrationResult.Row> outcomes = new ArrayList<>(accepted.size());
+            for (int i = 0; i < accepted.size(); i++) {
+                outcomes.add(BulkRegistrationResult.Row.registered(accepted.get(i).number(), patients.get(i).getId()));
+            }
+            return outcomes;
+        } catch (DataAccessException | PersistenceException | TransactionException e) {
+            log.warn("Bulk registration chunk of {} rows rolled back, saving its rows one at a time: {}",
+                accepted.size(), e.getMessage());
+        }
+
+        List<BulkRegistrationResult.Row> outcomes = new ArrayList<>(accepted.size());
+        for (PatientRowReader.Row row : accepted) {
+            try {
+                Patient patient = insert(List.of(row)).getFirst();
+                outcomes.add(BulkRegistrationResult.Row.registered(row.number(), patient.getId()));
+            } catch (DataAccessException | PersistenceException | TransactionException e) {
+                outcomes.add(BulkRegistrationResult.Row.rejected(row.number(), saveError(row, e)));
+            }
+        }
+        return outcomes;
+    }
+
+    private static ResultError saveError(PatientRowReader.Row row, RuntimeException e) {
+        if (PatientCommandService.isNationalIdConflict(e)) {
+            return ResultError.conflict("Patient with national ID " + row.command().nationalId() + " already exists");
+        }
+        log.warn("Bulk registration row {} could not be saved", row.number(), e);
+        return ResultError.unavailable("Row could not be saved: " + e.getMessage() + "; resubmit it");
+    }
+
+    /**
+     * Inserts rows in one transaction, with the JDBC batch size raised to the chunk size so
+     * patients, guardians, programs and outbox rows go out as batched inserts.
+     *
+     * @return the saved patients in row order
+     */
+    private List<Patient> insert(List<PatientRowReader.Row> rows) {
+        List<Patient> saved = transactionTemplate.execute(status -> {
+            entityManager.unwrap(Session.class).setJdbcBatchSize(chunkSize);
+
+            List<Patient> patients = new ArrayList<>(rows.size());
+            for (PatientRowReader.Row row : rows) {
+                Patient patient = commandService.newPatient(row.command());
+                entityManager.persist(patient);
+                patients.add(patient);
+            }
+            entityManager.flush();
+
+            eventPublisher.publishEvent(new PatientRegistrationBatchEvent(
+                patients.stream().map(PatientRegisteredEvent::from).toList()));
+            return patients;
+        });
+        // After commit, and never throwing, so a check cannot make the chunk look rolled back
+        duplicateService.onPatientsRegistered(saved);
+        return saved;
+    }
+}
@@ -0,0 +1,385 @@
+package com.niyiment.patientservice.service;
+
+import com.niyiment.patientservice.common.Result;
+import com.niyiment.patientservice.common.ResultError;
+import com.niyiment.patientservice.dto.CampaignEnrollmentJobDto;
+import com.niyiment.patientservice.dto.CampaignEnrollmentRequest;
+import com.niyiment.patientservice.dto.PatientSearchQuery;
+import com.niyiment.patientservice.entity.CampaignEnrollmentJob;
+import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.event.CampaignEnrollmentCompletedEvent;
+import com.niyiment.patientservice.event.PatientProgramEnrolledEvent;
+import com.niyiment.patientservice.event.PatientProgramEnrollmentBatchEvent;
+import com.niyiment.patientservice.repository.CampaignEnrollmentJobRepository;
+import com.niyiment.patientservice.repository.PatientProgramRepository;
+import com.niyiment.patientservice.repository.PatientRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Service enrolling whole cohorts of patients in a vaccination campaign in the background.
+ * The cohort is walked in fixed-size chunks seeking on the primary key. Each chunk is enrolled
+ * with one set-based insert and committed in its own transaction together with its outbox events,
+ * so a failure leaves earlier chunks enrolled and a resubmitted job skips them by constraint.
+ * The cohort is the patient search filter, so a campaign reaches exactly the patients a search
+ * with the same filter lists. Job state is kept in the campaign_enrollment_jobs table and its
+ * progress committed with each chunk, so any instance can report on a job, and a job whose
+ * instance stopped mid-run stops making progress and is failed as abandoned.
+ */
+@Service
+@Slf4j
+public class CampaignEnrollmentService {
+
+    private static final UUID FIRST_ID = new UUID(0L, 0L);
+
+    private final PatientRepository patientRepository;
+    private final PatientProgramRepository programRepository;
+    private final CampaignEnrollmentJobRepository jobRepository;
+    private final PatientQueryService queryService;
+    private final PatientCacheService patientCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService virtualThreads = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final int chunkSize;
+    private final Duration retention;
+    private final Duration abandonedAfter;
+    private final Semaphore jobPermits;
+
+    private final Counter completedJobs;
+    private final Counter failedJobs;
+    private final Counter rejectedJobs;
+    private final Counter enrolledPatients;
+    private final Counter skippedPatients;
+    private final Timer chunkTimer;
+    private final Timer jobTimer;
+
+    public CampaignEnrollmentService(
+        PatientRepository patientRepository,
+        PatientProgramRepository programRepository,
+        CampaignEnrollmentJobRepository jobRepository,
+        PatientQueryService queryService,
+        PatientCacheService patientCache,
+        ApplicationEventPublisher eventPublisher,
+        EntityManager entityManager,
+        PlatformTransactionManager transactionManager,
+        MeterRegistry meterRegistry,
+        @Value("${patient.campaign.chunk-size:1000}") int chunkSize,
+        @Value("${patient.campaign.max-concurrent-jobs:1}") int maxConcurrentJobs,
+        @Value("${patient.campaign.retention-minutes:1440}") long retentionMinutes,
+        @Value("${patient.campaign.abandoned-after-minutes:15}") long abandonedAfterMinutes
+    ) {
+        this.patientRepository = patientRepository;
+        this.programRepository = programRepository;
+        this.jobRepository = jobRepository;
+        this.queryService = queryService;
+        this.patientCache = patientCache;
+        this.eventPublisher = eventPublisher;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.retention = Duration.ofMinutes(retentionMinutes);
+        this.abandonedAfter = Duration.ofMinutes(abandonedAfterMinutes);
+        this.jobPermits = new Semaphore(maxConcurrentJobs);
+
+        this.completedJobs = Counter.builder("patient.campaign.jobs")
+            .tag("outcome", "completed")
+            .description("Campaign enrollment jobs by outcome")
+            .register(meterRegistry);
+        this.failedJobs = Counter.builder("patient.campaign.jobs")
+            .tag("outcome", "failed")
+            .description("Campaign enrollment jobs by outcome")
+            .register(meterRegistry);
+        this.rejectedJobs = Counter.builder("patient.campaign.jobs")
+            .tag("outcome", "rejected")
+            .description("Campaign enrollment jobs by outcome")
+            .register(meterRegistry);
+        this.enrolledPatients = Counter.builder("patient.campaign.patients")
+            .tag("outcome", "enrolled")
+            .description("Cohort patients processed by campaign enrollment jobs, by outcome")
+            .register(meterRegistry);
+        this.skippedPatients = Counter.builder("patient.campaign.patients")
+            .tag("outcome", "skipped")
+            .description("Cohort patients processed by campaign enrollment jobs, by outcome")
+            .register(meterRegistry);
+        this.chunkTimer = Timer.builder("patient.campaign.chunk")
+            .description("Time taken to enroll and commit one campaign enrollment chunk")
+            .register(meterRegistry);
+        this.jobTimer = Timer.builder("patient.campaign.job")
+            .description("Time taken to run a campaign enrollment job")
+            .register(meterRegistry);
+        Gauge.builder("patient.campaign.jobs.active", jobPermits, permits -> maxConcurrentJobs - permits.availablePermits())
+            .description("Campaign enrollment jobs currently running")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Accepts a campaign enrollment and starts it in the background.
+     *
+     * @param request the program and cohort filter
+     * @return the queued job, or a failure if no job slot is free
+     */
+    public Result<CampaignEnrollmentJobDto> submitEnrollment(CampaignEnrollmentRequest request) {
+        if (request.dateOfBirthFrom() != null && request.dateOfBirthTo() != null
+            && request.dateOfBirthFrom().isAfter(request.dateOfBirthTo())) {
+            return Result.failure(ResultError.validation("dateOfBirthFrom must not be after dateOfBirthTo"));
+        }
+
+        // Taken before the cohort is counted, so rejected requests never cost a count over the cohort
+        if (!jobPermits.tryAcquire()) {
+            rejectedJobs.increment();
+            log.warn("Rejected campaign enrollment in {}: all job slots in use", request.programCode());
+            return Result.failure(ResultError.unavailable("Campaign enrollment capacity exhausted, retry shortly"));
+        }
+
+        RunningJob job;
+        CampaignEnrollmentJob state;
+        try {
+            Specification<Patient> cohort = cohortOf(request);
+            long matched = patientRepository.count(cohort);
+            job = new RunningJob(UUID.randomUUID(), request, cohort, matched);
+            LocalDateTime now = LocalDateTime.now();
+            state = CampaignEnrollmentJob.builder()
+                .id(job.id)
+                .programCode(request.programCode())
+                .status(CampaignEnrollmentJobDto.Status.QUEUED)
+                .matchedPatients(matched)
+                .createdAt(now)
+                .updatedAt(now)
+                .build();
+            transactionTemplate.executeWithoutResult(status -> jobRepository.save(state));
+        } catch (RuntimeException e) {
+            jobPermits.release();
+            throw e;
+        }
+
+        try {
+            virtualThreads.submit(() -> run(job));
+        } catch (RuntimeException e) {
+            transactionTemplate.executeWithoutResult(status -> jobRepository.deleteById(job.id));
+            jobPermits.release();
+            throw e;
+        }
+
+        log.info("Queued campaign enrollment {} in {} ({} matching patients)",
+            job.id, request.programCode(), job.matchedPatients);
+        return Result.success(toDto(state));
+    }
+
+    public Result<CampaignEnrollmentJobDto> getEnrollment(UUID jobId) {
+        // Read on the primary: a replica could report a job a chunk behind
+        Optional<CampaignEnrollmentJob> job = transactionTemplate.execute(status -> jobRepository.findById(jobId));
+        return job
+            .map(found -> Result.success(toDto(found)))
+            .orElseGet(() -> Result.failure(ResultError.notFound("Campaign enrollment", jobId.toString())));
+    }
+
+    /**
+     * Fails jobs abandoned by a stopped instance and forgets finished jobs past their retention.
+     */
+    @Scheduled(fixedDelayString = "${patient.campaign.cleanup-interval-ms:300000}")
+    public void purgeExpiredEnrollments() {
+        LocalDateTime now = LocalDateTime.now();
+        transactionTemplate.executeWithoutResult(status -> {
+            int abandoned = jobRepository.failAbandoned(
+                EnumSet.of(CampaignEnrollmentJobDto.Status.QUEUED, CampaignEnrollmentJobDto.Status.RUNNING),
+                CampaignEnrollmentJobDto.Status.FAILED, now.minus(abandonedAfter), now);
+            if (abandoned > 0) {
+                log.warn("Failed {} abandoned campaign enrollment(s)", abandoned);
+            }
+            jobRepository.deleteCompletedBefore(now.minus(retention));
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        virtualThreads.shutdownNow();
+    }
+
+    private void run(RunningJob job) {
+        job.startedAt = LocalDateTime.now();
+        updateJob(job, state -> state.setStatus(CampaignEnrollmentJobDto.Status.RUNNING));
+        Timer.Sample sample = Timer.start();
+        try {
+            UUID afterId = FIRST_ID;
+            List<UUID> chunk;
+            do {
+                UUID from = afterId;
+                chunk = chunkTimer.record(() -> enrollChunk(job, from));
+                if (!chunk.isEmpty()) {
+                    afterId = chunk.getLast();
+                }
+            } while (chunk.size() == chunkSize);
+
+            job.completedAt = LocalDateTime.now();
+            updateJob(job, state -> {
+                state.setStatus(CampaignEnrollmentJobDto.Status.COMPLETED);
+                state.setCompletedAt(job.completedAt);
+            });
+            completedJobs.increment();
+            log.info("Completed campaign enrollment {}: {} enrolled, {} already enrolled",
+                job.id, job.enrolled, job.skipped);
+        } catch (RuntimeException e) {
+            log.error("Campaign enrollment {} failed after {} patients", job.id, job.processed, e);
+            String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            job.error = message.length() > 500 ? message.substring(0, 500) : message;
+            job.completedAt = LocalDateTime.now();
+            updateJob(job, state -> {
+                state.setStatus(CampaignEnrollmentJobDto.Status.FAILED);
+                state.setError(job.error);
+                state.setCompletedAt(job.completedAt);
+            });
+            failedJobs.increment();
+        } finally {
+            sample.stop(jobTimer);
+            publishSummary(job);
+            jobPermits.release();
+        }
+    }
+
+    /**
+     * Enrolls the next chunk of the cohort in one transaction: the chunk's IDs are read, enrolled
+     * with one insert, their enrollment events written to the outbox as one batch and the job's
+     * progress recorded.
+     *
+     * @return the IDs of the chunk, in ID order
+     */
+    private List<UUID> enrollChunk(RunningJob job, UUID afterId) {
+        CampaignEnrollmentRequest request = job.request;
+        LocalDateTime enrolledAt = LocalDateTime.now();
+
+        ChunkResult result = transactionTemplate.execute(status -> {
+            List<UUID> ids = patientRepository.findIdsAfter(job.cohort, afterId, chunkSize);
+            if (ids.isEmpty()) {
+                return new ChunkResult(ids, List.of());
+            }
+
+            entityManager.unwrap(Session.class).setJdbcBatchSize(chunkSize);
+            List<PatientProgramRepository.Enrollment> enrollments =
+                programRepository.enrollAll(ids, request.programCode(), job.programName, enrolledAt);
+            if (!enrollments.isEmpty()) {
+                eventPublisher.publishEvent(new PatientProgramEnrollmentBatchEvent(enrollments.stream()
+                    .map(enrollment -> new PatientProgramEnrolledEvent(
+                        enrollment.getPatientId(), enrollment.getProgramId(),
+                        request.programCode(), job.programName, enrolledAt))
+                    .toList()));
+            }
+            int enrolled = enrollments.size();
+            jobRepository.updateProgress(job.id, job.processed + ids.size(), job.enrolled + enrolled,
+                job.skipped + ids.size() - enrolled, enrolledAt);
+            return new ChunkResult(ids, enrollments);
+        });
+
+        // Evicted after commit so a concurrent load cannot cache the pre-enrollment state again
+        result.enrollments().forEach(enrollment -> {
+            patientCache.evict(enrollment.getPatientId());
+            patientCache.evictSecondLevelCache(enrollment.getPatientId());
+        });
+
+        int enrolled = result.enrollments().size();
+        int skipped = result.ids().size() - enrolled;
+        job.processed += result.ids().size();
+        job.enrolled += enrolled;
+        job.skipped += skipped;
+        enrolledPatients.increment(enrolled);
+        skippedPatients.increment(skipped);
+        log.debug("Campaign enrollment {} chunk: {} enrolled, {} skipped", job.id, enrolled, skipped);
+        return result.ids();
+    }
+
+    private void publishSummary(RunningJob job) {
+        CampaignEnrollmentCompletedEvent event = new CampaignEnrollmentCompletedEvent(
+            job.id, job.request, job.programName, job.matchedPatients, job.enrolled, job.skipped,
+            job.error, job.startedAt, job.completedAt
+        );
+        try {
+            transactionTemplate.executeWithoutResult(status -> eventPublisher.publishEvent(event));
+        } catch (RuntimeException e) {
+            log.error("Failed to record completion of campaign enrollment {}", job.id, e);
+        }
+    }
+
+    private void updateJob(RunningJob job, Consumer<CampaignEnrollmentJob> change) {
+        transactionTemplate.executeWithoutResult(status -> jobRepository.findById(job.id).ifPresent(state -> {
+            change.accept(state);
+            state.setUpdatedAt(LocalDateTime.now());
+        }));
+    }
+
+    /**
+     * The cohort as a patient search filter. Blank LGAs and open date bounds are left out of the
+     * filter rather than matched, as they are for a search.
+     */
+    private Specification<Patient> cohortOf(CampaignEnrollmentRequest request) {
+        return queryService.createSpecification(new PatientSearchQuery(
+            null, null, null, null, null, request.gender(), request.patientType(), request.state(),
+            request.lga(), request.dateOfBirthFrom(), request.dateOfBirthTo(), null,
+            null, null, null, null
+        ));
+    }
+
+    private static CampaignEnrollmentJobDto toDto(CampaignEnrollmentJob job) {
+        return new CampaignEnrollmentJobDto(
+            job.getId(), job.getStatus(), job.getProgramCode(), job.getMatchedPatients(), job.getProcessedPatients(),
+            job.getEnrolledPatients(), job.getSkippedPatients(), job.getError(), job.getCreatedAt(),
+            job.getCompletedAt()
+        );
+    }
+
+    private record ChunkResult(List<UUID> ids, List<PatientProgramRepository.Enrollment> enrollments) {}
+
+    /**
+     * A job being run on this instance. Its counts are only touched by the job's own thread.
+     */
+    private static final class RunningJob {
+
+        private final UUID id;
+        private final CampaignEnrollmentRequest request;
+        private final Specification<Patient> cohort;
+        private final String programName;
+        private final long matchedPatients;
+
+        private long processed;
+        private long enrolled;
+        private long skipped;
+        private String error;
+        private LocalDateTime startedAt;
+        private LocalDateTime completedAt;
+
+        private RunningJob(UUID id, CampaignEnrollmentRequest request, Specification<Patient> cohort,
+                           long matchedPatients) {
+            this.id = id;
+            this.request = request;
+            this.cohort = cohort;
+            this.programName = request.programName() != null
+                ? request.programName()
+                : "Program: " + request.programCode();
+            this.matchedPatients = matchedPatients;
+        }
+    }
+}
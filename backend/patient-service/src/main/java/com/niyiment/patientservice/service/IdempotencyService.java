@@ -0,0 +1,357 @@
+package com.niyiment.patientservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.niyiment.patientservice.common.Result;
+import com.niyiment.patientservice.common.ResultError;
+import com.niyiment.patientservice.entity.IdempotencyRecord;
+import com.niyiment.patientservice.repository.IdempotencyRecordRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs write requests sent with an Idempotency-Key at most once per key and operation.
+ * The first request claims the key in idempotency_records and runs; its outcome is stored in the
+ * same transaction as its changes and answered to every retry until the record expires. Retries
+ * arriving while it runs wait for it: on this instance they share its outcome directly, on other
+ * instances they poll the record. Completed outcomes are also kept in memory until their record
+ * expires, so quick retries are answered without a query.
+ *
+ * <p>Failures that are worth retrying, such as internal errors, are not stored; the claim is
+ * released and a retry with the same key runs the request again. Reusing a key for a different
+ * request is refused.
+ */
+@Service
+@Slf4j
+public class IdempotencyService {
+
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(100);
+    private static final Set<String> TRANSIENT_ERRORS = Set.of("INTERNAL_ERROR", "SERVICE_UNAVAILABLE");
+
+    private final IdempotencyRecordRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Duration ttl;
+    private final Duration lease;
+    private final Duration waitTimeout;
+
+    private final Cache<String, Outcome> completedOutcomes;
+    // A null outcome means the key is still held by another request, usually on another instance
+    private final ConcurrentMap<String, CompletableFuture<Outcome>> runningRequests = new ConcurrentHashMap<>();
+
+    private final Counter executedRequests;
+    private final Counter replayedRequests;
+    private final Counter coalescedRequests;
+    private final Counter rejectedRequests;
+
+    /**
+     * Outcome of a request as stored: its fingerprint and either its response body or its error,
+     * and when its record expires.
+     */
+    private record Outcome(String requestHash, String errorCode, String errorMessage, String responseBody,
+                           LocalDateTime expiresAt) {
+
+        static Outcome of(IdempotencyRecord record) {
+            return new Outcome(record.getRequestHash(), record.getErrorCode(), record.getErrorMessage(),
+                record.getResponseBody(), record.getExpiresAt());
+        }
+
+        boolean isTransient() {
+            return errorCode != null && TRANSIENT_ERRORS.contains(errorCode);
+        }
+    }
+
+    /**
+     * Drops a cached outcome when its record expires. Once expired the key may be claimed again,
+     * by this instance or another, so a cached copy outliving the record would replay a stale outcome.
+     * A record polled from another instance may be hours into its lifetime already.
+     */
+    private static final class UntilRecordExpires implements Expiry<String, Outcome> {
+
+        @Override
+        public long expireAfterCreate(String key, Outcome outcome, long currentTime) {
+            return Math.max(0, Duration.between(LocalDateTime.now(), outcome.expiresAt()).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Outcome outcome, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, outcome, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Outcome outcome, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    public IdempotencyService(
+        IdempotencyRecordRepository repository,
+        PlatformTransactionManager transactionManager,
+        ObjectMapper objectMapper,
+        MeterRegistry meterRegistry,
+        @Value("${patient.idempotency.ttl-hours:24}") int ttlHours,
+        @Value("${patient.idempotency.lease-seconds:30}") int leaseSeconds,
+        @Value("${patient.idempotency.wait-timeout-ms:10000}") long waitTimeoutMs,
+        @Value("${patient.idempotency.cache-size:10000}") int cacheSize
+    ) {
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.ttl = Duration.ofHours(ttlHours);
+        this.lease = Duration.ofSeconds(leaseSeconds);
+        this.waitTimeout = Duration.ofMillis(waitTimeoutMs);
+
+        this.completedOutcomes = Caffeine.newBuilder()
+            .maximumSize(cacheSize)
+            .expireAfter(new UntilRecordExpires())
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, completedOutcomes, "idempotencyOutcomes");
+
+        this.executedRequests = requestCounter(meterRegistry, "executed");
+        this.replayedRequests = requestCounter(meterRegistry, "replayed");
+        this.coalescedRequests = requestCounter(meterRegistry, "coalesced");
+        this.rejectedRequests = requestCounter(meterRegistry, "rejected");
+    }
+
+    /**
+     * Runs the command unless a request with the same key already ran, in which case its outcome
+     * is returned instead. Without a key the command simply runs.
+     *
+     * @param key          the Idempotency-Key header, or null
+     * @param operation    name of the endpoint; keys are scoped to it
+     * @param request      everything identifying the request, such as path variables and body
+     * @param responseType type of a successful result, used to read stored outcomes back
+     * @param command      the write to run, joining the transaction its outcome is stored in
+     */
+    public <T> Result<T> execute(String key, String operation, Object request, Class<T> responseType,
+                                 Supplier<Result<T>> command) {
+        if (key == null) {
+            return command.get();
+        }
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            return Result.failure(ResultError.validation("Idempotency-Key must be 1 to " + MAX_KEY_LENGTH + " characters"));
+        }
+
+        String requestHash = fingerprint(operation, request);
+        String scopedKey = operation + ":" + key;
+        Outcome completed = completedOutcomes.getIfPresent(scopedKey);
+        if (completed != null) {
+            return replay(completed, requestHash, responseType);
+        }
+
+        CompletableFuture<Outcome> ownRun = new CompletableFuture<>();
+        CompletableFuture<Outcome> otherRun = runningRequests.putIfAbsent(scopedKey, ownRun);
+        if (otherRun != null) {
+            coalescedRequests.increment();
+            return await(otherRun, requestHash, responseType);
+        }
+
+        try {
+            return claimAndRun(key, operation, scopedKey, requestHash, responseType, command, ownRun);
+        } catch (RuntimeException e) {
+            ownRun.completeExceptionally(e);
+            throw e;
+        } finally {
+            runningRequests.remove(scopedKey, ownRun);
+        }
+    }
+
+    /**
+     * Removes records no retry can still be answered from.
+     */
+    @Scheduled(cron = "${patient.idempotency.cleanup-cron:0 30 3 * * *}")
+    @Transactional
+    public void purgeExpired() {
+        int deleted = repository.deleteExpired(LocalDateTime.now());
+        log.info("Purged {} expired idempotency records", deleted);
+    }
+
+    private <T> Result<T> claimAndRun(String key, String operation, String scopedKey, String requestHash,
+                                      Class<T> responseType, Supplier<Result<T>> command,
+                                      CompletableFuture<Outcome> ownRun) {
+        UUID claimToken = UUID.randomUUID();
+        Instant deadline = Instant.now().plus(waitTimeout);
+        LocalDateTime claimedUntil;
+        while ((claimedUntil = claim(key, operation, requestHash, claimToken)) == null) {
+            // Another instance holds the key; its record is read through a writable transaction so it comes from the primary
+            IdempotencyRecord record = transactionTemplate.execute(status ->
+                repository.findById(new IdempotencyRecord.Key(key, operation)).orElse(null));
+            if (record != null && record.getStatus() == IdempotencyRecord.Status.COMPLETED) {
+                Outcome outcome = Outcome.of(record);
+                completedOutcomes.put(scopedKey, outcome);
+                ownRun.complete(outcome);
+                return replay(outcome, requestHash, responseType);
+            }
+            if (Instant.now().isAfter(deadline) || !pause()) {
+                ownRun.complete(null);
+                return Result.failure(stillRunning());
+            }
+        }
+
+        LocalDateTime expiresAt = claimedUntil;
+        Result<T> result;
+        try {
+            result = transactionTemplate.execute(status -> {
+                Result<T> outcome = command.get();
+                if (outcome.isFailure()) {
+                    // A failed command keeps none of its changes, even those it made before failing
+                    status.setRollbackOnly();
+                    return outcome;
+                }
+                if (!store(key, operation, claimToken, outcomeOf(requestHash, expiresAt, outcome))) {
+                    // The lease ran out and a retry took the key over; that retry applies the change instead
+                    status.setRollbackOnly();
+                    return null;
+                }
+                return outcome;
+            });
+        } catch (RuntimeException e) {
+            transactionTemplate.executeWithoutResult(status -> repository.release(key, operation, claimToken));
+            throw e;
+        }
+
+        if (result == null) {
+            ownRun.complete(null);
+            return Result.failure(stillRunning());
+        }
+
+        Outcome outcome = outcomeOf(requestHash, expiresAt, result);
+        if (result.isFailure()) {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (outcome.isTransient()) {
+                    repository.release(key, operation, claimToken);
+                } else {
+                    store(key, operation, claimToken, outcome);
+                }
+            });
+        }
+        if (!outcome.isTransient()) {
+            completedOutcomes.put(scopedKey, outcome);
+        }
+        ownRun.complete(outcome);
+        executedRequests.increment();
+        return result;
+    }
+
+    /**
+     * @return when the claimed record expires, or null if the key could not be claimed
+     */
+    private LocalDateTime claim(String key, String operation, String requestHash, UUID claimToken) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expiresAt = now.plus(ttl);
+        Integer claimed = transactionTemplate.execute(status -> repository.claim(
+            key, operation, requestHash, claimToken, now, now.plus(lease), expiresAt));
+        return claimed != null && claimed == 1 ? expiresAt : null;
+    }
+
+    private boolean store(String key, String operation, UUID claimToken, Outcome outcome) {
+        return repository.complete(
+            key, operation, claimToken, outcome.errorCode(), outcome.errorMessage(), outcome.responseBody()) == 1;
+    }
+
+    private <T> Result<T> await(CompletableFuture<Outcome> run, String requestHash, Class<T> responseType) {
+        try {
+            Outcome outcome = run.get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            return outcome != null ? replay(outcome, requestHash, responseType) : Result.failure(stillRunning());
+        } catch (TimeoutException e) {
+            return Result.failure(stillRunning());
+        } catch (ExecutionException e) {
+            return Result.failure(ResultError.internal("The original request with this Idempotency-Key failed; retry it"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Result.failure(ResultError.unavailable("Interrupted while waiting for the original request"));
+        }
+    }
+
+    private <T> Result<T> replay(Outcome outcome, String requestHash, Class<T> responseType) {
+        if (!outcome.requestHash().equals(requestHash)) {
+            rejectedRequests.increment();
+            return Result.failure(ResultError.unprocessable("Idempotency-Key was already used for a different request"));
+        }
+        replayedRequests.increment();
+        if (outcome.errorCode() != null) {
+            return Result.failure(new ResultError(outcome.errorCode(), outcome.errorMessage()));
+        }
+        try {
+            return Result.success(objectMapper.readValue(outcome.responseBody(), responseType));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private <T> Outcome outcomeOf(String requestHash, LocalDateTime expiresAt, Result<T> result) {
+        if (result.isFailure()) {
+            return new Outcome(requestHash, result.getError().code(), result.getError().message(), null, expiresAt);
+        }
+        try {
+            return new Outcome(requestHash, null, null, objectMapper.writeValueAsString(result.getValue()), expiresAt);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String fingerprint(String operation, Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(operation.getBytes(StandardCharsets.UTF_8));
+            digest.update(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static boolean pause() {
+        try {
+            Thread.sleep(POLL_INTERVAL);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static ResultError stillRunning() {
+        return ResultError.conflict("A request with this Idempotency-Key is still in progress; retry it later");
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("patient.idempotency.requests")
+            .tag("outcome", outcome)
+            .description("Requests sent with an Idempotency-Key by outcome")
+            .register(meterRegistry);
+    }
+}
@@ -0,0 +1,232 @@
+package com.niyiment.patientservice.service;
+
+import com.niyiment.patientservice.entity.OutboxEvent;
+import com.niyiment.patientservice.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background relay draining the transactional outbox into Kafka.
+ * Events are claimed in batches in the order their transactions were written and sent keyed by
+ * patient ID, so all events of one patient land on the same partition in the order they were
+ * committed. Claims are taken and settled in short transactions; no connection or lock is held
+ * while Kafka acknowledges the sends. A claim leases the patients in it, so relays on other
+ * instances send other patients' events meanwhile. A failed send blocks the remaining events of
+ * that patient until the next run, and an event that keeps failing is parked after max-attempts
+ * so it cannot hold its patient's later events back for good.
+ */
+@Service
+@Slf4j
+public class OutboxRelay {
+
+    private static final long RELAY_LOCK_ID = 0x5041_5449_454E_5401L;
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final OutboxEventRepository outboxRepository;
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long sendTimeoutMs;
+    private final Duration lease;
+    private final int maxAttempts;
+    private final Duration retention;
+
+    private final Counter publishedCounter;
+    private final Counter failedCounter;
+    private final Timer batchTimer;
+    private final AtomicLong pendingEvents = new AtomicLong();
+    private final AtomicLong parkedEvents = new AtomicLong();
+    private final AtomicLong lagMillis = new AtomicLong();
+
+    public OutboxRelay(
+        OutboxEventRepository outboxRepository,
+        KafkaTemplate<String, String> kafkaTemplate,
+        PlatformTransactionManager transactionManager,
+        MeterRegistry meterRegistry,
+        @Value("${patient.outbox.batch-size:200}") int batchSize,
+        @Value("${patient.outbox.send-timeout-ms:10000}") long sendTimeoutMs,
+        @Value("${patient.outbox.lease-seconds:60}") long leaseSeconds,
+        @Value("${patient.outbox.max-attempts:10}") int maxAttempts,
+        @Value("${patient.outbox.retention-days:7}") int retentionDays
+    ) {
+        this.outboxRepository = outboxRepository;
+        this.kafkaTemplate = kafkaTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.sendTimeoutMs = sendTimeoutMs;
+        this.lease = Duration.ofSeconds(leaseSeconds);
+        this.maxAttempts = maxAttempts;
+        this.retention = Duration.ofDays(retentionDays);
+
+        this.publishedCounter = Counter.builder("patient.outbox.events.published")
+            .description("Outbox events successfully relayed to Kafka")
+            .register(meterRegistry);
+        this.failedCounter = Counter.builder("patient.outbox.events.failed")
+            .description("Outbox event sends that failed and will be retried")
+            .register(meterRegistry);
+        this.batchTimer = Timer.builder("patient.outbox.relay.batch")
+            .description("Time taken to relay one outbox batch")
+            .register(meterRegistry);
+        Gauge.builder("patient.outbox.events.pending", pendingEvents, AtomicLong::get)
+            .description("Outbox events waiting to be relayed")
+            .register(meterRegistry);
+        Gauge.builder("patient.outbox.events.parked", parkedEvents, AtomicLong::get)
+            .description("Outbox events parked for an operator after failing too often")
+            .register(meterRegistry);
+        Gauge.builder("patient.outbox.lag", lagMillis, AtomicLong::get)
+            .description("Age of the oldest unpublished outbox event")
+            .baseUnit("milliseconds")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Relays one batch of pending outbox events to Kafka.
+     */
+    @Scheduled(fixedDelayString = "${patient.outbox.poll-interval-ms:500}")
+    public void relayPendingEvents() {
+        List<OutboxEvent> batch = transactionTemplate.execute(status -> claimBatch());
+        if (!batch.isEmpty()) {
+            batchTimer.record(() -> relay(batch));
+        }
+        transactionTemplate.executeWithoutResult(status -> refreshBacklogMetrics());
+    }
+
+    /**
+     * Removes relayed events older than the configured retention. Parked events are kept.
+     */
+    @Scheduled(cron = "${patient.outbox.cleanup-cron:0 0 3 * * *}")
+    @Transactional
+    public void purgePublishedEvents() {
+        int deleted = outboxRepository.deletePublishedBefore(LocalDateTime.now().minus(retention));
+        log.info("Purged {} published outbox events", deleted);
+    }
+
+    private List<OutboxEvent> claimBatch() {
+        if (!outboxRepository.tryAcquireRelayLock(RELAY_LOCK_ID)) {
+            return List.of();
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxEvent> batch = outboxRepository.findPendingBatch(batchSize, now);
+        if (!batch.isEmpty()) {
+            outboxRepository.claim(batch.stream().map(OutboxEvent::getId).toList(), now.plus(lease));
+        }
+        return batch;
+    }
+
+    /**
+     * Sends a claimed batch and records the outcome. All sends share one deadline, so a broker
+     * that stops answering costs one send timeout per batch, not one per event.
+     */
+    private void relay(List<OutboxEvent> batch) {
+        List<CompletableFuture<SendResult<String, String>>> sends = new ArrayList<>(batch.size());
+        for (OutboxEvent event : batch) {
+            sends.add(send(event));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+        List<Long> published = new ArrayList<>();
+        Map<Long, String> failed = new LinkedHashMap<>();
+        List<Long> skipped = new ArrayList<>();
+        Set<UUID> blockedPatients = new HashSet<>();
+
+        for (int i = 0; i < batch.size(); i++) {
+            OutboxEvent event = batch.get(i);
+            if (blockedPatients.contains(event.getAggregateId()) || Thread.currentThread().isInterrupted()) {
+                // An earlier event for this patient failed; leave this one pending to preserve order
+                skipped.add(event.getId());
+                continue;
+            }
+            try {
+                sends.get(i).get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                published.add(event.getId());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                skipped.add(event.getId());
+            } catch (Exception e) {
+                log.error("Failed to relay outbox event {} to topic {}: {}", event.getId(), event.getTopic(), e.getMessage());
+                failed.put(event.getId(), errorOf(e));
+                blockedPatients.add(event.getAggregateId());
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        int parked = transactionTemplate.execute(status -> {
+            if (!published.isEmpty()) {
+                outboxRepository.markPublished(published, now);
+            }
+            if (!skipped.isEmpty()) {
+                outboxRepository.release(skipped);
+            }
+            if (failed.isEmpty()) {
+                return 0;
+            }
+            failed.forEach(outboxRepository::recordFailure);
+            return outboxRepository.parkExhausted(failed.keySet(), maxAttempts, now);
+        });
+
+        publishedCounter.increment(published.size());
+        failedCounter.increment(failed.size());
+        if (parked > 0) {
+            log.error("Parked {} outbox events after {} failed attempts", parked, maxAttempts);
+        }
+        log.debug("Relayed {} of {} outbox events ({} failed)", published.size(), batch.size(), failed.size());
+    }
+
+    private CompletableFuture<SendResult<String, String>> send(OutboxEvent event) {
+        try {
+            ProducerRecord<String, String> record =
+                new ProducerRecord<>(event.getTopic(), event.getAggregateId().toString(), event.getPayload());
+            long occurredAt = event.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            record.headers().add(PatientEventPublisher.OCCURRED_AT_HEADER,
+                Long.toString(occurredAt).getBytes(StandardCharsets.UTF_8));
+            if (event.getOrigin() != null) {
+                record.headers().add(PatientEventPublisher.ORIGIN_HEADER, event.getOrigin().getBytes(StandardCharsets.UTF_8));
+            }
+            return kafkaTemplate.send(record);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static String errorOf(Exception e) {
+        Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+        String error = cause.getClass().getSimpleName() + ": " + cause.getMessage();
+        return error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+
+    private void refreshBacklogMetrics() {
+        pendingEvents.set(outboxRepository.countByPublishedAtIsNullAndFailedAtIsNull());
+        parkedEvents.set(outboxRepository.countByFailedAtIsNotNull());
+        LocalDateTime oldest = outboxRepository.findOldestPendingCreatedAt();
+        lagMillis.set(oldest != null ? Duration.between(oldest, LocalDateTime.now()).toMillis() : 0L);
+    }
+}
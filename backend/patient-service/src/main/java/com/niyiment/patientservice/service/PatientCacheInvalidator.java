@@ -0,0 +1,90 @@
+package com.niyiment.patientservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.niyiment.patientservice.event.PatientDeletedEvent;
+import com.niyiment.patientservice.repository.GuardianRepository;
+import com.niyiment.patientservice.repository.PatientProgramRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Evicts cached patients changed by any instance, driven by the patient event topics.
+ * Events are keyed by patient ID, so eviction needs no payload parsing except for deletes,
+ * which also drop the national ID index entry. Events carrying this instance's ID in their
+ * origin header are skipped: the instance that made a change already refreshed or evicted its
+ * own entries when the change committed.
+ * The patient's Hibernate second-level cache entries, including its guardian and program
+ * collections and the guardian and program entities themselves, are evicted alongside the
+ * mapped record. The events do not name the guardians and programs, so their IDs are read
+ * from the patient's partition; a deleted patient has none left to read, and its orphaned
+ * entries are no longer reachable through any collection.
+ */
+@Service
+@Slf4j
+public class PatientCacheInvalidator {
+
+    private final PatientCacheService patientCache;
+    private final GuardianRepository guardianRepository;
+    private final PatientProgramRepository programRepository;
+    private final ObjectMapper objectMapper;
+    private final byte[] instanceId;
+
+    public PatientCacheInvalidator(
+        PatientCacheService patientCache,
+        GuardianRepository guardianRepository,
+        PatientProgramRepository programRepository,
+        ObjectMapper objectMapper,
+        @Value("${patient.instance-id}") String instanceId
+    ) {
+        this.patientCache = patientCache;
+        this.guardianRepository = guardianRepository;
+        this.programRepository = programRepository;
+        this.objectMapper = objectMapper;
+        this.instanceId = instanceId.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @KafkaListener(
+        topics = {
+            PatientEventPublisher.PATIENT_UPDATED_TOPIC,
+            PatientEventPublisher.PATIENT_PROGRAM_ENROLLED_TOPIC,
+            PatientEventPublisher.PATIENT_DELETED_TOPIC
+        },
+        containerFactory = "cacheInvalidationListenerFactory"
+    )
+    public void onPatientEvent(ConsumerRecord<String, String> record) {
+        if (record.key() == null || isOwnEvent(record)) {
+            return;
+        }
+
+        try {
+            UUID patientId = UUID.fromString(record.key());
+            patientCache.evict(patientId);
+            patientCache.evictSecondLevelCache(patientId);
+            if (PatientEventPublisher.PATIENT_DELETED_TOPIC.equals(record.topic())) {
+                PatientDeletedEvent event = objectMapper.readValue(record.value(), PatientDeletedEvent.class);
+                if (event.nationalId() != null) {
+                    patientCache.evictNationalId(event.nationalId());
+                }
+            } else {
+                patientCache.evictSecondLevelCache(
+                    guardianRepository.findIdsByPatientId(patientId), programRepository.findIdsByPatientId(patientId));
+            }
+            log.debug("Evicted cached patient {} on {}", record.key(), record.topic());
+        } catch (Exception e) {
+            log.warn("Ignoring malformed patient event on {}: {}", record.topic(), e.getMessage());
+        }
+    }
+
+    private boolean isOwnEvent(ConsumerRecord<String, String> record) {
+        Header origin = record.headers().lastHeader(PatientEventPublisher.ORIGIN_HEADER);
+        return origin != null && Arrays.equals(origin.value(), instanceId);
+    }
+}
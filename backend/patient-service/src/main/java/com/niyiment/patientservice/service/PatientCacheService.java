@@ -0,0 +1,153 @@
+package com.niyiment.patientservice.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.niyiment.patientservice.dto.PatientDto;
+import com.niyiment.patientservice.entity.Guardian;
+import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.entity.PatientProgram;
+import com.niyiment.patientservice.event.PatientChangedEvent;
+import com.niyiment.patientservice.mapper.PatientMapper;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Version-aware cache of patient records, keyed by patient ID, with a national ID index.
+ * Entries carry the patient's optimistic-lock version and a put never replaces a newer version,
+ * so a slow reader cannot overwrite the snapshot written when a later change committed.
+ * Local changes are written through after commit; changes made on other instances arrive
+ * through {@link PatientCacheInvalidator}. Only found patients are cached, never failures.
+ */
+@Service
+@Slf4j
+public class PatientCacheService {
+
+    public static final String PATIENTS_CACHE = "patients";
+    public static final String NATIONAL_IDS_CACHE = "patientNationalIds";
+
+    private final Cache<Object, Object> patients;
+    private final Cache<Object, Object> nationalIds;
+    private final PatientMapper patientMapper;
+    private final EntityManagerFactory entityManagerFactory;
+
+    public PatientCacheService(CacheManager cacheManager, PatientMapper patientMapper,
+                               EntityManagerFactory entityManagerFactory) {
+        this.patients = nativeCache(cacheManager, PATIENTS_CACHE);
+        this.nationalIds = nativeCache(cacheManager, NATIONAL_IDS_CACHE);
+        this.patientMapper = patientMapper;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    public Optional<PatientDto> get(UUID patientId) {
+        return Optional.ofNullable((CachedPatient) patients.getIfPresent(patientId))
+            .map(CachedPatient::patient);
+    }
+
+    public Optional<UUID> getIdByNationalId(String nationalId) {
+        return Optional.ofNullable((UUID) nationalIds.getIfPresent(nationalId));
+    }
+
+    /**
+     * Maps and caches a patient loaded from the database, unless a newer version is already cached.
+     *
+     * @param patient a managed patient whose collections can still be loaded
+     * @return the mapped patient
+     */
+    public PatientDto put(Patient patient) {
+        PatientDto dto = patientMapper.toDto(patient);
+        CachedPatient candidate = new CachedPatient(dto, versionOf(patient));
+        patients.asMap().merge(patient.getId(), candidate,
+            (current, replacement) -> ((CachedPatient) replacement).version() >= ((CachedPatient) current).version()
+                ? replacement
+                : current);
+        if (patient.getNationalId() != null) {
+            nationalIds.put(patient.getNationalId(), patient.getId());
+        }
+        return dto;
+    }
+
+    public void evict(UUID patientId) {
+        patients.invalidate(patientId);
+    }
+
+    public void evictNationalId(String nationalId) {
+        nationalIds.invalidate(nationalId);
+    }
+
+    /**
+     * Whether the Hibernate second-level cache holds the patient, so loading it by ID reads no rows.
+     */
+    public boolean isInSecondLevelCache(UUID patientId) {
+        return entityManagerFactory.getCache().contains(Patient.class, patientId);
+    }
+
+    /**
+     * Evicts a patient and its guardian and program collections from the Hibernate second-level cache.
+     * Needed whenever the patient's rows change outside this instance's persistence context,
+     * such as on another instance or through a native statement.
+     */
+    public void evictSecondLevelCache(UUID patientId) {
+        org.hibernate.Cache cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+        cache.evictEntityData(Patient.class, patientId);
+        cache.evictCollectionData(Patient.class.getName() + ".guardians", patientId);
+        cache.evictCollectionData(Patient.class.getName() + ".programs", patientId);
+    }
+
+    /**
+     * Evicts guardian and program entities from the Hibernate second-level cache. A cached collection
+     * resolves its elements through their own regions, so evicting only a patient's collections would
+     * still hand back its guardians and programs as they were before a change on another instance.
+     */
+    public void evictSecondLevelCache(Collection<UUID> guardianIds, Collection<UUID> programIds) {
+        org.hibernate.Cache cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+        guardianIds.forEach(guardianId -> cache.evictEntityData(Guardian.class, guardianId));
+        programIds.forEach(programId -> cache.evictEntityData(PatientProgram.class, programId));
+    }
+
+    /**
+     * Writes the committed state of a changed patient through to the cache.
+     * Runs after commit so a rolled-back change is never cached; the version read here
+     * is the one the commit flushed.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onPatientChanged(PatientChangedEvent event) {
+        Patient patient = event.patient();
+        if (event.deleted()) {
+            evict(patient.getId());
+            if (patient.getNationalId() != null) {
+                evictNationalId(patient.getNationalId());
+            }
+            return;
+        }
+
+        try {
+            put(patient);
+        } catch (RuntimeException e) {
+            // The snapshot could not be mapped outside the transaction; fall back to a reload on next read
+            log.warn("Failed to refresh cached patient {}: {}", patient.getId(), e.getMessage());
+            evict(patient.getId());
+        }
+    }
+
+    private static long versionOf(Patient patient) {
+        return patient.getVersion() != null ? patient.getVersion() : -1L;
+    }
+
+    private static Cache<Object, Object> nativeCache(CacheManager cacheManager, String name) {
+        if (!(cacheManager.getCache(name) instanceof CaffeineCache cache)) {
+            throw new IllegalStateException("Cache " + name + " must be a Caffeine cache");
+        }
+        return cache.getNativeCache();
+    }
+
+    private record CachedPatient(PatientDto patient, long version) {}
+}
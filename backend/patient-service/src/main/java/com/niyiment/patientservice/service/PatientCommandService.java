@@ -10,20 +10,29 @@ import com.niyiment.patientservice.dto.UpdatePatientCommand;
 import com.niyiment.patientservice.entity.Guardian;
 import com.niyiment.patientservice.entity.Patient;
 import com.niyiment.patientservice.entity.PatientProgram;
+import com.niyiment.patientservice.event.PatientChangedEvent;
+import com.niyiment.patientservice.event.PatientDeletedEvent;
 import com.niyiment.patientservice.event.PatientProgramEnrolledEvent;
 import com.niyiment.patientservice.event.PatientRegisteredEvent;
 import com.niyiment.patientservice.event.PatientUpdatedEvent;
 import com.niyiment.patientservice.mapper.PatientMapper;
 import com.niyiment.patientservice.repository.PatientProgramRepository;
 import com.niyiment.patientservice.repository.PatientRepository;
-import com.niyiment.patientservice.util.QRCodeGenerator;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.Period;
 import java.util.UUID;
 
@@ -36,21 +45,29 @@ import java.util.UUID;
 @Slf4j
 public class PatientCommandService {
 
+    // Name PostgreSQL gave the unique constraint on patients.national_id
+    private static final String NATIONAL_ID_CONSTRAINT = "patients_national_id_key";
+
     private final PatientRepository patientRepository;
     private final PatientProgramRepository programRepository;
     private final PatientMapper patientMapper;
-    private final QRCodeGenerator qrCodeGenerator;
     private final ApplicationEventPublisher eventPublisher;
+    private final PatientCacheService patientCache;
+    private final EntityManager entityManager;
 
     /**
-     * Registers a new patient with validation and QR code generation.
+     * Registers a new patient with validation.
+     * The patient's QR code is rendered on demand from its ID, not stored.
+     * A duplicate national ID is detected by the unique constraint when the insert is flushed,
+     * not by a prior lookup, so two concurrent registrations cannot both pass the check.
      */
     @Transactional
     public Result<PatientDto> registerPatient(CreatePatientCommand command) {
-        return validateRegistration(command)
-            .flatMap(c -> createPatient(c))
+        return validateRegistrationRules(command)
+            .flatMap(this::createPatient)
             .map(patient -> {
                 publishPatientRegisteredEvent(patient);
+                publishPatientChangedEvent(patient);
                 return patientMapper.toDto(patient);
             });
     }
@@ -60,29 +77,70 @@ public class PatientCommandService {
      */
     @Transactional
     public Result<PatientDto> updatePatient(UUID patientId, UpdatePatientCommand command) {
+        return updatePatient(patientId, command, null);
+    }
+
+    /**
+     * Updates existing patient information if the patient is still at the expected version.
+     * The version is compared on load and again by the versioned UPDATE, so a change committed in
+     * between fails the update too. The update is flushed here so the returned patient carries
+     * its new version.
+     *
+     * @param expectedVersion the version the caller last read, or null to update any version
+     */
+    @Transactional
+    public Result<PatientDto> updatePatient(UUID patientId, UpdatePatientCommand command, Long expectedVersion) {
         return findPatientById(patientId)
+            .flatMap(patient -> expectedVersion == null || expectedVersion.equals(versionOf(patient))
+                ? Result.success(patient)
+                : Result.<Patient>failure(staleVersion(patientId)))
             .map(patient -> updatePatientFields(patient, command))
-            .map(patient -> {
-                Patient saved = patientRepository.save(patient);
+            .flatMap(patient -> {
+                try {
+                    return Result.success(patientRepository.saveAndFlush(patient));
+                } catch (ObjectOptimisticLockingFailureException e) {
+                    TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                    return Result.failure(staleVersion(patientId));
+                }
+            })
+            .map(saved -> {
                 publishPatientUpdatedEvent(saved);
+                publishPatientChangedEvent(saved);
                 return patientMapper.toDto(saved);
             });
     }
 
     /**
      * Enrolls a patient in a vaccination program.
+     * The enrollment row is inserted directly, guarded by the patient/program unique constraint;
+     * the patient is only loaded afterwards, to build the response.
      */
     @Transactional
     public Result<PatientDto> enrollInProgram(UUID patientId, String programCode) {
-        return findPatientById(patientId)
-            .flatMap(patient -> validateProgramEnrollment(patient, programCode))
-            .map(patient -> {
-                PatientProgram program = createProgramEnrollment(programCode);
-                patient.addProgram(program);
-                Patient saved = patientRepository.save(patient);
-                publishProgramEnrolledEvent(saved, program);
-                return patientMapper.toDto(saved);
-            });
+        PatientProgram program = createProgramEnrollment(programCode);
+        program.setId(UUID.randomUUID());
+        program.setEnrolledAt(LocalDateTime.now());
+
+        PatientProgramRepository.EnrollmentOutcome outcome = programRepository.enroll(
+            program.getId(), patientId, program.getProgramCode(), program.getProgramName(), program.getEnrolledAt()
+        );
+
+        return switch (outcome) {
+            case PATIENT_NOT_FOUND -> Result.failure(ResultError.notFound("Patient", patientId.toString()));
+            case ALREADY_ENROLLED -> Result.failure(ResultError.conflict(
+                "Patient already enrolled in program: " + programCode
+            ));
+            case ENROLLED -> {
+                // The insert and version bump bypassed Hibernate, so drop the cached rows before reloading,
+                // and again after commit so a concurrent load cannot cache the pre-enrollment state again
+                patientCache.evictSecondLevelCache(patientId);
+                evictSecondLevelCacheAfterCommit(patientId);
+                Patient patient = reload(patientId);
+                publishProgramEnrolledEvent(patient, program);
+                publishPatientChangedEvent(patient);
+                yield Result.success(patientMapper.toDto(patient));
+            }
+        };
     }
 
     /**
@@ -90,11 +148,13 @@ public class PatientCommandService {
      */
     @Transactional
     public Result<PatientDto> addGuardian(UUID patientId, CreateGuardianCommand command) {
-        return findPatientById(patientId)
+        return findPatientForUpdate(patientId)
             .map(patient -> {
                 Guardian guardian = patientMapper.toEntity(command);
                 patient.addGuardian(guardian);
                 Patient saved = patientRepository.save(patient);
+                publishPatientUpdatedEvent(saved);
+                publishPatientChangedEvent(saved);
                 return patientMapper.toDto(saved);
             });
     }
@@ -107,18 +167,16 @@ public class PatientCommandService {
         return findPatientById(patientId)
             .map(patient -> {
                 patientRepository.delete(patient);
+                publishPatientDeletedEvent(patient);
                 log.info("Deleted patient: {}", patientId);
                 return null;
             });
     }
 
-    private Result<CreatePatientCommand> validateRegistration(CreatePatientCommand command) {
-        if (command.nationalId() != null && patientRepository.existsByNationalId(command.nationalId())) {
-            return Result.failure(ResultError.conflict(
-                "Patient with national ID " + command.nationalId() + " already exists"
-            ));
-        }
-
+    /**
+     * Registration rules that need no database access, shared with bulk registration.
+     */
+    static Result<CreatePatientCommand> validateRegistrationRules(CreatePatientCommand command) {
         if (isMinor(command.dateOfBirth())) {
             if (command.guardians() == null || command.guardians().isEmpty()) {
                 return Result.failure(ResultError.validation(
@@ -130,54 +188,105 @@ public class PatientCommandService {
         return Result.success(command);
     }
 
+    /**
+     * Builds a new, unsaved patient with its guardians and program enrollments.
+     */
+    Patient newPatient(CreatePatientCommand command) {
+        Patient patient = patientMapper.toEntity(command);
+
+        if (command.guardians() != null) {
+            command.guardians().forEach(guardianCmd -> {
+                Guardian guardian = patientMapper.toEntity(guardianCmd);
+                patient.addGuardian(guardian);
+            });
+        }
+
+        if (command.programCodes() != null) {
+            command.programCodes().forEach(code -> {
+                PatientProgram program = createProgramEnrollment(code);
+                patient.addProgram(program);
+            });
+        }
+
+        return patient;
+    }
+
     private Result<Patient> createPatient(CreatePatientCommand command) {
         try {
-            Patient patient = patientMapper.toEntity(command);
-            
-            String qrCode = qrCodeGenerator.generateQRCode(UUID.randomUUID());
-            patient.setQrCode(qrCode);
-
-            if (command.guardians() != null) {
-                command.guardians().forEach(guardianCmd -> {
-                    Guardian guardian = patientMapper.toEntity(guardianCmd);
-                    patient.addGuardian(guardian);
-                });
-            }
-
-            if (command.programCodes() != null) {
-                command.programCodes().forEach(code -> {
-                    PatientProgram program = createProgramEnrollment(code);
-                    patient.addProgram(program);
-                });
-            }
+            Patient patient = newPatient(command);
 
-            Patient saved = patientRepository.save(patient);
+            Patient saved = patientRepository.saveAndFlush(patient);
             log.info("Registered new patient: {}", saved.getId());
             return Result.success(saved);
         } catch (Exception e) {
+            // The failed flush leaves the session unusable; roll back quietly instead of at commit
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            if (isNationalIdConflict(e)) {
+                return Result.failure(ResultError.conflict(
+                    "Patient with national ID " + command.nationalId() + " already exists"
+                ));
+            }
             log.error("Failed to create patient", e);
             return Result.failure(ResultError.internal("Failed to create patient: " + e.getMessage()));
         }
     }
 
+    /**
+     * Whether a failed insert broke the national ID uniqueness constraint, whether or not the
+     * failure was translated to a DataAccessException on the way.
+     */
+    static boolean isNationalIdConflict(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation) {
+                return NATIONAL_ID_CONSTRAINT.equals(violation.getConstraintName());
+            }
+        }
+        return false;
+    }
+
+    private static long versionOf(Patient patient) {
+        return patient.getVersion() != null ? patient.getVersion() : 0L;
+    }
+
+    private static ResultError staleVersion(UUID patientId) {
+        return ResultError.preconditionFailed("Patient " + patientId + " has changed since it was read");
+    }
+
     private Patient updatePatientFields(Patient patient, UpdatePatientCommand command) {
         patientMapper.updateEntityFromCommand(command, patient);
         return patient;
     }
 
     private Result<Patient> findPatientById(UUID patientId) {
-        return patientRepository.findById(patientId)
+        return patientRepository.findLocatedById(patientId)
             .map(Result::<Patient>success)
             .orElseGet(() -> Result.failure(ResultError.notFound("Patient", patientId.toString())));
     }
 
-    private Result<Patient> validateProgramEnrollment(Patient patient, String programCode) {
-        if (programRepository.existsByPatientIdAndProgramCode(patient.getId(), programCode)) {
-            return Result.failure(ResultError.conflict(
-                "Patient already enrolled in program: " + programCode
-            ));
-        }
-        return Result.success(patient);
+    /**
+     * Reads a patient changed behind Hibernate's back, replacing any copy already in the session.
+     * Detaching the stale copy and querying again, rather than refreshing it, keeps the read to the
+     * patient's own partition.
+     */
+    private Patient reload(UUID patientId) {
+        entityManager.detach(entityManager.getReference(Patient.class, patientId));
+        return patientRepository.findLocatedById(patientId)
+            .orElseThrow(() -> new EntityNotFoundException("Patient not found: " + patientId));
+    }
+
+    private void evictSecondLevelCacheAfterCommit(UUID patientId) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                patientCache.evictSecondLevelCache(patientId);
+            }
+        });
+    }
+
+    private Result<Patient> findPatientForUpdate(UUID patientId) {
+        return patientRepository.findForUpdateById(patientId)
+            .map(Result::<Patient>success)
+            .orElseGet(() -> Result.failure(ResultError.notFound("Patient", patientId.toString())));
     }
 
     private PatientProgram createProgramEnrollment(String programCode) {
@@ -188,7 +297,7 @@ public class PatientCommandService {
             .build();
     }
 
-    private boolean isMinor(LocalDate dateOfBirth) {
+    private static boolean isMinor(LocalDate dateOfBirth) {
         return Period.between(dateOfBirth, LocalDate.now()).getYears() < 18;
     }
 
@@ -204,6 +313,20 @@ public class PatientCommandService {
         log.debug("Published PatientUpdatedEvent for patient: {}", patient.getId());
     }
 
+    private void publishPatientDeletedEvent(Patient patient) {
+        PatientDeletedEvent event = new PatientDeletedEvent(patient.getId(), patient.getNationalId(), LocalDateTime.now());
+        eventPublisher.publishEvent(event);
+        eventPublisher.publishEvent(PatientChangedEvent.deleted(patient));
+        log.debug("Published PatientDeletedEvent for patient: {}", patient.getId());
+    }
+
+    /**
+     * Refreshes this instance's patient cache once the surrounding transaction commits.
+     */
+    private void publishPatientChangedEvent(Patient patient) {
+        eventPublisher.publishEvent(PatientChangedEvent.changed(patient));
+    }
+
     private void publishProgramEnrolledEvent(Patient patient, PatientProgram program) {
         PatientProgramEnrolledEvent event = new PatientProgramEnrolledEvent(
             patient.getId(),
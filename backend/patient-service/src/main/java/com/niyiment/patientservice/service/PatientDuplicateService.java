@@ -0,0 +1,454 @@
+package com.niyiment.patientservice.service;
+
+import com.niyiment.patientservice.common.Result;
+import com.niyiment.patientservice.common.ResultError;
+import com.niyiment.patientservice.dto.DuplicateCandidateDto;
+import com.niyiment.patientservice.entity.Guardian;
+import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.entity.PatientDuplicateCandidate;
+import com.niyiment.patientservice.event.PatientChangedEvent;
+import com.niyiment.patientservice.repository.PatientDuplicateCandidateRepository;
+import com.niyiment.patientservice.repository.PatientDuplicateCandidateRepository.BlockMember;
+import com.niyiment.patientservice.repository.PatientDuplicateCandidateRepository.MatchRecord;
+import com.niyiment.patientservice.util.PatientMatcher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Finds patients registered more than once, e.g. under a misspelt name or with a typo in the date
+ * of birth, and queues the likely pairs for review.
+ * Each registration or edit is checked straight after it commits against the patients sharing a
+ * blocking key with it, within a small statement timeout so a slow probe is dropped rather than
+ * delaying the response. A scheduled scan then pairs up every block across the whole read model,
+ * catching what the inline check missed: patients not yet projected when their duplicate
+ * registered, and probes that ran out of time. The scan reads the read model once, as a stream of
+ * patients ordered by blocking key, and hands the blocks over in batches to a fork-join pool that
+ * pairs, scores and records them, so only one batch of blocks is held in memory at a time. It runs
+ * on one instance at a time. Candidates are only recorded; confirming and merging them is left to
+ * a reviewer.
+ */
+@Service
+@Slf4j
+public class PatientDuplicateService {
+
+    private static final long SCAN_LOCK_ID = 0x5041_5449_454E_5403L;
+    // Patients buffered from the block stream before the blocks are handed to the pool
+    private static final int SCAN_BATCH_SIZE = 5000;
+    // Blocks one fork-join leaf pairs and scores, recording its matches in one transaction
+    private static final int BLOCKS_PER_TASK = 64;
+
+    private final PatientDuplicateCandidateRepository candidateRepository;
+    private final ScheduledJobLock jobLock;
+    private final PatientMatcher matcher;
+    private final TransactionTemplate inlineTransaction;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final String inlineBudget;
+    private final int blockLimit;
+    private final int parallelism;
+    private final int maxBlockSize;
+    private final AtomicBoolean scanning = new AtomicBoolean();
+
+    private final Counter inlineCandidates;
+    private final Counter batchCandidates;
+    private final Counter inlineSkipped;
+    private final Timer inlineTimer;
+    private final Timer scanTimer;
+
+    public PatientDuplicateService(
+        PatientDuplicateCandidateRepository candidateRepository,
+        ScheduledJobLock jobLock,
+        PlatformTransactionManager transactionManager,
+        MeterRegistry meterRegistry,
+        @Value("${patient.duplicates.min-score:11}") double minScore,
+        @Value("${patient.duplicates.inline-budget-ms:150}") long inlineBudgetMs,
+        @Value("${patient.duplicates.block-limit:50}") int blockLimit,
+        @Value("${patient.duplicates.parallelism:4}") int parallelism,
+        @Value("${patient.duplicates.max-block-size:50}") int maxBlockSize
+    ) {
+        this.candidateRepository = candidateRepository;
+        this.jobLock = jobLock;
+        this.matcher = new PatientMatcher(minScore);
+        // Runs after the registering transaction has committed, so needs a transaction of its own
+        this.inlineTransaction = new TransactionTemplate(transactionManager);
+        this.inlineTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        // Scan tasks may run on the thread reading the block stream, so never join its transaction
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        // The scan's block stream is the heavy part and only reads, so it goes to the replica
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.inlineBudget = inlineBudgetMs + "ms";
+        this.blockLimit = blockLimit;
+        this.parallelism = parallelism;
+        this.maxBlockSize = maxBlockSize;
+
+        this.inlineCandidates = Counter.builder("patient.duplicates.candidates")
+            .tag("detected_by", "inline")
+            .description("Probable duplicate patient pairs recorded")
+            .register(meterRegistry);
+        this.batchCandidates = Counter.builder("patient.duplicates.candidates")
+            .tag("detected_by", "batch")
+            .description("Probable duplicate patient pairs recorded")
+            .register(meterRegistry);
+        this.inlineSkipped = Counter.builder("patient.duplicates.inline.skipped")
+            .description("Inline duplicate checks abandoned for running over budget or failing")
+            .register(meterRegistry);
+        this.inlineTimer = Timer.builder("patient.duplicates.inline")
+            .description("Time taken to check a registered or edited patient for duplicates")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        this.scanTimer = Timer.builder("patient.duplicates.scan")
+            .description("Time taken to scan all patients for duplicates")
+            .register(meterRegistry);
+        Gauge.builder("patient.duplicates.scan.active", scanning, running -> running.get() ? 1 : 0)
+            .description("Whether a duplicate patient scan is running")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Checks a registered or edited patient for duplicates once its change has committed.
+     * Never fails the change: a check that runs over budget or errors is counted and left to the scan.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onPatientChanged(PatientChangedEvent event) {
+        if (event.deleted()) {
+            return;
+        }
+
+        check(event.patient());
+    }
+
+    /**
+     * Checks patients registered in bulk for duplicates once their chunk has committed, one at a
+     * time and each within the inline budget. Like {@link #onPatientChanged} it never fails the
+     * registration. Patients of the same chunk are not yet in the read model, so pairs within one
+     * upload are left to the scan.
+     */
+    public void onPatientsRegistered(List<Patient> patients) {
+        patients.forEach(this::check);
+    }
+
+    private void check(Patient patient) {
+        try {
+            int recorded = inlineTimer.record(() -> detect(patient));
+            inlineCandidates.increment(recorded);
+        } catch (RuntimeException e) {
+            inlineSkipped.increment();
+            log.warn("Skipped duplicate check of patient {}: {}", patient.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Scores the patient against every patient it shares a blocking key with and records the matches.
+     *
+     * @return the number of candidate pairs recorded
+     */
+    int detect(Patient patient) {
+        PatientMatcher.Subject subject = subjectOf(patient);
+        return inlineTransaction.execute(status -> {
+            candidateRepository.limitStatementTime(inlineBudget);
+            List<MatchRecord> blocked = candidateRepository.findBlockedCandidates(
+                subject.id(), subject.firstName(), subject.lastName(), subject.dateOfBirth(),
+                subject.state(), subject.lga(), String.join(",", subject.contactPhones()), blockLimit);
+
+            LocalDateTime now = LocalDateTime.now();
+            int recorded = 0;
+            for (MatchRecord record : blocked) {
+                PatientMatcher.Match match = matcher.match(subject, subjectOf(record));
+                if (match != null) {
+                    recorded += record(match, PatientDuplicateCandidate.DetectedBy.INLINE, now);
+                }
+            }
+            return recorded;
+        });
+    }
+
+    @Scheduled(cron = "${patient.duplicates.scan-cron:0 0 2 * * *}")
+    public void scheduledScan() {
+        if (!scanning.compareAndSet(false, true)) {
+            log.info("Skipping scheduled duplicate scan; a scan is already running");
+            return;
+        }
+        try {
+            runScan();
+        } catch (RuntimeException e) {
+            log.error("Duplicate patient scan failed", e);
+        } finally {
+            scanning.set(false);
+        }
+    }
+
+    /**
+     * Starts a scan of all patients in the background.
+     */
+    public Result<Void> startScan() {
+        if (!scanning.compareAndSet(false, true)) {
+            return Result.failure(ResultError.conflict("A duplicate patient scan is already running"));
+        }
+
+        Thread.ofVirtual().name("patient-duplicate-scan").start(() -> {
+            try {
+                runScan();
+            } catch (RuntimeException e) {
+                log.error("Duplicate patient scan failed", e);
+            } finally {
+                scanning.set(false);
+            }
+        });
+        return Result.success(null);
+    }
+
+    private void runScan() {
+        jobLock.runExclusively(SCAN_LOCK_ID, "duplicate patient scan", () -> scanTimer.record(this::scan));
+    }
+
+    /**
+     * Streams the blocks and scores them a batch at a time on a dedicated fork-join pool, so the
+     * scan's parallelism is bounded and it never occupies the common pool. Blocks larger than
+     * maxBlockSize are skipped: a key that common says little, and would be quadratic to pair.
+     */
+    int scan() {
+        log.info("Scanning patients for duplicates with parallelism {}", parallelism);
+        int removed = transactionTemplate.execute(status -> candidateRepository.deleteOrphanedCandidates());
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            int recorded = readOnlyTransaction.execute(status -> {
+                try (Stream<BlockMember> members = candidateRepository.streamBlockMembers()) {
+                    return scanBlocks(members, pool);
+                }
+            });
+            log.info("Scanned patients for duplicates: {} candidate pairs recorded, {} orphaned pairs removed",
+                recorded, removed);
+            return recorded;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Groups the key-ordered stream into blocks, handing them to the pool whenever a batch is full.
+     */
+    private int scanBlocks(Stream<BlockMember> members, ForkJoinPool pool) {
+        List<List<PatientMatcher.Subject>> batch = new ArrayList<>();
+        int batched = 0;
+        int recorded = 0;
+        String blockKey = null;
+        List<PatientMatcher.Subject> block = new ArrayList<>();
+        boolean oversized = false;
+
+        for (Iterator<BlockMember> it = members.iterator(); it.hasNext(); ) {
+            BlockMember member = it.next();
+            if (!member.getBlockKey().equals(blockKey)) {
+                if (!oversized && block.size() > 1) {
+                    batch.add(block);
+                    batched += block.size();
+                }
+                if (batched >= SCAN_BATCH_SIZE) {
+                    recorded += pool.invoke(new BlockRangeTask(batch, 0, batch.size()));
+                    batch = new ArrayList<>();
+                    batched = 0;
+                }
+                blockKey = member.getBlockKey();
+                block = new ArrayList<>();
+                oversized = false;
+            }
+            if (oversized) {
+                continue;
+            }
+            if (block.size() == maxBlockSize) {
+                oversized = true;
+                block.clear();
+                continue;
+            }
+            block.add(subjectOf(member));
+        }
+        if (!oversized && block.size() > 1) {
+            batch.add(block);
+        }
+        if (!batch.isEmpty()) {
+            recorded += pool.invoke(new BlockRangeTask(batch, 0, batch.size()));
+        }
+        return recorded;
+    }
+
+    /**
+     * Pairs and scores the patients of each block, then records the matches in one transaction.
+     * A pair sharing several keys is scored once per block, so it is recorded once per task.
+     */
+    private int scoreBlocks(List<List<PatientMatcher.Subject>> blocks) {
+        Map<List<UUID>, PatientMatcher.Match> matches = new HashMap<>();
+        for (List<PatientMatcher.Subject> block : blocks) {
+            for (int i = 0; i < block.size(); i++) {
+                for (int j = i + 1; j < block.size(); j++) {
+                    PatientMatcher.Match match = matcher.match(block.get(i), block.get(j));
+                    if (match != null) {
+                        matches.putIfAbsent(pairKey(match), match);
+                    }
+                }
+            }
+        }
+        if (matches.isEmpty()) {
+            return 0;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        int recorded = transactionTemplate.execute(status -> matches.values().stream()
+            .mapToInt(match -> record(match, PatientDuplicateCandidate.DetectedBy.BATCH, now))
+            .sum());
+        batchCandidates.increment(recorded);
+        return recorded;
+    }
+
+    private static List<UUID> pairKey(PatientMatcher.Match match) {
+        return match.patientId().compareTo(match.duplicateId()) < 0
+            ? List.of(match.patientId(), match.duplicateId())
+            : List.of(match.duplicateId(), match.patientId());
+    }
+
+    private int record(PatientMatcher.Match match, PatientDuplicateCandidate.DetectedBy detectedBy, LocalDateTime now) {
+        return candidateRepository.upsertCandidate(match.patientId(), match.duplicateId(), match.score(),
+            String.join(",", match.matchedFields()), detectedBy.name(), now);
+    }
+
+    /**
+     * Returns candidate pairs with the given status, highest scores first.
+     */
+    public Result<Page<DuplicateCandidateDto>> findCandidates(PatientDuplicateCandidate.Status status, int page, int size) {
+        if (page < 0 || size < 1 || size > 100) {
+            return Result.failure(ResultError.validation("Page must be at least 0 and size between 1 and 100"));
+        }
+        PageRequest pageRequest = PageRequest.of(page, size,
+            Sort.by(Sort.Order.desc("score"), Sort.Order.asc("id")));
+        return Result.success(readOnlyTransaction.execute(txStatus ->
+            candidateRepository.findByStatus(status, pageRequest).map(this::toDto)));
+    }
+
+    /**
+     * Records a reviewer's decision on a pending pair.
+     */
+    public Result<DuplicateCandidateDto> review(Long candidateId, PatientDuplicateCandidate.Status decision) {
+        if (decision == PatientDuplicateCandidate.Status.PENDING) {
+            return Result.failure(ResultError.validation("A review must confirm or dismiss the pair"));
+        }
+
+        return transactionTemplate.execute(status -> candidateRepository.findById(candidateId)
+            .map(candidate -> {
+                if (candidate.getStatus() != PatientDuplicateCandidate.Status.PENDING) {
+                    return Result.<DuplicateCandidateDto>failure(
+                        ResultError.conflict("Duplicate candidate has already been reviewed"));
+                }
+                candidate.setStatus(decision);
+                candidate.setReviewedAt(LocalDateTime.now());
+                return Result.success(toDto(candidate));
+            })
+            .orElseGet(() -> Result.failure(ResultError.notFound("Duplicate candidate", String.valueOf(candidateId)))));
+    }
+
+    private DuplicateCandidateDto toDto(PatientDuplicateCandidate candidate) {
+        return new DuplicateCandidateDto(
+            candidate.getId(),
+            candidate.getPatientId(),
+            candidate.getDuplicateId(),
+            candidate.getScore(),
+            Arrays.asList(candidate.getMatchedFields().split(",")),
+            candidate.getDetectedBy(),
+            candidate.getStatus(),
+            candidate.getDetectedAt(),
+            candidate.getReviewedAt()
+        );
+    }
+
+    private static PatientMatcher.Subject subjectOf(Patient patient) {
+        Collection<String> phones = Stream.concat(
+            Stream.of(patient.getPhone()),
+            patient.getGuardians().stream().map(Guardian::getPhone)
+        ).toList();
+        return new PatientMatcher.Subject(
+            patient.getId(),
+            patient.getFirstName(),
+            patient.getLastName(),
+            patient.getDateOfBirth(),
+            patient.getGender() != null ? patient.getGender().name() : null,
+            patient.getNationalId(),
+            patient.getState(),
+            patient.getLga(),
+            PatientMatcher.phoneKeys(phones)
+        );
+    }
+
+    private static PatientMatcher.Subject subjectOf(MatchRecord record) {
+        Set<String> phones = record.getContactPhones() == null || record.getContactPhones().isEmpty()
+            ? Set.of()
+            : Set.of(record.getContactPhones().split(","));
+        return new PatientMatcher.Subject(
+            record.getId(),
+            record.getFirstName(),
+            record.getLastName(),
+            record.getDateOfBirth(),
+            record.getGender(),
+            record.getNationalId(),
+            record.getState(),
+            record.getLga(),
+            phones
+        );
+    }
+
+    /**
+     * Scores the blocks in [from, to), splitting the range in half until it is small enough.
+     */
+    private class BlockRangeTask extends RecursiveTask<Integer> {
+
+        private final List<List<PatientMatcher.Subject>> blocks;
+        private final int from;
+        private final int to;
+
+        BlockRangeTask(List<List<PatientMatcher.Subject>> blocks, int from, int to) {
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (to - from <= BLOCKS_PER_TASK) {
+                return scoreBlocks(blocks.subList(from, to));
+            }
+            int middle = (from + to) >>> 1;
+            BlockRangeTask left = new BlockRangeTask(blocks, from, middle);
+            left.fork();
+            int right = new BlockRangeTask(blocks, middle, to).compute();
+            return left.join() + right;
+        }
+    }
+}
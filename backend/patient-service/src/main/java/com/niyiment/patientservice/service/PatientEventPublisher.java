@@ -2,81 +2,158 @@ package com.niyiment.patientservice.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.niyiment.patientservice.entity.OutboxEvent;
+import com.niyiment.patientservice.event.CampaignEnrollmentCompletedEvent;
+import com.niyiment.patientservice.event.PatientDeletedEvent;
 import com.niyiment.patientservice.event.PatientProgramEnrolledEvent;
+import com.niyiment.patientservice.event.PatientProgramEnrollmentBatchEvent;
+import com.niyiment.patientservice.event.PatientRegistrationBatchEvent;
 import com.niyiment.patientservice.event.PatientRegisteredEvent;
+import com.niyiment.patientservice.event.PatientUpdateBatchEvent;
 import com.niyiment.patientservice.event.PatientUpdatedEvent;
-import lombok.RequiredArgsConstructor;
+import com.niyiment.patientservice.repository.OutboxEventRepository;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.event.EventListener;
-import org.springframework.kafka.core.KafkaTemplate;
-import org.springframework.kafka.support.SendResult;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
 
-import java.util.concurrent.CompletableFuture;
+import java.util.List;
+import java.util.UUID;
 
 /**
  * Service responsible for publishing patient events to Kafka.
- * Listens to internal Spring events and publishes them to Kafka topics.
+ * Listens to internal Spring events and records them in the transactional outbox
+ * before the surrounding transaction commits; {@link OutboxRelay} forwards them to Kafka topics.
  */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class PatientEventPublisher {
 
-    private static final String PATIENT_REGISTERED_TOPIC = "patient.registered";
-    private static final String PATIENT_UPDATED_TOPIC = "patient.updated";
-    private static final String PATIENT_PROGRAM_ENROLLED_TOPIC = "patient.program.enrolled";
+    public static final String PATIENT_REGISTERED_TOPIC = "patient.registered";
+    public static final String PATIENT_UPDATED_TOPIC = "patient.updated";
+    public static final String PATIENT_PROGRAM_ENROLLED_TOPIC = "patient.program.enrolled";
+    public static final String PATIENT_DELETED_TOPIC = "patient.deleted";
+    public static final String CAMPAIGN_ENROLLMENT_COMPLETED_TOPIC = "patient.campaign.completed";
 
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    /**
+     * Record header carrying when the event was written, in epoch milliseconds. The record
+     * timestamp is only when the relay sent it, which can be much later.
+     */
+    public static final String OCCURRED_AT_HEADER = "occurred-at";
+
+    /**
+     * Record header carrying the patient.instance-id of the instance that recorded the event.
+     */
+    public static final String ORIGIN_HEADER = "origin";
+
+    private final OutboxEventRepository outboxRepository;
     private final ObjectMapper objectMapper;
+    private final String instanceId;
+
+    public PatientEventPublisher(
+        OutboxEventRepository outboxRepository,
+        ObjectMapper objectMapper,
+        @Value("${patient.instance-id}") String instanceId
+    ) {
+        this.outboxRepository = outboxRepository;
+        this.objectMapper = objectMapper;
+        this.instanceId = instanceId;
+    }
 
     /**
-     * Publishes PatientRegisteredEvent to Kafka.
+     * Records PatientRegisteredEvent in the outbox.
      */
-    @Async
-    @EventListener
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
     public void handlePatientRegistered(PatientRegisteredEvent event) {
-        publishEvent(PATIENT_REGISTERED_TOPIC, event.patientId().toString(), event);
+        appendToOutbox(PATIENT_REGISTERED_TOPIC, event.patientId(), event);
     }
 
     /**
-     * Publishes PatientUpdatedEvent to Kafka.
+     * Records every PatientRegisteredEvent of a bulk registration in the outbox with one batched insert.
      */
-    @Async
-    @EventListener
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void handlePatientRegistrationBatch(PatientRegistrationBatchEvent batch) {
+        List<OutboxEvent> outboxEvents = batch.events().stream()
+            .map(event -> toOutboxEvent(PATIENT_REGISTERED_TOPIC, event.patientId(), event))
+            .toList();
+        outboxRepository.saveAll(outboxEvents);
+        log.debug("Recorded {} PatientRegisteredEvents in outbox", outboxEvents.size());
+    }
+
+    /**
+     * Records PatientUpdatedEvent in the outbox.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
     public void handlePatientUpdated(PatientUpdatedEvent event) {
-        publishEvent(PATIENT_UPDATED_TOPIC, event.patientId().toString(), event);
+        appendToOutbox(PATIENT_UPDATED_TOPIC, event.patientId(), event);
+    }
+
+    /**
+     * Records every PatientUpdatedEvent of a reclassification chunk in the outbox with one batched insert.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void handlePatientUpdateBatch(PatientUpdateBatchEvent batch) {
+        List<OutboxEvent> outboxEvents = batch.events().stream()
+            .map(event -> toOutboxEvent(PATIENT_UPDATED_TOPIC, event.patientId(), event))
+            .toList();
+        outboxRepository.saveAll(outboxEvents);
+        log.debug("Recorded {} PatientUpdatedEvents in outbox", outboxEvents.size());
     }
 
     /**
-     * Publishes PatientProgramEnrolledEvent to Kafka.
+     * Records PatientProgramEnrolledEvent in the outbox.
      */
-    @Async
-    @EventListener
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
     public void handlePatientProgramEnrolled(PatientProgramEnrolledEvent event) {
-        publishEvent(PATIENT_PROGRAM_ENROLLED_TOPIC, event.patientId().toString(), event);
+        appendToOutbox(PATIENT_PROGRAM_ENROLLED_TOPIC, event.patientId(), event);
+    }
+
+    /**
+     * Records every PatientProgramEnrolledEvent of a campaign enrollment chunk in the outbox with one batched insert.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void handlePatientProgramEnrollmentBatch(PatientProgramEnrollmentBatchEvent batch) {
+        List<OutboxEvent> outboxEvents = batch.events().stream()
+            .map(event -> toOutboxEvent(PATIENT_PROGRAM_ENROLLED_TOPIC, event.patientId(), event))
+            .toList();
+        outboxRepository.saveAll(outboxEvents);
+        log.debug("Recorded {} PatientProgramEnrolledEvents in outbox", outboxEvents.size());
+    }
+
+    /**
+     * Records CampaignEnrollmentCompletedEvent in the outbox, keyed by job ID.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void handleCampaignEnrollmentCompleted(CampaignEnrollmentCompletedEvent event) {
+        appendToOutbox(CAMPAIGN_ENROLLMENT_COMPLETED_TOPIC, event.jobId(), event);
+    }
+
+    /**
+     * Records PatientDeletedEvent in the outbox.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void handlePatientDeleted(PatientDeletedEvent event) {
+        appendToOutbox(PATIENT_DELETED_TOPIC, event.patientId(), event);
+    }
+
+    private void appendToOutbox(String topic, UUID aggregateId, Object event) {
+        outboxRepository.save(toOutboxEvent(topic, aggregateId, event));
+        log.debug("Recorded {} in outbox for patient: {}", event.getClass().getSimpleName(), aggregateId);
     }
 
-    private void publishEvent(String topic, String key, Object event) {
+    private OutboxEvent toOutboxEvent(String topic, UUID aggregateId, Object event) {
         try {
-            String eventJson = objectMapper.writeValueAsString(event);
-            
-            CompletableFuture<SendResult<String, String>> future = kafkaTemplate.send(topic, key, eventJson);
-            
-            future.whenComplete((result, ex) -> {
-                if (ex != null) {
-                    log.error("Failed to publish event to topic {}: {}", topic, ex.getMessage(), ex);
-                } else {
-                    log.info("Successfully published event to topic {}, partition {}, offset {}",
-                        topic,
-                        result.getRecordMetadata().partition(),
-                        result.getRecordMetadata().offset()
-                    );
-                }
-            });
+            return OutboxEvent.builder()
+                .aggregateId(aggregateId)
+                .topic(topic)
+                .eventType(event.getClass().getSimpleName())
+                .payload(objectMapper.writeValueAsString(event))
+                .origin(instanceId)
+                .build();
         } catch (JsonProcessingException e) {
-            log.error("Failed to serialize event for topic {}: {}", topic, e.getMessage(), e);
+            // Failing here rolls back the command so the change is never committed without its event
+            throw new IllegalStateException("Failed to serialize event for topic " + topic, e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,185 @@
+package com.niyiment.patientservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.niyiment.patientservice.common.Result;
+import com.niyiment.patientservice.common.ResultError;
+import com.niyiment.patientservice.dto.PatientSearchQuery;
+import com.niyiment.patientservice.dto.PatientSummaryDto;
+import com.niyiment.patientservice.repository.PatientRepository;
+import com.niyiment.patientservice.util.PermitHoldingBody;
+import com.opencsv.CSVWriter;
+import com.opencsv.ICSVWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Service streaming patient search results to analysts as CSV or NDJSON.
+ * Rows are read through a database cursor with a fixed fetch size and written to the response
+ * as they arrive, so memory use stays constant however many patients match. Each export holds
+ * a connection for its whole duration, so the number of concurrent exports is capped.
+ */
+@Service
+@Slf4j
+public class PatientExportService {
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final String[] CSV_HEADER = {
+        "id", "firstName", "lastName", "dateOfBirth", "gender", "nationalId", "phone",
+        "state", "lga", "patientType", "createdAt", "updatedAt"
+    };
+
+    public enum Format {
+        CSV, NDJSON
+    }
+
+    private final PatientRepository patientRepository;
+    private final PatientQueryService queryService;
+    private final ObjectWriter jsonWriter;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Semaphore exportPermits;
+    private final int fetchSize;
+    private final Duration requestTimeout;
+
+    private final Counter exportedRows;
+    private final Counter rejectedExports;
+    private final Timer exportTimer;
+
+    public PatientExportService(
+        PatientRepository patientRepository,
+        PatientQueryService queryService,
+        ObjectMapper objectMapper,
+        PlatformTransactionManager transactionManager,
+        MeterRegistry meterRegistry,
+        @Value("${patient.export.fetch-size:1000}") int fetchSize,
+        @Value("${patient.export.max-concurrent-exports:2}") int maxConcurrentExports,
+        @Value("${patient.export.request-timeout:30m}") Duration requestTimeout
+    ) {
+        this.patientRepository = patientRepository;
+        this.queryService = queryService;
+        this.jsonWriter = objectMapper.writerFor(PatientSummaryDto.class);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.exportPermits = new Semaphore(maxConcurrentExports);
+        this.fetchSize = fetchSize;
+        this.requestTimeout = requestTimeout;
+
+        this.exportedRows = Counter.builder("patient.export.rows")
+            .description("Patient rows written by exports")
+            .register(meterRegistry);
+        this.rejectedExports = Counter.builder("patient.export.rejected")
+            .description("Exports rejected because all export slots were in use")
+            .register(meterRegistry);
+        this.exportTimer = Timer.builder("patient.export")
+            .description("Time taken to stream a patient export")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Prepares a streaming export of every patient matching the search filter.
+     * Paging fields of the query are ignored; rows are ordered by the requested sort and then by ID.
+     * An export slot is taken here and released once the body has been written, or once the
+     * request ends if the body never runs; see {@link PermitHoldingBody}. Exports may stream well
+     * past the default async request timeout, so they carry their own.
+     *
+     * @param query  search filter and sort
+     * @param format output format
+     * @param gzip   whether to gzip the body
+     */
+    public Result<PermitHoldingBody> exportPatients(PatientSearchQuery query, Format format, boolean gzip) {
+        if (!exportPermits.tryAcquire()) {
+            rejectedExports.increment();
+            log.warn("Rejected patient export: all export slots in use");
+            return Result.failure(ResultError.unavailable("Export capacity exhausted, retry shortly"));
+        }
+
+        return Result.success(new PermitHoldingBody(outputStream -> {
+            Timer.Sample sample = Timer.start();
+            try {
+                OutputStream target = gzip ? new GZIPOutputStream(outputStream, WRITE_BUFFER_SIZE) : outputStream;
+                long rows = readOnlyTransaction.execute(status -> {
+                    try (Stream<PatientSummaryDto> summaries = patientRepository.streamSummaries(
+                        queryService.createSpecification(query), queryService.createCursorSort(query), fetchSize)) {
+                        return write(summaries.iterator(), format, target);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                if (target instanceof GZIPOutputStream gzipStream) {
+                    gzipStream.finish();
+                }
+                outputStream.flush();
+                log.info("Exported {} patients as {}", rows, format);
+            } finally {
+                sample.stop(exportTimer);
+            }
+        }, exportPermits, requestTimeout));
+    }
+
+    private long write(Iterator<PatientSummaryDto> summaries, Format format, OutputStream target) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+        long rows = format == Format.CSV
+            ? writeCsv(summaries, writer)
+            : writeNdjson(summaries, writer);
+        writer.flush();
+        return rows;
+    }
+
+    private long writeCsv(Iterator<PatientSummaryDto> summaries, Writer writer) {
+        // Not closed: closing would close the response stream before a gzip trailer is written
+        ICSVWriter csvWriter = new CSVWriter(writer);
+        csvWriter.writeNext(CSV_HEADER, false);
+
+        long rows = 0;
+        while (summaries.hasNext()) {
+            PatientSummaryDto summary = summaries.next();
+            csvWriter.writeNext(new String[]{
+                summary.id().toString(),
+                summary.firstName(),
+                summary.lastName(),
+                summary.dateOfBirth().toString(),
+                summary.gender() != null ? summary.gender().name() : null,
+                summary.nationalId(),
+                summary.phone(),
+                summary.state(),
+                summary.lga(),
+                summary.patientType().name(),
+                summary.createdAt().toString(),
+                summary.updatedAt().toString()
+            }, false);
+            rows++;
+        }
+        exportedRows.increment(rows);
+        return rows;
+    }
+
+    private long writeNdjson(Iterator<PatientSummaryDto> summaries, Writer writer) throws IOException {
+        long rows = 0;
+        while (summaries.hasNext()) {
+            writer.write(jsonWriter.writeValueAsString(summaries.next()));
+            writer.write('\n');
+            rows++;
+        }
+        exportedRows.increment(rows);
+        return rows;
+    }
+}
@@ -0,0 +1,90 @@
+package com.niyiment.patientservice.service;
+
+import com.niyiment.patientservice.common.Result;
+import com.niyiment.patientservice.common.ResultError;
+import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.repository.PatientRepository;
+import com.niyiment.patientservice.util.PDFGenerator;
+import com.niyiment.patientservice.util.PermitHoldingBody;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Service streaming patient record PDFs straight into the HTTP response.
+ * The patient graph is loaded up front so rendering holds no database connection, and a
+ * fixed number of render permits keeps PDF bursts from starving interactive requests.
+ */
+@Service
+@Slf4j
+public class PatientPdfService {
+
+    private final PatientRepository patientRepository;
+    private final PDFGenerator pdfGenerator;
+    private final Semaphore renderPermits;
+
+    private final Timer renderTimer;
+    private final DistributionSummary documentSize;
+    private final Counter rejectedRenders;
+
+    public PatientPdfService(
+        PatientRepository patientRepository,
+        PDFGenerator pdfGenerator,
+        MeterRegistry meterRegistry,
+        @Value("${patient.pdf.max-concurrent-renders:4}") int maxConcurrentRenders
+    ) {
+        this.patientRepository = patientRepository;
+        this.pdfGenerator = pdfGenerator;
+        this.renderPermits = new Semaphore(maxConcurrentRenders);
+
+        this.renderTimer = Timer.builder("patient.pdf.render")
+            .description("Time taken to render and stream a patient record PDF")
+            .register(meterRegistry);
+        this.documentSize = DistributionSummary.builder("patient.pdf.size")
+            .description("Size of rendered patient record PDFs")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        this.rejectedRenders = Counter.builder("patient.pdf.rejected")
+            .description("PDF exports rejected because all render permits were in use")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Prepares a streaming PDF export of a patient's record.
+     * A render permit is taken here and released once the body has been written, or once the
+     * request ends if the body never runs; see {@link PermitHoldingBody}.
+     */
+    @Transactional(readOnly = true)
+    public Result<PermitHoldingBody> exportPatientRecord(UUID patientId) {
+        Optional<Patient> found = patientRepository.findLocatedById(patientId);
+        if (found.isEmpty()) {
+            return Result.failure(ResultError.notFound("Patient", patientId.toString()));
+        }
+
+        Patient patient = found.get();
+        patientRepository.fetchGuardiansByIdIn(List.of(patientId));
+        patientRepository.fetchProgramsByIdIn(List.of(patientId));
+
+        if (!renderPermits.tryAcquire()) {
+            rejectedRenders.increment();
+            log.warn("Rejected PDF export for patient {}: render capacity exhausted", patientId);
+            return Result.failure(ResultError.unavailable("PDF rendering capacity exhausted, retry shortly"));
+        }
+
+        return Result.success(new PermitHoldingBody(outputStream -> {
+            long bytes = renderTimer.record(() -> pdfGenerator.writePatientRecordPDF(patient, outputStream));
+            documentSize.record(bytes);
+            log.info("Generated PDF for patient: {} ({} bytes)", patientId, bytes);
+        }, renderPermits));
+    }
+}
@@ -1,18 +1,31 @@
 package com.niyiment.patientservice.service;
 
+import com.niyiment.patientservice.common.PatientCursor;
+import com.niyiment.patientservice.common.PatientETag;
 import com.niyiment.patientservice.common.Result;
 import com.niyiment.patientservice.common.ResultError;
+import com.niyiment.patientservice.dto.CursorPage;
 import com.niyiment.patientservice.dto.PatientDto;
+import com.niyiment.patientservice.dto.PatientFieldSet;
 import com.niyiment.patientservice.dto.PatientSearchQuery;
+import com.niyiment.patientservice.dto.PatientSummaryDto;
 import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.entity.PatientProgram;
+import com.niyiment.patientservice.entity.PatientView;
 import com.niyiment.patientservice.mapper.PatientMapper;
 import com.niyiment.patientservice.repository.PatientRepository;
-import com.niyiment.patientservice.util.PDFGenerator;
+import com.niyiment.patientservice.repository.PatientStatisticsRepository;
+import com.niyiment.patientservice.repository.PatientViewRepository;
 import com.niyiment.patientservice.util.QRCodeGenerator;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Path;
 import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.Cacheable;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -21,13 +34,28 @@ import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * Query service handling patient read operations.
- * Implements CQRS pattern for query operations with caching.
+ * Implements CQRS pattern for query operations with caching. Patient lists and searches read the
+ * denormalised patient_view maintained by {@link PatientViewProjector}, one row per patient with
+ * guardians and programs embedded, so they are eventually consistent with commands. Lookups of a
+ * single patient go through the patient cache to the patient tables and always see the latest commit:
+ * they, and the version lookups answering conditional requests, run in read-write transactions so
+ * they are served by the primary. A lagging replica would otherwise put a patient evicted moments ago
+ * back into the caches at its previous version.
+ * The patient tables are partitioned by state: queries against them compare the state column to the
+ * given value as is, so PostgreSQL can prune every other state's partitions.
  */
 @Service
 @RequiredArgsConstructor
@@ -35,28 +63,79 @@ import java.util.UUID;
 @Transactional(readOnly = true)
 public class PatientQueryService {
 
+    private static final int MIN_QR_SIZE = 64;
+    private static final int MAX_QR_SIZE = 1024;
+    private static final int MIN_TRIGRAM_TERM_LENGTH = 3;
+    private static final char LIKE_ESCAPE = '\\';
+    private static final int MAX_SIMILARITY_RESULTS = 50;
+
+    private static final Set<String> CURSOR_SORT_FIELDS = Set.of(
+        "createdAt", "updatedAt", "dateOfBirth", "lastName", "firstName"
+    );
+
     private final PatientRepository patientRepository;
+    private final PatientViewRepository viewRepository;
+    private final PatientStatisticsRepository statisticsRepository;
     private final PatientMapper patientMapper;
     private final QRCodeGenerator qrCodeGenerator;
-    private final PDFGenerator pdfGenerator;
+    private final PatientCacheService patientCache;
 
     /**
-     * Retrieves a patient by ID.
+     * Retrieves a patient by ID, served from the patient cache when present.
      */
-    @Cacheable(value = "patients", key = "#patientId")
+    @Transactional
     public Result<PatientDto> getPatientById(UUID patientId) {
-        return patientRepository.findById(patientId)
-            .map(patientMapper::toDto)
+        return findPatient(patientId)
+            .map(Result::<PatientDto>success)
+            .orElseGet(() -> Result.failure(ResultError.notFound("Patient", patientId.toString())));
+    }
+
+    /**
+     * Retrieves only the requested fields of a patient. A cached patient serves any field set
+     * without a query. Otherwise only the requested columns are read, and only the expanded
+     * collections loaded; a patient expanded with both collections is loaded whole and cached.
+     */
+    @Transactional
+    public Result<PatientDto> getPatientById(UUID patientId, PatientFieldSet fields) {
+        if (fields.isFull()) {
+            return getPatientById(patientId);
+        }
+        return findPatient(patientId, fields)
             .map(Result::<PatientDto>success)
             .orElseGet(() -> Result.failure(ResultError.notFound("Patient", patientId.toString())));
     }
 
     /**
      * Retrieves a patient by national ID.
+     * The national ID to patient ID mapping is cached separately, so a hit resolves
+     * through the same version-aware patient entry as a lookup by ID.
      */
+    @Transactional
     public Result<PatientDto> getPatientByNationalId(String nationalId) {
+        Optional<PatientDto> cached = patientCache.getIdByNationalId(nationalId)
+            .flatMap(this::findPatient);
+        if (cached.isPresent()) {
+            return Result.success(cached.get());
+        }
+
         return patientRepository.findByNationalId(nationalId)
-            .map(patientMapper::toDto)
+            .map(patientCache::put)
+            .map(Result::<PatientDto>success)
+            .orElseGet(() -> Result.failure(ResultError.notFound("Patient", "national ID: " + nationalId)));
+    }
+
+    /**
+     * Retrieves only the requested fields of the patient with a national ID; see
+     * {@link #getPatientById(UUID, PatientFieldSet)}.
+     */
+    @Transactional
+    public Result<PatientDto> getPatientByNationalId(String nationalId, PatientFieldSet fields) {
+        if (fields.isFull()) {
+            return getPatientByNationalId(nationalId);
+        }
+        return patientCache.getIdByNationalId(nationalId)
+            .or(() -> patientRepository.findVersionByNationalId(nationalId).map(PatientRepository.PatientVersion::getId))
+            .flatMap(patientId -> findPatient(patientId, fields))
             .map(Result::<PatientDto>success)
             .orElseGet(() -> Result.failure(ResultError.notFound("Patient", "national ID: " + nationalId)));
     }
@@ -64,6 +143,7 @@ public class PatientQueryService {
     /**
      * Retrieves a patient by scanning QR code.
      */
+    @Transactional
     public Result<PatientDto> getPatientByQRCode(String qrCodeData) {
         UUID patientId = qrCodeGenerator.extractPatientId(qrCodeData);
         
@@ -71,21 +151,98 @@ public class PatientQueryService {
             return Result.failure(ResultError.validation("Invalid QR code format"));
         }
 
-        return patientRepository.findById(patientId)
-            .map(patientMapper::toDto)
+        return findPatient(patientId)
             .map(Result::<PatientDto>success)
             .orElseGet(() -> Result.failure(ResultError.notFound("Patient", "QR code")));
     }
 
+    /**
+     * Retrieves only the requested fields of the patient a QR code identifies; see
+     * {@link #getPatientById(UUID, PatientFieldSet)}.
+     */
+    @Transactional
+    public Result<PatientDto> getPatientByQRCode(String qrCodeData, PatientFieldSet fields) {
+        if (fields.isFull()) {
+            return getPatientByQRCode(qrCodeData);
+        }
+        UUID patientId = qrCodeGenerator.extractPatientId(qrCodeData);
+        if (patientId == null) {
+            return Result.failure(ResultError.validation("Invalid QR code format"));
+        }
+
+        return findPatient(patientId, fields)
+            .map(Result::<PatientDto>success)
+            .orElseGet(() -> Result.failure(ResultError.notFound("Patient", "QR code")));
+    }
+
+    /**
+     * Current ETag of a patient, for answering conditional requests without loading the patient:
+     * from the patient cache when present, otherwise from a query reading only its ID and version.
+     */
+    @Transactional
+    public Optional<PatientETag> findPatientETag(UUID patientId) {
+        Optional<PatientDto> cached = patientCache.get(patientId);
+        if (cached.isPresent()) {
+            return cached.map(patient -> PatientETag.of(patient.id(), patient.version()));
+        }
+        return patientRepository.findVersionById(patientId)
+            .map(found -> PatientETag.of(found.getId(), found.getVersion()));
+    }
+
+    /**
+     * Current ETag of the patient with the given national ID; see {@link #findPatientETag}.
+     */
+    @Transactional
+    public Optional<PatientETag> findPatientETagByNationalId(String nationalId) {
+        Optional<PatientDto> cached = patientCache.getIdByNationalId(nationalId)
+            .flatMap(patientCache::get);
+        if (cached.isPresent()) {
+            return cached.map(patient -> PatientETag.of(patient.id(), patient.version()));
+        }
+        return patientRepository.findVersionByNationalId(nationalId)
+            .map(found -> PatientETag.of(found.getId(), found.getVersion()));
+    }
+
+    /**
+     * Current ETag of the patient a QR code identifies; see {@link #findPatientETag}.
+     */
+    @Transactional
+    public Optional<PatientETag> findPatientETagByQRCode(String qrCodeData) {
+        return Optional.ofNullable(qrCodeGenerator.extractPatientId(qrCodeData))
+            .flatMap(this::findPatientETag);
+    }
+
+    /**
+     * Renders a patient's identification QR code.
+     * Images are derived from the patient ID alone, so repeated renders are served from cache.
+     */
+    public Result<byte[]> renderPatientQRCode(UUID patientId, QRCodeGenerator.Format format, int size) {
+        if (size < MIN_QR_SIZE || size > MAX_QR_SIZE) {
+            return Result.failure(ResultError.validation(
+                "QR code size must be between " + MIN_QR_SIZE + " and " + MAX_QR_SIZE + " pixels"
+            ));
+        }
+        if (patientRepository.findVersionById(patientId).isEmpty()) {
+            return Result.failure(ResultError.notFound("Patient", patientId.toString()));
+        }
+
+        try {
+            return Result.success(qrCodeGenerator.render(patientId, format, size));
+        } catch (Exception e) {
+            log.error("Failed to render QR code for patient: {}", patientId, e);
+            return Result.failure(ResultError.internal("Failed to render QR code: " + e.getMessage()));
+        }
+    }
+
     /**
      * Searches patients with advanced filtering.
      */
     public Result<Page<PatientDto>> searchPatients(PatientSearchQuery query) {
         try {
             Pageable pageable = createPageable(query);
-            Specification<Patient> spec = createSpecification(query);
-            
-            Page<Patient> patients = patientRepository.findAll(spec, pageable);
+            Specification<PatientView> spec = createViewSpecification(query);
+
+            Page<PatientView> patients = viewRepository.findAll(spec, pageable);
             Page<PatientDto> dtoPage = patients.map(patientMapper::toDto);
             
             log.debug("Found {} patients matching search criteria", dtoPage.getTotalElements());
@@ -96,13 +253,171 @@ public class PatientQueryService {
         }
     }
 
+    /**
+     * Searches patients selecting only the requested fields of each; see
+     * {@link #searchPatients(PatientSearchQuery)}.
+     */
+    public Result<Page<PatientDto>> searchPatients(PatientSearchQuery query, PatientFieldSet fields) {
+        if (fields.isFull()) {
+            return searchPatients(query);
+        }
+        try {
+            return Result.success(viewRepository.findFields(createViewSpecification(query), createPageable(query), fields));
+        } catch (Exception e) {
+            log.error("Failed to search patients", e);
+            return Result.failure(ResultError.internal("Failed to search patients: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Searches patients returning the lightweight summary view.
+     * Selects only the summary columns, never the QR code or the guardian and program tables.
+     */
+    public Result<Page<PatientSummaryDto>> searchPatientSummaries(PatientSearchQuery query) {
+        try {
+            Page<PatientSummaryDto> summaries = patientRepository.findSummaries(
+                createSpecification(query),
+                createPageable(query)
+            );
+            return Result.success(summaries);
+        } catch (Exception e) {
+            log.error("Failed to search patient summaries", e);
+            return Result.failure(ResultError.internal("Failed to search patients: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Searches patients using keyset pagination.
+     * Seeks past the (sort key, id) of the previous page instead of skipping an offset, so every
+     * page costs the same regardless of depth. The total count is only computed when requested.
+     */
+    public Result<CursorPage<PatientDto>> searchPatientsByCursor(
+        PatientSearchQuery query,
+        String cursor,
+        boolean includeTotal
+    ) {
+        return searchByCursor(
+            query, cursor, includeTotal, createViewSpecification(query),
+            (spec, sort) -> viewRepository.findBy(spec, q -> q.sortBy(sort).limit(query.size() + 1).all()),
+            viewRepository::count,
+            view -> toCursor(query, sortValueOf(view, query.sortBy()), view.getId()),
+            page -> page.stream().map(patientMapper::toDto).toList()
+        );
+    }
+
+    /**
+     * Keyset-paginated search selecting only the requested fields of each patient. The sort field
+     * is read as well, to build the cursor, even when it was not requested.
+     */
+    public Result<CursorPage<PatientDto>> searchPatientsByCursor(
+        PatientSearchQuery query,
+        String cursor,
+        boolean includeTotal,
+        PatientFieldSet fields
+    ) {
+        if (fields.isFull()) {
+            return searchPatientsByCursor(query, cursor, includeTotal);
+        }
+        PatientFieldSet selected = CURSOR_SORT_FIELDS.contains(query.sortBy()) ? fields.with(query.sortBy()) : fields;
+        return searchByCursor(
+            query, cursor, includeTotal, createViewSpecification(query),
+            (spec, sort) -> viewRepository.findFields(spec, sort, query.size() + 1, selected),
+            viewRepository::count,
+            patient -> toCursor(query, sortValueOf(patient, query.sortBy()), patient.id()),
+            page -> page
+        );
+    }
+
+    /**
+     * Keyset-paginated variant of {@link #searchPatientSummaries(PatientSearchQuery)}.
+     */
+    public Result<CursorPage<PatientSummaryDto>> searchPatientSummariesByCursor(
+        PatientSearchQuery query,
+        String cursor,
+        boolean includeTotal
+    ) {
+        return searchByCursor(
+            query, cursor, includeTotal, createSpecification(query),
+            (spec, sort) -> patientRepository.findSummaries(spec, sort, query.size() + 1),
+            patientRepository::count,
+            summary -> toCursor(query, sortValueOf(summary, query.sortBy()), summary.id()),
+            page -> page
+        );
+    }
+
+    private <E, T, R> Result<CursorPage<R>> searchByCursor(
+        PatientSearchQuery query,
+        String cursor,
+        boolean includeTotal,
+        Specification<E> filter,
+        BiFunction<Specification<E>, Sort, List<T>> fetcher,
+        Function<Specification<E>, Long> counter,
+        Function<T, PatientCursor> cursorOf,
+        Function<List<T>, List<R>> mapper
+    ) {
+        if (!CURSOR_SORT_FIELDS.contains(query.sortBy())) {
+            return Result.failure(ResultError.validation(
+                "Cursor pagination supports sorting by " + CURSOR_SORT_FIELDS + " only"
+            ));
+        }
+
+        Specification<E> spec = filter;
+        if (cursor != null && !cursor.isBlank()) {
+            Result<Specification<E>> seek = PatientCursor.decode(cursor)
+                .flatMap(decoded -> this.<E>createSeekSpecification(decoded, query));
+            if (seek.isFailure()) {
+                return Result.failure(seek.getError());
+            }
+            spec = filter.and(seek.getValue());
+        }
+
+        try {
+            int size = query.size();
+            List<T> rows = fetcher.apply(spec, createCursorSort(query));
+
+            boolean hasNext = rows.size() > size;
+            List<T> page = hasNext ? rows.subList(0, size) : rows;
+            String nextCursor = hasNext ? cursorOf.apply(page.getLast()).encode() : null;
+            Long total = includeTotal ? counter.apply(filter) : null;
+
+            List<R> content = mapper.apply(page);
+            log.debug("Cursor search returned {} patients, hasNext={}", content.size(), hasNext);
+            return Result.success(new CursorPage<>(content, nextCursor, hasNext, total));
+        } catch (Exception e) {
+            log.error("Failed to search patients by cursor", e);
+            return Result.failure(ResultError.internal("Failed to search patients: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Finds patients whose full name is similar to the given name, ranked by trigram similarity.
+     * Tolerates spelling variants, e.g. "Chukwuemeka Okafor" matches "Chukwuemka Okafo".
+     */
+    public Result<List<PatientDto>> findSimilarPatients(String name, int limit) {
+        if (name == null || name.isBlank()) {
+            return Result.failure(ResultError.validation("Name is required for similarity search"));
+        }
+
+        try {
+            int boundedLimit = Math.max(1, Math.min(limit, MAX_SIMILARITY_RESULTS));
+            List<PatientView> patients = viewRepository.findBySimilarName(name.trim(), boundedLimit);
+            List<PatientDto> matches = patients.stream()
+                .map(patientMapper::toDto)
+                .toList();
+            return Result.success(matches);
+        } catch (Exception e) {
+            log.error("Failed to run similarity search", e);
+            return Result.failure(ResultError.internal("Failed to search patients: " + e.getMessage()));
+        }
+    }
+
     /**
      * Retrieves all patients enrolled in a specific program.
      */
     public Result<Page<PatientDto>> getPatientsByProgram(String programCode, int page, int size) {
         try {
             Pageable pageable = PageRequest.of(page, size, Sort.by("createdAt").descending());
-            Page<Patient> patients = patientRepository.findByProgramCode(programCode, pageable);
+            Page<PatientView> patients = viewRepository.findAll(enrolledIn(programCode), pageable);
             Page<PatientDto> dtoPage = patients.map(patientMapper::toDto);
             
             return Result.success(dtoPage);
@@ -112,30 +427,13 @@ public class PatientQueryService {
         }
     }
 
-    /**
-     * Generates a PDF document for a patient's record.
-     */
-    public Result<String> generatePatientPDF(UUID patientId) {
-        return patientRepository.findById(patientId)
-            .map(patient -> {
-                try {
-                    String pdfBase64 = pdfGenerator.generatePatientRecordPDF(patient);
-                    log.info("Generated PDF for patient: {}", patientId);
-                    return Result.<String>success(pdfBase64);
-                } catch (Exception e) {
-                    log.error("Failed to generate PDF for patient: {}", patientId, e);
-                    return Result.<String>failure(ResultError.internal("Failed to generate PDF: " + e.getMessage()));
-                }
-            })
-            .orElseGet(() -> Result.failure(ResultError.notFound("Patient", patientId.toString())));
-    }
-
     /**
      * Gets patient statistics by state.
+     * Summed from the precomputed statistics, so it trails commands like the patient lists do.
      */
     public Result<Long> getPatientCountByState(String state) {
         try {
-            Long count = patientRepository.countByState(state);
+            Long count = statisticsRepository.countPatientsByState(state);
             return Result.success(count);
         } catch (Exception e) {
             log.error("Failed to count patients by state", e);
@@ -144,11 +442,11 @@ public class PatientQueryService {
     }
 
     /**
-     * Gets patient statistics by type.
+     * Gets patient statistics by type, from the precomputed statistics.
      */
     public Result<Long> getPatientCountByType(Patient.PatientType patientType) {
         try {
-            Long count = patientRepository.countByPatientType(patientType);
+            Long count = statisticsRepository.countPatientsByType(patientType);
             return Result.success(count);
         } catch (Exception e) {
             log.error("Failed to count patients by type", e);
@@ -156,6 +454,39 @@ public class PatientQueryService {
         }
     }
 
+    private Optional<PatientDto> findPatient(UUID patientId) {
+        Optional<PatientDto> cached = patientCache.get(patientId);
+        if (cached.isPresent()) {
+            return cached;
+        }
+        return loadPatient(patientId).map(patientCache::put);
+    }
+
+    private Optional<PatientDto> findPatient(UUID patientId, PatientFieldSet fields) {
+        Optional<PatientDto> cached = patientCache.get(patientId);
+        if (cached.isPresent()) {
+            return cached;
+        }
+        if (fields.expand().isEmpty()) {
+            return patientRepository.findFieldsById(patientId, fields);
+        }
+        if (fields.expands(PatientFieldSet.GUARDIANS) && fields.expands(PatientFieldSet.PROGRAMS)) {
+            return findPatient(patientId);
+        }
+        return loadPatient(patientId)
+            .map(patient -> patientMapper.toDto(patient, fields));
+    }
+
+    /**
+     * Loads a patient through the second-level cache when it holds the patient, and otherwise from
+     * its own partition rather than by probing every partition's primary key.
+     */
+    private Optional<Patient> loadPatient(UUID patientId) {
+        return patientCache.isInSecondLevelCache(patientId)
+            ? patientRepository.findById(patientId)
+            : patientRepository.findLocatedById(patientId);
+    }
+
     private Pageable createPageable(PatientSearchQuery query) {
         Sort sort = query.sortDirection().equalsIgnoreCase("ASC")
             ? Sort.by(query.sortBy()).ascending()
@@ -164,77 +495,219 @@ public class PatientQueryService {
         return PageRequest.of(query.page(), query.size(), sort);
     }
 
-    private Specification<Patient> createSpecification(PatientSearchQuery query) {
-        return (root, criteriaQuery, criteriaBuilder) -> {
-            List<Predicate> predicates = new ArrayList<>();
+    Sort createCursorSort(PatientSearchQuery query) {
+        Sort.Direction direction = query.sortDirection().equalsIgnoreCase("ASC")
+            ? Sort.Direction.ASC
+            : Sort.Direction.DESC;
+        return Sort.by(direction, query.sortBy()).and(Sort.by(direction, "id"));
+    }
 
-            if (query.firstName() != null && !query.firstName().isBlank()) {
-                predicates.add(criteriaBuilder.like(
-                    criteriaBuilder.lower(root.get("firstName")),
-                    "%" + query.firstName().toLowerCase() + "%"
-                ));
-            }
+    private PatientCursor toCursor(PatientSearchQuery query, String sortValue, UUID id) {
+        return new PatientCursor(query.sortBy(), query.sortDirection(), sortValue, id);
+    }
 
-            if (query.lastName() != null && !query.lastName().isBlank()) {
-                predicates.add(criteriaBuilder.like(
-                    criteriaBuilder.lower(root.get("lastName")),
-                    "%" + query.lastName().toLowerCase() + "%"
-                ));
-            }
+    private String sortValueOf(PatientView view, String sortBy) {
+        return switch (sortBy) {
+            case "createdAt" -> view.getCreatedAt().toString();
+            case "updatedAt" -> view.getUpdatedAt().toString();
+            case "dateOfBirth" -> view.getDateOfBirth().toString();
+            case "lastName" -> view.getLastName();
+            case "firstName" -> view.getFirstName();
+            default -> throw new IllegalArgumentException("Unsupported cursor sort field: " + sortBy);
+        };
+    }
 
-            if (query.nationalId() != null && !query.nationalId().isBlank()) {
-                predicates.add(criteriaBuilder.equal(root.get("nationalId"), query.nationalId()));
-            }
+    private String sortValueOf(PatientDto patient, String sortBy) {
+        return switch (sortBy) {
+            case "createdAt" -> patient.createdAt().toString();
+            case "updatedAt" -> patient.updatedAt().toString();
+            case "dateOfBirth" -> patient.dateOfBirth().toString();
+            case "lastName" -> patient.lastName();
+            case "firstName" -> patient.firstName();
+            default -> throw new IllegalArgumentException("Unsupported cursor sort field: " + sortBy);
+        };
+    }
 
-            if (query.phone() != null && !query.phone().isBlank()) {
-                predicates.add(criteriaBuilder.like(root.get("phone"), "%" + query.phone() + "%"));
-            }
+    private String sortValueOf(PatientSummaryDto summary, String sortBy) {
+        return switch (sortBy) {
+            case "createdAt" -> summary.createdAt().toString();
+            case "updatedAt" -> summary.updatedAt().toString();
+            case "dateOfBirth" -> summary.dateOfBirth().toString();
+            case "lastName" -> summary.lastName();
+            case "firstName" -> summary.firstName();
+            default -> throw new IllegalArgumentException("Unsupported cursor sort field: " + sortBy);
+        };
+    }
 
-            if (query.email() != null && !query.email().isBlank()) {
-                predicates.add(criteriaBuilder.like(
-                    criteriaBuilder.lower(root.get("email")),
-                    "%" + query.email().toLowerCase() + "%"
-                ));
-            }
+    private <T> Result<Specification<T>> createSeekSpecification(PatientCursor cursor, PatientSearchQuery query) {
+        if (!cursor.sortBy().equals(query.sortBy()) || !cursor.sortDirection().equals(query.sortDirection())) {
+            return Result.failure(ResultError.validation("Cursor does not match the requested sort order"));
+        }
 
-            if (query.gender() != null) {
-                predicates.add(criteriaBuilder.equal(root.get("gender"), query.gender()));
-            }
+        Comparable<?> sortValue;
+        try {
+            sortValue = switch (cursor.sortBy()) {
+                case "createdAt", "updatedAt" -> LocalDateTime.parse(cursor.sortValue());
+                case "dateOfBirth" -> LocalDate.parse(cursor.sortValue());
+                default -> cursor.sortValue();
+            };
+        } catch (DateTimeParseException e) {
+            return Result.failure(ResultError.validation("Invalid cursor"));
+        }
 
-            if (query.patientType() != null) {
-                predicates.add(criteriaBuilder.equal(root.get("patientType"), query.patientType()));
-            }
+        return Result.success(this.<T>seekAfter(cursor, sortValue));
+    }
 
-            if (query.state() != null && !query.state().isBlank()) {
-                predicates.add(criteriaBuilder.equal(root.get("state"), query.state()));
-            }
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private <T> Specification<T> seekAfter(PatientCursor cursor, Comparable sortValue) {
+        boolean ascending = cursor.sortDirection().equalsIgnoreCase("ASC");
+        return (root, criteriaQuery, criteriaBuilder) -> {
+            Path<Comparable> sortPath = root.get(cursor.sortBy());
+            Path<UUID> idPath = root.get("id");
+            // Row-value comparison (sortKey, id) > (value, lastId), expanded for the criteria API.
+            // The leading bound on the sort key alone is implied by the expansion, but an OR is no
+            // index condition; with the bound the sort index starts its range scan at the cursor
+            return ascending
+                ? criteriaBuilder.and(
+                    criteriaBuilder.greaterThanOrEqualTo(sortPath, sortValue),
+                    criteriaBuilder.or(
+                        criteriaBuilder.greaterThan(sortPath, sortValue),
+                        criteriaBuilder.and(
+                            criteriaBuilder.equal(sortPath, sortValue),
+                            criteriaBuilder.greaterThan(idPath, cursor.id()))))
+                : criteriaBuilder.and(
+                    criteriaBuilder.lessThanOrEqualTo(sortPath, sortValue),
+                    criteriaBuilder.or(
+                        criteriaBuilder.lessThan(sortPath, sortValue),
+                        criteriaBuilder.and(
+                            criteriaBuilder.equal(sortPath, sortValue),
+                            criteriaBuilder.lessThan(idPath, cursor.id()))));
+        };
+    }
 
-            if (query.lga() != null && !query.lga().isBlank()) {
-                predicates.add(criteriaBuilder.equal(root.get("lga"), query.lga()));
-            }
+    public Specification<Patient> createSpecification(PatientSearchQuery query) {
+        return (root, criteriaQuery, criteriaBuilder) -> {
+            List<Predicate> predicates = attributePredicates(root, criteriaBuilder, query);
 
-            if (query.dateOfBirthFrom() != null) {
-                predicates.add(criteriaBuilder.greaterThanOrEqualTo(
-                    root.get("dateOfBirth"),
-                    query.dateOfBirthFrom()
-                ));
+            if (query.programCode() != null && !query.programCode().isBlank()) {
+                // Joining on the partition key too pairs each patient partition with the program partition of its state
+                Join<Patient, PatientProgram> programs = root.join("programs");
+                programs.on(criteriaBuilder.equal(programs.get("patientState"), root.get("state")));
+                predicates.add(criteriaBuilder.equal(programs.get("programCode"), query.programCode()));
             }
 
-            if (query.dateOfBirthTo() != null) {
-                predicates.add(criteriaBuilder.lessThanOrEqualTo(
-                    root.get("dateOfBirth"),
-                    query.dateOfBirthTo()
-                ));
-            }
+            return criteriaBuilder.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    /**
+     * Same filter as {@link #createSpecification(PatientSearchQuery)} against the read model,
+     * where the program filter is an array containment test instead of a join.
+     */
+    private Specification<PatientView> createViewSpecification(PatientSearchQuery query) {
+        return (root, criteriaQuery, criteriaBuilder) -> {
+            List<Predicate> predicates = attributePredicates(root, criteriaBuilder, query);
 
             if (query.programCode() != null && !query.programCode().isBlank()) {
-                predicates.add(criteriaBuilder.equal(
-                    root.join("programs").get("programCode"),
-                    query.programCode()
-                ));
+                predicates.add(programCodesContain(root, criteriaBuilder, query.programCode()));
             }
 
             return criteriaBuilder.and(predicates.toArray(new Predicate[0]));
         };
     }
-}
\ No newline at end of file
+
+    private Specification<PatientView> enrolledIn(String programCode) {
+        return (root, criteriaQuery, criteriaBuilder) -> programCodesContain(root, criteriaBuilder, programCode);
+    }
+
+    /**
+     * Renders as program_codes @> ARRAY[code], served by idx_patient_view_program_codes.
+     */
+    private Predicate programCodesContain(Root<PatientView> root, CriteriaBuilder criteriaBuilder, String programCode) {
+        return ((HibernateCriteriaBuilder) criteriaBuilder).arrayContains(root.<String[]>get("programCodes"), programCode);
+    }
+
+    /**
+     * Predicates on the patient columns shared by the patient table and the read model.
+     */
+    private <T> List<Predicate> attributePredicates(Root<T> root, CriteriaBuilder criteriaBuilder,
+                                                    PatientSearchQuery query) {
+        List<Predicate> predicates = new ArrayList<>();
+
+        if (query.firstName() != null && !query.firstName().isBlank()) {
+            predicates.add(textMatch(criteriaBuilder, criteriaBuilder.lower(root.get("firstName")),
+                query.firstName().toLowerCase()));
+        }
+
+        if (query.lastName() != null && !query.lastName().isBlank()) {
+            predicates.add(textMatch(criteriaBuilder, criteriaBuilder.lower(root.get("lastName")),
+                query.lastName().toLowerCase()));
+        }
+
+        if (query.nationalId() != null && !query.nationalId().isBlank()) {
+            predicates.add(criteriaBuilder.equal(root.get("nationalId"), query.nationalId()));
+        }
+
+        if (query.phone() != null && !query.phone().isBlank()) {
+            predicates.add(textMatch(criteriaBuilder, root.get("phone"), query.phone()));
+        }
+
+        if (query.email() != null && !query.email().isBlank()) {
+            predicates.add(textMatch(criteriaBuilder, criteriaBuilder.lower(root.get("email")),
+                query.email().toLowerCase()));
+        }
+
+        if (query.gender() != null) {
+            predicates.add(criteriaBuilder.equal(root.get("gender"), query.gender()));
+        }
+
+        if (query.patientType() != null) {
+            predicates.add(criteriaBuilder.equal(root.get("patientType"), query.patientType()));
+        }
+
+        if (query.state() != null && !query.state().isBlank()) {
+            predicates.add(criteriaBuilder.equal(root.get("state"), query.state()));
+        }
+
+        if (query.lga() != null && !query.lga().isBlank()) {
+            predicates.add(criteriaBuilder.equal(root.get("lga"), query.lga()));
+        }
+
+        if (query.dateOfBirthFrom() != null) {
+            predicates.add(criteriaBuilder.greaterThanOrEqualTo(
+                root.get("dateOfBirth"),
+                query.dateOfBirthFrom()
+            ));
+        }
+
+        if (query.dateOfBirthTo() != null) {
+            predicates.add(criteriaBuilder.lessThanOrEqualTo(
+                root.get("dateOfBirth"),
+                query.dateOfBirthTo()
+            ));
+        }
+
+        return predicates;
+    }
+
+    /**
+     * Builds a LIKE predicate the pg_trgm GIN indexes can serve.
+     * Terms of three or more characters match anywhere; shorter terms cannot form a trigram
+     * on both sides and are matched as a prefix instead. User wildcards are escaped.
+     */
+    private Predicate textMatch(CriteriaBuilder criteriaBuilder, Expression<String> column, String term) {
+        String trimmed = term.trim();
+        String escaped = escapeLike(trimmed);
+        String pattern = trimmed.length() >= MIN_TRIGRAM_TERM_LENGTH
+            ? "%" + escaped + "%"
+            : escaped + "%";
+        return criteriaBuilder.like(column, pattern, LIKE_ESCAPE);
+    }
+
+    private String escapeLike(String term) {
+        return term
+            .replace("\\", "\\\\")
+            .replace("%", "\\%")
+            .replace("_", "\\_");
+    }
+}
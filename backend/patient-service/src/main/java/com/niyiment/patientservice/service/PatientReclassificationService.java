@@ -0,0 +1,190 @@
+package com.niyiment.patientservice.service;
+
+import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.entity.ScheduledJobRun;
+import com.niyiment.patientservice.event.PatientUpdateBatchEvent;
+import com.niyiment.patientservice.event.PatientUpdatedEvent;
+import com.niyiment.patientservice.repository.PatientRepository;
+import com.niyiment.patientservice.repository.ScheduledJobRunRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nightly job moving patients into the age band they have grown into.
+ * A patient can only change band on a birthday that crosses a band boundary, so each run only
+ * visits the dates of birth of the boundary birthdays since the last successful run, recorded in
+ * scheduled_job_runs, and at least the last few days', one date at a time through idx_patient_dob.
+ * A job that was down for a while therefore catches up on its next run. Each chunk of a date is
+ * updated with one statement in its own short transaction, together with its outbox events. The
+ * update is conditional and skips locked rows, so concurrent runs on several instances are
+ * harmless and a patient skipped tonight is picked up tomorrow.
+ */
+@Service
+@Slf4j
+public class PatientReclassificationService {
+
+    private static final UUID FIRST_ID = new UUID(0L, 0L);
+    private static final String JOB_NAME = "patient-reclassification";
+
+    private final PatientRepository patientRepository;
+    private final ScheduledJobRunRepository jobRunRepository;
+    private final PatientCacheService patientCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int lookbackDays;
+
+    private final Counter scannedRows;
+    private final Counter reclassifiedRows;
+    private final Timer runTimer;
+
+    public PatientReclassificationService(
+        PatientRepository patientRepository,
+        ScheduledJobRunRepository jobRunRepository,
+        PatientCacheService patientCache,
+        ApplicationEventPublisher eventPublisher,
+        PlatformTransactionManager transactionManager,
+        MeterRegistry meterRegistry,
+        @Value("${patient.reclassification.chunk-size:1000}") int chunkSize,
+        @Value("${patient.reclassification.lookback-days:7}") int lookbackDays
+    ) {
+        this.patientRepository = patientRepository;
+        this.jobRunRepository = jobRunRepository;
+        this.patientCache = patientCache;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.lookbackDays = lookbackDays;
+
+        this.scannedRows = Counter.builder("patient.reclassification.rows")
+            .tag("outcome", "scanned")
+            .description("Patients visited or reclassified by the age band job")
+            .register(meterRegistry);
+        this.reclassifiedRows = Counter.builder("patient.reclassification.rows")
+            .tag("outcome", "reclassified")
+            .description("Patients visited or reclassified by the age band job")
+            .register(meterRegistry);
+        this.runTimer = Timer.builder("patient.reclassification.run")
+            .description("Time taken by one run of the age band job")
+            .register(meterRegistry);
+    }
+
+    @Scheduled(cron = "${patient.reclassification.cron:0 30 1 * * *}")
+    public void reclassifyNightly() {
+        reclassifySinceLastRun(LocalDate.now());
+    }
+
+    /**
+     * Reclassifies every patient whose birthday since the last successful run, or in the lookback
+     * window if that is longer, crossed an age band boundary, then records the given date as the
+     * last successful run.
+     *
+     * @return the number of patients reclassified
+     */
+    public long reclassifySinceLastRun(LocalDate today) {
+        LocalDate lastRun = transactionTemplate.execute(status -> jobRunRepository.findById(JOB_NAME)
+            .map(ScheduledJobRun::getLastSucceededOn)
+            .orElse(null));
+        long missedDays = lastRun != null ? ChronoUnit.DAYS.between(lastRun, today) : 0;
+        long reclassified = reclassify(today, (int) Math.max(lookbackDays, missedDays));
+
+        transactionTemplate.executeWithoutResult(status -> jobRunRepository.save(
+            new ScheduledJobRun(JOB_NAME, today, LocalDateTime.now())));
+        return reclassified;
+    }
+
+    /**
+     * Reclassifies every patient whose birthday in the lookback window ending on the given date
+     * crossed an age band boundary.
+     *
+     * @return the number of patients reclassified
+     */
+    public long reclassify(LocalDate today) {
+        return reclassify(today, lookbackDays);
+    }
+
+    private long reclassify(LocalDate today, int days) {
+        long started = System.nanoTime();
+        long scanned = 0;
+        long reclassified = 0;
+
+        for (int boundaryAge : Patient.PatientType.AGE_BAND_BOUNDARIES) {
+            LocalDate latest = today.minusYears(boundaryAge);
+            for (LocalDate dateOfBirth = latest.minusDays(days - 1L);
+                 !dateOfBirth.isAfter(latest);
+                 dateOfBirth = dateOfBirth.plusDays(1)) {
+                Patient.PatientType band = Patient.PatientType.ageBand(dateOfBirth, today);
+                UUID afterId = FIRST_ID;
+                ChunkResult chunk;
+                do {
+                    chunk = reclassifyChunk(dateOfBirth, band, afterId);
+                    scanned += chunk.size();
+                    reclassified += chunk.reclassified();
+                    afterId = chunk.lastId();
+                } while (chunk.size() == chunkSize);
+            }
+        }
+
+        long elapsed = System.nanoTime() - started;
+        runTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        scannedRows.increment(scanned);
+        reclassifiedRows.increment(reclassified);
+        log.info("Age band reclassification for the {} days to {}: {} of {} patients reclassified in {} ms",
+            days, today, reclassified, scanned, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        return reclassified;
+    }
+
+    /**
+     * Reclassifies one chunk of patients born on the given date and records an update event for
+     * each patient whose type changed, in one transaction.
+     *
+     * @return the size of the chunk, its last patient ID and how many of its patients changed type
+     */
+    private ChunkResult reclassifyChunk(LocalDate dateOfBirth, Patient.PatientType band, UUID afterId) {
+        List<UUID> changed = new ArrayList<>();
+        List<PatientRepository.ReclassificationRow> rows = transactionTemplate.execute(status -> {
+            List<PatientRepository.ReclassificationRow> chunk =
+                patientRepository.reclassifyBornOn(dateOfBirth, band.name(), afterId, chunkSize);
+            chunk.stream()
+                .filter(PatientRepository.ReclassificationRow::getReclassified)
+                .map(PatientRepository.ReclassificationRow::getId)
+                .forEach(changed::add);
+            if (changed.isEmpty()) {
+                return chunk;
+            }
+
+            // The update bypassed Hibernate, so drop the cached rows before reading them back for the events
+            changed.forEach(patientCache::evictSecondLevelCache);
+            eventPublisher.publishEvent(new PatientUpdateBatchEvent(
+                patientRepository.findAllById(changed).stream().map(PatientUpdatedEvent::from).toList()));
+            return chunk;
+        });
+
+        changed.forEach(patientId -> {
+            patientCache.evict(patientId);
+            patientCache.evictSecondLevelCache(patientId);
+        });
+        if (!changed.isEmpty()) {
+            log.debug("Reclassified {} patients born on {} as {}", changed.size(), dateOfBirth, band);
+        }
+        return new ChunkResult(rows.size(), rows.isEmpty() ? afterId : rows.getLast().getId(), changed.size());
+    }
+
+    private record ChunkResult(int size, UUID lastId, int reclassified) {}
+}
@@ -0,0 +1,198 @@
+package com.niyiment.patientservice.service;
+
+import com.niyiment.patientservice.common.Result;
+import com.niyiment.patientservice.common.ResultError;
+import com.niyiment.patientservice.dto.PatientStatisticsDto;
+import com.niyiment.patientservice.repository.PatientStatisticsRepository;
+import com.niyiment.patientservice.repository.PatientViewRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the patient statistics dashboard from the precomputed patient_statistics buckets.
+ * The buckets follow patient_view through its triggers, so they move with the patient events the
+ * view projector consumes and a dashboard read costs the same however many patients there are.
+ * A nightly reconciliation first re-projects patients whose view rows are missing or behind the
+ * patient tables, e.g. after a lost event, then recounts the buckets from the view while its writes
+ * are held off, leaving the counts in line with the base tables.
+ */
+@Service
+@Slf4j
+public class PatientStatisticsService {
+
+    private static final UUID FIRST_ID = new UUID(0L, 0L);
+    private static final String UNSPECIFIED = "UNSPECIFIED";
+    private static final long RECONCILIATION_LOCK_ID = 0x5041_5449_454E_5402L;
+
+    private final PatientStatisticsRepository statisticsRepository;
+    private final PatientViewRepository viewRepository;
+    private final PatientViewProjector viewProjector;
+    private final ScheduledJobLock jobLock;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    private final Counter reprojectedPatients;
+    private final Counter correctedBuckets;
+    private final Timer reconciliationTimer;
+
+    public PatientStatisticsService(
+        PatientStatisticsRepository statisticsRepository,
+        PatientViewRepository viewRepository,
+        PatientViewProjector viewProjector,
+        ScheduledJobLock jobLock,
+        PlatformTransactionManager transactionManager,
+        MeterRegistry meterRegistry,
+        @Value("${patient.statistics.reconciliation-chunk-size:1000}") int chunkSize
+    ) {
+        this.statisticsRepository = statisticsRepository;
+        this.viewRepository = viewRepository;
+        this.viewProjector = viewProjector;
+        this.jobLock = jobLock;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+
+        this.reprojectedPatients = Counter.builder("patient.statistics.reconciliation.reprojected")
+            .description("Patients whose read model row was missing or stale when statistics were reconciled")
+            .register(meterRegistry);
+        this.correctedBuckets = Counter.builder("patient.statistics.reconciliation.corrected")
+            .description("Statistics buckets whose count had drifted from the read model")
+            .register(meterRegistry);
+        this.reconciliationTimer = Timer.builder("patient.statistics.reconciliation")
+            .description("Time taken to reconcile patient statistics with the patient tables")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Returns the dashboard counts, nationally or within one state.
+     */
+    @Transactional(readOnly = true)
+    public Result<PatientStatisticsDto> getDashboard(String state) {
+        String scope = state == null || state.isBlank() ? null : state;
+        try {
+            long total = 0;
+            LocalDateTime updatedAt = null;
+            Map<String, Long> byState = new TreeMap<>();
+            Map<String, Map<String, Long>> byLga = new TreeMap<>();
+            Map<String, Long> byPatientType = new TreeMap<>();
+            Map<String, Long> byGender = new TreeMap<>();
+            Map<String, Long> byProgram = new TreeMap<>();
+
+            for (PatientStatisticsRepository.DashboardRow row : statisticsRepository.findDashboardRows(scope)) {
+                switch (row.getDimension()) {
+                    case "TOTAL" -> {
+                        total = row.getPatients();
+                        updatedAt = row.getUpdatedAt();
+                    }
+                    case "STATE" -> putCount(byState, row.getState(), row.getPatients());
+                    case "LGA" -> putCount(byLga.computeIfAbsent(label(row.getState()), key -> new TreeMap<>()),
+                        row.getLga(), row.getPatients());
+                    case "PATIENT_TYPE" -> putCount(byPatientType, row.getPatientType(), row.getPatients());
+                    case "GENDER" -> putCount(byGender, row.getGender(), row.getPatients());
+                    // The rolled-up program row is the patient total, not a program
+                    case "PROGRAM" -> {
+                        if (row.getProgramCode() != null) {
+                            putCount(byProgram, row.getProgramCode(), row.getEnrolled());
+                        }
+                    }
+                    default -> throw new IllegalStateException("Unknown statistics dimension: " + row.getDimension());
+                }
+            }
+            byLga.values().removeIf(Map::isEmpty);
+
+            return Result.success(new PatientStatisticsDto(
+                scope, total, byState, byLga, byPatientType, byGender, byProgram, updatedAt
+            ));
+        } catch (Exception e) {
+            log.error("Failed to load patient statistics", e);
+            return Result.failure(ResultError.internal("Failed to load patient statistics: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Runs the reconciliation on one instance only; the others skip the night's run.
+     */
+    @Scheduled(cron = "${patient.statistics.reconciliation-cron:0 0 4 * * *}")
+    public void reconcileNightly() {
+        jobLock.runExclusively(RECONCILIATION_LOCK_ID, "patient statistics reconciliation", this::reconcile);
+    }
+
+    /**
+     * Brings the read model, and through it the statistics, back in line with the patient tables.
+     *
+     * @return the number of statistics buckets that had drifted
+     */
+    public long reconcile() {
+        long started = System.nanoTime();
+        long reprojected = reprojectStalePatients();
+        long corrected = transactionTemplate.execute(status -> {
+            statisticsRepository.lockPatientView();
+            return statisticsRepository.reconcileWithPatientView();
+        });
+
+        long elapsed = System.nanoTime() - started;
+        reconciliationTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        reprojectedPatients.increment(reprojected);
+        correctedBuckets.increment(corrected);
+        if (reprojected > 0 || corrected > 0) {
+            log.warn("Reconciled patient statistics: {} stale patients re-projected, {} buckets corrected in {} ms",
+                reprojected, corrected, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        } else {
+            log.info("Patient statistics reconciled without drift in {} ms", TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+        return corrected;
+    }
+
+    /**
+     * Walks the patients in ID order, one chunk per short transaction, re-projecting those whose
+     * view row is missing or stale, then drops view rows of patients that no longer exist.
+     */
+    private long reprojectStalePatients() {
+        long reprojected = 0;
+        UUID afterId = FIRST_ID;
+        List<PatientViewRepository.ProjectionState> chunk;
+        do {
+            UUID from = afterId;
+            chunk = transactionTemplate.execute(status -> viewRepository.findProjectionStateAfter(from, chunkSize));
+            List<UUID> stale = chunk.stream()
+                .filter(PatientViewRepository.ProjectionState::getStale)
+                .map(PatientViewRepository.ProjectionState::getId)
+                .toList();
+            if (!stale.isEmpty()) {
+                viewProjector.project(stale);
+                reprojected += stale.size();
+            }
+            if (!chunk.isEmpty()) {
+                afterId = chunk.getLast().getId();
+            }
+        } while (chunk.size() == chunkSize);
+
+        int removed = transactionTemplate.execute(status -> viewRepository.deleteAllRemovedPatients());
+        return reprojected + removed;
+    }
+
+    private void putCount(Map<String, Long> counts, String key, Long count) {
+        // Buckets emptied since the last reconciliation linger with a zero count
+        if (count != null && count > 0) {
+            counts.put(label(key), count);
+        }
+    }
+
+    private String label(String value) {
+        return value != null ? value : UNSPECIFIED;
+    }
+}
@@ -0,0 +1,158 @@
+package com.niyiment.patientservice.service;
+
+import com.niyiment.patientservice.common.PatientSyncCursor;
+import com.niyiment.patientservice.common.Result;
+import com.niyiment.patientservice.common.ResultError;
+import com.niyiment.patientservice.dto.PatientDto;
+import com.niyiment.patientservice.dto.PatientSyncPage;
+import com.niyiment.patientservice.entity.PatientView;
+import com.niyiment.patientservice.mapper.PatientMapper;
+import com.niyiment.patientservice.repository.PatientViewRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Delta sync for offline-first clients. A device keeps the patients of one state, optionally one
+ * LGA, and catches up by asking for the changes since the cursor it was last given: patients added
+ * or changed, and the IDs of patients deleted or moved out of its scope. Changes are read from
+ * patient_view in commit order, so a device resumes wherever its last applied page ended.
+ * Removals are kept as tombstones for the configured retention; a cursor older than that is
+ * refused and the device has to sync its scope again from scratch.
+ */
+@Service
+@Slf4j
+public class PatientSyncService {
+
+    // Tombstones outlive cursors by a day, covering changes still in flight when a cursor was issued
+    private static final Duration TOMBSTONE_GRACE = Duration.ofDays(1);
+
+    private final PatientViewRepository viewRepository;
+    private final PatientMapper patientMapper;
+    private final Duration cursorLifetime;
+    private final int maxPageSize;
+
+    private final Counter syncedChanges;
+    private final Counter expiredCursors;
+
+    public PatientSyncService(
+        PatientViewRepository viewRepository,
+        PatientMapper patientMapper,
+        MeterRegistry meterRegistry,
+        @Value("${patient.sync.tombstone-retention-days:30}") int retentionDays,
+        @Value("${patient.sync.max-page-size:1000}") int maxPageSize
+    ) {
+        this.viewRepository = viewRepository;
+        this.patientMapper = patientMapper;
+        this.cursorLifetime = Duration.ofDays(retentionDays);
+        this.maxPageSize = maxPageSize;
+
+        this.syncedChanges = Counter.builder("patient.sync.changes")
+            .description("Patient changes and removals sent to syncing devices")
+            .register(meterRegistry);
+        this.expiredCursors = Counter.builder("patient.sync.cursors.expired")
+            .description("Sync requests refused because the cursor predates the tombstone retention")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Returns the next page of changes within the scope. Without a cursor the page starts a full
+     * sync of the scope; with one it continues from where that cursor was issued.
+     */
+    @Transactional(readOnly = true)
+    public Result<PatientSyncPage> sync(String state, String lga, String cursor, int size) {
+        if (size < 1 || size > maxPageSize) {
+            return Result.failure(ResultError.validation("Page size must be between 1 and " + maxPageSize));
+        }
+        String scopeState = blankToNull(state);
+        String scopeLga = blankToNull(lga);
+        if (scopeLga != null && scopeState == null) {
+            return Result.failure(ResultError.validation("An LGA scope requires a state"));
+        }
+
+        Result<PatientSyncCursor> from = cursor == null || cursor.isBlank()
+            ? Result.success(new PatientSyncCursor(0L, 0L, scopeState, scopeLga, Instant.now()))
+            : PatientSyncCursor.decode(cursor).flatMap(decoded -> validate(decoded, scopeState, scopeLga));
+        return from.flatMap(position -> {
+            try {
+                return Result.success(readChanges(position, cursor != null && !cursor.isBlank(), size));
+            } catch (Exception e) {
+                log.error("Failed to sync patients for state {} and LGA {}", scopeState, scopeLga, e);
+                return Result.failure(ResultError.internal("Failed to sync patients: " + e.getMessage()));
+            }
+        });
+    }
+
+    /**
+     * Removes tombstones no unexpired cursor can still need.
+     */
+    @Scheduled(cron = "${patient.sync.tombstone-cleanup-cron:0 15 3 * * *}")
+    @Transactional
+    public void purgeTombstones() {
+        int deleted = viewRepository.deleteTombstonesBefore(
+            LocalDateTime.now().minus(cursorLifetime).minus(TOMBSTONE_GRACE));
+        log.info("Purged {} patient sync tombstones", deleted);
+    }
+
+    private Result<PatientSyncCursor> validate(PatientSyncCursor cursor, String state, String lga) {
+        if (!cursor.hasScope(state, lga)) {
+            return Result.failure(ResultError.validation("Sync cursor was issued for a different state or LGA"));
+        }
+        if (cursor.issuedAt().isBefore(Instant.now().minus(cursorLifetime))) {
+            expiredCursors.increment();
+            return Result.failure(ResultError.gone("Sync cursor has expired; sync again without a cursor"));
+        }
+        return Result.success(cursor);
+    }
+
+    private PatientSyncPage readChanges(PatientSyncCursor position, boolean includeTombstones, int size) {
+        // A full sync has nothing to remove, so it skips the tombstones
+        List<PatientViewRepository.SyncChange> changes = viewRepository.findChangesAfter(
+            position.state(), position.lga(), position.changeXid(), position.changeSeq(), includeTombstones, size + 1);
+        boolean hasMore = changes.size() > size;
+        if (hasMore) {
+            changes = changes.subList(0, size);
+        }
+
+        List<UUID> changedIds = new ArrayList<>();
+        List<UUID> deleted = new ArrayList<>();
+        for (PatientViewRepository.SyncChange change : changes) {
+            (change.getDeleted() ? deleted : changedIds).add(change.getId());
+        }
+
+        // A row changed again since the first read comes back newer than its position; it is sent
+        // once more at its new position, and one deleted since is left to its tombstone
+        Map<UUID, PatientView> views = viewRepository.findAllById(changedIds).stream()
+            .collect(Collectors.toMap(PatientView::getId, Function.identity()));
+        List<PatientDto> changed = changedIds.stream()
+            .map(views::get)
+            .filter(Objects::nonNull)
+            .map(patientMapper::toDto)
+            .toList();
+
+        PatientSyncCursor next = changes.isEmpty()
+            ? position.advanceTo(position.changeXid(), position.changeSeq())
+            : position.advanceTo(changes.getLast().getChangeXid(), changes.getLast().getChangeSeq());
+        syncedChanges.increment(changes.size());
+        return new PatientSyncPage(changed, deleted, next.encode(), hasMore);
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+}
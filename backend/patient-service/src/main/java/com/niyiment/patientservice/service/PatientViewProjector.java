@@ -0,0 +1,220 @@
+package com.niyiment.patientservice.service;
+
+import com.niyiment.patientservice.common.Result;
+import com.niyiment.patientservice.common.ResultError;
+import com.niyiment.patientservice.repository.PatientRepository;
+import com.niyiment.patientservice.repository.PatientViewRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Maintains the denormalised patient_view read model from the patient event topics.
+ * Events only identify which patients changed: each batch re-projects those patients from the
+ * patient tables in one statement, so the view converges on the committed state regardless of
+ * event order, duplicates or payload shape. A full rebuild replays the same projection over every
+ * patient in ID order and then drops rows of patients that no longer exist.
+ */
+@Service
+@Slf4j
+public class PatientViewProjector {
+
+    private static final UUID FIRST_ID = new UUID(0L, 0L);
+
+    private final PatientViewRepository viewRepository;
+    private final PatientRepository patientRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int rebuildChunkSize;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private final Timer lagTimer;
+    private final Counter projectedRows;
+    private final Counter removedRows;
+    private final Timer rebuildTimer;
+
+    public PatientViewProjector(
+        PatientViewRepository viewRepository,
+        PatientRepository patientRepository,
+        PlatformTransactionManager transactionManager,
+        MeterRegistry meterRegistry,
+        @Value("${patient.view.rebuild-chunk-size:1000}") int rebuildChunkSize
+    ) {
+        this.viewRepository = viewRepository;
+        this.patientRepository = patientRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.rebuildChunkSize = rebuildChunkSize;
+
+        this.lagTimer = Timer.builder("patient.view.lag")
+            .description("Time from a patient change being written to the read model reflecting it")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        this.projectedRows = Counter.builder("patient.view.rows")
+            .tag("operation", "projected")
+            .description("Patient read model rows written or removed")
+            .register(meterRegistry);
+        this.removedRows = Counter.builder("patient.view.rows")
+            .tag("operation", "removed")
+            .description("Patient read model rows written or removed")
+            .register(meterRegistry);
+        this.rebuildTimer = Timer.builder("patient.view.rebuild")
+            .description("Time taken to rebuild the whole patient read model")
+            .register(meterRegistry);
+        Gauge.builder("patient.view.rebuild.active", rebuilding, running -> running.get() ? 1 : 0)
+            .description("Whether a patient read model rebuild is running")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Re-projects the patients named by a batch of events. Events are keyed by patient ID.
+     * When the batch fails, its patients are projected one at a time to find the record at fault;
+     * that record is reported with its position so the error handler commits the records before it,
+     * retries it with backoff and finally dead-letters it instead of blocking the partition.
+     */
+    @KafkaListener(
+        topics = {
+            PatientEventPublisher.PATIENT_REGISTERED_TOPIC,
+            PatientEventPublisher.PATIENT_UPDATED_TOPIC,
+            PatientEventPublisher.PATIENT_PROGRAM_ENROLLED_TOPIC,
+            PatientEventPublisher.PATIENT_DELETED_TOPIC
+        },
+        containerFactory = "patientViewListenerFactory"
+    )
+    public void onPatientEvents(List<ConsumerRecord<String, String>> records) {
+        List<UUID> keys = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, String> record : records) {
+            keys.add(patientIdOf(record));
+        }
+        Set<UUID> patientIds = new LinkedHashSet<>(keys);
+        patientIds.remove(null);
+
+        try {
+            project(patientIds);
+        } catch (RuntimeException e) {
+            log.warn("Projecting a batch of {} patient events failed, projecting them one at a time", records.size(), e);
+            for (int i = 0; i < keys.size(); i++) {
+                if (keys.get(i) == null) {
+                    continue;
+                }
+                try {
+                    project(List.of(keys.get(i)));
+                } catch (RuntimeException failure) {
+                    throw new BatchListenerFailedException("Projecting patient " + keys.get(i) + " failed", failure, i);
+                }
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        records.forEach(record -> lagTimer.record(Math.max(0, now - occurredAt(record)), TimeUnit.MILLISECONDS));
+    }
+
+    private static UUID patientIdOf(ConsumerRecord<String, String> record) {
+        try {
+            return UUID.fromString(record.key());
+        } catch (RuntimeException e) {
+            log.warn("Ignoring patient event without a patient ID key on {}", record.topic());
+            return null;
+        }
+    }
+
+    /**
+     * When the event was written to the outbox, falling back to the record timestamp for events
+     * sent without the header.
+     */
+    private static long occurredAt(ConsumerRecord<String, String> record) {
+        Header header = record.headers().lastHeader(PatientEventPublisher.OCCURRED_AT_HEADER);
+        if (header != null) {
+            try {
+                return Long.parseLong(new String(header.value(), StandardCharsets.UTF_8));
+            } catch (NumberFormatException e) {
+                log.debug("Ignoring malformed {} header on {}", PatientEventPublisher.OCCURRED_AT_HEADER, record.topic());
+            }
+        }
+        return record.timestamp();
+    }
+
+    /**
+     * Brings the view rows of the given patients in line with the patient tables.
+     *
+     * @return the number of rows written or removed
+     */
+    public int project(Collection<UUID> patientIds) {
+        if (patientIds.isEmpty()) {
+            return 0;
+        }
+
+        return transactionTemplate.execute(status -> {
+            int projected = viewRepository.projectPatients(patientIds);
+            int removed = viewRepository.deleteRemovedPatients(patientIds);
+            projectedRows.increment(projected);
+            removedRows.increment(removed);
+            log.debug("Projected {} and removed {} patient view rows", projected, removed);
+            return projected + removed;
+        });
+    }
+
+    /**
+     * Starts rebuilding the whole view in the background. Reads keep being served from the
+     * existing rows while the rebuild runs, and event-driven updates continue alongside it.
+     */
+    public Result<Void> startRebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return Result.failure(ResultError.conflict("A patient view rebuild is already running"));
+        }
+
+        Thread.ofVirtual().name("patient-view-rebuild").start(() -> {
+            try {
+                rebuildTimer.record(this::rebuild);
+            } catch (RuntimeException e) {
+                log.error("Patient view rebuild failed", e);
+            } finally {
+                rebuilding.set(false);
+            }
+        });
+        return Result.success(null);
+    }
+
+    /**
+     * Re-projects every patient one ID-ordered chunk at a time, each in its own short transaction.
+     */
+    private void rebuild() {
+        log.info("Rebuilding patient view");
+        long patients = 0;
+        UUID afterId = FIRST_ID;
+        List<UUID> chunk;
+        do {
+            UUID from = afterId;
+            chunk = transactionTemplate.execute(status ->
+                patientRepository.findIdsAfter(from, Limit.of(rebuildChunkSize)));
+            if (!chunk.isEmpty()) {
+                project(chunk);
+                patients += chunk.size();
+                afterId = chunk.getLast();
+            }
+        } while (chunk.size() == rebuildChunkSize);
+
+        int removed = transactionTemplate.execute(status -> viewRepository.deleteAllRemovedPatients());
+        removedRows.increment(removed);
+        log.info("Rebuilt patient view: {} patients projected, {} stale rows removed", patients, removed);
+    }
+}
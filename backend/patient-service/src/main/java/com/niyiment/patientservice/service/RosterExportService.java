@@ -0,0 +1,459 @@
+package com.niyiment.patientservice.service;
+
+import com.niyiment.patientservice.common.Result;
+import com.niyiment.patientservice.common.ResultError;
+import com.niyiment.patientservice.dto.RosterExportJobDto;
+import com.niyiment.patientservice.dto.RosterExportRequest;
+import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.entity.RosterExportJob;
+import com.niyiment.patientservice.repository.PatientRepository;
+import com.niyiment.patientservice.repository.RosterExportJobRepository;
+import com.niyiment.patientservice.util.PDFGenerator;
+import com.niyiment.patientservice.util.QRCodeGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Service generating printable facility rosters in the background.
+ * Patients are read in fixed-size chunks seeking on the primary key, each chunk is rendered in
+ * parallel on virtual threads, and the results are appended to a file in the work directory.
+ * Only one chunk is held in memory at a time, so memory use is independent of roster size.
+ * Job state is kept in the roster_export_jobs table, so any instance can report on a job, and a
+ * job whose instance stopped mid-run stops making progress and is failed as abandoned. The file
+ * itself is written to the work directory of the instance running the job: unless that directory
+ * is shared storage, it can only be downloaded through that instance.
+ */
+@Service
+@Slf4j
+public class RosterExportService {
+
+    private static final UUID FIRST_ID = new UUID(0L, 0L);
+    private static final int CARD_QR_SIZE = 240;
+
+    private final PatientRepository patientRepository;
+    private final PDFGenerator pdfGenerator;
+    private final QRCodeGenerator qrCodeGenerator;
+    private final RosterExportJobRepository jobRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    // Job state is read and written on the primary, a replica could report a job a step behind
+    private final TransactionTemplate jobTransaction;
+    private final ExecutorService virtualThreads = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Path workDir;
+    private final int chunkSize;
+    private final long maxPatients;
+    private final Duration retention;
+    private final Duration abandonedAfter;
+    private final Semaphore jobPermits;
+
+    private final Counter completedJobs;
+    private final Counter failedJobs;
+    private final Counter rejectedJobs;
+    private final Counter renderedPatients;
+    private final Timer jobTimer;
+
+    public RosterExportService(
+        PatientRepository patientRepository,
+        RosterExportJobRepository jobRepository,
+        PDFGenerator pdfGenerator,
+        QRCodeGenerator qrCodeGenerator,
+        PlatformTransactionManager transactionManager,
+        MeterRegistry meterRegistry,
+        @Value("${patient.roster.work-dir:${java.io.tmpdir}/patient-rosters}") Path workDir,
+        @Value("${patient.roster.chunk-size:100}") int chunkSize,
+        @Value("${patient.roster.max-patients:50000}") long maxPatients,
+        @Value("${patient.roster.max-concurrent-jobs:2}") int maxConcurrentJobs,
+        @Value("${patient.roster.retention-minutes:60}") long retentionMinutes,
+        @Value("${patient.roster.abandoned-after-minutes:15}") long abandonedAfterMinutes
+    ) throws IOException {
+        this.patientRepository = patientRepository;
+        this.jobRepository = jobRepository;
+        this.pdfGenerator = pdfGenerator;
+        this.qrCodeGenerator = qrCodeGenerator;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.jobTransaction = new TransactionTemplate(transactionManager);
+        this.workDir = Files.createDirectories(workDir);
+        this.chunkSize = chunkSize;
+        this.maxPatients = maxPatients;
+        this.retention = Duration.ofMinutes(retentionMinutes);
+        this.abandonedAfter = Duration.ofMinutes(abandonedAfterMinutes);
+        this.jobPermits = new Semaphore(maxConcurrentJobs);
+
+        this.completedJobs = Counter.builder("patient.roster.jobs")
+            .tag("outcome", "completed")
+            .description("Roster export jobs by outcome")
+            .register(meterRegistry);
+        this.failedJobs = Counter.builder("patient.roster.jobs")
+            .tag("outcome", "failed")
+            .description("Roster export jobs by outcome")
+            .register(meterRegistry);
+        this.rejectedJobs = Counter.builder("patient.roster.jobs")
+            .tag("outcome", "rejected")
+            .description("Roster export jobs by outcome")
+            .register(meterRegistry);
+        this.renderedPatients = Counter.builder("patient.roster.patients.rendered")
+            .description("Patients rendered by roster export jobs")
+            .register(meterRegistry);
+        this.jobTimer = Timer.builder("patient.roster.job")
+            .description("Time taken to generate a roster export")
+            .register(meterRegistry);
+        Gauge.builder("patient.roster.jobs.active", jobPermits, permits -> maxConcurrentJobs - permits.availablePermits())
+            .description("Roster export jobs currently running")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Accepts a roster export and starts it in the background.
+     *
+     * @param request the roster filter and output layout
+     * @return the queued job, or a failure if the roster is too large or no job slot is free
+     */
+    public Result<RosterExportJobDto> submitExport(RosterExportRequest request) {
+        long total = patientRepository.countRoster(request.state(), request.lga(), request.programCode());
+        if (total > maxPatients) {
+            return Result.failure(ResultError.validation(
+                "Roster has " + total + " patients; narrow the filter to at most " + maxPatients));
+        }
+
+        if (!jobPermits.tryAcquire()) {
+            rejectedJobs.increment();
+            log.warn("Rejected roster export for state {}: all job slots in use", request.state());
+            return Result.failure(ResultError.unavailable("Roster export capacity exhausted, retry shortly"));
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        RosterExportJob job = RosterExportJob.builder()
+            .id(UUID.randomUUID())
+            .state(request.state())
+            .lga(request.lga())
+            .programCode(request.programCode())
+            .layout(request.layout())
+            .status(RosterExportJobDto.Status.QUEUED)
+            .totalPatients(total)
+            .createdAt(now)
+            .updatedAt(now)
+            .build();
+        try {
+            jobTransaction.executeWithoutResult(status -> jobRepository.save(job));
+            virtualThreads.submit(() -> run(job.getId(), request));
+        } catch (RuntimeException e) {
+            jobTransaction.executeWithoutResult(status -> jobRepository.deleteById(job.getId()));
+            jobPermits.release();
+            throw e;
+        }
+
+        log.info("Queued roster export {} ({} patients, {})", job.getId(), total, request.layout());
+        return Result.success(toDto(job));
+    }
+
+    public Result<RosterExportJobDto> getExport(UUID jobId) {
+        return findJob(jobId)
+            .map(job -> Result.success(toDto(job)))
+            .orElseGet(() -> Result.failure(ResultError.notFound("Roster export", jobId.toString())));
+    }
+
+    /**
+     * Returns the generated file of a completed export. The file is only found on the instance
+     * that generated it, unless the work directory is shared between instances.
+     */
+    public Result<Output> getExportOutput(UUID jobId) {
+        RosterExportJob job = findJob(jobId).orElse(null);
+        if (job == null) {
+            return Result.failure(ResultError.notFound("Roster export", jobId.toString()));
+        }
+        if (job.getStatus() != RosterExportJobDto.Status.COMPLETED) {
+            return Result.failure(ResultError.conflict("Roster export " + jobId + " is " + job.getStatus()));
+        }
+        Path file = Path.of(job.getFilePath());
+        if (!Files.isReadable(file)) {
+            return Result.failure(ResultError.unavailable(
+                "Roster export " + jobId + " is held by another instance, retry shortly"));
+        }
+        return Result.success(new Output(file, job.getLayout()));
+    }
+
+    /**
+     * Fails jobs abandoned by a stopped instance, and deletes finished jobs past their retention
+     * along with files no job tracks any more.
+     */
+    @Scheduled(fixedDelayString = "${patient.roster.cleanup-interval-ms:300000}")
+    public void purgeExpiredExports() {
+        LocalDateTime now = LocalDateTime.now();
+        Set<String> trackedFiles = jobTransaction.execute(status -> {
+            int abandoned = jobRepository.failAbandoned(
+                EnumSet.of(RosterExportJobDto.Status.QUEUED, RosterExportJobDto.Status.RUNNING),
+                RosterExportJobDto.Status.FAILED, now.minus(abandonedAfter), now, now.plus(retention));
+            if (abandoned > 0) {
+                log.warn("Failed {} abandoned roster export(s)", abandoned);
+            }
+
+            List<RosterExportJob> expired = jobRepository.findByExpiresAtBefore(now);
+            expired.forEach(job -> deleteQuietly(job.getFilePath() != null ? Path.of(job.getFilePath()) : null));
+            jobRepository.deleteAllInBatch(expired);
+            return new HashSet<>(jobRepository.findFilePaths());
+        });
+
+        long cutoff = System.currentTimeMillis() - retention.toMillis();
+        try (Stream<Path> files = Files.list(workDir)) {
+            files.filter(file -> !trackedFiles.contains(file.toString()) && isStale(file, cutoff))
+                .forEach(this::deleteQuietly);
+        } catch (IOException e) {
+            log.warn("Failed to sweep roster work directory {}: {}", workDir, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        virtualThreads.shutdownNow();
+    }
+
+    private void run(UUID jobId, RosterExportRequest request) {
+        RunningJob job = new RunningJob(jobId, request, workDir.resolve(jobId + request.layout().fileExtension()));
+        Timer.Sample sample = Timer.start();
+        // Marked running inside the try, so the permit is released even if that write fails
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(job.file))) {
+            updateJob(jobId, entity -> {
+                entity.setStatus(RosterExportJobDto.Status.RUNNING);
+                entity.setFilePath(job.file.toString());
+            });
+            switch (request.layout()) {
+                case CARD_SHEET -> writeCardSheet(job, out);
+                case RECORD_ZIP -> writeRecordZip(job, out);
+            }
+            out.flush();
+            long sizeBytes = Files.size(job.file);
+            updateJob(jobId, entity -> {
+                entity.setProcessedPatients(job.processed.get());
+                entity.setSizeBytes(sizeBytes);
+                finish(entity, RosterExportJobDto.Status.COMPLETED);
+            });
+            completedJobs.increment();
+            log.info("Completed roster export {} ({} patients, {} bytes)", jobId, job.processed.get(), sizeBytes);
+        } catch (Exception e) {
+            log.error("Roster export {} failed", jobId, e);
+            deleteQuietly(job.file);
+            updateJob(jobId, entity -> {
+                entity.setProcessedPatients(job.processed.get());
+                entity.setError(abbreviate(e.getMessage()));
+                finish(entity, RosterExportJobDto.Status.FAILED);
+            });
+            failedJobs.increment();
+        } finally {
+            sample.stop(jobTimer);
+            jobPermits.release();
+        }
+    }
+
+    private void writeCardSheet(RunningJob job, OutputStream out) {
+        try (PDFGenerator.CardSheetWriter sheet = pdfGenerator.openCardSheet(out)) {
+            forEachChunk(job, false, patients -> sheet.addCards(renderInParallel(patients, patient ->
+                new PDFGenerator.PatientCard(
+                    patient, qrCodeGenerator.encode(patient.getId(), QRCodeGenerator.Format.PNG, CARD_QR_SIZE)))));
+        }
+    }
+
+    private void writeRecordZip(RunningJob job, OutputStream out) throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            forEachChunk(job, true, patients -> {
+                List<byte[]> documents = renderInParallel(patients, patient -> {
+                    ByteArrayOutputStream document = new ByteArrayOutputStream(16 * 1024);
+                    pdfGenerator.writePatientRecordPDF(patient, document);
+                    return document.toByteArray();
+                });
+                try {
+                    for (int i = 0; i < patients.size(); i++) {
+                        zip.putNextEntry(new ZipEntry("patient-" + patients.get(i).getId() + ".pdf"));
+                        zip.write(documents.get(i));
+                        zip.closeEntry();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            zip.finish();
+        }
+    }
+
+    private void forEachChunk(RunningJob job, boolean withCollections, Consumer<List<Patient>> consumer) {
+        UUID afterId = FIRST_ID;
+        while (true) {
+            List<Patient> patients = loadChunk(job.request, afterId, withCollections);
+            if (patients.isEmpty()) {
+                return;
+            }
+            consumer.accept(patients);
+            long processed = job.processed.addAndGet(patients.size());
+            jobTransaction.executeWithoutResult(status ->
+                jobRepository.updateProgress(job.id, processed, LocalDateTime.now()));
+            renderedPatients.increment(patients.size());
+            afterId = patients.getLast().getId();
+        }
+    }
+
+    /**
+     * Loads one chunk of patients in its own read-only transaction, returned detached and
+     * in ID order. Guardians and programs are fetched in two bounded queries when needed.
+     */
+    private List<Patient> loadChunk(RosterExportRequest request, UUID afterId, boolean withCollections) {
+        return readOnlyTransaction.execute(status -> {
+            List<UUID> ids = patientRepository.findRosterIdsAfter(
+                request.state(), request.lga(), request.programCode(), afterId, Limit.of(chunkSize));
+            if (ids.isEmpty()) {
+                return List.of();
+            }
+
+            List<Patient> patients;
+            if (withCollections) {
+                patients = patientRepository.fetchGuardiansByIdIn(ids);
+                patientRepository.fetchProgramsByIdIn(ids);
+            } else {
+                patients = patientRepository.findAllById(ids);
+            }
+
+            Map<UUID, Integer> positions = new HashMap<>(ids.size() * 2);
+            for (int i = 0; i < ids.size(); i++) {
+                positions.put(ids.get(i), i);
+            }
+            List<Patient> ordered = new ArrayList<>(patients);
+            ordered.sort((a, b) -> Integer.compare(positions.get(a.getId()), positions.get(b.getId())));
+            return ordered;
+        });
+    }
+
+    /**
+     * Renders every patient of a chunk on its own virtual thread and returns the results in chunk order.
+     */
+    private <T> List<T> renderInParallel(List<Patient> patients, Function<Patient, T> renderer) {
+        List<Future<T>> futures = new ArrayList<>(patients.size());
+        for (Patient patient : patients) {
+            futures.add(virtualThreads.submit(() -> renderer.apply(patient)));
+        }
+
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Roster rendering interrupted", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e.getCause() instanceof RuntimeException runtime
+                ? runtime
+                : new IllegalStateException("Roster rendering failed", e.getCause());
+        }
+        return results;
+    }
+
+    private Optional<RosterExportJob> findJob(UUID jobId) {
+        return jobTransaction.execute(status -> jobRepository.findById(jobId));
+    }
+
+    private void updateJob(UUID jobId, Consumer<RosterExportJob> change) {
+        jobTransaction.executeWithoutResult(status -> jobRepository.findById(jobId).ifPresent(job -> {
+            change.accept(job);
+            job.setUpdatedAt(LocalDateTime.now());
+        }));
+    }
+
+    private void finish(RosterExportJob job, RosterExportJobDto.Status status) {
+        job.setStatus(status);
+        job.setCompletedAt(LocalDateTime.now());
+        job.setExpiresAt(job.getCompletedAt().plus(retention));
+    }
+
+    private static String abbreviate(String message) {
+        return message != null && message.length() > 500 ? message.substring(0, 500) : message;
+    }
+
+    private static RosterExportJobDto toDto(RosterExportJob job) {
+        return new RosterExportJobDto(
+            job.getId(), job.getStatus(), job.getLayout(), job.getTotalPatients(), job.getProcessedPatients(),
+            job.getSizeBytes(), job.getError(), job.getCreatedAt(), job.getCompletedAt(), job.getExpiresAt()
+        );
+    }
+
+    private static boolean isStale(Path file, long cutoffMillis) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis() < cutoffMillis;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete roster export file {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Generated file of a completed export.
+     */
+    public record Output(Path file, RosterExportRequest.Layout layout) {}
+
+    /**
+     * A job being generated on this instance.
+     */
+    private static final class RunningJob {
+
+        private final UUID id;
+        private final RosterExportRequest request;
+        private final Path file;
+        private final AtomicLong processed = new AtomicLong();
+
+        private RunningJob(UUID id, RosterExportRequest request, Path file) {
+            this.id = id;
+            this.request = request;
+            this.file = file;
+        }
+    }
+}
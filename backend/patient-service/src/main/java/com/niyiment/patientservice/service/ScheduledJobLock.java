@@ -0,0 +1,58 @@
+package com.niyiment.patientservice.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Keeps a scheduled job to one instance at a time across the cluster.
+ * The job runs while a transaction-scoped advisory lock is held on a connection of its own, which
+ * is never bound to the job's thread: the job still commits in its own short transactions, and the
+ * lock goes away with that connection's transaction, even if this instance dies mid-run.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ScheduledJobLock {
+
+    private final DataSource dataSource;
+
+    /**
+     * Runs the job unless another instance holds its lock.
+     *
+     * @return whether the job ran
+     */
+    public boolean runExclusively(long lockId, String jobName, Runnable job) {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                if (!tryAcquire(connection, lockId)) {
+                    log.info("Skipping {}: another instance is running it", jobName);
+                    return false;
+                }
+                job.run();
+                return true;
+            } finally {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            throw new DataAccessResourceFailureException("Could not take the lock for " + jobName, e);
+        }
+    }
+
+    private static boolean tryAcquire(Connection connection, long lockId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_try_advisory_xact_lock(?)")) {
+            statement.setLong(1, lockId);
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() && result.getBoolean(1);
+            }
+        }
+    }
+}
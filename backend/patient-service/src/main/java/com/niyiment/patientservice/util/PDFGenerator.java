@@ -10,9 +10,11 @@ import com.niyiment.patientservice.entity.PatientProgram;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.format.DateTimeFormatter;
-import java.util.Base64;
+import java.util.List;
 
 /**
  * Utility class for generating PDF documents for patient records.
@@ -24,20 +26,30 @@ public class PDFGenerator {
     private static final Font TITLE_FONT = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 18, BaseColor.DARK_GRAY);
     private static final Font HEADER_FONT = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 12, BaseColor.BLACK);
     private static final Font NORMAL_FONT = FontFactory.getFont(FontFactory.HELVETICA, 10, BaseColor.BLACK);
+    private static final Font CARD_NAME_FONT = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 11, BaseColor.BLACK);
+    private static final Font CARD_FONT = FontFactory.getFont(FontFactory.HELVETICA, 8, BaseColor.DARK_GRAY);
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy");
     private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm");
 
+    private static final int CARD_COLUMNS = 2;
+    private static final float CARD_HEIGHT = 150f;
+    private static final float CARD_QR_SIZE = 110f;
+
     /**
-     * Generates a PDF for a patient's complete record.
+     * Writes a PDF of a patient's complete record directly to the given stream.
+     * The stream is flushed but left open for the caller to close.
      *
-     * @param patient the patient entity
-     * @return Base64-encoded PDF document
+     * @param patient      the patient entity, with guardians and programs initialized
+     * @param outputStream destination of the PDF bytes
+     * @return number of bytes written
      */
-    public String generatePatientRecordPDF(Patient patient) {
-        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+    public long writePatientRecordPDF(Patient patient, OutputStream outputStream) {
+        CountingOutputStream countingStream = new CountingOutputStream(outputStream);
+        try {
             Document document = new Document(PageSize.A4);
-            PdfWriter.getInstance(document, outputStream);
-            
+            PdfWriter writer = PdfWriter.getInstance(document, countingStream);
+            writer.setCloseStream(false);
+
             document.open();
             addTitle(document);
             addPatientInformation(document, patient);
@@ -45,14 +57,29 @@ public class PDFGenerator {
             addProgramInformation(document, patient);
             document.close();
 
-            byte[] pdfBytes = outputStream.toByteArray();
-            return Base64.getEncoder().encodeToString(pdfBytes);
+            countingStream.flush();
+            return countingStream.getCount();
         } catch (Exception e) {
             log.error("Failed to generate PDF for patient: {}", patient.getId(), e);
             throw new PDFGenerationException("Failed to generate PDF", e);
         }
     }
 
+    /**
+     * Opens a sheet of patient identity cards written to the given stream.
+     * Cards are laid out in a grid on A4 pages; each batch added is flushed to the stream
+     * as soon as its pages are complete, so memory use does not grow with the number of cards.
+     *
+     * @param outputStream destination of the PDF bytes, left open for the caller to close
+     */
+    public CardSheetWriter openCardSheet(OutputStream outputStream) {
+        try {
+            return new CardSheetWriter(outputStream);
+        } catch (DocumentException e) {
+            throw new PDFGenerationException("Failed to open card sheet", e);
+        }
+    }
+
     private void addTitle(Document document) throws DocumentException {
         Paragraph title = new Paragraph("Patient Medical Record", TITLE_FONT);
         title.setAlignment(Element.ALIGN_CENTER);
@@ -77,7 +104,7 @@ public class PDFGenerator {
         addTableRow(table, "Phone:", patient.getPhone() != null ? patient.getPhone() : "N/A");
         addTableRow(table, "Email:", patient.getEmail() != null ? patient.getEmail() : "N/A");
         addTableRow(table, "Address:", patient.getAddress() != null ? patient.getAddress() : "N/A");
-        addTableRow(table, "State:", patient.getState() != null ? patient.getState() : "N/A");
+        addTableRow(table, "State:", patient.getPublicState() != null ? patient.getPublicState() : "N/A");
         addTableRow(table, "LGA:", patient.getLga() != null ? patient.getLga() : "N/A");
         addTableRow(table, "Registered:", patient.getCreatedAt().format(DATETIME_FORMATTER));
 
@@ -159,6 +186,130 @@ public class PDFGenerator {
         table.addCell(cell);
     }
 
+    private static PdfPCell cardCell(PatientCard card) throws DocumentException, IOException {
+        Patient patient = card.patient();
+
+        Image qrCode = Image.getInstance(card.qrCodePng());
+        qrCode.scaleToFit(CARD_QR_SIZE, CARD_QR_SIZE);
+        PdfPCell qrCell = new PdfPCell(qrCode, false);
+        qrCell.setBorder(Rectangle.NO_BORDER);
+        qrCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
+
+        PdfPCell detailsCell = new PdfPCell();
+        detailsCell.setBorder(Rectangle.NO_BORDER);
+        detailsCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
+        detailsCell.addElement(new Paragraph(patient.getFirstName() + " " + patient.getLastName(), CARD_NAME_FONT));
+        detailsCell.addElement(new Paragraph("DOB: " + patient.getDateOfBirth().format(DATE_FORMATTER), CARD_FONT));
+        detailsCell.addElement(new Paragraph("Gender: " + (patient.getGender() != null ? patient.getGender().name() : "N/A"), CARD_FONT));
+        detailsCell.addElement(new Paragraph("National ID: " + (patient.getNationalId() != null ? patient.getNationalId() : "N/A"), CARD_FONT));
+        detailsCell.addElement(new Paragraph(
+            (patient.getLga() != null ? patient.getLga() + ", " : "") + (patient.getPublicState() != null ? patient.getPublicState() : ""),
+            CARD_FONT));
+        detailsCell.addElement(new Paragraph(patient.getId().toString(), CARD_FONT));
+
+        PdfPTable layout = new PdfPTable(new float[]{2f, 3f});
+        layout.setWidthPercentage(100);
+        layout.addCell(qrCell);
+        layout.addCell(detailsCell);
+
+        PdfPCell cell = new PdfPCell(layout);
+        cell.setFixedHeight(CARD_HEIGHT);
+        cell.setPadding(6);
+        cell.setBorderColor(BaseColor.LIGHT_GRAY);
+        return cell;
+    }
+
+    /**
+     * A patient and the PNG of their identification QR code, ready to be laid out as a card.
+     */
+    public record PatientCard(Patient patient, byte[] qrCodePng) {}
+
+    /**
+     * Incrementally written card sheet. Backed by an incomplete iText table that is
+     * re-added after every batch, which makes iText emit finished rows and drop them from memory.
+     */
+    public static class CardSheetWriter implements AutoCloseable {
+
+        private final CountingOutputStream countingStream;
+        private final Document document;
+        private final PdfPTable grid;
+        private int cards;
+
+        private CardSheetWriter(OutputStream outputStream) throws DocumentException {
+            this.countingStream = new CountingOutputStream(outputStream);
+            this.document = new Document(PageSize.A4, 24, 24, 24, 24);
+            PdfWriter writer = PdfWriter.getInstance(document, countingStream);
+            writer.setCloseStream(false);
+            document.open();
+
+            this.grid = new PdfPTable(CARD_COLUMNS);
+            this.grid.setWidthPercentage(100);
+            this.grid.setComplete(false);
+            this.grid.getDefaultCell().setBorder(Rectangle.NO_BORDER);
+            this.grid.getDefaultCell().setFixedHeight(CARD_HEIGHT);
+        }
+
+        public void addCards(List<PatientCard> batch) {
+            try {
+                for (PatientCard card : batch) {
+                    grid.addCell(cardCell(card));
+                }
+                cards += batch.size();
+                document.add(grid);
+            } catch (DocumentException | IOException e) {
+                throw new PDFGenerationException("Failed to add cards to sheet", e);
+            }
+        }
+
+        /**
+         * @return number of bytes written so far
+         */
+        public long getBytesWritten() {
+            return countingStream.getCount();
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (cards == 0) {
+                    document.add(new Paragraph("No patients matched this roster", NORMAL_FONT));
+                }
+                grid.completeRow();
+                grid.setComplete(true);
+                document.add(grid);
+                document.close();
+                countingStream.flush();
+            } catch (DocumentException | IOException e) {
+                throw new PDFGenerationException("Failed to close card sheet", e);
+            }
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
     public static class PDFGenerationException extends RuntimeException {
         public PDFGenerationException(String message, Throwable cause) {
             super(message, cause);
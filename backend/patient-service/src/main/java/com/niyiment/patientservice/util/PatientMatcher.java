@@ -0,0 +1,277 @@
+package com.niyiment.patientservice.util;
+
+import java.text.Normalizer;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Scores how likely two patient records are to describe the same person.
+ * Each compared field adds a weight when it agrees and subtracts one when it disagrees, roughly the
+ * log2 odds the agreement carries: a shared date of birth says far more than a shared gender, and
+ * two different national IDs all but rule a match out. Names are compared with Jaro-Winkler
+ * similarity after folding case and accents, and also with first and last name swapped, a common
+ * registration slip. A pair scoring at least the threshold is a duplicate candidate, except that
+ * first names which disagree rule a match out however much else agrees: twins share a last name,
+ * date of birth, address and phone, and often a gender.
+ */
+public final class PatientMatcher {
+
+    /**
+     * The fields of a patient taken into account.
+     *
+     * @param contactPhones phone keys of the patient and its guardians, see {@link #phoneKey(String)}
+     */
+    public record Subject(
+        UUID id,
+        String firstName,
+        String lastName,
+        LocalDate dateOfBirth,
+        String gender,
+        String nationalId,
+        String state,
+        String lga,
+        Set<String> contactPhones
+    ) {}
+
+    /**
+     * A scored pair and the fields that agreed.
+     */
+    public record Match(UUID patientId, UUID duplicateId, double score, List<String> matchedFields) {}
+
+    private static final double EXACT_NAME = 5.0;
+    private static final double CLOSE_NAME = 4.0;
+    private static final double SIMILAR_NAME = 2.0;
+    // A veto rather than a weight, see the class comment
+    private static final double DIFFERENT_FIRST_NAME = Double.NEGATIVE_INFINITY;
+    private static final double DIFFERENT_LAST_NAME = -3.0;
+    private static final double SWAPPED_NAMES_PENALTY = 1.0;
+    private static final double SAME_BIRTH_DATE = 6.0;
+    private static final double NEAR_BIRTH_DATE = 3.0;
+    private static final double SAME_BIRTH_YEAR = 0.0;
+    private static final double ADJACENT_BIRTH_YEAR = -2.0;
+    private static final double DIFFERENT_BIRTH_DATE = -6.0;
+    private static final double SAME_GENDER = 1.0;
+    private static final double DIFFERENT_GENDER = -4.0;
+    private static final double SAME_LGA = 1.5;
+    private static final double DIFFERENT_LGA = -0.5;
+    private static final double SHARED_PHONE = 4.0;
+    private static final double DIFFERENT_NATIONAL_ID = -12.0;
+
+    private static final double CLOSE_SIMILARITY = 0.92;
+    private static final double SIMILAR_SIMILARITY = 0.85;
+    private static final int MIN_PHONE_DIGITS = 7;
+    private static final int PHONE_KEY_DIGITS = 10;
+
+    private final double threshold;
+
+    /**
+     * @param threshold lowest score reported as a match; the best possible score is 22.5
+     */
+    public PatientMatcher(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Scores a pair, returning null when it falls below the threshold.
+     */
+    public Match match(Subject left, Subject right) {
+        List<String> matched = new ArrayList<>();
+        double score = names(left, right, matched)
+            + birthDate(left.dateOfBirth(), right.dateOfBirth(), matched)
+            + gender(left.gender(), right.gender(), matched)
+            + lga(left, right, matched)
+            + phones(left.contactPhones(), right.contactPhones(), matched)
+            + nationalId(left.nationalId(), right.nationalId());
+        return score >= threshold ? new Match(left.id(), right.id(), score, matched) : null;
+    }
+
+    /**
+     * Reduces a phone number to its last ten digits, so international and local forms of a number
+     * agree; numbers with fewer than seven digits have no key. Mirrors the patient_phone_key SQL function.
+     */
+    public static String phoneKey(String phone) {
+        if (phone == null) {
+            return null;
+        }
+        String digits = phone.replaceAll("\\D", "");
+        if (digits.length() < MIN_PHONE_DIGITS) {
+            return null;
+        }
+        return digits.length() > PHONE_KEY_DIGITS ? digits.substring(digits.length() - PHONE_KEY_DIGITS) : digits;
+    }
+
+    public static Set<String> phoneKeys(Collection<String> phones) {
+        return phones.stream()
+            .map(PatientMatcher::phoneKey)
+            .filter(key -> key != null)
+            .collect(Collectors.toSet());
+    }
+
+    /**
+     * Jaro-Winkler similarity of two strings, from 0 for nothing in common to 1 for equal strings.
+     */
+    static double jaroWinkler(String a, String b) {
+        if (a.equals(b)) {
+            return 1.0;
+        }
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0.0;
+        }
+
+        int window = Math.max(0, Math.max(a.length(), b.length()) / 2 - 1);
+        boolean[] aMatched = new boolean[a.length()];
+        boolean[] bMatched = new boolean[b.length()];
+        int matches = 0;
+        for (int i = 0; i < a.length(); i++) {
+            int from = Math.max(0, i - window);
+            int to = Math.min(b.length(), i + window + 1);
+            for (int j = from; j < to; j++) {
+                if (!bMatched[j] && a.charAt(i) == b.charAt(j)) {
+                    aMatched[i] = true;
+                    bMatched[j] = true;
+                    matches++;
+                    break;
+                }
+            }
+        }
+        if (matches == 0) {
+            return 0.0;
+        }
+
+        int transpositions = 0;
+        for (int i = 0, j = 0; i < a.length(); i++) {
+            if (aMatched[i]) {
+                while (!bMatched[j]) {
+                    j++;
+                }
+                if (a.charAt(i) != b.charAt(j)) {
+                    transpositions++;
+                }
+                j++;
+            }
+        }
+
+        double m = matches;
+        double jaro = (m / a.length() + m / b.length() + (m - transpositions / 2.0) / m) / 3.0;
+        int prefix = 0;
+        while (prefix < Math.min(4, Math.min(a.length(), b.length())) && a.charAt(prefix) == b.charAt(prefix)) {
+            prefix++;
+        }
+        return jaro + prefix * 0.1 * (1.0 - jaro);
+    }
+
+    private static double names(Subject left, Subject right, List<String> matched) {
+        String leftFirst = fold(left.firstName());
+        String leftLast = fold(left.lastName());
+        String rightFirst = fold(right.firstName());
+        String rightLast = fold(right.lastName());
+
+        double inOrder = name(leftFirst, rightFirst, DIFFERENT_FIRST_NAME) + name(leftLast, rightLast, DIFFERENT_LAST_NAME);
+        double swapped = name(leftFirst, rightLast, DIFFERENT_FIRST_NAME) + name(leftLast, rightFirst, DIFFERENT_LAST_NAME)
+            - SWAPPED_NAMES_PENALTY;
+        if (swapped > inOrder) {
+            matched.add("swappedNames");
+            return swapped;
+        }
+        if (name(leftFirst, rightFirst, DIFFERENT_FIRST_NAME) > 0) {
+            matched.add("firstName");
+        }
+        if (name(leftLast, rightLast, DIFFERENT_LAST_NAME) > 0) {
+            matched.add("lastName");
+        }
+        return inOrder;
+    }
+
+    private static double name(String left, String right, double different) {
+        if (left.isEmpty() || right.isEmpty()) {
+            return 0.0;
+        }
+        if (left.equals(right)) {
+            return EXACT_NAME;
+        }
+        double similarity = jaroWinkler(left, right);
+        if (similarity >= CLOSE_SIMILARITY) {
+            return CLOSE_NAME;
+        }
+        return similarity >= SIMILAR_SIMILARITY ? SIMILAR_NAME : different;
+    }
+
+    private static double birthDate(LocalDate left, LocalDate right, List<String> matched) {
+        if (left == null || right == null) {
+            return 0.0;
+        }
+        if (left.equals(right)) {
+            matched.add("dateOfBirth");
+            return SAME_BIRTH_DATE;
+        }
+        // A day off, or day and month entered the wrong way round
+        boolean transposed = left.getYear() == right.getYear()
+            && left.getMonthValue() == right.getDayOfMonth() && left.getDayOfMonth() == right.getMonthValue();
+        if (transposed || Math.abs(ChronoUnit.DAYS.between(left, right)) <= 1) {
+            matched.add("dateOfBirth");
+            return NEAR_BIRTH_DATE;
+        }
+        int years = Math.abs(left.getYear() - right.getYear());
+        if (years == 0) {
+            return SAME_BIRTH_YEAR;
+        }
+        return years == 1 ? ADJACENT_BIRTH_YEAR : DIFFERENT_BIRTH_DATE;
+    }
+
+    private static double gender(String left, String right, List<String> matched) {
+        if (left == null || right == null) {
+            return 0.0;
+        }
+        if (left.equals(right)) {
+            matched.add("gender");
+            return SAME_GENDER;
+        }
+        return DIFFERENT_GENDER;
+    }
+
+    private static double lga(Subject left, Subject right, List<String> matched) {
+        if (left.lga() == null || right.lga() == null) {
+            return 0.0;
+        }
+        // Read model rows may have no state; two LGAs only agree within the same state
+        boolean sameState = left.state() == null ? right.state() == null : left.state().equalsIgnoreCase(right.state());
+        if (left.lga().equalsIgnoreCase(right.lga()) && sameState) {
+            matched.add("lga");
+            return SAME_LGA;
+        }
+        return DIFFERENT_LGA;
+    }
+
+    private static double phones(Set<String> left, Set<String> right, List<String> matched) {
+        for (String phone : left) {
+            if (right.contains(phone)) {
+                matched.add("contactPhone");
+                return SHARED_PHONE;
+            }
+        }
+        return 0.0;
+    }
+
+    private static double nationalId(String left, String right) {
+        if (left == null || right == null || left.equalsIgnoreCase(right)) {
+            return 0.0;
+        }
+        return DIFFERENT_NATIONAL_ID;
+    }
+
+    private static String fold(String name) {
+        if (name == null) {
+            return "";
+        }
+        return Normalizer.normalize(name, Normalizer.Form.NFD)
+            .replaceAll("[^\\p{Alpha}]", "")
+            .toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,265 @@
+package com.niyiment.patientservice.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DatabindException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.niyiment.patientservice.common.ResultError;
+import com.niyiment.patientservice.dto.CreateGuardianCommand;
+import com.niyiment.patientservice.dto.CreatePatientCommand;
+import com.niyiment.patientservice.entity.Patient;
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads patient registrations one row at a time from NDJSON, CSV or CBOR sequence input.
+ * Rows are parsed lazily so a request body is never held in memory as a whole, and a row
+ * that cannot be parsed is returned with its error instead of aborting the read.
+ *
+ * <p>CSV input must start with a header row. Recognised columns are firstName, lastName, dateOfBirth,
+ * gender, nationalId, phone, email, address, state, lga, patientType, programCodes (separated by ';'),
+ * and guardianName, guardianRelationship, guardianPhone, guardianEmail, guardianAddress for a single
+ * primary guardian. Unknown columns are ignored.
+ *
+ * <p>A CBOR sequence (RFC 8742) is a series of CBOR maps shaped like the NDJSON registrations, one per row.
+ */
+public class PatientRowReader implements Closeable {
+
+    public enum Format {
+        NDJSON, CSV, CBOR
+    }
+
+    /**
+     * A parsed input row: either a command or the error that prevented parsing it.
+     */
+    public record Row(int number, CreatePatientCommand command, ResultError error) {}
+
+    private final BufferedReader reader;
+    private final ObjectReader jsonReader;
+    private final CSVReader csvReader;
+    private final Map<String, Integer> csvHeader;
+    private final MappingIterator<CreatePatientCommand> cborItems;
+    private boolean cborUnreadable;
+    private int rowNumber;
+
+    private PatientRowReader(BufferedReader reader, ObjectReader jsonReader) {
+        this.reader = reader;
+        this.jsonReader = jsonReader;
+        this.csvReader = null;
+        this.csvHeader = null;
+        this.cborItems = null;
+    }
+
+    private PatientRowReader(BufferedReader reader, CSVReader csvReader, Map<String, Integer> csvHeader) {
+        this.reader = reader;
+        this.jsonReader = null;
+        this.csvReader = csvReader;
+        this.csvHeader = csvHeader;
+        this.cborItems = null;
+    }
+
+    private PatientRowReader(MappingIterator<CreatePatientCommand> cborItems) {
+        this.reader = null;
+        this.jsonReader = null;
+        this.csvReader = null;
+        this.csvHeader = null;
+        this.cborItems = cborItems;
+    }
+
+    /**
+     * Opens a reader over the given input. For CSV the header row is read immediately.
+     *
+     * @throws IllegalArgumentException if CSV input has no header row
+     */
+    public static PatientRowReader open(InputStream input, Format format, ObjectMapper objectMapper) throws IOException {
+        if (format == Format.CBOR) {
+            // Binary input is read straight from the stream, with the JSON mapper's settings
+            return new PatientRowReader(objectMapper.copyWith(new CBORFactory())
+                .readerFor(CreatePatientCommand.class)
+                .readValues(input));
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        if (format == Format.NDJSON) {
+            return new PatientRowReader(reader, objectMapper.readerFor(CreatePatientCommand.class));
+        }
+
+        CSVReader csvReader = new CSVReader(reader);
+        String[] header = readCsvRecord(csvReader);
+        if (header == null) {
+            throw new IllegalArgumentException("CSV input must start with a header row");
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.length; i++) {
+            columns.put(header[i].strip(), i);
+        }
+        return new PatientRowReader(reader, csvReader, columns);
+    }
+
+    /**
+     * @return the next row, or null when the input is exhausted
+     */
+    public Row next() throws IOException {
+        if (cborItems != null) {
+            return nextCbor();
+        }
+        return jsonReader != null ? nextJson() : nextCsv();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (cborItems != null) {
+            cborItems.close();
+            return;
+        }
+        if (csvReader != null) {
+            csvReader.close();
+        }
+        reader.close();
+    }
+
+    private Row nextCbor() throws IOException {
+        if (cborUnreadable) {
+            return null;
+        }
+        try {
+            if (!cborItems.hasNextValue()) {
+                return null;
+            }
+        } catch (JsonProcessingException e) {
+            // Skipping past the previous malformed item ran into bytes that are not CBOR
+            rowNumber++;
+            return unreadableCbor(e);
+        }
+        rowNumber++;
+
+        // An item that does not bind is skipped whole and reading continues with the next one.
+        // A sequence has no delimiters to resynchronise on, so bytes that are not CBOR end the
+        // read: the row is reported and the rows read before it still count.
+        try {
+            return new Row(rowNumber, cborItems.nextValue(), null);
+        } catch (DatabindException e) {
+            return new Row(rowNumber, null, ResultError.validation("Malformed CBOR item: " + e.getOriginalMessage()));
+        } catch (JsonProcessingException e) {
+            return unreadableCbor(e);
+        }
+    }
+
+    private Row unreadableCbor(JsonProcessingException e) {
+        cborUnreadable = true;
+        return new Row(rowNumber, null, ResultError.validation(
+            "Unreadable CBOR: " + e.getOriginalMessage() + "; rows after it were not read"));
+    }
+
+    private Row nextJson() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+            rowNumber++;
+        } while (line.isBlank());
+
+        try {
+            return new Row(rowNumber, jsonReader.readValue(line), null);
+        } catch (JsonProcessingException e) {
+            return new Row(rowNumber, null, ResultError.validation("Malformed JSON: " + e.getOriginalMessage()));
+        }
+    }
+
+    private Row nextCsv() throws IOException {
+        String[] record = readCsvRecord(csvReader);
+        if (record == null) {
+            return null;
+        }
+        rowNumber++;
+
+        if (record.length != csvHeader.size()) {
+            return new Row(rowNumber, null, ResultError.validation(
+                "Expected " + csvHeader.size() + " columns but found " + record.length));
+        }
+
+        try {
+            return new Row(rowNumber, toCommand(record), null);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return new Row(rowNumber, null, ResultError.validation(e.getMessage()));
+        }
+    }
+
+    private CreatePatientCommand toCommand(String[] record) {
+        String guardianName = value(record, "guardianName");
+        List<CreateGuardianCommand> guardians = guardianName == null ? null : List.of(new CreateGuardianCommand(
+            guardianName,
+            value(record, "guardianRelationship"),
+            value(record, "guardianPhone"),
+            value(record, "guardianEmail"),
+            value(record, "guardianAddress"),
+            true
+        ));
+
+        String programCodes = value(record, "programCodes");
+        String dateOfBirth = value(record, "dateOfBirth");
+        String gender = value(record, "gender");
+        String patientType = value(record, "patientType");
+
+        return new CreatePatientCommand(
+            value(record, "firstName"),
+            value(record, "lastName"),
+            dateOfBirth != null ? LocalDate.parse(dateOfBirth) : null,
+            gender != null ? enumValue(Patient.Gender.class, "gender", gender) : null,
+            value(record, "nationalId"),
+            value(record, "phone"),
+            value(record, "email"),
+            value(record, "address"),
+            value(record, "state"),
+            value(record, "lga"),
+            patientType != null ? enumValue(Patient.PatientType.class, "patientType", patientType) : null,
+            guardians,
+            programCodes == null ? null : Arrays.stream(programCodes.split(";"))
+                .map(String::strip)
+                .filter(code -> !code.isEmpty())
+                .toList()
+        );
+    }
+
+    private String value(String[] record, String column) {
+        Integer index = csvHeader.get(column);
+        if (index == null) {
+            return null;
+        }
+        String value = record[index].strip();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static <E extends Enum<E>> E enumValue(Class<E> type, String column, String value) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid " + column + ": " + value);
+        }
+    }
+
+    private static String[] readCsvRecord(CSVReader csvReader) throws IOException {
+        try {
+            return csvReader.readNext();
+        } catch (CsvValidationException e) {
+            throw new IOException("Malformed CSV input: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.niyiment.patientservice.util;
+
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A streaming response body holding a permit of a capped resource, such as a PDF render slot.
+ * The permit is released exactly once: after the body has been written, or, through
+ * {@link #interceptor()}, when the async request ends without the body finishing, e.g. on a
+ * timeout or a client that went away before the body started. A body that may stream for longer
+ * than the default async request timeout carries its own timeout, applied to its request only.
+ */
+public final class PermitHoldingBody implements StreamingResponseBody {
+
+    private final StreamingResponseBody body;
+    private final Semaphore permits;
+    private final Duration timeout;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    /**
+     * @param permits semaphore a permit has already been taken from
+     */
+    public PermitHoldingBody(StreamingResponseBody body, Semaphore permits) {
+        this(body, permits, null);
+    }
+
+    /**
+     * @param permits semaphore a permit has already been taken from
+     * @param timeout async timeout of the request writing the body, or null for the default
+     */
+    public PermitHoldingBody(StreamingResponseBody body, Semaphore permits, Duration timeout) {
+        this.body = body;
+        this.permits = permits;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        try {
+            body.writeTo(outputStream);
+        } finally {
+            release();
+        }
+    }
+
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            permits.release();
+        }
+    }
+
+    /**
+     * Applies the body's timeout when its async request starts, and releases the permit once the
+     * request completes, however it completes. Register it with the request's WebAsyncManager
+     * before returning the body.
+     */
+    public CallableProcessingInterceptor interceptor() {
+        return new CallableProcessingInterceptor() {
+            @Override
+            public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+                if (timeout != null && request instanceof AsyncWebRequest asyncRequest) {
+                    asyncRequest.setTimeout(timeout.toMillis());
+                }
+            }
+
+            @Override
+            public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+                release();
+            }
+        };
+    }
+}
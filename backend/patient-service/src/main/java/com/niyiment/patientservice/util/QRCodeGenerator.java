@@ -6,56 +6,108 @@ import com.google.zxing.client.j2se.MatrixToImageWriter;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.QRCodeWriter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Component;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.Base64;
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
 
 /**
  * Utility class for generating QR codes for patient identification.
+ * QR codes are rendered on demand from the patient ID; rendered images are cached by content,
+ * format and size in the byte-weighted "qrCodes" cache.
  */
 @Component
 @Slf4j
 public class QRCodeGenerator {
 
-    private static final int QR_CODE_WIDTH = 300;
-    private static final int QR_CODE_HEIGHT = 300;
+    private static final String QR_CONTENT_PREFIX = "PATIENT:";
+
+    public enum Format {
+        PNG, SVG
+    }
+
+    /**
+     * Formats the QR code content with a standardized structure.
+     */
+    public static String contentFor(UUID patientId) {
+        return QR_CONTENT_PREFIX + patientId;
+    }
 
     /**
-     * Generates a QR code for a patient ID.
+     * Renders the QR code for a patient ID.
      *
      * @param patientId the patient UUID
-     * @return Base64-encoded PNG image of the QR code
+     * @param format    PNG or SVG
+     * @param size      image width and height in pixels
+     * @return the encoded image bytes
      */
-    public String generateQRCode(UUID patientId) {
+    @Cacheable(value = "qrCodes", key = "#format.name() + ':' + #size + ':' + #patientId")
+    public byte[] render(UUID patientId, Format format, int size) {
+        return encode(patientId, format, size);
+    }
+
+    /**
+     * Renders the QR code for a patient ID without going through the "qrCodes" cache.
+     * Bulk jobs use this so that one-off renders do not evict images served to interactive clients.
+     */
+    public byte[] encode(UUID patientId, Format format, int size) {
+        String qrContent = contentFor(patientId);
         try {
-            String qrContent = formatQRContent(patientId);
-            QRCodeWriter qrCodeWriter = new QRCodeWriter();
-            BitMatrix bitMatrix = qrCodeWriter.encode(
-                qrContent,
-                BarcodeFormat.QR_CODE,
-                QR_CODE_WIDTH,
-                QR_CODE_HEIGHT
-            );
-
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            MatrixToImageWriter.writeToStream(bitMatrix, "PNG", outputStream);
-            
-            byte[] qrCodeBytes = outputStream.toByteArray();
-            return Base64.getEncoder().encodeToString(qrCodeBytes);
+            return switch (format) {
+                case PNG -> renderPng(qrContent, size);
+                case SVG -> renderSvg(qrContent, size);
+            };
         } catch (WriterException | IOException e) {
             log.error("Failed to generate QR code for patient: {}", patientId, e);
             throw new QRCodeGenerationException("Failed to generate QR code", e);
         }
     }
 
+    private byte[] renderPng(String qrContent, int size) throws WriterException, IOException {
+        BitMatrix bitMatrix = new QRCodeWriter().encode(qrContent, BarcodeFormat.QR_CODE, size, size);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        MatrixToImageWriter.writeToStream(bitMatrix, "PNG", outputStream);
+        return outputStream.toByteArray();
+    }
+
     /**
-     * Formats the QR code content with a standardized structure.
+     * Renders one SVG unit per QR module and lets the viewBox scale it, merging horizontal
+     * runs of dark modules into single path segments to keep the document small.
      */
-    private String formatQRContent(UUID patientId) {
-        return String.format("PATIENT:%s", patientId.toString());
+    private byte[] renderSvg(String qrContent, int size) throws WriterException {
+        BitMatrix bitMatrix = new QRCodeWriter().encode(qrContent, BarcodeFormat.QR_CODE, 0, 0);
+        int width = bitMatrix.getWidth();
+        int height = bitMatrix.getHeight();
+
+        StringBuilder svg = new StringBuilder(4096)
+            .append("<svg xmlns=\"http://www.w3.org/2000/svg\" shape-rendering=\"crispEdges\"")
+            .append(" width=\"").append(size).append("\" height=\"").append(size).append('"')
+            .append(" viewBox=\"0 0 ").append(width).append(' ').append(height).append("\">")
+            .append("<rect width=\"100%\" height=\"100%\" fill=\"#fff\"/>")
+            .append("<path fill=\"#000\" d=\"");
+
+        for (int y = 0; y < height; y++) {
+            int x = 0;
+            while (x < width) {
+                if (!bitMatrix.get(x, y)) {
+                    x++;
+                    continue;
+                }
+                int runStart = x;
+                while (x < width && bitMatrix.get(x, y)) {
+                    x++;
+                }
+                int run = x - runStart;
+                svg.append('M').append(runStart).append(',').append(y)
+                    .append('h').append(run).append("v1h-").append(run).append('z');
+            }
+        }
+
+        svg.append("\"/></svg>");
+        return svg.toString().getBytes(StandardCharsets.UTF_8);
     }
 
     /**
@@ -65,12 +117,12 @@ public class QRCodeGenerator {
      * @return the patient UUID, or null if invalid
      */
     public UUID extractPatientId(String qrContent) {
-        if (qrContent == null || !qrContent.startsWith("PATIENT:")) {
+        if (qrContent == null || !qrContent.startsWith(QR_CONTENT_PREFIX)) {
             return null;
         }
-        
+
         try {
-            String uuidString = qrContent.substring(8); // Remove "PATIENT:" prefix
+            String uuidString = qrContent.substring(QR_CONTENT_PREFIX.length());
             return UUID.fromString(uuidString);
         } catch (IllegalArgumentException e) {
             log.warn("Invalid patient UUID in QR code: {}", qrContent);
@@ -83,4 +135,4 @@ public class QRCodeGenerator {
             super(message, cause);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,130 @@
+package com.niyiment.patientservice;
+
+import com.niyiment.patientservice.config.CacheConfiguration;
+import com.niyiment.patientservice.dto.PatientSearchQuery;
+import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.entity.PatientProgram;
+import com.niyiment.patientservice.repository.PatientProgramRepository;
+import com.niyiment.patientservice.mapper.PatientMapperImpl;
+import com.niyiment.patientservice.repository.PatientRepository;
+import com.niyiment.patientservice.service.PatientCacheService;
+import com.niyiment.patientservice.service.PatientQueryService;
+import com.niyiment.patientservice.util.QRCodeGenerator;
+import jakarta.persistence.EntityManager;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Guards campaign enrollment against per-patient statements: a chunk of the cohort, selected by
+ * the patient search filter, is read with one query and enrolled with one insert, whatever its
+ * size or how many are already enrolled.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({TestcontainersConfiguration.class, PatientQueryService.class, PatientMapperImpl.class,
+         QRCodeGenerator.class, PatientCacheService.class, CacheConfiguration.class})
+class CampaignEnrollmentStatementCountTest {
+
+    private static final int COHORT_SIZE = 30;
+    private static final String CAMPAIGN = "MEASLES-2026";
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private PatientProgramRepository programRepository;
+
+    @Autowired
+    private PatientQueryService queryService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Statistics statistics;
+    private final List<UUID> alreadyEnrolled = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        List<UUID> children = PatientFixtures.persistChildren(entityManager, COHORT_SIZE, "Bello", "Kano", "Nassarawa",
+            (patient, i) -> {
+                if (i % 3 == 0) {
+                    patient.addProgram(PatientProgram.builder().programCode(CAMPAIGN).build());
+                }
+            });
+        for (int i = 0; i < COHORT_SIZE; i += 3) {
+            alreadyEnrolled.add(children.get(i));
+        }
+
+        entityManager.persist(
+            PatientFixtures.patient("Adult", "Bello", "Kano", "Nassarawa", Patient.PatientType.ADULT).build());
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics = PatientFixtures.clearedStatistics(entityManager);
+    }
+
+    @Test
+    void enrollChunk_ShouldReadAndInsertWithOneStatementEach() {
+        List<UUID> chunk = patientRepository.findIdsAfter(
+            cohort("Nassarawa", null, LocalDate.now().minusYears(5)), new UUID(0L, 0L), COHORT_SIZE + 10);
+        List<PatientProgramRepository.Enrollment> enrollments =
+            programRepository.enrollAll(chunk, CAMPAIGN, "Measles campaign", LocalDateTime.now());
+
+        assertEquals(COHORT_SIZE, chunk.size());
+        assertEquals(COHORT_SIZE - alreadyEnrolled.size(), enrollments.size());
+        assertEquals(2, statistics.getPrepareStatementCount());
+
+        Set<UUID> enrolled = enrollments.stream()
+            .map(PatientProgramRepository.Enrollment::getPatientId)
+            .collect(Collectors.toSet());
+        alreadyEnrolled.forEach(id -> assertFalse(enrolled.contains(id)));
+        enrollments.forEach(enrollment -> assertNotNull(enrollment.getProgramId()));
+    }
+
+    @Test
+    void enrollChunk_ShouldBumpVersionOfEnrolledPatientsOnly() {
+        Specification<Patient> children = cohort(null, Patient.PatientType.CHILD, null);
+        List<UUID> chunk = patientRepository.findIdsAfter(children, new UUID(0L, 0L), COHORT_SIZE);
+        List<PatientProgramRepository.Enrollment> enrollments =
+            programRepository.enrollAll(chunk, CAMPAIGN, "Measles campaign", LocalDateTime.now());
+        entityManager.clear();
+
+        UUID enrolledId = enrollments.getFirst().getPatientId();
+        assertEquals(1L, patientRepository.findById(enrolledId).orElseThrow().getVersion());
+        assertEquals(0L, patientRepository.findById(alreadyEnrolled.getFirst()).orElseThrow().getVersion());
+        assertEquals(COHORT_SIZE, patientRepository.count(children));
+    }
+
+    @Test
+    void findIdsAfter_ShouldSeekPastTheGivenId() {
+        Specification<Patient> children = cohort(null, Patient.PatientType.CHILD, null);
+        List<UUID> first = patientRepository.findIdsAfter(children, new UUID(0L, 0L), 10);
+        List<UUID> rest = patientRepository.findIdsAfter(children, first.getLast(), COHORT_SIZE);
+
+        assertEquals(10, first.size());
+        assertEquals(COHORT_SIZE - 10, rest.size());
+        assertTrue(Collections.disjoint(first, rest));
+    }
+
+    private Specification<Patient> cohort(String lga, Patient.PatientType patientType, LocalDate dateOfBirthFrom) {
+        return queryService.createSpecification(new PatientSearchQuery(
+            null, null, null, null, null, null, patientType, "Kano", lga, dateOfBirthFrom, null, null,
+            null, null, null, null
+        ));
+    }
+}
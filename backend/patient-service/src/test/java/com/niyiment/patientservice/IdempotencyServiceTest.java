@@ -0,0 +1,249 @@
+package com.niyiment.patientservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.niyiment.patientservice.common.Result;
+import com.niyiment.patientservice.common.ResultError;
+import com.niyiment.patientservice.entity.IdempotencyRecord;
+import com.niyiment.patientservice.repository.IdempotencyRecordRepository;
+import com.niyiment.patientservice.service.IdempotencyService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks a request sent with an Idempotency-Key runs once however often, and however concurrently,
+ * it is retried, whether the original runs on this instance or another. Claims of another instance
+ * are written straight to idempotency_records. Runs outside the test transaction, as claims and
+ * outcomes are committed.
+ */
+@DataJpaTest
+@Import({TestcontainersConfiguration.class, IdempotencyService.class, IdempotencyServiceTest.Beans.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class IdempotencyServiceTest {
+
+    @TestConfiguration
+    static class Beans {
+
+        @Bean
+        ObjectMapper objectMapper() {
+            return new ObjectMapper().findAndRegisterModules();
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private IdempotencyRecordRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void execute_ShouldReplayCompletedOutcome() {
+        Result<String> first = idempotencyService.execute("key-1", "registerPatient", "Amina", String.class, counted("registered"));
+        Result<String> retry = idempotencyService.execute("key-1", "registerPatient", "Amina", String.class, counted("again"));
+
+        assertEquals("registered", first.getValue());
+        assertEquals("registered", retry.getValue());
+        assertEquals(1, runs.get());
+        assertEquals(IdempotencyRecord.Status.COMPLETED,
+            repository.findById(new IdempotencyRecord.Key("key-1", "registerPatient")).orElseThrow().getStatus());
+    }
+
+    @Test
+    void execute_ShouldReplayRejectionsButRerunTransientFailures() {
+        Supplier<Result<String>> conflict = () -> {
+            runs.incrementAndGet();
+            return Result.failure(ResultError.conflict("Patient already exists"));
+        };
+        idempotencyService.execute("key-2", "registerPatient", "Amina", String.class, conflict);
+        Result<String> replayed = idempotencyService.execute("key-2", "registerPatient", "Amina", String.class, conflict);
+        assertEquals("CONFLICT", replayed.getError().code());
+        assertEquals(1, runs.get());
+
+        Supplier<Result<String>> outage = () -> {
+            runs.incrementAndGet();
+            return Result.failure(ResultError.internal("Database unavailable"));
+        };
+        idempotencyService.execute("key-3", "registerPatient", "Amina", String.class, outage);
+        assertTrue(repository.findById(new IdempotencyRecord.Key("key-3", "registerPatient")).isEmpty());
+        assertEquals("registered",
+            idempotencyService.execute("key-3", "registerPatient", "Amina", String.class, counted("registered")).getValue());
+    }
+
+    @Test
+    void execute_ShouldRefuseKeyReusedForDifferentRequest() {
+        idempotencyService.execute("key-4", "addGuardian", List.of("patient", "Mother"), String.class, counted("added"));
+
+        Result<String> reused = idempotencyService.execute(
+            "key-4", "addGuardian", List.of("patient", "Father"), String.class, counted("added"));
+
+        assertEquals("UNPROCESSABLE", reused.getError().code());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void execute_ShouldRunConcurrentDuplicatesOnce() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<Result<String>> slow = () -> {
+            runs.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Result.success("registered");
+        };
+
+        double coalescedBefore = coalesced();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<Result<String>> first = executor.submit(() ->
+                idempotencyService.execute("key-5", "registerPatient", "Amina", String.class, slow));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<Result<String>> second = executor.submit(() ->
+                idempotencyService.execute("key-5", "registerPatient", "Amina", String.class, slow));
+            Future<Result<String>> third = executor.submit(() ->
+                idempotencyService.execute("key-5", "registerPatient", "Amina", String.class, slow));
+            release.countDown();
+
+            assertEquals("registered", first.get(10, TimeUnit.SECONDS).getValue());
+            assertEquals("registered", second.get(10, TimeUnit.SECONDS).getValue());
+            assertEquals("registered", third.get(10, TimeUnit.SECONDS).getValue());
+            assertEquals(1, runs.get());
+            // Both retries waited on the running request in memory rather than polling its record
+            assertEquals(2, coalesced() - coalescedBefore);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void execute_ShouldWaitForRequestRunningOnAnotherInstance() throws Exception {
+        UUID otherInstance = UUID.randomUUID();
+        LocalDateTime now = LocalDateTime.now();
+        claimElsewhere("key-6", otherInstance, now.plusMinutes(1), now.plusHours(1));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Result<String>> retry = executor.submit(() ->
+                idempotencyService.execute("key-6", "registerPatient", "Amina", String.class, counted("again")));
+            Thread.sleep(300);
+            assertFalse(retry.isDone());
+
+            completeElsewhere("key-6", otherInstance, "registered elsewhere");
+
+            assertEquals("registered elsewhere", retry.get(10, TimeUnit.SECONDS).getValue());
+            assertEquals(0, runs.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void execute_ShouldTakeOverKeyWhoseLeaseRanOut() throws Exception {
+        UUID deadInstance = UUID.randomUUID();
+        LocalDateTime now = LocalDateTime.now();
+        claimElsewhere("key-7", deadInstance, now.minusSeconds(1), now.plusHours(1));
+
+        Result<String> retry = idempotencyService.execute("key-7", "registerPatient", "Amina", String.class, counted("registered"));
+
+        assertEquals("registered", retry.getValue());
+        assertEquals(1, runs.get());
+        // The instance whose lease ran out can no longer complete the key
+        assertEquals(0, completeElsewhere("key-7", deadInstance, "registered elsewhere"));
+        assertEquals(IdempotencyRecord.Status.COMPLETED,
+            repository.findById(new IdempotencyRecord.Key("key-7", "registerPatient")).orElseThrow().getStatus());
+    }
+
+    @Test
+    void execute_ShouldForgetCachedOutcomeWhenItsRecordExpires() throws Exception {
+        UUID otherInstance = UUID.randomUUID();
+        LocalDateTime now = LocalDateTime.now();
+        claimElsewhere("key-8", otherInstance, now.plusMinutes(1), now.plusSeconds(1));
+        completeElsewhere("key-8", otherInstance, "registered elsewhere");
+        assertEquals("registered elsewhere",
+            idempotencyService.execute("key-8", "registerPatient", "Amina", String.class, counted("again")).getValue());
+
+        Thread.sleep(1_500);
+
+        assertEquals("registered",
+            idempotencyService.execute("key-8", "registerPatient", "Amina", String.class, counted("registered")).getValue());
+        assertEquals(1, runs.get());
+    }
+
+    private void claimElsewhere(String key, UUID claimToken, LocalDateTime lockedUntil, LocalDateTime expiresAt) {
+        String requestHash = fingerprint("Amina");
+        LocalDateTime now = LocalDateTime.now();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> repository.claim(
+            key, "registerPatient", requestHash, claimToken, now, lockedUntil, expiresAt));
+    }
+
+    private int completeElsewhere(String key, UUID claimToken, String response) throws Exception {
+        String body = objectMapper.writeValueAsString(response);
+        return new TransactionTemplate(transactionManager).execute(status ->
+            repository.complete(key, "registerPatient", claimToken, null, null, body));
+    }
+
+    // The fingerprint the service stores for the request, taken from a run under a throwaway key
+    private String fingerprint(Object request) {
+        String key = "fingerprint-" + UUID.randomUUID();
+        idempotencyService.execute(key, "registerPatient", request, String.class, () -> Result.success("fingerprinted"));
+        return repository.findById(new IdempotencyRecord.Key(key, "registerPatient")).orElseThrow().getRequestHash();
+    }
+
+    private double coalesced() {
+        return meterRegistry.get("patient.idempotency.requests").tag("outcome", "coalesced").counter().count();
+    }
+
+    private Supplier<Result<String>> counted(String value) {
+        return () -> {
+            runs.incrementAndGet();
+            return Result.success(value);
+        };
+    }
+}
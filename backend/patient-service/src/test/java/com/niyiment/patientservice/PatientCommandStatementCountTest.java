@@ -0,0 +1,139 @@
+package com.niyiment.patientservice;
+
+import com.niyiment.patientservice.common.Result;
+import com.niyiment.patientservice.config.CacheConfiguration;
+import com.niyiment.patientservice.dto.CreateGuardianCommand;
+import com.niyiment.patientservice.dto.CreatePatientCommand;
+import com.niyiment.patientservice.dto.PatientDto;
+import com.niyiment.patientservice.entity.Guardian;
+import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.entity.PatientProgram;
+import com.niyiment.patientservice.mapper.PatientMapperImpl;
+import com.niyiment.patientservice.service.PatientCacheService;
+import com.niyiment.patientservice.service.PatientCommandService;
+import jakarta.persistence.EntityManager;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Guards the registration and enrollment paths against existence checks ahead of their writes.
+ * Duplicates are caught by the unique constraints, so a rejected write costs a single statement.
+ */
+@DataJpaTest(properties = {
+    "spring.jpa.properties.hibernate.generate_statistics=true",
+    "spring.jpa.properties.hibernate.jdbc.batch_size=20",
+    "spring.jpa.properties.hibernate.order_inserts=true"
+})
+@Import({TestcontainersConfiguration.class, PatientCommandService.class, PatientMapperImpl.class,
+         PatientCacheService.class, CacheConfiguration.class})
+class PatientCommandStatementCountTest {
+
+    private static final String NATIONAL_ID = "NIN-0000001";
+
+    @Autowired
+    private PatientCommandService commandService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Statistics statistics;
+    private UUID patientId;
+
+    @BeforeEach
+    void setUp() {
+        Patient patient = PatientFixtures.patient("Amaka", "Eze", "Enugu", "Nsukka", Patient.PatientType.CHILD)
+            .nationalId(NATIONAL_ID)
+            .build();
+        patient.addGuardian(Guardian.builder().name("Mother").isPrimary(true).build());
+        patient.addProgram(PatientProgram.builder().programCode("EPI").build());
+        entityManager.persist(patient);
+        entityManager.flush();
+        entityManager.clear();
+        patientId = patient.getId();
+
+        statistics = PatientFixtures.clearedStatistics(entityManager);
+    }
+
+    @Test
+    void registerPatient_ShouldInsertWithoutExistenceCheck() {
+        Result<PatientDto> result = commandService.registerPatient(childCommand("NIN-0000002"));
+
+        assertTrue(result.isSuccess());
+        assertEquals(2, result.getValue().guardians().size());
+        assertEquals(2, result.getValue().programs().size());
+        // patient, guardian batch and program batch
+        assertEquals(3, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void registerPatient_ShouldReportDuplicateNationalIdFromConstraint() {
+        Result<PatientDto> result = commandService.registerPatient(childCommand(NATIONAL_ID));
+
+        assertTrue(result.isFailure());
+        assertEquals("CONFLICT", result.getError().code());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void enrollInProgram_ShouldInsertBeforeLoadingPatient() {
+        Result<PatientDto> result = commandService.enrollInProgram(patientId, "MEASLES");
+
+        assertTrue(result.isSuccess());
+        assertEquals(2, result.getValue().programs().size());
+        // enrollment, then patient, guardians and programs for the response
+        assertEquals(4, statistics.getPrepareStatementCount());
+        assertEquals(1L, entityManager.find(Patient.class, patientId).getVersion());
+    }
+
+    @Test
+    void enrollInProgram_ShouldRefreshPatientAlreadyInSession() {
+        Patient loaded = entityManager.find(Patient.class, patientId);
+        assertEquals(1, loaded.getPrograms().size());
+
+        Result<PatientDto> result = commandService.enrollInProgram(patientId, "MEASLES");
+
+        assertTrue(result.isSuccess());
+        assertEquals(2, result.getValue().programs().size());
+        assertEquals(1L, result.getValue().version());
+    }
+
+    @Test
+    void enrollInProgram_ShouldReportDuplicateEnrollmentInOneStatement() {
+        Result<PatientDto> result = commandService.enrollInProgram(patientId, "EPI");
+
+        assertTrue(result.isFailure());
+        assertEquals("CONFLICT", result.getError().code());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void enrollInProgram_ShouldReportMissingPatientInOneStatement() {
+        Result<PatientDto> result = commandService.enrollInProgram(UUID.randomUUID(), "EPI");
+
+        assertTrue(result.isFailure());
+        assertEquals("NOT_FOUND", result.getError().code());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    private static CreatePatientCommand childCommand(String nationalId) {
+        return new CreatePatientCommand(
+            "Chidi", "Okoro", LocalDate.now().minusYears(1), Patient.Gender.MALE, nationalId,
+            null, null, null, "Enugu", "Nsukka", Patient.PatientType.CHILD,
+            List.of(
+                new CreateGuardianCommand("Ngozi Okoro", "Mother", null, null, null, true),
+                new CreateGuardianCommand("Obi Okoro", "Father", null, null, null, false)
+            ),
+            List.of("EPI", "MEASLES")
+        );
+    }
+}
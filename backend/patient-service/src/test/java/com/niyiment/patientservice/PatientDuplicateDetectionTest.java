@@ -0,0 +1,137 @@
+package com.niyiment.patientservice;
+
+import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.entity.PatientDuplicateCandidate;
+import com.niyiment.patientservice.event.PatientChangedEvent;
+import com.niyiment.patientservice.repository.PatientDuplicateCandidateRepository;
+import com.niyiment.patientservice.repository.PatientRepository;
+import com.niyiment.patientservice.repository.PatientViewRepository;
+import com.niyiment.patientservice.service.PatientDuplicateService;
+import com.niyiment.patientservice.service.ScheduledJobLock;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the duplicate blocking queries against PostgreSQL: the inline probe after a registration,
+ * and the scan's single pass over the read model. Runs outside the test transaction, as both
+ * read committed rows in transactions of their own.
+ */
+@DataJpaTest
+@Import({TestcontainersConfiguration.class, PatientDuplicateService.class, ScheduledJobLock.class,
+         PatientDuplicateDetectionTest.Beans.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PatientDuplicateDetectionTest {
+
+    private static final LocalDate BORN = LocalDate.of(1990, 3, 4);
+    private static final String PHONE = "+234 803 123 4567";
+
+    @TestConfiguration
+    static class Beans {
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Autowired
+    private PatientDuplicateService duplicateService;
+
+    @Autowired
+    private PatientDuplicateCandidateRepository candidateRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private PatientViewRepository viewRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void tearDown() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            candidateRepository.deleteAll();
+            patientRepository.deleteAll();
+            viewRepository.deleteAllRemovedPatients();
+        });
+    }
+
+    @Test
+    void onPatientChanged_ShouldRecordMisspeltRegistrationFoundByBlocking() {
+        Patient amina = register("Amina", "Bello", BORN, PHONE);
+        Patient aminat = register("Aminat", "Bello", BORN, null);
+        register("Musa", "Garba", LocalDate.of(1985, 1, 1), null);
+
+        duplicateService.onPatientChanged(PatientChangedEvent.changed(aminat));
+
+        List<PatientDuplicateCandidate> candidates = candidateRepository.findAll();
+        assertEquals(1, candidates.size());
+        assertEquals(pair(amina.getId(), aminat.getId()), pairOf(candidates.getFirst()));
+        assertEquals(PatientDuplicateCandidate.DetectedBy.INLINE, candidates.getFirst().getDetectedBy());
+    }
+
+    @Test
+    void scheduledScan_ShouldPairEveryBlockButKeepTwinsApart() {
+        Patient amina = register("Amina", "Bello", BORN, PHONE);
+        Patient aminat = register("Aminat", "Bello", BORN, null);
+        Patient swapped = register("Bello", "Amina", BORN, null);
+        Patient twin = register("Hadiza", "Bello", BORN, "0803 123 4567");
+        register("Musa", "Garba", LocalDate.of(1985, 1, 1), null);
+
+        duplicateService.scheduledScan();
+
+        Set<Set<UUID>> pairs = candidateRepository.findAll().stream()
+            .map(this::pairOf)
+            .collect(Collectors.toSet());
+        assertEquals(Set.of(
+            pair(amina.getId(), aminat.getId()),
+            pair(amina.getId(), swapped.getId()),
+            pair(aminat.getId(), swapped.getId())
+        ), pairs);
+        assertTrue(pairs.stream().noneMatch(pair -> pair.contains(twin.getId())));
+        assertTrue(candidateRepository.findAll().stream()
+            .allMatch(candidate -> candidate.getDetectedBy() == PatientDuplicateCandidate.DetectedBy.BATCH));
+    }
+
+    private Patient register(String firstName, String lastName, LocalDate dateOfBirth, String phone) {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            Patient patient = patientRepository.saveAndFlush(
+                PatientFixtures.patient(firstName, lastName, "Kano", "Nassarawa", Patient.PatientType.ADULT)
+                    .dateOfBirth(dateOfBirth)
+                    .gender(Patient.Gender.FEMALE)
+                    .phone(phone)
+                    .build());
+            viewRepository.projectPatients(List.of(patient.getId()));
+            return patient;
+        });
+    }
+
+    private Set<UUID> pairOf(PatientDuplicateCandidate candidate) {
+        return pair(candidate.getPatientId(), candidate.getDuplicateId());
+    }
+
+    private static Set<UUID> pair(UUID left, UUID right) {
+        return Set.of(left, right);
+    }
+}
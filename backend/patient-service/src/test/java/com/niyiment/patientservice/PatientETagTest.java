@@ -0,0 +1,50 @@
+package com.niyiment.patientservice;
+
+import com.niyiment.patientservice.common.PatientETag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks patient ETags are read back from If-Match headers as sent by HTTP clients.
+ */
+class PatientETagTest {
+
+    private final UUID patientId = UUID.fromString("4f0c6a2e-8d1b-4b6a-9a57-2f1e3c4d5b6a");
+
+    @Test
+    void expectedVersion_ShouldReadTheTagOfThePatient() {
+        String etag = PatientETag.of(patientId, 7L).encode();
+
+        assertEquals(Optional.of(7L), PatientETag.expectedVersion(etag, patientId));
+        assertEquals(Optional.of(7L), PatientETag.expectedVersion("\"other\", " + etag, patientId));
+    }
+
+    @Test
+    void expectedVersion_ShouldReadTheTagOfAPartialRepresentation() {
+        PatientETag etag = PatientETag.of(patientId, 7L);
+
+        assertNotEquals(etag.encode(), etag.encode("1f"));
+        assertNotEquals(etag.encode("1f"), etag.encode("3f"));
+        assertEquals(Optional.of(7L), PatientETag.expectedVersion(etag.encode("1f"), patientId));
+    }
+
+    @Test
+    void expectedVersion_ShouldIgnoreWeakAndForeignTags() {
+        String etag = PatientETag.of(patientId, 7L).encode();
+
+        assertEquals(Optional.empty(), PatientETag.expectedVersion("W/" + etag, patientId));
+        assertEquals(Optional.empty(), PatientETag.expectedVersion(PatientETag.of(UUID.randomUUID(), 7L).encode(), patientId));
+        assertEquals(Optional.empty(), PatientETag.expectedVersion("\"" + patientId + "-\"", patientId));
+    }
+
+    @Test
+    void matchesAny_ShouldAcceptMissingOrWildcardHeader() {
+        assertTrue(PatientETag.matchesAny(null));
+        assertTrue(PatientETag.matchesAny(" * "));
+        assertFalse(PatientETag.matchesAny(PatientETag.of(patientId, null).encode()));
+    }
+}
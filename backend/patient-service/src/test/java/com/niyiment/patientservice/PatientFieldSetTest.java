@@ -0,0 +1,110 @@
+package com.niyiment.patientservice;
+
+import com.niyiment.patientservice.dto.PatientDto;
+import com.niyiment.patientservice.dto.PatientFieldSet;
+import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.entity.PatientProgram;
+import com.niyiment.patientservice.entity.PatientView;
+import com.niyiment.patientservice.repository.PatientRepository;
+import com.niyiment.patientservice.repository.PatientViewRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks fields= and expand= are parsed strictly and that only the requested columns are read back.
+ */
+@DataJpaTest
+@Import(TestcontainersConfiguration.class)
+class PatientFieldSetTest {
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private PatientViewRepository viewRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private UUID patientId;
+
+    @BeforeEach
+    void setUp() {
+        Patient patient = PatientFixtures.patient("Halima", "Bello", "Kano", "Fagge", Patient.PatientType.CHILD)
+            .gender(Patient.Gender.FEMALE)
+            .phone("+2348030000000")
+            .build();
+        patient.addProgram(PatientProgram.builder().programCode("MEASLES").build());
+        entityManager.persist(patient);
+        entityManager.flush();
+        patientId = patient.getId();
+        viewRepository.projectPatients(List.of(patientId));
+        entityManager.clear();
+    }
+
+    @Test
+    void parse_ShouldAlwaysIncludeIdAndVersion() {
+        PatientFieldSet fields = PatientFieldSet.parse("firstName, lastName", null).getValue();
+
+        assertEquals(List.of("id", "firstName", "lastName", "version"), List.copyOf(fields.fields()));
+        assertTrue(fields.expand().isEmpty());
+        assertTrue(PatientFieldSet.parse(null, " ").getValue().isFull());
+        assertTrue(PatientFieldSet.parse("firstName,ssn", null).isFailure());
+        assertTrue(PatientFieldSet.parse(null, "visits").isFailure());
+    }
+
+    @Test
+    void key_ShouldBeEqualOnlyForEqualFieldSets() {
+        PatientFieldSet names = PatientFieldSet.parse("firstName,lastName", null).getValue();
+
+        assertEquals(names.key(), PatientFieldSet.parse("lastName, firstName, id", null).getValue().key());
+        assertNotEquals(names.key(), PatientFieldSet.parse("firstName,lastName", "guardians").getValue().key());
+        assertNotEquals(names.key(), PatientFieldSet.parse("firstName", null).getValue().key());
+        assertNotEquals(names.key(), PatientFieldSet.FULL.key());
+    }
+
+    @Test
+    void findFieldsById_ShouldReadOnlyRequestedFields() {
+        PatientFieldSet fields = PatientFieldSet.parse("firstName,phone", null).getValue();
+
+        PatientDto patient = patientRepository.findFieldsById(patientId, fields).orElseThrow();
+
+        assertEquals(patientId, patient.id());
+        assertEquals("Halima", patient.firstName());
+        assertEquals("+2348030000000", patient.phone());
+        assertNotNull(patient.version());
+        assertNull(patient.lastName());
+        assertNull(patient.programs());
+        assertThrows(IllegalArgumentException.class,
+            () -> patientRepository.findFieldsById(patientId, PatientFieldSet.FULL));
+    }
+
+    @Test
+    void findFields_ShouldReadRequestedViewColumnsAndCollections() {
+        PatientFieldSet fields = PatientFieldSet.parse("lastName", PatientFieldSet.PROGRAMS).getValue();
+        Specification<PatientView> inKano = (root, query, cb) -> cb.equal(root.get("state"), "Kano");
+
+        Page<PatientDto> page = viewRepository.findFields(inKano, PageRequest.of(0, 10, Sort.by("lastName")), fields);
+
+        assertEquals(1, page.getTotalElements());
+        PatientDto patient = page.getContent().getFirst();
+        assertEquals("Bello", patient.lastName());
+        assertEquals(1, patient.programs().size());
+        assertNull(patient.firstName());
+        assertNull(patient.guardians());
+        assertEquals(List.of("id", "lastName", "version", "programs"), List.copyOf(fields.render(patient).keySet()));
+    }
+}
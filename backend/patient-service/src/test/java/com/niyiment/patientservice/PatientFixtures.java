@@ -0,0 +1,77 @@
+package com.niyiment.patientservice;
+
+import com.niyiment.patientservice.entity.Guardian;
+import com.niyiment.patientservice.entity.Patient;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Patient seeding and statement counting shared by the persistence tests.
+ */
+final class PatientFixtures {
+
+    private PatientFixtures() {
+    }
+
+    /**
+     * A patient of the given type in the given state and LGA, born inside the type's age band.
+     * Tests set any other field, or a specific birth date, on the returned builder.
+     */
+    static Patient.PatientBuilder patient(String firstName, String lastName, String state, String lga,
+                                          Patient.PatientType patientType) {
+        return Patient.builder()
+            .firstName(firstName)
+            .lastName(lastName)
+            .dateOfBirth(birthDateFor(patientType))
+            .state(state)
+            .lga(lga)
+            .patientType(patientType);
+    }
+
+    /**
+     * Persists children named Child0, Child1 and so on, each with a primary guardian "Mother i",
+     * and flushes them. {@code extras} receives each child and its index before it is persisted.
+     *
+     * @return the children's IDs, in index order
+     */
+    static List<UUID> persistChildren(EntityManager entityManager, int count, String lastName, String state,
+                                      String lga, ObjIntConsumer<Patient> extras) {
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Patient patient = patient("Child" + i, lastName, state, lga, Patient.PatientType.CHILD).build();
+            patient.addGuardian(Guardian.builder().name("Mother " + i).isPrimary(true).build());
+            extras.accept(patient, i);
+            entityManager.persist(patient);
+            ids.add(patient.getId());
+        }
+        entityManager.flush();
+        return ids;
+    }
+
+    /**
+     * Hibernate statistics of the test's persistence unit, cleared so statement counts start now.
+     * The test needs hibernate.generate_statistics=true for the counts to be kept.
+     */
+    static Statistics clearedStatistics(EntityManager entityManager) {
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        return statistics;
+    }
+
+    private static LocalDate birthDateFor(Patient.PatientType patientType) {
+        LocalDate today = LocalDate.now();
+        return switch (patientType) {
+            case INFANT -> today.minusMonths(6);
+            case CHILD -> today.minusYears(3);
+            case ELDERLY -> today.minusYears(70);
+            case ADULT, SPECIAL_NEEDS -> today.minusYears(30);
+        };
+    }
+}
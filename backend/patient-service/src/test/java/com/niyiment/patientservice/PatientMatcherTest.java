@@ -0,0 +1,79 @@
+package com.niyiment.patientservice;
+
+import com.niyiment.patientservice.util.PatientMatcher;
+import com.niyiment.patientservice.util.PatientMatcher.Subject;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the duplicate matcher pairs common registration slips but keeps relatives apart.
+ */
+class PatientMatcherTest {
+
+    private final PatientMatcher matcher = new PatientMatcher(11.0);
+
+    private final Subject amina = subject("Amina", "Bello", LocalDate.of(1990, 3, 4), "FEMALE", null, "8031234567");
+
+    @Test
+    void match_ShouldPairSpellingVariantsAndTypos() {
+        PatientMatcher.Match misspelt = matcher.match(amina,
+            subject("Aminat", "Bello", LocalDate.of(1990, 3, 4), "FEMALE", null));
+        assertNotNull(misspelt);
+        assertTrue(misspelt.matchedFields().containsAll(List.of("firstName", "lastName", "dateOfBirth")));
+
+        assertNotNull(matcher.match(amina, subject("Amina", "Bello", LocalDate.of(1990, 4, 3), "FEMALE", null)));
+        assertNotNull(matcher.match(amina, subject("Ámina", "BELLO", LocalDate.of(1990, 3, 5), "FEMALE", null)));
+    }
+
+    @Test
+    void match_ShouldPairSwappedNames() {
+        PatientMatcher.Match swapped = matcher.match(amina,
+            subject("Bello", "Amina", LocalDate.of(1990, 3, 4), "FEMALE", null));
+
+        assertNotNull(swapped);
+        assertTrue(swapped.matchedFields().contains("swappedNames"));
+    }
+
+    @Test
+    void match_ShouldKeepRelativesAndDifferentNationalIdsApart() {
+        Subject sibling = subject("Musa", "Bello", LocalDate.of(1994, 8, 21), "MALE", null, "8031234567");
+        Subject twin = subject("Hassan", "Bello", LocalDate.of(1990, 3, 4), "MALE", null, "8031234567");
+        Subject namesake = subject("Amina", "Bello", LocalDate.of(1990, 3, 4), "FEMALE", "NIN-2");
+
+        assertNull(matcher.match(amina, sibling));
+        assertNull(matcher.match(amina, twin));
+        assertNull(matcher.match(subject("Amina", "Bello", LocalDate.of(1990, 3, 4), "FEMALE", "NIN-1"), namesake));
+    }
+
+    @Test
+    void match_ShouldScorePatientsWithoutState() {
+        Subject stateless = new Subject(UUID.randomUUID(), "Amina", "Bello", LocalDate.of(1990, 3, 4), "FEMALE", null,
+            null, "Nassarawa", Set.of());
+
+        PatientMatcher.Match match = matcher.match(stateless, amina);
+
+        assertNotNull(match);
+        assertFalse(match.matchedFields().contains("lga"));
+        assertTrue(matcher.match(stateless, stateless).matchedFields().contains("lga"));
+    }
+
+    @Test
+    void phoneKey_ShouldMatchLocalAndInternationalForms() {
+        assertEquals("8031234567", PatientMatcher.phoneKey("+234 803 123 4567"));
+        assertEquals("8031234567", PatientMatcher.phoneKey("0803-123-4567"));
+        assertNull(PatientMatcher.phoneKey("12345"));
+        assertNull(PatientMatcher.phoneKey(null));
+    }
+
+    private static Subject subject(String firstName, String lastName, LocalDate dateOfBirth, String gender,
+                                   String nationalId, String... phones) {
+        return new Subject(UUID.randomUUID(), firstName, lastName, dateOfBirth, gender, nationalId,
+            "Kano", "Nassarawa", Set.of(phones));
+    }
+}
@@ -0,0 +1,222 @@
+package com.niyiment.patientservice;
+
+import com.niyiment.patientservice.dto.PatientFieldSet;
+import com.niyiment.patientservice.entity.Guardian;
+import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.entity.PatientProgram;
+import com.niyiment.patientservice.repository.PatientRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import org.hibernate.exception.ConstraintViolationException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the patient tables are partitioned by state: state-scoped queries and lookups by ID read
+ * one state's partitions, a patient's rows move together, and national IDs stay unique across states.
+ * The benchmark compares state-scoped search latency with an unpartitioned copy of the same rows;
+ * run it with -Dpatient.benchmark=true, and -Dpatient.benchmark.rows to change the row count.
+ */
+@DataJpaTest
+@Import(TestcontainersConfiguration.class)
+class PatientPartitioningTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PatientPartitioningTest.class);
+
+    private static final List<String> STATES = List.of(
+        "Abia", "Adamawa", "Akwa Ibom", "Anambra", "Bauchi", "Bayelsa", "Benue", "Borno", "Cross River",
+        "Delta", "Ebonyi", "Edo", "Ekiti", "Enugu", "Gombe", "Imo", "Jigawa", "Kaduna", "Kano", "Katsina",
+        "Kebbi", "Kogi", "Kwara", "Lagos", "Nasarawa", "Niger", "Ogun", "Ondo", "Osun", "Oyo", "Plateau",
+        "Rivers", "Sokoto", "Taraba", "Yobe", "Zamfara", "FCT"
+    );
+
+    private static final int BENCHMARK_RUNS = 50;
+
+    // Same statements as the state-scoped summary search and roster count, for each table under test
+    private static final String SEARCH = """
+        SELECT id, first_name, last_name, date_of_birth, state, lga, created_at
+        FROM %s
+        WHERE state = 'Kano' AND LOWER(last_name) LIKE 'bello%%'
+        ORDER BY created_at DESC, id DESC
+        LIMIT 20
+        """;
+    private static final String COUNT = "SELECT COUNT(*) FROM %s WHERE state = 'Kano' AND lga = 'LGA 7'";
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void stateScopedQueries_ShouldOnlyReadThatStatesPartitions() {
+        persist("Kano", null);
+        persist("Lagos", null);
+        entityManager.flush();
+
+        String count = explain("SELECT COUNT(*) FROM patients WHERE state = 'Kano'");
+        assertTrue(count.contains("patients_kano"), count);
+        assertFalse(count.contains("patients_lagos"), count);
+
+        String roster = explain("""
+            SELECT p.id FROM patients p
+            WHERE p.state = 'Kano' AND EXISTS (SELECT 1 FROM patient_programs pp
+                WHERE pp.patient_id = p.id AND pp.patient_state = p.state AND pp.program_code = 'MEASLES')
+            """);
+        assertTrue(roster.contains("patient_programs_kano"), roster);
+        assertFalse(roster.contains("patient_programs_lagos"), roster);
+        assertEquals(1L, patientRepository.countByState("Kano"));
+    }
+
+    @Test
+    void patientWithoutState_ShouldLandInDefaultPartition() {
+        UUID patientId = persist(null, null);
+        entityManager.flush();
+
+        assertEquals("patients_default", partitionOf("patients", patientId));
+        assertEquals(Patient.UNSPECIFIED_STATE, patientRepository.findById(patientId).orElseThrow().getState());
+        PatientFieldSet state = PatientFieldSet.parse("state", null).getValue();
+        assertNull(patientRepository.findFieldsById(patientId, state).orElseThrow().state());
+    }
+
+    @Test
+    void lookupById_ShouldOnlyReadThePartitionOfThePatientsState() {
+        UUID patientId = persist("Kano", null);
+        persist("Lagos", null);
+        entityManager.flush();
+
+        // Same predicate as PatientRepository.LOCATED_BY_ID; partitions pruned at execution time are never executed
+        String plan = explainAnalyze("""
+            SELECT p.id FROM patients p
+            WHERE p.id = '%1$s' AND p.state = (SELECT l.state FROM patient_locations l WHERE l.patient_id = '%1$s')
+            """.formatted(patientId));
+        assertEquals(STATES.size(), plan.split("\\(never executed\\)", -1).length - 1, plan);
+        assertEquals(patientId, patientRepository.findLocatedById(patientId).orElseThrow().getId());
+    }
+
+    @Test
+    void movingState_ShouldTakeGuardiansAndProgramsAlong() {
+        UUID patientId = persist("Kano", "NIN-MOVE");
+        entityManager.flush();
+        entityManager.clear();
+
+        Patient patient = patientRepository.findById(patientId).orElseThrow();
+        patient.setState("Lagos");
+        entityManager.flush();
+        entityManager.clear();
+
+        assertEquals("patients_lagos", partitionOf("patients", patientId));
+        assertEquals("guardians_lagos", partitionOf("guardians", patientId));
+        assertEquals("patient_programs_lagos", partitionOf("patient_programs", patientId));
+        assertEquals(1L, patientRepository.findById(patientId).orElseThrow().getVersion());
+        assertTrue(patientRepository.findByNationalId("NIN-MOVE").isPresent());
+        assertEquals("Lagos", patientRepository.findLocatedById(patientId).orElseThrow().getState());
+    }
+
+    @Test
+    void nationalId_ShouldStayUniqueAcrossStates() {
+        persist("Kano", "NIN-12345");
+        entityManager.flush();
+        persist("Lagos", "NIN-12345");
+
+        PersistenceException thrown = assertThrows(PersistenceException.class, entityManager::flush);
+        Throwable cause = thrown;
+        while (cause != null && !(cause instanceof ConstraintViolationException)) {
+            cause = cause.getCause();
+        }
+        assertNotNull(cause, "Expected a constraint violation");
+        assertEquals("patients_national_id_key", ((ConstraintViolationException) cause).getConstraintName());
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "patient.benchmark", matches = "true")
+    void stateScopedSearch_Benchmark() {
+        int rows = Integer.getInteger("patient.benchmark.rows", 2_000_000);
+        String states = STATES.stream().map(state -> "'" + state + "'").collect(Collectors.joining(", "));
+        entityManager.createNativeQuery("""
+            INSERT INTO patients (id, first_name, last_name, date_of_birth, gender, state, lga, patient_type,
+                                  created_at, updated_at, version)
+            SELECT gen_random_uuid(), 'First' || i,
+                   (ARRAY['Bello', 'Musa', 'Okafor', 'Adeyemi', 'Eze'])[1 + i %% 5] || (i %% 1000),
+                   DATE '1950-01-01' + (i %% 27000), CASE WHEN i %% 2 = 0 THEN 'MALE' ELSE 'FEMALE' END,
+                   (ARRAY[%s])[1 + i %% %d], 'LGA ' || (i %% 20), 'ADULT',
+                   LOCALTIMESTAMP - make_interval(secs => i), LOCALTIMESTAMP, 0
+            FROM generate_series(1, %d) i
+            """.formatted(states, STATES.size(), rows)).executeUpdate();
+
+        // Unpartitioned copy with the indexes the patients table had before partitioning
+        List.of(
+            "CREATE TABLE patients_flat AS SELECT * FROM patients",
+            "ALTER TABLE patients_flat ADD PRIMARY KEY (id)",
+            "CREATE INDEX ON patients_flat (state)",
+            "CREATE INDEX ON patients_flat (lga)",
+            "CREATE INDEX ON patients_flat (created_at, id)",
+            "CREATE INDEX ON patients_flat USING GIN (LOWER(last_name) gin_trgm_ops)",
+            "ANALYZE patients",
+            "ANALYZE patients_flat"
+        ).forEach(sql -> entityManager.createNativeQuery(sql).executeUpdate());
+
+        log.info("State-scoped queries over {} patients in {} states (median / p95 of {} runs)",
+            rows, STATES.size(), BENCHMARK_RUNS);
+        log.info("  search partitioned {}, unpartitioned {}",
+            time(SEARCH.formatted("patients")), time(SEARCH.formatted("patients_flat")));
+        log.info("  count  partitioned {}, unpartitioned {}",
+            time(COUNT.formatted("patients")), time(COUNT.formatted("patients_flat")));
+    }
+
+    private UUID persist(String state, String nationalId) {
+        String partitionState = state == null ? Patient.UNSPECIFIED_STATE : state;
+        Patient patient = PatientFixtures.patient("Amina", "Bello", partitionState, "Nassarawa", Patient.PatientType.CHILD)
+            .nationalId(nationalId)
+            .build();
+        patient.addGuardian(Guardian.builder().name("Hauwa Bello").isPrimary(true).build());
+        patient.addProgram(PatientProgram.builder().programCode("MEASLES").build());
+        entityManager.persist(patient);
+        return patient.getId();
+    }
+
+    private String partitionOf(String table, UUID patientId) {
+        String idColumn = table.equals("patients") ? "id" : "patient_id";
+        return (String) entityManager.createNativeQuery(
+                "SELECT CAST(CAST(tableoid AS regclass) AS text) FROM " + table + " WHERE " + idColumn + " = :id")
+            .setParameter("id", patientId)
+            .getSingleResult();
+    }
+
+    @SuppressWarnings("unchecked")
+    private String explain(String sql) {
+        List<String> plan = entityManager.createNativeQuery("EXPLAIN (COSTS OFF) " + sql).getResultList();
+        return String.join("\n", plan);
+    }
+
+    @SuppressWarnings("unchecked")
+    private String explainAnalyze(String sql) {
+        List<String> plan = entityManager.createNativeQuery("EXPLAIN (ANALYZE, COSTS OFF, TIMING OFF, SUMMARY OFF) " + sql)
+            .getResultList();
+        return String.join("\n", plan);
+    }
+
+    private String time(String sql) {
+        long[] micros = new long[BENCHMARK_RUNS];
+        entityManager.createNativeQuery(sql).getResultList();
+        for (int i = 0; i < BENCHMARK_RUNS; i++) {
+            long started = System.nanoTime();
+            entityManager.createNativeQuery(sql).getResultList();
+            micros[i] = (System.nanoTime() - started) / 1_000;
+        }
+        Arrays.sort(micros);
+        return "%.2f / %.2f ms".formatted(micros[BENCHMARK_RUNS / 2] / 1000.0, micros[BENCHMARK_RUNS * 95 / 100] / 1000.0);
+    }
+}
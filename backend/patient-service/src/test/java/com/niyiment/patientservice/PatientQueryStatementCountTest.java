@@ -0,0 +1,127 @@
+package com.niyiment.patientservice;
+
+import com.niyiment.patientservice.common.Result;
+import com.niyiment.patientservice.config.CacheConfiguration;
+import com.niyiment.patientservice.dto.CursorPage;
+import com.niyiment.patientservice.dto.PatientDto;
+import com.niyiment.patientservice.dto.PatientSearchQuery;
+import com.niyiment.patientservice.entity.Guardian;
+import com.niyiment.patientservice.entity.PatientProgram;
+import com.niyiment.patientservice.mapper.PatientMapperImpl;
+import com.niyiment.patientservice.repository.PatientViewRepository;
+import com.niyiment.patientservice.service.PatientCacheService;
+import com.niyiment.patientservice.service.PatientQueryService;
+import com.niyiment.patientservice.util.QRCodeGenerator;
+import jakarta.persistence.EntityManager;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Guards the list endpoints against N+1 loading of guardians and programs.
+ * Lists read the denormalised read model, so a page costs the same whatever the patients hold.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({TestcontainersConfiguration.class, PatientQueryService.class, PatientMapperImpl.class,
+         QRCodeGenerator.class, PatientCacheService.class, CacheConfiguration.class})
+class PatientQueryStatementCountTest {
+
+    private static final int PATIENT_COUNT = 25;
+    private static final int PAGE_SIZE = 20;
+
+    @Autowired
+    private PatientQueryService queryService;
+
+    @Autowired
+    private PatientViewRepository viewRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        List<UUID> ids = PatientFixtures.persistChildren(entityManager, PATIENT_COUNT, "Okafor", "Lagos", "Ikeja",
+            (patient, i) -> {
+                patient.addGuardian(Guardian.builder().name("Father " + i).build());
+                patient.addProgram(PatientProgram.builder().programCode("EPI-" + i).build());
+                patient.addProgram(PatientProgram.builder().programCode("MEASLES-" + i).build());
+            });
+        viewRepository.projectPatients(ids);
+        entityManager.clear();
+
+        statistics = PatientFixtures.clearedStatistics(entityManager);
+    }
+
+    @Test
+    void searchPatients_ShouldLoadPageCollectionsInBoundedQueries() {
+        PatientSearchQuery query = new PatientSearchQuery(
+            null, null, null, null, null, null, null,
+            "Lagos", null, null, null, null,
+            0, PAGE_SIZE, "createdAt", "DESC"
+        );
+
+        Result<Page<PatientDto>> result = queryService.searchPatients(query);
+
+        assertTrue(result.isSuccess());
+        assertEquals(PAGE_SIZE, result.getValue().getContent().size());
+        result.getValue().getContent().forEach(dto -> {
+            assertEquals(2, dto.guardians().size());
+            assertEquals(2, dto.programs().size());
+        });
+        // page + count, independent of page size
+        assertTrue(statistics.getPrepareStatementCount() <= 2,
+            "Expected at most 2 statements but was " + statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void searchPatientsByCursor_ShouldLoadPageCollectionsInBoundedQueries() {
+        PatientSearchQuery query = new PatientSearchQuery(
+            null, null, null, null, null, null, null,
+            null, null, null, null, null,
+            0, PAGE_SIZE, "createdAt", "DESC"
+        );
+
+        Result<CursorPage<PatientDto>> result = queryService.searchPatientsByCursor(query, null, false);
+
+        assertTrue(result.isSuccess());
+        assertEquals(PAGE_SIZE, result.getValue().content().size());
+        result.getValue().content().forEach(dto -> {
+            assertEquals(2, dto.guardians().size());
+            assertEquals(2, dto.programs().size());
+        });
+        // seek only
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void searchPatientsByCursor_ShouldContinueAfterTheLastPatientOfThePreviousPage() {
+        PatientSearchQuery query = new PatientSearchQuery(
+            null, null, null, null, null, null, null,
+            null, null, null, null, null,
+            0, PAGE_SIZE, "createdAt", "DESC"
+        );
+
+        CursorPage<PatientDto> first = queryService.searchPatientsByCursor(query, null, false).getValue();
+        CursorPage<PatientDto> second = queryService.searchPatientsByCursor(query, first.nextCursor(), false).getValue();
+
+        assertTrue(first.hasNext());
+        assertFalse(second.hasNext());
+        assertEquals(PATIENT_COUNT - PAGE_SIZE, second.content().size());
+        assertEquals(PATIENT_COUNT, Stream.concat(first.content().stream(), second.content().stream())
+            .map(PatientDto::id)
+            .distinct()
+            .count());
+    }
+}
@@ -0,0 +1,148 @@
+package com.niyiment.patientservice;
+
+import com.niyiment.patientservice.config.CacheConfiguration;
+import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.entity.ScheduledJobRun;
+import com.niyiment.patientservice.mapper.PatientMapperImpl;
+import com.niyiment.patientservice.repository.PatientRepository;
+import com.niyiment.patientservice.repository.ScheduledJobRunRepository;
+import com.niyiment.patientservice.service.PatientCacheService;
+import com.niyiment.patientservice.service.PatientReclassificationService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Guards the age band job against per-patient statements: a chunk of patients born on one date
+ * is reclassified with a single conditional update. Also checks a run covers every day since the
+ * last successful one.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({TestcontainersConfiguration.class, PatientReclassificationService.class, PatientCacheService.class,
+         PatientMapperImpl.class, CacheConfiguration.class, PatientReclassificationStatementCountTest.Beans.class})
+class PatientReclassificationStatementCountTest {
+
+    @TestConfiguration
+    static class Beans {
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    private static final LocalDate TODAY = LocalDate.of(2026, 10, 17);
+    private static final LocalDate EIGHTEENTH_BIRTHDAY = TODAY.minusYears(18);
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private PatientReclassificationService reclassificationService;
+
+    @Autowired
+    private ScheduledJobRunRepository jobRunRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Statistics statistics;
+    private UUID grownUp;
+    private UUID alreadyAdult;
+    private UUID specialNeeds;
+
+    @BeforeEach
+    void setUp() {
+        grownUp = persist("Grown", Patient.PatientType.CHILD);
+        alreadyAdult = persist("Adult", Patient.PatientType.ADULT);
+        specialNeeds = persist("Special", Patient.PatientType.SPECIAL_NEEDS);
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics = PatientFixtures.clearedStatistics(entityManager);
+    }
+
+    @Test
+    void ageBand_ShouldChangeOnBoundaryBirthday() {
+        assertEquals(Patient.PatientType.ADULT, Patient.PatientType.ageBand(EIGHTEENTH_BIRTHDAY, TODAY));
+        assertEquals(Patient.PatientType.CHILD, Patient.PatientType.ageBand(EIGHTEENTH_BIRTHDAY.plusDays(1), TODAY));
+        assertEquals(Patient.PatientType.INFANT, Patient.PatientType.ageBand(TODAY.minusDays(364), TODAY));
+        assertEquals(Patient.PatientType.ELDERLY, Patient.PatientType.ageBand(TODAY.minusYears(65), TODAY));
+    }
+
+    @Test
+    void reclassifyBornOn_ShouldOnlyChangePatientsOutsideTheirBandInOneStatement() {
+        List<PatientRepository.ReclassificationRow> rows = patientRepository.reclassifyBornOn(
+            EIGHTEENTH_BIRTHDAY, Patient.PatientType.ADULT.name(), new UUID(0L, 0L), 100);
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        Map<UUID, Boolean> reclassified = rows.stream().collect(Collectors.toMap(
+            PatientRepository.ReclassificationRow::getId, PatientRepository.ReclassificationRow::getReclassified));
+        assertEquals(Map.of(grownUp, true, alreadyAdult, false, specialNeeds, false), reclassified);
+
+        entityManager.clear();
+        Patient patient = patientRepository.findById(grownUp).orElseThrow();
+        assertEquals(Patient.PatientType.ADULT, patient.getPatientType());
+        assertEquals(1L, patient.getVersion());
+        assertEquals(Patient.PatientType.SPECIAL_NEEDS,
+            patientRepository.findById(specialNeeds).orElseThrow().getPatientType());
+        assertEquals(0L, patientRepository.findById(alreadyAdult).orElseThrow().getVersion());
+    }
+
+    @Test
+    void reclassifyBornOn_ShouldSeekPastPreviousChunk() {
+        List<PatientRepository.ReclassificationRow> first = patientRepository.reclassifyBornOn(
+            EIGHTEENTH_BIRTHDAY, Patient.PatientType.ADULT.name(), new UUID(0L, 0L), 2);
+        List<PatientRepository.ReclassificationRow> second = patientRepository.reclassifyBornOn(
+            EIGHTEENTH_BIRTHDAY, Patient.PatientType.ADULT.name(), first.getLast().getId(), 2);
+
+        assertEquals(2, first.size());
+        assertEquals(1, second.size());
+        assertEquals(Set.of(grownUp, alreadyAdult, specialNeeds), Stream.concat(first.stream(), second.stream())
+            .map(PatientRepository.ReclassificationRow::getId)
+            .collect(Collectors.toSet()));
+    }
+
+    @Test
+    void reclassifySinceLastRun_ShouldCatchUpOnBirthdaysMissedWhileTheJobWasDown() {
+        jobRunRepository.save(new ScheduledJobRun("patient-reclassification", TODAY.minusDays(30), LocalDateTime.now()));
+        LocalDate later = TODAY.plusDays(20);
+
+        assertEquals(1, reclassificationService.reclassifySinceLastRun(later));
+
+        assertEquals(Patient.PatientType.ADULT, patientRepository.findById(grownUp).orElseThrow().getPatientType());
+        assertEquals(later, jobRunRepository.findById("patient-reclassification").orElseThrow().getLastSucceededOn());
+    }
+
+    @Test
+    void reclassify_ShouldMissBirthdaysOutsideTheLookbackWindow() {
+        assertEquals(0, reclassificationService.reclassify(TODAY.plusDays(20)));
+    }
+
+    private UUID persist(String firstName, Patient.PatientType patientType) {
+        Patient patient = PatientFixtures.patient(firstName, "Musa", "Kaduna", "Zaria", patientType)
+            .dateOfBirth(EIGHTEENTH_BIRTHDAY)
+            .build();
+        entityManager.persist(patient);
+        return patient.getId();
+    }
+}
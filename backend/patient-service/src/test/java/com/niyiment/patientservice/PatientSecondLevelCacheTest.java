@@ -0,0 +1,164 @@
+package com.niyiment.patientservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.niyiment.patientservice.config.CacheConfiguration;
+import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.entity.PatientProgram;
+import com.niyiment.patientservice.mapper.PatientMapperImpl;
+import com.niyiment.patientservice.repository.PatientRepository;
+import com.niyiment.patientservice.service.PatientCacheInvalidator;
+import com.niyiment.patientservice.service.PatientCacheService;
+import com.niyiment.patientservice.service.PatientEventPublisher;
+import jakarta.persistence.EntityManager;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares database round trips for repeated patient loads with and without the second-level cache.
+ * The workload mirrors the command paths: load a patient by ID and touch its guardians and programs,
+ * with a fresh persistence context per load. Also checks a change made on another instance is
+ * not served from the cache once its event has been handled, unless the event is this instance's own.
+ */
+@DataJpaTest(properties = {
+    "spring.jpa.properties.hibernate.generate_statistics=true",
+    "spring.jpa.properties.hibernate.cache.use_second_level_cache=true",
+    "spring.jpa.properties.hibernate.cache.region.factory_class=jcache",
+    "spring.jpa.properties.hibernate.javax.cache.provider=com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider",
+    "spring.jpa.properties.hibernate.javax.cache.missing_cache_strategy=fail"
+})
+@Import({TestcontainersConfiguration.class, PatientCacheInvalidator.class, PatientCacheService.class,
+         PatientMapperImpl.class, CacheConfiguration.class, PatientSecondLevelCacheTest.Beans.class})
+class PatientSecondLevelCacheTest {
+
+    @TestConfiguration
+    static class Beans {
+
+        @Bean
+        ObjectMapper objectMapper() {
+            return new ObjectMapper().findAndRegisterModules();
+        }
+    }
+
+    private static final int PATIENT_COUNT = 10;
+    private static final int ROUNDS = 5;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private PatientCacheInvalidator cacheInvalidator;
+
+    @Value("${patient.instance-id}")
+    private String instanceId;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Statistics statistics;
+    private List<UUID> patientIds;
+
+    @BeforeEach
+    void setUp() {
+        patientIds = PatientFixtures.persistChildren(entityManager, PATIENT_COUNT, "Adeyemi", "Oyo", "Ibadan North",
+            (patient, i) -> patient.addProgram(PatientProgram.builder().programCode("EPI-" + i).build()));
+        entityManager.clear();
+
+        entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getCache().evictAllRegions();
+        statistics = PatientFixtures.clearedStatistics(entityManager);
+    }
+
+    @Test
+    void repeatedLoads_ShouldHitDatabaseEveryTimeWithoutCache() {
+        entityManager.unwrap(Session.class).setCacheMode(CacheMode.IGNORE);
+
+        long statements = loadRepeatedly();
+
+        // patient + guardians + programs, every round
+        assertEquals(3L * PATIENT_COUNT * ROUNDS, statements);
+        assertEquals(0, statistics.getSecondLevelCacheHitCount());
+    }
+
+    @Test
+    void repeatedLoads_ShouldOnlyHitDatabaseOnFirstRoundWithCache() {
+        long statements = loadRepeatedly();
+
+        assertEquals(3L * PATIENT_COUNT, statements);
+        // patient, guardian and program entities plus both collections, every warm round
+        assertEquals(5L * PATIENT_COUNT * (ROUNDS - 1), statistics.getSecondLevelCacheHitCount());
+        assertEquals(PATIENT_COUNT * (ROUNDS - 1),
+            statistics.getDomainDataRegionStatistics("patient").getHitCount());
+    }
+
+    @Test
+    void onPatientEvent_ShouldEvictGuardiansAndProgramsChangedOnAnotherInstance() {
+        UUID patientId = patientIds.getFirst();
+        Patient cached = patientRepository.findById(patientId).orElseThrow();
+        assertEquals(1, cached.getGuardians().size());
+        assertEquals(1, cached.getPrograms().size());
+        entityManager.clear();
+
+        updateElsewhere("UPDATE guardians SET name = 'Aunt' WHERE patient_id = :id", patientId);
+        updateElsewhere("UPDATE patient_programs SET program_name = 'Renamed' WHERE patient_id = :id", patientId);
+        cacheInvalidator.onPatientEvent(
+            new ConsumerRecord<>(PatientEventPublisher.PATIENT_UPDATED_TOPIC, 0, 0L, patientId.toString(), "{}"));
+
+        Patient patient = patientRepository.findById(patientId).orElseThrow();
+        assertEquals("Aunt", patient.getGuardians().getFirst().getName());
+        assertEquals("Renamed", patient.getPrograms().getFirst().getProgramName());
+    }
+
+    @Test
+    void onPatientEvent_ShouldSkipEventsThisInstanceRecorded() {
+        UUID patientId = patientIds.getFirst();
+        assertEquals(1, patientRepository.findById(patientId).orElseThrow().getGuardians().size());
+        entityManager.clear();
+
+        updateElsewhere("UPDATE guardians SET name = 'Aunt' WHERE patient_id = :id", patientId);
+        ConsumerRecord<String, String> record =
+            new ConsumerRecord<>(PatientEventPublisher.PATIENT_UPDATED_TOPIC, 0, 0L, patientId.toString(), "{}");
+        record.headers().add(PatientEventPublisher.ORIGIN_HEADER, instanceId.getBytes(StandardCharsets.UTF_8));
+        cacheInvalidator.onPatientEvent(record);
+
+        // Still the cached guardian: this instance's own changes are never evicted on their way back
+        assertEquals("Mother 0", patientRepository.findById(patientId).orElseThrow().getGuardians().getFirst().getName());
+    }
+
+    // A query space no entity uses keeps Hibernate from clearing the cache itself, as it would not on another instance
+    private void updateElsewhere(String sql, UUID patientId) {
+        entityManager.createNativeQuery(sql)
+            .setParameter("id", patientId)
+            .unwrap(NativeQuery.class)
+            .addSynchronizedQuerySpace("another_instance")
+            .executeUpdate();
+    }
+
+    private long loadRepeatedly() {
+        for (int round = 0; round < ROUNDS; round++) {
+            for (UUID patientId : patientIds) {
+                Patient patient = patientRepository.findById(patientId).orElseThrow();
+                assertEquals(1, patient.getGuardians().size());
+                assertEquals(1, patient.getPrograms().size());
+                entityManager.clear();
+            }
+        }
+        return statistics.getPrepareStatementCount();
+    }
+}
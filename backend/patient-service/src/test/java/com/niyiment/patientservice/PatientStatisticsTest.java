@@ -0,0 +1,139 @@
+package com.niyiment.patientservice;
+
+import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.entity.PatientProgram;
+import com.niyiment.patientservice.repository.PatientRepository;
+import com.niyiment.patientservice.repository.PatientStatisticsRepository;
+import com.niyiment.patientservice.repository.PatientViewRepository;
+import com.niyiment.patientservice.service.ScheduledJobLock;
+import jakarta.persistence.EntityManager;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the statistics buckets follow patient_view writes without extra statements, and that
+ * reconciliation recounts drifted buckets from the view.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({TestcontainersConfiguration.class, ScheduledJobLock.class})
+class PatientStatisticsTest {
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private PatientViewRepository viewRepository;
+
+    @Autowired
+    private PatientStatisticsRepository statisticsRepository;
+
+    @Autowired
+    private ScheduledJobLock jobLock;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private UUID child;
+    private UUID adult;
+    private UUID lagosAdult;
+
+    @BeforeEach
+    void setUp() {
+        child = persist("Kano", "Nassarawa", Patient.PatientType.CHILD, "MEASLES");
+        adult = persist("Kano", "Fagge", Patient.PatientType.ADULT, null);
+        lagosAdult = persist("Lagos", "Ikeja", Patient.PatientType.ADULT, "MEASLES");
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void projectPatients_ShouldUpdateStatisticsInTheSameStatement() {
+        Statistics statistics = PatientFixtures.clearedStatistics(entityManager);
+
+        viewRepository.projectPatients(List.of(child, adult, lagosAdult));
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(2L, statisticsRepository.countPatientsByState("Kano"));
+        assertEquals(2L, statisticsRepository.countPatientsByType(Patient.PatientType.ADULT));
+
+        Map<String, Long> enrolled = dashboard("PROGRAM").stream()
+            .filter(row -> row.getProgramCode() != null)
+            .collect(Collectors.toMap(PatientStatisticsRepository.DashboardRow::getProgramCode,
+                PatientStatisticsRepository.DashboardRow::getEnrolled));
+        assertEquals(Map.of("MEASLES", 2L), enrolled);
+        assertEquals(3L, dashboard("TOTAL").getFirst().getPatients());
+    }
+
+    @Test
+    void reprojection_ShouldMovePatientBetweenBuckets() {
+        viewRepository.projectPatients(List.of(child, adult, lagosAdult));
+
+        Patient patient = patientRepository.findById(child).orElseThrow();
+        patient.setPatientType(Patient.PatientType.ADULT);
+        entityManager.flush();
+        viewRepository.projectPatients(List.of(child));
+        assertEquals(3L, statisticsRepository.countPatientsByType(Patient.PatientType.ADULT));
+        assertEquals(0L, statisticsRepository.countPatientsByType(Patient.PatientType.CHILD));
+
+        patientRepository.deleteById(lagosAdult);
+        entityManager.flush();
+        viewRepository.deleteRemovedPatients(List.of(lagosAdult));
+        assertEquals(0L, statisticsRepository.countPatientsByState("Lagos"));
+    }
+
+    @Test
+    void reconcileWithPatientView_ShouldRecountDriftedBuckets() {
+        viewRepository.projectPatients(List.of(child, adult, lagosAdult));
+        entityManager.createNativeQuery("UPDATE patient_statistics SET patients = 99 WHERE state = 'Kano'").executeUpdate();
+        entityManager.createNativeQuery("DELETE FROM patient_statistics WHERE state = 'Lagos' AND program_code IS NULL")
+            .executeUpdate();
+
+        statisticsRepository.lockPatientView();
+        assertTrue(statisticsRepository.reconcileWithPatientView() > 0);
+
+        assertEquals(2L, statisticsRepository.countPatientsByState("Kano"));
+        assertEquals(1L, statisticsRepository.countPatientsByState("Lagos"));
+        assertEquals(0L, statisticsRepository.reconcileWithPatientView());
+    }
+
+    @Test
+    void runExclusively_ShouldSkipJobWhileAnotherRunHoldsTheLock() {
+        AtomicBoolean nestedRan = new AtomicBoolean();
+
+        boolean ran = jobLock.runExclusively(42L, "outer run", () ->
+            assertFalse(jobLock.runExclusively(42L, "nested run", () -> nestedRan.set(true))));
+
+        assertTrue(ran);
+        assertFalse(nestedRan.get());
+        assertTrue(jobLock.runExclusively(42L, "later run", () -> { }));
+    }
+
+    private List<PatientStatisticsRepository.DashboardRow> dashboard(String dimension) {
+        return statisticsRepository.findDashboardRows(null).stream()
+            .filter(row -> row.getDimension().equals(dimension))
+            .toList();
+    }
+
+    private UUID persist(String state, String lga, Patient.PatientType patientType, String programCode) {
+        Patient patient = PatientFixtures.patient("Ibrahim", "Sani", state, lga, patientType)
+            .gender(Patient.Gender.MALE)
+            .build();
+        if (programCode != null) {
+            patient.addProgram(PatientProgram.builder().programCode(programCode).build());
+        }
+        entityManager.persist(patient);
+        return patient.getId();
+    }
+}
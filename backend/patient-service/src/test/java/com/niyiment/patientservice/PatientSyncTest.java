@@ -0,0 +1,155 @@
+package com.niyiment.patientservice;
+
+import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.repository.PatientRepository;
+import com.niyiment.patientservice.repository.PatientViewRepository;
+import com.niyiment.patientservice.repository.PatientViewRepository.SyncChange;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks delta sync reads committed view changes in order within a scope and reports patients
+ * deleted or moved out of it. Runs outside the test transaction, as sync only sees committed changes.
+ */
+@DataJpaTest
+@Import(TestcontainersConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PatientSyncTest {
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private PatientViewRepository viewRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transaction;
+    private UUID fagge;
+    private UUID nassarawa;
+    private UUID ikeja;
+
+    @BeforeEach
+    void setUp() {
+        transaction = new TransactionTemplate(transactionManager);
+        fagge = persist("Kano", "Fagge");
+        nassarawa = persist("Kano", "Nassarawa");
+        ikeja = persist("Lagos", "Ikeja");
+        project(fagge, nassarawa, ikeja);
+    }
+
+    @AfterEach
+    void tearDown() {
+        transaction.executeWithoutResult(status -> List.of(
+            "DELETE FROM patient_view",
+            "DELETE FROM patients",
+            "DELETE FROM patient_view_tombstones",
+            "DELETE FROM patient_statistics"
+        ).forEach(sql -> entityManager.createNativeQuery(sql).executeUpdate()));
+    }
+
+    @Test
+    void findChangesAfter_ShouldPageThroughScopeInChangeOrder() {
+        List<SyncChange> first = changes("Kano", null, 0L, 0L, 1);
+        assertEquals(List.of(fagge), ids(first));
+
+        SyncChange last = first.getLast();
+        List<SyncChange> rest = changes("Kano", null, last.getChangeXid(), last.getChangeSeq(), 10);
+        assertEquals(List.of(nassarawa), ids(rest));
+
+        assertEquals(List.of(nassarawa), ids(changes("Kano", "Nassarawa", 0L, 0L, 10)));
+        assertEquals(3, changes(null, null, 0L, 0L, 10).size());
+    }
+
+    @Test
+    void findChangesAfter_ShouldReportDeletedAndMovedPatients() {
+        SyncChange synced = changes(null, null, 0L, 0L, 10).getLast();
+
+        transaction.executeWithoutResult(status -> {
+            patientRepository.findById(nassarawa).orElseThrow().setState("Lagos");
+            patientRepository.deleteById(fagge);
+        });
+        project(fagge, nassarawa);
+
+        List<SyncChange> kano = changes("Kano", null, synced.getChangeXid(), synced.getChangeSeq(), 10);
+        assertEquals(2, kano.size());
+        assertTrue(kano.stream().allMatch(SyncChange::getDeleted));
+        assertEquals(List.of(fagge, nassarawa).stream().sorted().toList(), ids(kano).stream().sorted().toList());
+
+        // Nationally the moved patient is still there, so only the deletion is a tombstone
+        List<SyncChange> national = changes(null, null, synced.getChangeXid(), synced.getChangeSeq(), 10);
+        assertEquals(2, national.size());
+        assertTrue(national.stream().anyMatch(change -> change.getId().equals(nassarawa) && !change.getDeleted()));
+        assertTrue(national.stream().anyMatch(change -> change.getId().equals(fagge) && change.getDeleted()));
+    }
+
+    @Test
+    void unchangedReprojection_ShouldKeepChangePosition() {
+        SyncChange synced = changes(null, null, 0L, 0L, 10).getLast();
+
+        project(fagge, nassarawa, ikeja);
+
+        assertTrue(changes(null, null, synced.getChangeXid(), synced.getChangeSeq(), 10).isEmpty());
+    }
+
+    @Test
+    void findChangesAfter_ShouldNotSeeUncommittedChanges() {
+        SyncChange synced = changes(null, null, 0L, 0L, 10).getLast();
+
+        transaction.executeWithoutResult(status -> {
+            patientRepository.findById(ikeja).orElseThrow().setLga("Epe");
+            entityManager.flush();
+            viewRepository.projectPatients(List.of(ikeja));
+            assertTrue(viewRepository.findChangesAfter(
+                null, null, synced.getChangeXid(), synced.getChangeSeq(), true, 10).isEmpty());
+        });
+
+        assertEquals(List.of(ikeja), ids(changes("Lagos", "Epe", synced.getChangeXid(), synced.getChangeSeq(), 10)));
+    }
+
+    private List<SyncChange> changes(String state, String lga, long afterXid, long afterSeq, int limit) {
+        return transaction.execute(status -> viewRepository.findChangesAfter(state, lga, afterXid, afterSeq, true, limit));
+    }
+
+    private static List<UUID> ids(List<SyncChange> changes) {
+        return changes.stream().map(SyncChange::getId).toList();
+    }
+
+    private void project(UUID... patientIds) {
+        for (UUID patientId : patientIds) {
+            // One transaction each, so every patient gets its own change position
+            transaction.executeWithoutResult(status -> {
+                viewRepository.projectPatients(List.of(patientId));
+                viewRepository.deleteRemovedPatients(List.of(patientId));
+            });
+        }
+    }
+
+    private UUID persist(String state, String lga) {
+        return transaction.execute(status -> {
+            Patient patient = PatientFixtures.patient("Zainab", "Usman", state, lga, Patient.PatientType.CHILD)
+                .gender(Patient.Gender.FEMALE)
+                .build();
+            entityManager.persist(patient);
+            return patient.getId();
+        });
+    }
+}
@@ -0,0 +1,153 @@
+package com.niyiment.patientservice;
+
+import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.entity.PatientView;
+import com.niyiment.patientservice.repository.PatientRepository;
+import com.niyiment.patientservice.repository.PatientViewRepository;
+import com.niyiment.patientservice.service.PatientEventPublisher;
+import com.niyiment.patientservice.service.PatientViewProjector;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the read model converges on the committed patient state whatever order events arrive in,
+ * never lets a stale projection overwrite a fresher row, and drops rows of deleted patients.
+ */
+@DataJpaTest
+@Import({TestcontainersConfiguration.class, PatientViewProjector.class, PatientViewProjectorTest.Beans.class})
+class PatientViewProjectorTest {
+
+    @TestConfiguration
+    static class Beans {
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Autowired
+    private PatientViewProjector projector;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private PatientViewRepository viewRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private long offset;
+
+    @Test
+    void projectPatients_ShouldNotOverwriteFresherVersion() {
+        UUID id = persist("Amina");
+        projector.project(List.of(id));
+        entityManager.createNativeQuery("UPDATE patient_view SET version = version + 5, first_name = 'Fresher' WHERE id = :id")
+            .setParameter("id", id)
+            .executeUpdate();
+
+        assertEquals(0, viewRepository.projectPatients(List.of(id)));
+
+        entityManager.clear();
+        assertEquals("Fresher", viewRepository.findById(id).orElseThrow().getFirstName());
+    }
+
+    @Test
+    void onPatientEvents_ShouldProjectLatestStateWhenEventsArriveOutOfOrder() {
+        UUID id = persist("Amina");
+        Patient patient = patientRepository.findById(id).orElseThrow();
+        patient.setFirstName("Aminat");
+        entityManager.flush();
+
+        projector.onPatientEvents(List.of(
+            record(PatientEventPublisher.PATIENT_UPDATED_TOPIC, id),
+            record(PatientEventPublisher.PATIENT_REGISTERED_TOPIC, id)
+        ));
+
+        entityManager.clear();
+        PatientView view = viewRepository.findById(id).orElseThrow();
+        assertEquals("Aminat", view.getFirstName());
+        assertEquals(patient.getVersion(), view.getVersion());
+    }
+
+    @Test
+    void onPatientEvents_ShouldRemoveDeletedPatientEvenBeforeItsRegistrationEvent() {
+        UUID deleted = persist("Amina");
+        UUID kept = persist("Bello");
+        projector.project(List.of(kept));
+        patientRepository.deleteById(deleted);
+        entityManager.flush();
+
+        projector.onPatientEvents(List.of(
+            record(PatientEventPublisher.PATIENT_DELETED_TOPIC, deleted),
+            record(PatientEventPublisher.PATIENT_REGISTERED_TOPIC, deleted),
+            record(PatientEventPublisher.PATIENT_UPDATED_TOPIC, kept)
+        ));
+
+        entityManager.clear();
+        assertTrue(viewRepository.findById(deleted).isEmpty());
+        assertTrue(viewRepository.findById(kept).isPresent());
+    }
+
+    @Test
+    void onPatientEvents_ShouldRemoveRowOfDeletedPatient() {
+        UUID id = persist("Amina");
+        projector.project(List.of(id));
+        patientRepository.deleteById(id);
+        entityManager.flush();
+
+        projector.onPatientEvents(List.of(record(PatientEventPublisher.PATIENT_DELETED_TOPIC, id)));
+
+        entityManager.clear();
+        assertTrue(viewRepository.findById(id).isEmpty());
+    }
+
+    @Test
+    void onPatientEvents_ShouldMeasureLagFromWhenTheEventOccurred() {
+        UUID id = persist("Amina");
+        ConsumerRecord<String, String> record = record(PatientEventPublisher.PATIENT_REGISTERED_TOPIC, id);
+        long occurredAt = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(5);
+        record.headers().add(PatientEventPublisher.OCCURRED_AT_HEADER,
+            Long.toString(occurredAt).getBytes(StandardCharsets.UTF_8));
+
+        projector.onPatientEvents(List.of(record));
+
+        Timer lag = meterRegistry.get("patient.view.lag").timer();
+        assertEquals(1, lag.count());
+        assertTrue(lag.max(TimeUnit.MINUTES) >= 5);
+    }
+
+    private ConsumerRecord<String, String> record(String topic, UUID patientId) {
+        return new ConsumerRecord<>(topic, 0, offset++, patientId.toString(), "{}");
+    }
+
+    private UUID persist(String firstName) {
+        Patient patient = PatientFixtures.patient(firstName, "Sani", "Kano", "Nassarawa", Patient.PatientType.ADULT)
+            .gender(Patient.Gender.FEMALE)
+            .build();
+        entityManager.persist(patient);
+        entityManager.flush();
+        return patient.getId();
+    }
+}
@@ -0,0 +1,220 @@
+package com.niyiment.patientservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.niyiment.patientservice.dto.GuardianDto;
+import com.niyiment.patientservice.dto.PatientDto;
+import com.niyiment.patientservice.dto.PatientProgramDto;
+import com.niyiment.patientservice.entity.Patient;
+import com.niyiment.patientservice.entity.PatientProgram;
+import com.niyiment.patientservice.util.PatientRowReader;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares JSON and CBOR encodings of realistic patients by size, with and without the gzip the
+ * server applies to large responses, and reports how long each takes to write and read.
+ * Only the sizes are asserted; timings vary too much between machines.
+ */
+class PatientWireFormatTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PatientWireFormatTest.class);
+    private static final int PAGE_SIZE = 50;
+    private static final int ITERATIONS = 2_000;
+
+    private final ObjectMapper jsonMapper = new ObjectMapper()
+        .findAndRegisterModules()
+        .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final ObjectMapper cborMapper = jsonMapper.copyWith(new CBORFactory());
+
+    @Test
+    void cbor_ShouldBeSmallerThanJsonAndRoundTrip() throws IOException {
+        PatientDto patient = patients(1).getFirst();
+        byte[] json = jsonMapper.writeValueAsBytes(patient);
+        byte[] cbor = cborMapper.writeValueAsBytes(patient);
+
+        assertTrue(cbor.length < json.length, "CBOR " + cbor.length + " bytes, JSON " + json.length);
+        assertEquals(patient, cborMapper.readValue(cbor, PatientDto.class));
+        report("patient", patient, json, cbor);
+    }
+
+    @Test
+    void cborPage_ShouldBeSmallerThanJsonBeforeAndAfterGzip() throws IOException {
+        List<PatientDto> page = patients(PAGE_SIZE);
+        byte[] json = jsonMapper.writeValueAsBytes(page);
+        byte[] cbor = cborMapper.writeValueAsBytes(page);
+
+        assertTrue(cbor.length < json.length, "CBOR " + cbor.length + " bytes, JSON " + json.length);
+        assertTrue(gzip(cbor).length < gzip(json).length,
+            "Gzipped CBOR " + gzip(cbor).length + " bytes, gzipped JSON " + gzip(json).length);
+        report("page of " + PAGE_SIZE, page, json, cbor);
+    }
+
+    @Test
+    void cborSequence_ShouldReportUnbindableItemsAndReadOn() throws IOException {
+        ByteArrayOutputStream upload = new ByteArrayOutputStream();
+        upload.write(cborMapper.writeValueAsBytes(registration("Aisha", "2019-04-02")));
+        upload.write(cborMapper.writeValueAsBytes(registration("Musa", "not-a-date")));
+        upload.write(cborMapper.writeValueAsBytes(registration("Chinedu", "2021-11-20")));
+
+        List<PatientRowReader.Row> rows = new ArrayList<>();
+        try (PatientRowReader reader = PatientRowReader.open(
+                new ByteArrayInputStream(upload.toByteArray()), PatientRowReader.Format.CBOR, jsonMapper)) {
+            PatientRowReader.Row row;
+            while ((row = reader.next()) != null) {
+                rows.add(row);
+            }
+        }
+
+        assertEquals(3, rows.size());
+        assertEquals("Aisha", rows.get(0).command().firstName());
+        assertNotNull(rows.get(1).error());
+        assertEquals(3, rows.get(2).number());
+        assertEquals(LocalDate.of(2021, 11, 20), rows.get(2).command().dateOfBirth());
+    }
+
+    @Test
+    void cborSequence_ShouldReportBytesThatAreNotCborAndStop() throws IOException {
+        ByteArrayOutputStream upload = new ByteArrayOutputStream();
+        upload.write(cborMapper.writeValueAsBytes(registration("Aisha", "2019-04-02")));
+        // Major type 0 with additional information 28, which CBOR reserves
+        upload.write(0x1c);
+        upload.write(cborMapper.writeValueAsBytes(registration("Chinedu", "2021-11-20")));
+
+        List<PatientRowReader.Row> rows = new ArrayList<>();
+        try (PatientRowReader reader = PatientRowReader.open(
+                new ByteArrayInputStream(upload.toByteArray()), PatientRowReader.Format.CBOR, jsonMapper)) {
+            PatientRowReader.Row row;
+            while ((row = reader.next()) != null) {
+                rows.add(row);
+            }
+        }
+
+        assertEquals(2, rows.size());
+        assertEquals("Aisha", rows.get(0).command().firstName());
+        assertEquals(2, rows.get(1).number());
+        assertNotNull(rows.get(1).error());
+    }
+
+    private void report(String sample, Object value, byte[] json, byte[] cbor) throws IOException {
+        log.info("{}: JSON {} B ({} B gzipped), {} us to write, {} us to read",
+            sample, json.length, gzip(json).length, writeMicros(jsonMapper, value), readMicros(jsonMapper, json, value));
+        log.info("{}: CBOR {} B ({} B gzipped), {} us to write, {} us to read",
+            sample, cbor.length, gzip(cbor).length, writeMicros(cborMapper, value), readMicros(cborMapper, cbor, value));
+    }
+
+    private static double writeMicros(ObjectMapper mapper, Object value) throws IOException {
+        for (int i = 0; i < ITERATIONS; i++) {
+            mapper.writeValueAsBytes(value);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            mapper.writeValueAsBytes(value);
+        }
+        return (System.nanoTime() - start) / 1_000.0 / ITERATIONS;
+    }
+
+    private static double readMicros(ObjectMapper mapper, byte[] bytes, Object value) throws IOException {
+        Class<?> type = value instanceof List ? PatientDto[].class : PatientDto.class;
+        for (int i = 0; i < ITERATIONS; i++) {
+            mapper.readValue(bytes, type);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            mapper.readValue(bytes, type);
+        }
+        return (System.nanoTime() - start) / 1_000.0 / ITERATIONS;
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static Map<String, Object> registration(String firstName, String dateOfBirth) {
+        return Map.of(
+            "firstName", firstName,
+            "lastName", "Okafor",
+            "dateOfBirth", dateOfBirth,
+            "gender", "FEMALE",
+            "state", "Enugu",
+            "lga", "Nsukka",
+            "patientType", "CHILD"
+        );
+    }
+
+    private static List<PatientDto> patients(int count) {
+        String[] firstNames = {"Aisha", "Chinedu", "Fatima", "Emeka", "Ngozi", "Musa", "Yetunde", "Ibrahim"};
+        String[] lastNames = {"Okafor", "Abubakar", "Adeyemi", "Eze", "Bello", "Okonkwo", "Danjuma", "Olawale"};
+        String[][] places = {{"Kano", "Nassarawa"}, {"Lagos", "Ikeja"}, {"Enugu", "Nsukka"}, {"Oyo", "Ibadan North"}};
+        LocalDateTime registered = LocalDateTime.of(2025, 3, 14, 9, 30, 12);
+
+        List<PatientDto> patients = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String[] place = places[i % places.length];
+            String lastName = lastNames[i % lastNames.length];
+            LocalDateTime createdAt = registered.plusMinutes(i * 7L);
+            patients.add(new PatientDto(
+                UUID.nameUUIDFromBytes(("patient-" + i).getBytes()),
+                firstNames[i % firstNames.length],
+                lastName,
+                LocalDate.of(2019 + i % 5, 1 + i % 12, 1 + i % 28),
+                i % 2 == 0 ? Patient.Gender.FEMALE : Patient.Gender.MALE,
+                String.format("%011d", 40_000_000_000L + i * 7_919L),
+                String.format("+234-803-%03d-%04d", i % 1000, (i * 37) % 10_000),
+                null,
+                (12 + i) + " Hospital Road, " + place[1],
+                place[0],
+                place[1],
+                Patient.PatientType.CHILD,
+                List.of(new GuardianDto(
+                    UUID.nameUUIDFromBytes(("guardian-" + i).getBytes()),
+                    "Hauwa " + lastName,
+                    "Mother",
+                    String.format("+234-806-%03d-%04d", i % 1000, (i * 53) % 10_000),
+                    null,
+                    null,
+                    true,
+                    createdAt
+                )),
+                List.of(
+                    program(i, "EPI-2025", "Expanded Programme on Immunization", createdAt),
+                    program(i, "MEASLES-2025", "Measles Catch-up Campaign", createdAt)
+                ),
+                createdAt,
+                createdAt.plusDays(30),
+                3L
+            ));
+        }
+        return patients;
+    }
+
+    private static PatientProgramDto program(int patient, String code, String name, LocalDateTime enrolledAt) {
+        return new PatientProgramDto(
+            UUID.nameUUIDFromBytes((code + "-" + patient).getBytes()),
+            code,
+            name,
+            PatientProgram.ProgramStatus.ACTIVE,
+            enrolledAt,
+            null
+        );
+    }
+}
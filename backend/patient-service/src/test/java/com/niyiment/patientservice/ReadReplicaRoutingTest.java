@@ -0,0 +1,138 @@
+package com.niyiment.patientservice;
+
+import com.niyiment.patientservice.config.ReadReplicaConfiguration;
+import com.niyiment.patientservice.config.ReplicaFallbackDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.postgresql.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks read-only transactions are served by the replica pool and fall back to the primary pool.
+ * Both pools point at one PostgreSQL instance and are told apart by their application name.
+ */
+@Testcontainers
+class ReadReplicaRoutingTest {
+
+    private static final String APPLICATION_NAME = "SELECT current_setting('application_name')";
+
+    @Container
+    static final PostgreSQLContainer postgres = new PostgreSQLContainer(DockerImageName.parse("postgres:latest"));
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<HikariDataSource> pools = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        pools.forEach(HikariDataSource::close);
+    }
+
+    @Test
+    void readOnlyTransactions_ShouldUseReplicaAndWritesThePrimary() {
+        Routing routing = routing(postgres.getJdbcUrl(), Duration.ofSeconds(5));
+
+        assertEquals("replica", routing.readOnly().execute(status -> routing.jdbc().queryForObject(APPLICATION_NAME, String.class)));
+        assertEquals("primary", routing.readWrite().execute(status -> routing.jdbc().queryForObject(APPLICATION_NAME, String.class)));
+        assertEquals(1.0, meterRegistry.get("patient.datasource.reads").tag("target", "replica").counter().count());
+    }
+
+    /**
+     * The service runs on a JpaTransactionManager, which marks the connection read-only through the
+     * Hibernate dialect rather than directly.
+     */
+    @Test
+    void readOnlyJpaTransactions_ShouldUseReplicaWithoutFillingSecondLevelCache() {
+        Routing routing = routing(postgres.getJdbcUrl(), Duration.ofSeconds(5));
+        LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+        factory.setDataSource(routing.dataSource());
+        factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factory.setPackagesToScan(ReadReplicaRoutingTest.class.getPackageName() + ".noentities");
+        factory.afterPropertiesSet();
+        try {
+            JpaTransactionManager transactionManager = new ReadReplicaConfiguration().transactionManager(factory.getObject());
+            EntityManager entityManager = SharedEntityManagerCreator.createSharedEntityManager(factory.getObject());
+            TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+            TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+
+            assertEquals("replica", readOnly.execute(status -> entityManager.createNativeQuery(APPLICATION_NAME).getSingleResult()));
+            assertEquals(CacheMode.GET, readOnly.execute(status -> entityManager.unwrap(Session.class).getCacheMode()));
+            assertEquals("primary", readWrite.execute(status -> entityManager.createNativeQuery(APPLICATION_NAME).getSingleResult()));
+            assertEquals(CacheMode.NORMAL, readWrite.execute(status -> entityManager.unwrap(Session.class).getCacheMode()));
+        } finally {
+            factory.destroy();
+        }
+    }
+
+    @Test
+    void readOnlyTransactions_ShouldFallBackToPrimaryWhenReplicaIsDown() {
+        Routing routing = routing("jdbc:postgresql://localhost:1/patient_db", Duration.ofSeconds(5));
+
+        assertEquals("primary", routing.readOnly().execute(status -> routing.jdbc().queryForObject(APPLICATION_NAME, String.class)));
+        assertFalse(routing.replica().isAvailable());
+        assertEquals(1.0, meterRegistry.get("patient.datasource.reads").tag("target", "primary").counter().count());
+    }
+
+    @Test
+    void checkReplica_ShouldRouteToPrimaryWhileReplicaLags() {
+        Routing routing = routing(postgres.getJdbcUrl(), Duration.ofMillis(-1));
+
+        routing.replica().checkReplica();
+
+        assertFalse(routing.replica().isAvailable());
+        assertEquals("primary", routing.readOnly().execute(status -> routing.jdbc().queryForObject(APPLICATION_NAME, String.class)));
+    }
+
+    private Routing routing(String replicaUrl, Duration maxLag) {
+        HikariDataSource primary = pool("primary", postgres.getJdbcUrl());
+        HikariDataSource replica = pool("replica", replicaUrl);
+        replica.setReadOnly(true);
+
+        ReplicaFallbackDataSource fallback = new ReplicaFallbackDataSource(replica, primary, maxLag, meterRegistry);
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primary);
+        dataSource.setReadOnlyDataSource(fallback);
+
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        return new Routing(dataSource, new JdbcTemplate(dataSource), readOnly, new TransactionTemplate(transactionManager), fallback);
+    }
+
+    private HikariDataSource pool(String name, String url) {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setJdbcUrl(url);
+        pool.setUsername(postgres.getUsername());
+        pool.setPassword(postgres.getPassword());
+        pool.setPoolName(name);
+        pool.setConnectionTimeout(250);
+        pool.setInitializationFailTimeout(-1);
+        pool.addDataSourceProperty("ApplicationName", name);
+        pools.add(pool);
+        return pool;
+    }
+
+    private record Routing(DataSource dataSource, JdbcTemplate jdbc, TransactionTemplate readOnly, TransactionTemplate readWrite,
+                           ReplicaFallbackDataSource replica) {}
+}